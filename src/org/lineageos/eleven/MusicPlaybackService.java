@@ -67,7 +67,6 @@ import android.provider.MediaStore.Audio.AudioColumns;
 import android.service.media.MediaBrowserService;
 import android.text.TextUtils;
 import android.util.Log;
-import android.util.LongSparseArray;
 import android.view.KeyEvent;
 
 import androidx.annotation.NonNull;
@@ -77,20 +76,34 @@ import org.lineageos.eleven.Config.IdType;
 import org.lineageos.eleven.appwidgets.AppWidgetLarge;
 import org.lineageos.eleven.appwidgets.AppWidgetLargeAlternate;
 import org.lineageos.eleven.appwidgets.AppWidgetSmall;
+import org.lineageos.eleven.cache.ArtworkResolver;
+import org.lineageos.eleven.cache.DecodeScheduler;
 import org.lineageos.eleven.cache.ImageCache;
 import org.lineageos.eleven.cache.ImageFetcher;
+import org.lineageos.eleven.provider.AlbumColorStore;
+import org.lineageos.eleven.provider.ListeningHistoryStore;
+import org.lineageos.eleven.provider.LocalizedStore;
+import org.lineageos.eleven.provider.MusicDB;
 import org.lineageos.eleven.provider.MusicPlaybackState;
+import org.lineageos.eleven.provider.PlaylistArtworkStore;
 import org.lineageos.eleven.provider.RecentStore;
 import org.lineageos.eleven.provider.SongPlayCount;
 import org.lineageos.eleven.service.MusicPlaybackTrack;
+import org.lineageos.eleven.service.PlaySessionTracker;
+import org.lineageos.eleven.utils.AppExecutors;
+import org.lineageos.eleven.utils.IdResolver;
 import org.lineageos.eleven.utils.Lists;
 import org.lineageos.eleven.utils.PreferenceUtils;
 import org.lineageos.eleven.utils.ShakeDetector;
 import org.lineageos.eleven.utils.SrtManager;
+import org.lineageos.eleven.utils.collections.LongArrayList;
+import org.lineageos.eleven.utils.collections.LongHashSet;
 import org.lineageos.eleven.utils.colors.BitmapWithColors;
 
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -101,8 +114,7 @@ import java.util.ListIterator;
 import java.util.Objects;
 import java.util.Random;
 import java.util.TreeSet;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * A background {@link Service} used to keep music playing between activities
@@ -337,6 +349,11 @@ public class MusicPlaybackService extends MediaBrowserService
      */
     private static final int IDLE_DELAY = 5 * 60 * 1000;
 
+    /**
+     * Number of upcoming queue entries whose artwork colors are computed ahead of time
+     */
+    private static final int PRECOMPUTED_COLORS_COUNT = 3;
+
     /**
      * Song play time used as threshold for rewinding to the beginning of the
      * track instead of skipping to the previous track when getting the PREVIOUS
@@ -536,6 +553,9 @@ public class MusicPlaybackService extends MediaBrowserService
 
     private ArrayList<MusicPlaybackTrack> mPlaylist = new ArrayList<>(100);
 
+    // bumped every time the queue changes, so clients can tell whether their copy is current
+    private int mQueueVersion;
+
     private long[] mAutoShuffleList = null;
 
     private MusicPlayerHandler mPlayerHandler;
@@ -564,6 +584,16 @@ public class MusicPlaybackService extends MediaBrowserService
      */
     private SongPlayCount mSongPlayCountCache;
 
+    /**
+     * The listening history log
+     */
+    private ListeningHistoryStore mListeningHistory;
+
+    /**
+     * Tracks the play session of the current track for the listening history
+     */
+    private PlaySessionTracker mPlaySessionTracker;
+
     /**
      * Stores the playback state
      */
@@ -587,7 +617,23 @@ public class MusicPlaybackService extends MediaBrowserService
      * Only used for Android Auto, as it can only access this service
      */
     private HashMap<String, List<MediaBrowser.MediaItem>> mMediaIdToChildren = new HashMap<>();
-    private ArrayList<Long> mSongs = new ArrayList<>(100);
+    private final LongArrayList mSongs = new LongArrayList(100);
+
+    @Override
+    protected void dump(final FileDescriptor fd, final PrintWriter writer, final String[] args) {
+        MusicDB.getInstance(this).getExecutor().dump(writer);
+        ArtworkResolver.getInstance(this).dump(writer);
+        ImageCache.getInstance(this).getBitmapPool().dump(writer);
+        ImageCache.getInstance(this).getDiskCacheWriter().dump(writer);
+        AlbumColorStore.getInstance(this).dump(writer);
+        PlaylistArtworkStore.getInstance(this).dump(writer);
+        AppExecutors.dump(writer);
+
+        final int rebuildProgress = LocalizedStore.getInstance(this).getRebuildProgress();
+        if (rebuildProgress >= 0) {
+            writer.println("Localized sort rebuild: " + rebuildProgress + "%");
+        }
+    }
 
     @Override
     public IBinder onBind(final Intent intent) {
@@ -684,9 +730,16 @@ public class MusicPlaybackService extends MediaBrowserService
         // gets the song play count cache
         mSongPlayCountCache = SongPlayCount.getInstance(this);
 
+        // gets the listening history log
+        mListeningHistory = ListeningHistoryStore.getInstance(this);
+        mPlaySessionTracker = new PlaySessionTracker(mListeningHistory);
+
         // gets a pointer to the playback state store
         mPlaybackStateStore = MusicPlaybackState.getInstance(this);
 
+        // the artwork colors are needed as soon as something plays
+        AlbumColorStore.getInstance(this).preload();
+
         // Initialize the image fetcher
         mImageFetcher = ImageFetcher.getInstance(this);
         // Initialize the image cache
@@ -833,7 +886,7 @@ public class MusicPlaybackService extends MediaBrowserService
             public void onPlayFromMediaId(String mediaId, Bundle extras) {
                 int position = mSongs.indexOf(Long.parseLong(mediaId));
                 // TODO: Detect when played from playlist, album, or artist
-                open(mSongs.stream().mapToLong(i -> i).toArray(), position, -1, IdType.NA);
+                open(mSongs.toArray(), position, -1, IdType.NA);
                 onPlay();
             }
 
@@ -900,6 +953,9 @@ public class MusicPlaybackService extends MediaBrowserService
 
         // deinitialize shake detector
         stopShakeDetector(true);
+
+        // write out the listening history of this session
+        mPlaySessionTracker.close();
     }
 
     @Override
@@ -1606,7 +1662,22 @@ public class MusicPlaybackService extends MediaBrowserService
             mRecentsCache.addSongId(getAudioId());
 
             mSongPlayCountCache.bumpSongCount(getAudioId());
+
+            mPlaySessionTracker.onTrackStarted(getCurrentTrack(), duration(), isPlaying());
+
+            precomputeUpcomingColors();
+        } else if (PLAYSTATE_CHANGED.equals(what)) {
+            final boolean playing = isPlaying();
+            mPlaySessionTracker.onPlayStateChanged(playing);
+            if (!playing) {
+                // pauses are a natural point to write out the batched sessions
+                mListeningHistory.flush();
+            }
+            saveQueue(false);
         } else if (QUEUE_CHANGED.equals(what) || QUEUE_MOVED.equals(what)) {
+            synchronized (this) {
+                mQueueVersion++;
+            }
             saveQueue(true);
             if (isPlaying()) {
                 // if we are in shuffle mode and our next track is still valid,
@@ -1633,6 +1704,53 @@ public class MusicPlaybackService extends MediaBrowserService
         mAppWidgetLargeAlternate.notifyChange(this, what);
     }
 
+    /**
+     * Computes the artwork colors of the next entries of the queue in the background, so they
+     * are only looked up when those tracks start
+     */
+    private void precomputeUpcomingColors() {
+        final LongArrayList trackIds = new LongArrayList(PRECOMPUTED_COLORS_COUNT);
+        synchronized (this) {
+            if (mNextPlayPos >= 0 && mNextPlayPos < mPlaylist.size()) {
+                trackIds.add(mPlaylist.get(mNextPlayPos).mId);
+            }
+            for (int pos = mPlayPos + 1; pos < mPlaylist.size()
+                    && trackIds.size() < PRECOMPUTED_COLORS_COUNT; pos++) {
+                if (pos != mNextPlayPos) {
+                    trackIds.add(mPlaylist.get(pos).mId);
+                }
+            }
+        }
+        if (trackIds.isEmpty()) {
+            return;
+        }
+
+        // runs after the decodes of what's on screen
+        DecodeScheduler.getInstance().submit(DecodeScheduler.Priority.PREFETCH, () -> {
+            final IdResolver.Result result = IdResolver.resolve(getContentResolver(),
+                    MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                    new String[]{AudioColumns._ID, AudioColumns.ALBUM, AudioColumns.ALBUM_ID},
+                    null, trackIds.toArray());
+            if (result == null) {
+                return;
+            }
+
+            final AlbumColorStore colorStore = AlbumColorStore.getInstance(this);
+            for (int i = 0; i < result.size(); i++) {
+                final Object[] row = result.getRow(i);
+                if (row == null || !(row[2] instanceof Number)) {
+                    continue;
+                }
+                final long albumId = ((Number) row[2]).longValue();
+                if (albumId >= 0 && !colorStore.hasColors(albumId)) {
+                    // computes the colors and stores them
+                    mImageFetcher.getArtwork((String) row[1], albumId, true)
+                            .getVibrantColor();
+                }
+            }
+        });
+    }
+
     private void updateMediaSession(final String what) {
         int playState = mIsSupposedToBePlaying
                 ? PlaybackState.STATE_PLAYING
@@ -2084,6 +2202,33 @@ public class MusicPlaybackService extends MediaBrowserService
         return numremoved;
     }
 
+    /**
+     * Removes all instances of the tracks with the given IDs from the playlist, notifying
+     * the change only once
+     *
+     * @param ids The ids to be removed
+     * @return how many instances of the tracks were removed
+     */
+    public int removeTracks(final long[] ids) {
+        final LongHashSet toRemove = new LongHashSet(ids.length);
+        for (long id : ids) {
+            toRemove.add(id);
+        }
+
+        int numremoved = 0;
+        synchronized (this) {
+            for (int i = mPlaylist.size() - 1; i >= 0; i--) {
+                if (toRemove.contains(mPlaylist.get(i).mId)) {
+                    numremoved += removeTracksInternal(i, i);
+                }
+            }
+        }
+        if (numremoved > 0) {
+            notifyChange(QUEUE_CHANGED);
+        }
+        return numremoved;
+    }
+
     /**
      * Removes a song from the playlist at the specified position.
      *
@@ -2445,6 +2590,15 @@ public class MusicPlaybackService extends MediaBrowserService
         }
     }
 
+    /**
+     * @return the version of the queue, which changes every time the queue does
+     */
+    public int getQueueVersion() {
+        synchronized (this) {
+            return mQueueVersion;
+        }
+    }
+
     /**
      * Gets the track id at a given position in the queue
      *
@@ -3783,6 +3937,11 @@ public class MusicPlaybackService extends MediaBrowserService
             return mService.get().getQueue();
         }
 
+        @Override
+        public int getQueueVersion() {
+            return mService.get().getQueueVersion();
+        }
+
         @Override
         public long getQueueItemAtPosition(int position) {
             return mService.get().getQueueItemAtPosition(position);
@@ -3908,6 +4067,11 @@ public class MusicPlaybackService extends MediaBrowserService
             return mService.get().removeTrack(id);
         }
 
+        @Override
+        public int removeTrackIds(final long[] ids) {
+            return mService.get().removeTracks(ids);
+        }
+
         @Override
         public boolean removeTrackAtPosition(final long id, final int position) {
             return mService.get().removeTrackAtPosition(id, position);
@@ -3932,26 +4096,30 @@ public class MusicPlaybackService extends MediaBrowserService
     private class QueueUpdateTask {
         private final long[] mQueue;
 
-        private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+        private Future<?> mFuture;
+        private volatile boolean mCancelled;
 
         public QueueUpdateTask(long[] queue) {
             mQueue = queue != null ? Arrays.copyOf(queue, queue.length) : null;
         }
 
         public void execute() {
-            Handler handler = new Handler(Looper.getMainLooper());
-
-            mExecutor.execute(() -> {
+            mFuture = AppExecutors.get(AppExecutors.Pool.IO).submit(() -> {
                 List<MediaSession.QueueItem> items = getQueuedItems();
 
-                handler.post(() -> {
-                    mSession.setQueue(items);
+                AppExecutors.getMainHandler().post(() -> {
+                    if (!mCancelled) {
+                        mSession.setQueue(items);
+                    }
                 });
             });
         }
 
         public void cancel() {
-            mExecutor.shutdownNow();
+            mCancelled = true;
+            if (mFuture != null) {
+                mFuture.cancel(false);
+            }
         }
 
         private List<MediaSession.QueueItem> getQueuedItems() {
@@ -3959,53 +4127,31 @@ public class MusicPlaybackService extends MediaBrowserService
                 return null;
             }
 
-            final StringBuilder selection = new StringBuilder();
-            selection.append(MediaStore.Audio.Media._ID).append(" IN (");
-            for (int i = 0; i < mQueue.length; i++) {
-                if (i != 0) {
-                    selection.append(",");
-                }
-                selection.append(mQueue[i]);
-            }
-            selection.append(")");
-
-            Cursor c = getContentResolver().query(
+            final IdResolver.Result result = IdResolver.resolve(getContentResolver(),
                     MediaStore.Video.Media.getContentUri(MediaStore.VOLUME_EXTERNAL),
                     new String[]{AudioColumns._ID, AudioColumns.TITLE, AudioColumns.ARTIST},
-                    selection.toString(), null, null);
-            if (c == null) {
+                    null, mQueue);
+            if (result == null) {
                 return null;
             }
 
-            try {
-                LongSparseArray<MediaDescription> descsById = new LongSparseArray<>();
-                final int idColumnIndex = c.getColumnIndexOrThrow(AudioColumns._ID);
-                final int titleColumnIndex = c.getColumnIndexOrThrow(AudioColumns.TITLE);
-                final int artistColumnIndex = c.getColumnIndexOrThrow(AudioColumns.ARTIST);
-
-                while (c.moveToNext()) {
-                    final MediaDescription desc = new MediaDescription.Builder()
-                            .setTitle(c.getString(titleColumnIndex))
-                            .setSubtitle(c.getString(artistColumnIndex))
+            List<MediaSession.QueueItem> items = new ArrayList<>(mQueue.length);
+            for (int i = 0; i < mQueue.length; i++) {
+                final Object[] row = result.getRow(i);
+                final MediaDescription desc;
+                if (row != null) {
+                    desc = new MediaDescription.Builder()
+                            .setTitle((String) row[1])
+                            .setSubtitle((String) row[2])
                             .build();
-                    final long id = c.getLong(idColumnIndex);
-                    descsById.put(id, desc);
-                }
-
-                List<MediaSession.QueueItem> items = new ArrayList<>();
-                for (int i = 0; i < mQueue.length; i++) {
-                    MediaDescription desc = descsById.get(mQueue[i]);
-                    if (desc == null) {
-                        // shouldn't happen except in corner cases like
-                        // music being deleted while we were processing
-                        desc = new MediaDescription.Builder().build();
-                    }
-                    items.add(new MediaSession.QueueItem(desc, i));
+                } else {
+                    // shouldn't happen except in corner cases like
+                    // music being deleted while we were processing
+                    desc = new MediaDescription.Builder().build();
                 }
-                return items;
-            } finally {
-                c.close();
+                items.add(new MediaSession.QueueItem(desc, i));
             }
+            return items;
         }
     }
 }
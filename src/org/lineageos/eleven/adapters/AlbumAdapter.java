@@ -18,6 +18,7 @@
 package org.lineageos.eleven.adapters;
 
 import android.content.Context;
+import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
@@ -26,7 +27,10 @@ import androidx.annotation.NonNull;
 import androidx.fragment.app.FragmentActivity;
 import androidx.recyclerview.widget.RecyclerView;
 
+import org.lineageos.eleven.cache.ArtworkPrefetcher;
 import org.lineageos.eleven.cache.ImageFetcher;
+import org.lineageos.eleven.cache.ImageWorker;
+import org.lineageos.eleven.loaders.PagedList;
 import org.lineageos.eleven.model.Album;
 import org.lineageos.eleven.ui.MusicHolder;
 import org.lineageos.eleven.ui.MusicHolder.DataHolder;
@@ -43,7 +47,11 @@ import java.util.function.Consumer;
  *
  * @author Andrew Neal (andrewdneal@gmail.com)
  */
-public class AlbumAdapter extends RecyclerView.Adapter<MusicHolder> implements IPopupMenuCallback {
+public class AlbumAdapter extends RecyclerView.Adapter<MusicHolder> implements IPopupMenuCallback,
+        ArtworkPrefetcher.Source {
+    /* # of items whose data is kept around */
+    private static final int DATA_CACHE_SIZE = 128;
+
     /**
      * The resource Id of the layout to inflate
      */
@@ -55,11 +63,17 @@ public class AlbumAdapter extends RecyclerView.Adapter<MusicHolder> implements I
     private final ImageFetcher mImageFetcher;
 
     /**
-     * Used to cache the album info
+     * Used to cache the album info by album id, the data holders are built as the items are
+     * bound and only the recently bound ones are kept
      */
-    private DataHolder[] mData = new DataHolder[0];
+    private final LruCache<Long, DataHolder> mData = new LruCache<>(DATA_CACHE_SIZE);
     private List<Album> mAlbums = Collections.emptyList();
 
+    /**
+     * Works out the changes between the old and new lists of albums
+     */
+    private final ListDiffer<Album> mDiffer = new ListDiffer<>(this, album -> album.mAlbumId);
+
     /**
      * Used to listen to the pop up menu callbacks
      */
@@ -82,6 +96,7 @@ public class AlbumAdapter extends RecyclerView.Adapter<MusicHolder> implements I
         // Initialize the cache & image fetcher
         mImageFetcher = ElevenUtils.getImageFetcher(context);
         mOnItemClickedListener = onItemClickedListener;
+        setHasStableIds(true);
     }
 
     @NonNull
@@ -90,11 +105,21 @@ public class AlbumAdapter extends RecyclerView.Adapter<MusicHolder> implements I
         return new MusicHolder(LayoutInflater.from(mContext).inflate(mLayoutId, parent, false));
     }
 
+    @Override
+    public void onViewRecycled(@NonNull MusicHolder holder) {
+        // the view won't show its image anymore, don't decode it
+        ImageWorker.cancelWork(holder.mImage.get());
+    }
+
     @Override
     public int getItemCount() {
         return mAlbums.size();
     }
 
+    /**
+     * @param pos the position of the album
+     * @return the album, or null if it is in a page that is still loading
+     */
     public Album getItem(int pos) {
         return mAlbums.get(pos);
     }
@@ -102,75 +127,105 @@ public class AlbumAdapter extends RecyclerView.Adapter<MusicHolder> implements I
     @Override
     public void onBindViewHolder(@NonNull MusicHolder holder, int position) {
         // Retrieve the data holder
-        final DataHolder dataHolder = mData[position];
+        final DataHolder dataHolder = getDataHolder(position);
 
         // set the pop up menu listener
         holder.mPopupMenuButton.get().setPopupMenuClickedListener(mListener);
         // Sets the position each time because of recycling
         holder.mPopupMenuButton.get().setPosition(position);
+
+        if (dataHolder == null) {
+            // the page of the album is still loading, show an empty item until it is
+            holder.mLineOne.get().setText(null);
+            holder.mLineTwo.get().setText(null);
+            holder.mImage.get().setImageDrawable(null);
+            holder.itemView.setOnClickListener(null);
+            return;
+        }
+
         // Set each album name (line one)
         holder.mLineOne.get().setText(dataHolder.lineOne);
         // Set the artist name (line two)
         holder.mLineTwo.get().setText(dataHolder.lineTwo);
         // Set click listener
-        holder.itemView.setOnClickListener(v -> mOnItemClickedListener.accept(getItem(position)));
+        holder.itemView.setOnClickListener(v -> {
+            // the item may have moved since it was bound
+            final int clickedPosition = holder.getBindingAdapterPosition();
+            final Album album = clickedPosition != RecyclerView.NO_POSITION
+                    ? getItem(clickedPosition) : null;
+            if (album != null) {
+                mOnItemClickedListener.accept(album);
+            }
+        });
         // Asynchronously load the album images into the adapter
         mImageFetcher.loadAlbumImage(
                 dataHolder.lineTwo, dataHolder.lineOne,
                 dataHolder.itemId, holder.mImage.get());
     }
 
+    @Override
+    public ArtworkPrefetcher.Target getPrefetchTarget(int position) {
+        final Album album = getItem(position);
+        return album != null ? ArtworkPrefetcher.Target.album(album.mArtistName,
+                album.mAlbumName, album.mAlbumId) : null;
+    }
+
     @Override
     public long getItemId(int pos) {
-        return pos;
+        return mDiffer.getIds()[pos];
     }
 
     /**
-     * Method used to cache the data used to populate the list or grid. The idea
-     * is to cache everything before {@code #getView(int, View, ViewGroup)} is
-     * called.
+     * Gets the data used to populate the item, building it the first time the item is bound
+     *
+     * @param position the position of the item
+     * @return the data holder, or null if the album isn't loaded yet
      */
-    public void buildCache() {
-        mData = new DataHolder[mAlbums.size()];
-        int i = 0;
-        for (Album album : mAlbums) {
-            mData[i] = new DataHolder();
-            mData[i].itemId = album.mAlbumId;
-            mData[i].lineOne = album.mAlbumName;
-            mData[i].lineTwo = album.mArtistName;
-            i++;
+    private DataHolder getDataHolder(final int position) {
+        final DataHolder cached = mData.get(getItemId(position));
+        if (cached != null) {
+            return cached;
         }
-    }
 
-    public void setData(List<Album> albums) {
-        int oldSize = mAlbums == null ? 0 : mAlbums.size();
-        int newSize = albums.size();
+        final Album album = getItem(position);
+        if (album == null) {
+            return null;
+        }
 
-        mAlbums = albums;
-        buildCache();
-
-        if (oldSize == 0) {
-            notifyItemRangeInserted(0, newSize);
-        } else {
-            int diff = oldSize - newSize;
-            if (diff > 0) {
-                // Items were removed
-                notifyItemRangeChanged(0, newSize);
-                notifyItemRangeRemoved(newSize, diff);
-            } else if (diff < 0) {
-                // Items were added
-                notifyItemRangeChanged(0, oldSize);
-                notifyItemRangeInserted(oldSize, diff * -1);
-            } else {
-                notifyItemChanged(0, oldSize);
-            }
+        final DataHolder dataHolder = new DataHolder();
+        dataHolder.itemId = album.mAlbumId;
+        dataHolder.lineOne = album.mAlbumName;
+        dataHolder.lineTwo = album.mArtistName;
+
+        mData.put(album.mAlbumId, dataHolder);
+        return dataHolder;
+    }
+
+    private void setListener(List<Album> albums, PagedList.Listener listener) {
+        if (albums instanceof PagedList) {
+            ((PagedList<Album>) albums).setListener(listener);
         }
     }
 
+    /**
+     * Replaces the albums, the items that changed are worked out in the background and the new
+     * albums are shown once that is done
+     *
+     * @param albums the new albums, this must not be modified afterwards
+     */
+    public void setData(List<Album> albums) {
+        mDiffer.submit(albums, this::swap);
+    }
+
     public void unload() {
-        int size = mAlbums.size();
-        mAlbums.clear();
-        notifyItemRangeRemoved(0, size);
+        mDiffer.clear(Collections.emptyList(), this::swap);
+    }
+
+    private void swap(List<Album> albums) {
+        setListener(mAlbums, null);
+        mAlbums = albums;
+        mData.evictAll();
+        setListener(mAlbums, this::notifyItemRangeChanged);
     }
 
     /**
@@ -19,8 +19,6 @@ package org.lineageos.eleven.adapters;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -35,6 +33,7 @@ import org.lineageos.eleven.BuildConstants;
 import org.lineageos.eleven.MusicPlaybackService;
 import org.lineageos.eleven.R;
 import org.lineageos.eleven.model.AlbumArtistDetails;
+import org.lineageos.eleven.utils.AppExecutors;
 import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.widgets.SquareImageView;
@@ -42,8 +41,7 @@ import org.lineageos.eleven.widgets.SquareImageView;
 import java.lang.ref.WeakReference;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * A {@link androidx.viewpager2.adapter.FragmentStateAdapter} class for swiping between album art
@@ -263,8 +261,8 @@ public class AlbumArtPagerAdapter extends FragmentStateAdapter {
         private final WeakReference<Context> mContext;
         private final AlbumArtFragment mFragment;
 
-        private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
-        private final Handler mHandler = new Handler(Looper.getMainLooper());
+        private Future<?> mFuture;
+        private volatile boolean mCancelled;
 
         public AlbumArtistLoader(final AlbumArtFragment albumArtFragment, final Context context) {
             mContext = new WeakReference<>(context);
@@ -272,10 +270,13 @@ public class AlbumArtPagerAdapter extends FragmentStateAdapter {
         }
 
         public void execute(long albumId) {
-            mExecutor.execute(() -> {
+            mFuture = AppExecutors.get(AppExecutors.Pool.IO).submit(() -> {
                 AlbumArtistDetails result = MusicUtils.getAlbumArtDetails(mContext.get(), albumId);
 
-                mHandler.post(() ->  {
+                AppExecutors.getMainHandler().post(() ->  {
+                    if (mCancelled) {
+                        return;
+                    }
                     if (result != null) {
                         if (DEBUG) {
                             Log.d(TAG, "[" + mFragment.mAudioId + "] Loading image: "
@@ -294,7 +295,10 @@ public class AlbumArtPagerAdapter extends FragmentStateAdapter {
         }
 
         public void cancel() {
-            mExecutor.shutdownNow();
+            mCancelled = true;
+            if (mFuture != null) {
+                mFuture.cancel(false);
+            }
         }
     }
 }
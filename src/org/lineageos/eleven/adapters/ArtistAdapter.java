@@ -18,6 +18,7 @@
 package org.lineageos.eleven.adapters;
 
 import android.content.Context;
+import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
@@ -27,9 +28,13 @@ import androidx.fragment.app.FragmentActivity;
 import androidx.recyclerview.widget.RecyclerView;
 
 import org.lineageos.eleven.R;
+import org.lineageos.eleven.cache.ArtworkPrefetcher;
 import org.lineageos.eleven.cache.ImageFetcher;
+import org.lineageos.eleven.cache.ImageWorker;
+import org.lineageos.eleven.loaders.PagedList;
 import org.lineageos.eleven.model.Artist;
 import org.lineageos.eleven.ui.MusicHolder;
+import org.lineageos.eleven.ui.MusicHolder.DataHolder;
 import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.widgets.IPopupMenuCallback;
@@ -44,7 +49,11 @@ import java.util.function.Consumer;
  *
  * @author Andrew Neal (andrewdneal@gmail.com)
  */
-public class ArtistAdapter extends RecyclerView.Adapter<MusicHolder> implements IPopupMenuCallback {
+public class ArtistAdapter extends RecyclerView.Adapter<MusicHolder> implements IPopupMenuCallback,
+        ArtworkPrefetcher.Source {
+
+    /* # of rows whose formatted text is kept around */
+    private static final int DATA_CACHE_SIZE = 128;
 
     /**
      * The resource Id of the layout to inflate
@@ -61,6 +70,18 @@ public class ArtistAdapter extends RecyclerView.Adapter<MusicHolder> implements
      */
     private List<Artist> mArtists;
 
+    /**
+     * Used to cache the formatted rows by artist id, the data holders are built as the rows
+     * are bound and only the recently bound ones are kept
+     */
+    private final LruCache<Long, DataHolder> mData = new LruCache<>(DATA_CACHE_SIZE);
+
+    /**
+     * Works out the changes between the old and new lists of artists
+     */
+    private final ListDiffer<Artist> mDiffer =
+            new ListDiffer<>(this, artist -> artist.mArtistId);
+
     /**
      * Used to listen to the pop up menu callbacks
      */
@@ -84,6 +105,7 @@ public class ArtistAdapter extends RecyclerView.Adapter<MusicHolder> implements
         mImageFetcher = ElevenUtils.getImageFetcher(context);
         mOnItemClickListener = onItemClickListener;
         mArtists = new ArrayList<>(0);
+        setHasStableIds(true);
     }
 
     @NonNull
@@ -96,37 +118,84 @@ public class ArtistAdapter extends RecyclerView.Adapter<MusicHolder> implements
     @Override
     public void onBindViewHolder(@NonNull MusicHolder holder, int position) {
         Artist artist = getItem(position);
-        String albumNumber = MusicUtils.makeLabel(mContext,
-                R.plurals.Nalbums, artist.mAlbumNumber);
-        String songNumber = MusicUtils.makeLabel(mContext,
-                R.plurals.Nsongs, artist.mSongNumber);
+        if (artist == null) {
+            // the page of the artist is still loading, show an empty row until it is
+            holder.itemView.setOnClickListener(null);
+            holder.mLineOne.get().setText(null);
+            holder.mLineTwo.get().setText(null);
+            holder.mImage.get().setImageDrawable(null);
+            holder.mPopupMenuButton.get().setPosition(position);
+            return;
+        }
 
-        holder.itemView.setOnClickListener(v -> mOnItemClickListener.accept(position));
+        final DataHolder dataHolder = getDataHolder(artist);
+
+        holder.itemView.setOnClickListener(v -> {
+            // the row may have moved since it was bound
+            final int clickedPosition = holder.getBindingAdapterPosition();
+            if (clickedPosition != RecyclerView.NO_POSITION) {
+                mOnItemClickListener.accept(clickedPosition);
+            }
+        });
         // set the pop up menu listener
         holder.mPopupMenuButton.get().setPopupMenuClickedListener(mListener);
         // Set each artist name (line one)
-        holder.mLineOne.get().setText(artist.mArtistName);
+        holder.mLineOne.get().setText(dataHolder.lineOne);
         // Set the number of albums (line two)
-        holder.mLineTwo.get().setText(MusicUtils.makeCombinedString(mContext,
-                albumNumber, songNumber));
+        holder.mLineTwo.get().setText(dataHolder.lineTwo);
         // Asynchronously load the artist image into the adapter
         mImageFetcher.loadArtistImage(artist.mArtistName, holder.mImage.get());
         // because of recycling, we need to set the position each time
         holder.mPopupMenuButton.get().setPosition(position);
     }
 
+    /**
+     * Gets the data used to populate the row, formatting it the first time the row is bound
+     *
+     * @param artist the artist of the row
+     * @return the data holder
+     */
+    private DataHolder getDataHolder(final Artist artist) {
+        DataHolder dataHolder = mData.get(artist.mArtistId);
+        if (dataHolder != null) {
+            return dataHolder;
+        }
+
+        String albumNumber = MusicUtils.makeLabel(mContext,
+                R.plurals.Nalbums, artist.mAlbumNumber);
+        String songNumber = MusicUtils.makeLabel(mContext,
+                R.plurals.Nsongs, artist.mSongNumber);
+
+        dataHolder = new DataHolder();
+        dataHolder.itemId = artist.mArtistId;
+        dataHolder.lineOne = artist.mArtistName;
+        dataHolder.lineTwo = MusicUtils.makeCombinedString(mContext, albumNumber, songNumber);
+
+        mData.put(artist.mArtistId, dataHolder);
+        return dataHolder;
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull MusicHolder holder) {
+        // the view won't show its image anymore, don't decode it
+        ImageWorker.cancelWork(holder.mImage.get());
+    }
+
     @Override
     public int getItemCount() {
         return mArtists.size();
     }
 
+    @Override
+    public long getItemId(int position) {
+        return mDiffer.getIds()[position];
+    }
+
     /**
      * Method that unloads and clears the items in the adapter
      */
     public void unload() {
-        int size = mArtists.size();
-        mArtists.clear();
-        notifyItemRangeRemoved(0, size);
+        mDiffer.clear(new ArrayList<>(0), this::swap);
     }
 
     /**
@@ -141,31 +210,40 @@ public class ArtistAdapter extends RecyclerView.Adapter<MusicHolder> implements
         mListener = listener;
     }
 
+    /**
+     * @param position the position of the artist
+     * @return the artist, or null if it is in a page that is still loading
+     */
     public Artist getItem(int position) {
         return mArtists.get(position);
     }
 
+    @Override
+    public ArtworkPrefetcher.Target getPrefetchTarget(int position) {
+        final Artist artist = getItem(position);
+        return artist != null ? ArtworkPrefetcher.Target.artist(artist.mArtistName) : null;
+    }
+
+    private void setListener(List<Artist> artists, PagedList.Listener listener) {
+        if (artists instanceof PagedList) {
+            ((PagedList<Artist>) artists).setListener(listener);
+        }
+    }
+
+    /**
+     * Replaces the artists, the rows that changed are worked out in the background and the new
+     * artists are shown once that is done
+     *
+     * @param artists the new artists, this must not be modified afterwards
+     */
     public void setData(List<Artist> artists) {
-        int oldSize = mArtists == null ? 0 : mArtists.size();
-        int newSize = artists.size();
+        mDiffer.submit(artists, this::swap);
+    }
 
+    private void swap(List<Artist> artists) {
+        setListener(mArtists, null);
         mArtists = artists;
-
-        if (oldSize == 0) {
-            notifyItemRangeInserted(0, newSize);
-        } else {
-            int diff = oldSize - newSize;
-            if (diff > 0) {
-                // Items were removed
-                notifyItemRangeChanged(0, newSize);
-                notifyItemRangeRemoved(newSize, diff);
-            } else if (diff < 0) {
-                // Items were added
-                notifyItemRangeChanged(0, oldSize);
-                notifyItemRangeInserted(oldSize, diff * -1);
-            } else {
-                notifyItemChanged(0, oldSize);
-            }
-        }
+        mData.evictAll();
+        setListener(mArtists, this::notifyItemRangeChanged);
     }
 }
@@ -29,6 +29,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import org.lineageos.eleven.R;
 import org.lineageos.eleven.cache.ImageFetcher;
+import org.lineageos.eleven.cache.ImageWorker;
 import org.lineageos.eleven.model.Album;
 import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.NavUtils;
@@ -123,6 +124,12 @@ public class ArtistDetailAlbumAdapter
                 mActivity, album.mAlbumName, album.mArtistName, album.mAlbumId));
     }
 
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        // the view won't show its image anymore, don't decode it
+        ImageWorker.cancelWork(holder.art);
+    }
+
     @Override
     public int getItemCount() {
         return mAlbums.size();
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.adapters;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.lineageos.eleven.loaders.PagedList;
+import org.lineageos.eleven.utils.collections.LongIntHashMap;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.ToLongFunction;
+
+/**
+ * Replaces the list of an adapter with a new one, working out what changed on a background
+ * thread from the ids of the items so only the rows that moved or changed get rebound.  The
+ * adapter keeps showing the old list until the new one is swapped in on the main thread.
+ *
+ * @param <T> the type of the items
+ */
+public class ListDiffer<T> {
+    /* Past this many breaks in the runs of ids the list counts as reordered, see isReordered */
+    private static final int MAX_BROKEN_RUNS = 256;
+
+    private static final ExecutorService sDiffExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Called on the main thread to make the new list current, right before the changes are
+     * sent to the adapter
+     *
+     * @param <T> the type of the items
+     */
+    public interface Swap<T> {
+        void swap(List<T> items);
+    }
+
+    private final RecyclerView.Adapter<?> mAdapter;
+    private final ToLongFunction<T> mIdOf;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private List<T> mItems;
+    private long[] mIds = new long[0];
+    private int mGeneration;
+
+    /**
+     * @param adapter the adapter to notify
+     * @param idOf    gets the id of an item
+     */
+    public ListDiffer(final RecyclerView.Adapter<?> adapter, final ToLongFunction<T> idOf) {
+        mAdapter = adapter;
+        mIdOf = idOf;
+    }
+
+    /**
+     * Replaces the list.  Empty lists on either side are swapped right away, any other list is
+     * swapped once it has been compared
+     *
+     * @param items the new list, this must not be modified afterwards
+     * @param swap  makes the new list current
+     */
+    public void submit(final List<T> items, final Swap<T> swap) {
+        final int generation = ++mGeneration;
+        final List<T> oldItems = mItems;
+        final long[] oldIds = mIds;
+
+        // the ids of a paged list are known without loading its items
+        final long[] newIds = items instanceof PagedList
+                ? ((PagedList<T>) items).getIds() : null;
+
+        // the pages are only read on this thread, so the loaded ones are copied for the diff
+        final ItemSource<T> oldSource = ItemSource.of(oldItems);
+        final ItemSource<T> newSource = ItemSource.of(items);
+
+        if (oldIds.length == 0 || items.isEmpty()) {
+            apply(items, newIds != null ? newIds : getIds(items), swap);
+            if (oldIds.length > 0) {
+                mAdapter.notifyItemRangeRemoved(0, oldIds.length);
+            } else {
+                mAdapter.notifyItemRangeInserted(0, items.size());
+            }
+            return;
+        }
+
+        sDiffExecutor.execute(() -> {
+            final long[] ids = newIds != null ? newIds : getIds(items);
+
+            DiffUtil.DiffResult result = null;
+            if (!isReordered(oldIds, ids)) {
+                result = DiffUtil.calculateDiff(
+                        new IdCallback<>(oldIds, ids, oldSource, newSource), false);
+            }
+
+            final DiffUtil.DiffResult diffResult = result;
+            mHandler.post(() -> {
+                if (generation != mGeneration) {
+                    // a newer list was submitted in the meantime
+                    return;
+                }
+
+                apply(items, ids, swap);
+                if (diffResult != null) {
+                    diffResult.dispatchUpdatesTo(mAdapter);
+                } else {
+                    mAdapter.notifyDataSetChanged();
+                }
+            });
+        });
+    }
+
+    /**
+     * Empties the list right away, dropping any list still being compared
+     *
+     * @param swap makes the empty list current
+     */
+    public void clear(final List<T> empty, final Swap<T> swap) {
+        mGeneration++;
+        final int size = mIds.length;
+        apply(empty, new long[0], swap);
+        mAdapter.notifyItemRangeRemoved(0, size);
+    }
+
+    /**
+     * @return the ids of the current list, this must not be modified
+     */
+    public long[] getIds() {
+        return mIds;
+    }
+
+    private void apply(final List<T> items, final long[] ids, final Swap<T> swap) {
+        mItems = items;
+        mIds = ids;
+        swap.swap(items);
+    }
+
+    private long[] getIds(final List<T> items) {
+        final long[] ids = new long[items.size()];
+        for (int i = 0; i < ids.length; i++) {
+            final T item = items.get(i);
+            ids[i] = item != null ? mIdOf.applyAsLong(item) : -1;
+        }
+        return ids;
+    }
+
+    /**
+     * The diff gets slow as the lists get further apart, so lists that were resorted are just
+     * reloaded.  This counts the places where consecutive new ids weren't consecutive in the
+     * old list, which stays low for insertions and deletions
+     */
+    private static boolean isReordered(final long[] oldIds, final long[] newIds) {
+        final LongIntHashMap oldPositions = new LongIntHashMap(oldIds.length);
+        for (int i = 0; i < oldIds.length; i++) {
+            oldPositions.put(oldIds[i], i);
+        }
+
+        int brokenRuns = 0;
+        int previous = -2;
+        for (long id : newIds) {
+            final int position = oldPositions.get(id, -1);
+            if (position >= 0 && position != previous + 1 && ++brokenRuns > MAX_BROKEN_RUNS) {
+                return true;
+            }
+            previous = position;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the items of a list from the diff thread
+     *
+     * @param <T> the type of the items
+     */
+    private interface ItemSource<T> {
+        /**
+         * @return the item, or null if it isn't loaded
+         */
+        T get(int position);
+
+        @SuppressWarnings("unchecked")
+        static <T> ItemSource<T> of(final List<T> items) {
+            if (items == null) {
+                return position -> null;
+            }
+            if (items instanceof PagedList) {
+                return ((PagedList<T>) items).getLoadedItems()::get;
+            }
+            return items::get;
+        }
+    }
+
+    /**
+     * Compares the items by id.  Items that stayed at the same position only count as changed if
+     * they aren't equal, paged items that weren't loaded in the old list don't show anything to
+     * update while the ones only loaded in the old list count as changed so the row loads the
+     * new one, and items that moved always count as changed so their rows are rebound with
+     * their new position
+     */
+    private static final class IdCallback<T> extends DiffUtil.Callback {
+        private final long[] mOldIds;
+        private final long[] mNewIds;
+        private final ItemSource<T> mOldItems;
+        private final ItemSource<T> mNewItems;
+
+        IdCallback(final long[] oldIds, final long[] newIds, final ItemSource<T> oldItems,
+                   final ItemSource<T> newItems) {
+            mOldIds = oldIds;
+            mNewIds = newIds;
+            mOldItems = oldItems;
+            mNewItems = newItems;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldIds.length;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewIds.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(final int oldItemPosition, final int newItemPosition) {
+            return mOldIds[oldItemPosition] == mNewIds[newItemPosition];
+        }
+
+        @Override
+        public boolean areContentsTheSame(final int oldItemPosition, final int newItemPosition) {
+            if (oldItemPosition != newItemPosition) {
+                return false;
+            }
+
+            final T oldItem = mOldItems.get(oldItemPosition);
+            if (oldItem == null) {
+                // the row never showed the item
+                return true;
+            }
+
+            return Objects.equals(oldItem, mNewItems.get(newItemPosition));
+        }
+    }
+}
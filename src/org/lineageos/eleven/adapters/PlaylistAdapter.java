@@ -29,8 +29,11 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import org.lineageos.eleven.Config.SmartPlaylistType;
 import org.lineageos.eleven.R;
+import org.lineageos.eleven.cache.ArtworkPrefetcher;
 import org.lineageos.eleven.cache.ImageFetcher;
+import org.lineageos.eleven.cache.ImageWorker;
 import org.lineageos.eleven.model.Playlist;
+import org.lineageos.eleven.provider.PlaylistArtworkStore;
 import org.lineageos.eleven.ui.MusicHolder;
 import org.lineageos.eleven.ui.MusicHolder.DataHolder;
 import org.lineageos.eleven.ui.fragments.PlaylistFragment;
@@ -48,7 +51,7 @@ import java.util.function.Consumer;
  * @author Andrew Neal (andrewdneal@gmail.com)
  */
 public class PlaylistAdapter extends RecyclerView.Adapter<MusicHolder> implements
-        IPopupMenuCallback {
+        IPopupMenuCallback, ArtworkPrefetcher.Source {
 
     /**
      * Used to identify the view type
@@ -61,10 +64,16 @@ public class PlaylistAdapter extends RecyclerView.Adapter<MusicHolder> implement
     private static final int SMART_PLAYLIST_VIEW_TYPE = 1;
 
     /**
-     * Used to cache the playlist info
+     * Used to cache the playlist info, the data holders are built as the rows are bound
      */
-    private DataHolder[] mData;
-    private final List<Playlist> mPlaylists;
+    private DataHolder[] mData = new DataHolder[0];
+    private List<Playlist> mPlaylists;
+
+    /**
+     * Works out the changes between the old and new lists of playlists
+     */
+    private final ListDiffer<Playlist> mDiffer =
+            new ListDiffer<>(this, playlist -> playlist.mPlaylistId);
 
     /**
      * Used to listen to the pop up menu callbacks
@@ -87,7 +96,8 @@ public class PlaylistAdapter extends RecyclerView.Adapter<MusicHolder> implement
                            final Consumer<Integer> onItemClickListener) {
         mContext = activity;
         mOnItemClickListener = onItemClickListener;
-        mPlaylists = new ArrayList<>();
+        mPlaylists = new ArrayList<>(0);
+        setHasStableIds(true);
     }
 
     @NonNull
@@ -100,7 +110,7 @@ public class PlaylistAdapter extends RecyclerView.Adapter<MusicHolder> implement
     @Override
     public void onBindViewHolder(@NonNull MusicHolder holder, int position) {
         // Retrieve the data holder
-        final DataHolder dataHolder = mData[position];
+        final DataHolder dataHolder = getDataHolder(position);
 
         // set the pop up menu listener
         holder.mPopupMenuButton.get().setPopupMenuClickedListener(mListener);
@@ -117,7 +127,13 @@ public class PlaylistAdapter extends RecyclerView.Adapter<MusicHolder> implement
             holder.mLineTwo.get().setText(dataHolder.lineTwo);
         }
 
-        holder.itemView.setOnClickListener(v -> mOnItemClickListener.accept(position));
+        holder.itemView.setOnClickListener(v -> {
+            // the row may have moved since it was bound
+            final int clickedPosition = holder.getBindingAdapterPosition();
+            if (clickedPosition != RecyclerView.NO_POSITION) {
+                mOnItemClickListener.accept(clickedPosition);
+            }
+        });
 
         SmartPlaylistType type = SmartPlaylistType.getTypeById(dataHolder.itemId);
         if (type != null) {
@@ -137,7 +153,7 @@ public class PlaylistAdapter extends RecyclerView.Adapter<MusicHolder> implement
         } else {
             // load the image
             ImageFetcher.getInstance(mContext).loadPlaylistCoverArtImage(
-                    dataHolder.itemId, holder.mImage.get());
+                    dataHolder.itemId, getItem(position).mSongCount, holder.mImage.get());
         }
     }
 
@@ -150,53 +166,86 @@ public class PlaylistAdapter extends RecyclerView.Adapter<MusicHolder> implement
         }
     }
 
+    @Override
+    public void onViewRecycled(@NonNull MusicHolder holder) {
+        // the view won't show its image anymore, don't decode it
+        ImageWorker.cancelWork(holder.mImage.get());
+    }
+
     @Override
     public int getItemCount() {
         return mPlaylists.size();
     }
 
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).mPlaylistId;
+    }
+
     public Playlist getItem(int position) {
         return mPlaylists.get(position);
     }
 
-    public void add(Playlist playlist) {
-        mPlaylists.add(playlist);
-        notifyItemInserted(mPlaylists.size() - 1);
+    @Override
+    public ArtworkPrefetcher.Target getPrefetchTarget(int position) {
+        final Playlist playlist = getItem(position);
+        final PlaylistArtworkStore store = PlaylistArtworkStore.getInstance(mContext);
+        // smart playlists show a fixed icon, and the cover art's key is only known once the
+        // store is loaded
+        return playlist.isSmartPlaylist() || !store.isLoaded() ? null
+                : ArtworkPrefetcher.Target.playlist(
+                        store.getCoverCacheKeyForPlaylist(playlist.mPlaylistId));
     }
 
     /**
-     * Method used to cache the data used to populate the list or grid. The idea
-     * is to cache everything before {@code #getView(int, View, ViewGroup)} is
-     * called.
+     * Gets the data used to populate the row, building it the first time the row is bound
+     *
+     * @param position the position of the row
+     * @return the data holder
      */
-    public void buildCache() {
-        mData = new DataHolder[mPlaylists.size()];
-        for (int i = 0; i < mPlaylists.size(); i++) {
-            // Build the artist
-            final Playlist playlist = getItem(i);
-
-            // Build the data holder
-            mData[i] = new DataHolder();
-            // Playlist Id
-            mData[i].itemId = playlist.mPlaylistId;
-            // Playlist names (line one)
-            mData[i].lineOne = playlist.mPlaylistName;
-            // # of songs
-            if (playlist.mSongCount >= 0) {
-                mData[i].lineTwo = MusicUtils.makeLabel(mContext,
-                        R.plurals.Nsongs, playlist.mSongCount);
-            }
+    private DataHolder getDataHolder(final int position) {
+        if (mData[position] != null) {
+            return mData[position];
+        }
+
+        final Playlist playlist = getItem(position);
+
+        // Build the data holder
+        final DataHolder dataHolder = new DataHolder();
+        // Playlist Id
+        dataHolder.itemId = playlist.mPlaylistId;
+        // Playlist names (line one)
+        dataHolder.lineOne = playlist.mPlaylistName;
+        // # of songs
+        if (playlist.mSongCount >= 0) {
+            dataHolder.lineTwo = MusicUtils.makeLabel(mContext,
+                    R.plurals.Nsongs, playlist.mSongCount);
         }
+
+        mData[position] = dataHolder;
+        return dataHolder;
+    }
+
+    /**
+     * Replaces the playlists, the rows that changed are worked out in the background and the
+     * new playlists are shown once that is done
+     *
+     * @param playlists the new playlists, this must not be modified afterwards
+     */
+    public void setData(List<Playlist> playlists) {
+        mDiffer.submit(playlists, this::swap);
     }
 
     /**
      * Method that unloads and clears the items in the adapter
      */
     public void unload() {
-        int size = mPlaylists.size();
-        mPlaylists.clear();
-        mData = null;
-        notifyItemRangeRemoved(0, size);
+        mDiffer.clear(new ArrayList<>(0), this::swap);
+    }
+
+    private void swap(List<Playlist> playlists) {
+        mPlaylists = playlists;
+        mData = new DataHolder[playlists.size()];
     }
 
     @Override
@@ -29,6 +29,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import org.lineageos.eleven.Config;
 import org.lineageos.eleven.cache.ImageFetcher;
+import org.lineageos.eleven.cache.ImageWorker;
 import org.lineageos.eleven.model.Song;
 import org.lineageos.eleven.service.MusicPlaybackTrack;
 import org.lineageos.eleven.ui.MusicHolder;
@@ -156,6 +157,12 @@ public class ProfileSongAdapter extends RecyclerView.Adapter<MusicHolder> implem
         }
     }
 
+    @Override
+    public void onViewRecycled(@NonNull MusicHolder holder) {
+        // the view won't show its image anymore, don't decode it
+        ImageWorker.cancelWork(holder.mImage.get());
+    }
+
     @Override
     public int getItemCount() {
         return mSongs.size();
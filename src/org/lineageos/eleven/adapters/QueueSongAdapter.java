@@ -25,6 +25,7 @@ import androidx.fragment.app.FragmentActivity;
 import androidx.recyclerview.widget.RecyclerView;
 
 import org.lineageos.eleven.cache.ImageFetcher;
+import org.lineageos.eleven.cache.ImageWorker;
 import org.lineageos.eleven.model.Song;
 import org.lineageos.eleven.service.MusicPlaybackTrack;
 import org.lineageos.eleven.ui.MusicHolder;
@@ -147,6 +148,12 @@ public class QueueSongAdapter extends RecyclerView.Adapter<MusicHolder> implemen
         }
     }
 
+    @Override
+    public void onViewRecycled(@NonNull MusicHolder holder) {
+        // the view won't show its image anymore, don't decode it
+        ImageWorker.cancelWork(holder.mImage.get());
+    }
+
     @Override
     public int getItemCount() {
         return mSongs.size();
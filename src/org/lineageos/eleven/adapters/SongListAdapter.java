@@ -16,6 +16,7 @@
 package org.lineageos.eleven.adapters;
 
 import android.content.Context;
+import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -26,6 +27,8 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import org.lineageos.eleven.Config;
 import org.lineageos.eleven.cache.ImageFetcher;
+import org.lineageos.eleven.cache.ImageWorker;
+import org.lineageos.eleven.loaders.PagedList;
 import org.lineageos.eleven.model.Song;
 import org.lineageos.eleven.service.MusicPlaybackTrack;
 import org.lineageos.eleven.ui.MusicHolder;
@@ -33,6 +36,7 @@ import org.lineageos.eleven.ui.MusicHolder.DataHolder;
 import org.lineageos.eleven.ui.fragments.SongFragment;
 import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.MusicUtils;
+import org.lineageos.eleven.utils.collections.LongIntHashMap;
 import org.lineageos.eleven.widgets.IPopupMenuCallback;
 
 import java.util.ArrayList;
@@ -48,6 +52,9 @@ public class SongListAdapter extends RecyclerView.Adapter<MusicHolder> implement
 
     public static final int NOTHING_PLAYING = -1;
 
+    /* # of rows whose formatted text is kept around */
+    private static final int DATA_CACHE_SIZE = 128;
+
     /**
      * The resource Id of the layout to inflate
      */
@@ -59,11 +66,24 @@ public class SongListAdapter extends RecyclerView.Adapter<MusicHolder> implement
     private final ImageFetcher mImageFetcher;
 
     /**
-     * Used to cache the song info
+     * Used to cache the song info by song id, the data holders are built as the rows are bound
+     * and only the recently bound ones are kept
      */
-    private DataHolder[] mData;
+    private final LruCache<Long, DataHolder> mData = new LruCache<>(DATA_CACHE_SIZE);
     private List<Song> mSongs;
 
+    /**
+     * Works out the changes between the old and new lists of songs
+     */
+    private final ListDiffer<Song> mDiffer = new ListDiffer<>(this, song -> song.mSongId);
+
+    /**
+     * The positions of each song id, the first one in a map and the following ones chained
+     * through the array.  Built the first time the now playing rows are looked up
+     */
+    private LongIntHashMap mFirstPositions;
+    private int[] mNextPositions;
+
     /**
      * Used to listen to the pop up menu callbacks
      */
@@ -104,6 +124,7 @@ public class SongListAdapter extends RecyclerView.Adapter<MusicHolder> implement
         mSourceType = sourceType;
         mOnItemClickListener = onItemClickListener;
         mSongs = new ArrayList<>(0);
+        // no stable ids, a song can be listed more than once, e.g. in Recent and playlists
     }
 
     /**
@@ -130,20 +151,40 @@ public class SongListAdapter extends RecyclerView.Adapter<MusicHolder> implement
     @Override
     public void onBindViewHolder(@NonNull MusicHolder holder, int position) {
         // Retrieve the data holder
-        final DataHolder dataHolder = mData[position];
+        final DataHolder dataHolder = getDataHolder(position);
 
-        holder.itemView.setOnClickListener(v -> mOnItemClickListener.accept(position));
+        holder.itemView.setOnClickListener(v -> {
+            // the row may have moved since it was bound
+            final int clickedPosition = holder.getBindingAdapterPosition();
+            if (clickedPosition != RecyclerView.NO_POSITION) {
+                mOnItemClickListener.accept(clickedPosition);
+            }
+        });
 
         holder.mPopupMenuButton.get().setPopupMenuClickedListener(mListener);
         // Sets the position each time because of recycling
         holder.mPopupMenuButton.get().setPosition(position);
+
+        Song item = getItem(position);
+        if (dataHolder == null || item == null) {
+            // the page of the song is still loading, show an empty row until it is
+            holder.mLineOne.get().setText(null);
+            holder.mLineTwo.get().setText(null);
+            holder.mImage.get().setImageDrawable(null);
+            View nowPlayingIndicator = holder.mNowPlayingIndicator.get();
+            if (nowPlayingIndicator != null) {
+                nowPlayingIndicator.setVisibility(View.GONE);
+            }
+            customizeBind(holder, position);
+            return;
+        }
+
         // Set each song name (line one)
         holder.mLineOne.get().setText(dataHolder.lineOne);
         // Set the album name (line two)
         holder.mLineTwo.get().setText(dataHolder.lineTwo);
 
         // Asynchronously load the artist image into the adapter
-        Song item = getItem(position);
         if (item.mAlbumId >= 0) {
             mImageFetcher.loadAlbumImage(item.mArtistName, item.mAlbumName, item.mAlbumId,
                     holder.mImage.get());
@@ -161,6 +202,12 @@ public class SongListAdapter extends RecyclerView.Adapter<MusicHolder> implement
         customizeBind(holder, position);
     }
 
+    @Override
+    public void onViewRecycled(@NonNull MusicHolder holder) {
+        // the view won't show its image anymore, don't decode it
+        ImageWorker.cancelWork(holder.mImage.get());
+    }
+
     @Override
     public int getItemCount() {
         return mSongs.size();
@@ -170,44 +217,48 @@ public class SongListAdapter extends RecyclerView.Adapter<MusicHolder> implement
     }
 
     /**
-     * Method used to cache the data used to populate the list or grid. The idea
-     * is to cache everything before {@code #getView(int, View, ViewGroup)} is
-     * called.
+     * Gets the data used to populate the row, building it the first time the row is bound
+     *
+     * @param position the position of the row
+     * @return the data holder, or null if the song isn't loaded yet or is a placeholder
      */
-    public void buildCache() {
-        mData = new DataHolder[getItemCount()];
-        for (int i = 0; i < getItemCount(); i++) {
-            // Build the song
-            final Song song = getItem(i);
-
-            // skip special placeholders
-            if (song.mSongId == -1) {
-                continue;
-            }
+    private DataHolder getDataHolder(final int position) {
+        final long songId = getSongId(position);
+        final DataHolder cached = mData.get(songId);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Build the song
+        final Song song = getItem(position);
 
-            // Build the data holder
-            mData[i] = new DataHolder();
-            // Song Id
-            mData[i].itemId = song.mSongId;
-            // Song names
-            mData[i].lineOne = song.mSongName;
-            // Song duration
-            mData[i].lineOneRight = MusicUtils.makeShortTimeString(mContext, song.mDuration);
-
-            // Artist Name | Album Name
-            mData[i].lineTwo = MusicUtils.makeCombinedString(mContext, song.mArtistName,
-                    song.mAlbumName);
+        // skip special placeholders and songs that are still loading
+        if (song == null || song.mSongId == -1) {
+            return null;
         }
+
+        // Build the data holder
+        final DataHolder dataHolder = new DataHolder();
+        // Song Id
+        dataHolder.itemId = song.mSongId;
+        // Song names
+        dataHolder.lineOne = song.mSongName;
+        // Song duration
+        dataHolder.lineOneRight = MusicUtils.makeShortTimeString(mContext, song.mDuration);
+
+        // Artist Name | Album Name
+        dataHolder.lineTwo = MusicUtils.makeCombinedString(mContext, song.mArtistName,
+                song.mAlbumName);
+
+        mData.put(songId, dataHolder);
+        return dataHolder;
     }
 
     /**
      * Method that unloads and clears the items in the adapter
      */
     public void unload() {
-        int size = mSongs.size();
-        mSongs.clear();
-        mData = null;
-        notifyItemRangeRemoved(0, size);
+        mDiffer.clear(new ArrayList<>(0), this::swap);
     }
 
     @Override
@@ -229,57 +280,84 @@ public class SongListAdapter extends RecyclerView.Adapter<MusicHolder> implement
                 ? NOTHING_PLAYING : mCurrentlyPlayingTrack.mId;
         mCurrentlyPlayingTrack = currentTrack;
 
-        int toBeUpdated = (currentTrack == null || currentTrack.mId == NOTHING_PLAYING)
-                ? 1 : 2;
-        int updated = 0;
+        notifyPositionsOf(previousPlayingId);
+        if (currentTrack != null && currentTrack.mId != previousPlayingId) {
+            notifyPositionsOf(currentTrack.mId);
+        }
+    }
+
+    /**
+     * Rebinds every row of a song
+     *
+     * @param songId the id of the song
+     */
+    private void notifyPositionsOf(final long songId) {
+        if (songId == NOTHING_PLAYING) {
+            return;
+        }
 
-        for (int i = 0; i < mSongs.size() && updated < toBeUpdated; i++) {
-            long id = mSongs.get(i).mSongId;
-            if ((currentTrack != null && id == currentTrack.mId) || id == previousPlayingId) {
-                notifyItemChanged(i);
-                updated++;
+        if (mFirstPositions == null) {
+            final long[] ids = mDiffer.getIds();
+            mFirstPositions = new LongIntHashMap(ids.length);
+            mNextPositions = new int[ids.length];
+            // backwards so each position chains to the next one of the same song
+            for (int i = ids.length - 1; i >= 0; i--) {
+                mNextPositions[i] = mFirstPositions.get(ids[i], -1);
+                mFirstPositions.put(ids[i], i);
             }
         }
+
+        for (int position = mFirstPositions.get(songId, -1); position >= 0;
+             position = mNextPositions[position]) {
+            notifyItemChanged(position);
+        }
     }
 
     /**
      * @return Gets the list of song ids from the adapter
      */
     public long[] getSongIds() {
-        long[] ret = new long[mSongs.size()];
-        for (int i = 0; i < mSongs.size(); i++) {
-            ret[i] = getItem(i).mSongId;
-        }
+        return mDiffer.getIds().clone();
+    }
 
-        return ret;
+    /**
+     * @param position the position of the song
+     * @return the id of the song, without waiting for a paged song to load
+     */
+    private long getSongId(int position) {
+        return mDiffer.getIds()[position];
     }
 
+    /**
+     * @param position the position of the song
+     * @return the song, or null if it is in a page that is still loading
+     */
     public Song getItem(int position) {
         return mSongs.get(position);
     }
 
+    private void setListener(List<Song> songs, PagedList.Listener listener) {
+        if (songs instanceof PagedList) {
+            ((PagedList<Song>) songs).setListener(listener);
+        }
+    }
+
+    /**
+     * Replaces the songs, the rows that changed are worked out in the background and the new
+     * songs are shown once that is done
+     *
+     * @param songs the new songs, this must not be modified afterwards
+     */
     public void setData(List<Song> songs) {
-        int oldSize = mSongs == null ? 0 : mSongs.size();
-        int newSize = songs.size();
+        mDiffer.submit(songs, this::swap);
+    }
 
+    private void swap(List<Song> songs) {
+        setListener(mSongs, null);
         mSongs = songs;
-        buildCache();
-
-        if (oldSize == 0) {
-            notifyItemRangeInserted(0, newSize);
-        } else {
-            int diff = oldSize - newSize;
-            if (diff > 0) {
-                // Items were removed
-                notifyItemRangeChanged(0, newSize);
-                notifyItemRangeRemoved(newSize, diff);
-            } else if (diff < 0) {
-                // Items were added
-                notifyItemRangeChanged(0, oldSize);
-                notifyItemRangeInserted(oldSize, diff * -1);
-            } else {
-                notifyItemChanged(0, oldSize);
-            }
-        }
+        mData.evictAll();
+        mFirstPositions = null;
+        mNextPositions = null;
+        setListener(mSongs, this::notifyItemRangeChanged);
     }
 }
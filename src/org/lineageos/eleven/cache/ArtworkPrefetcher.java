@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.graphics.Bitmap;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.lineageos.eleven.R;
+import org.lineageos.eleven.cache.ImageCache.ImageSize;
+import org.lineageos.eleven.cache.ImageWorker.ImageType;
+
+import java.util.ArrayList;
+
+/**
+ * Warms the memory cache with the images of the items about to be scrolled into view, so they
+ * are shown right away instead of after their placeholder.  The prefetches run after every
+ * other decode, are cancelled when the scroll direction changes and only take a fraction of the
+ * memory cache: the images prefetched but not shown yet are counted until they scroll into view
+ * or are evicted, and nothing more is queued while they fill that fraction.
+ */
+public class ArtworkPrefetcher extends RecyclerView.OnScrollListener {
+    /* fraction of the memory cache the prefetched images can take */
+    private static final float MEMORY_BUDGET_DIVIDER = 0.25f;
+
+    /* # of screens prefetched while flinging */
+    private static final int FLING_SCREENS = 2;
+
+    /**
+     * Provides the images of the items of an adapter
+     */
+    public interface Source {
+        /**
+         * @param position The position of an item
+         * @return The image of the item, or null if it has none or isn't loaded yet
+         */
+        Target getPrefetchTarget(int position);
+    }
+
+    /**
+     * The image of an item
+     */
+    public static final class Target {
+        final String mKey;
+        final long mAlbumId;
+        final ImageType mImageType;
+
+        private Target(final String key, final long albumId, final ImageType imageType) {
+            mKey = key;
+            mAlbumId = albumId;
+            mImageType = imageType;
+        }
+
+        /**
+         * @return The target of an album's artwork, or null if it can't have any
+         */
+        public static Target album(final String artistName, final String albumName,
+                                   final long albumId) {
+            final String key = ImageFetcher.generateAlbumCacheKey(albumName, artistName);
+            return key != null ? new Target(key, albumId, ImageType.ALBUM) : null;
+        }
+
+        /**
+         * @return The target of an artist's image, or null if it can't have any
+         */
+        public static Target artist(final String artistName) {
+            return artistName != null ? new Target(artistName, -1, ImageType.ARTIST) : null;
+        }
+
+        /**
+         * @return The target of a cached playlist image
+         */
+        public static Target playlist(final String key) {
+            return key != null ? new Target(key, -1, ImageType.PLAYLIST) : null;
+        }
+    }
+
+    private final ImageWorker mImageWorker;
+
+    private final Source mSource;
+
+    // the prefetches since the scroll direction last changed whose image wasn't shown yet
+    private final ArrayList<Prefetch> mPending = new ArrayList<>();
+
+    // 1 when scrolling forward, -1 backward and 0 before the first scroll
+    private int mDirection;
+
+    // the next position to prefetch in the current direction
+    private int mNextPosition = RecyclerView.NO_POSITION;
+
+    /**
+     * @param imageWorker The worker the images are loaded with
+     * @param source      The adapter the images are prefetched for
+     */
+    public ArtworkPrefetcher(final ImageWorker imageWorker, final Source source) {
+        mImageWorker = imageWorker;
+        mSource = source;
+    }
+
+    @Override
+    public void onScrolled(@NonNull final RecyclerView recyclerView, final int dx, final int dy) {
+        final int delta = dy != 0 ? dy : dx;
+        if (delta == 0) {
+            return;
+        }
+
+        final int direction = delta > 0 ? 1 : -1;
+        if (direction != mDirection) {
+            // what was queued for the other direction won't be seen soon
+            cancel();
+            mDirection = direction;
+        }
+        prefetch(recyclerView);
+    }
+
+    @Override
+    public void onScrollStateChanged(@NonNull final RecyclerView recyclerView,
+                                     final int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_SETTLING) {
+            // a fling reaches further, prefetch more
+            prefetch(recyclerView);
+        }
+    }
+
+    /**
+     * Cancels the queued prefetches
+     */
+    public void cancel() {
+        for (Prefetch prefetch : mPending) {
+            prefetch.mRequest.cancel();
+        }
+        mPending.clear();
+        mNextPosition = RecyclerView.NO_POSITION;
+    }
+
+    private void prefetch(final RecyclerView recyclerView) {
+        final ImageCache imageCache = mImageWorker.mImageCache;
+        final RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+        final RecyclerView.Adapter<?> adapter = recyclerView.getAdapter();
+        if (imageCache == null || adapter == null
+                || !(layoutManager instanceof LinearLayoutManager)) {
+            return;
+        }
+
+        final LinearLayoutManager linearLayoutManager = (LinearLayoutManager) layoutManager;
+        final int first = linearLayoutManager.findFirstVisibleItemPosition();
+        final int last = linearLayoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        final ImageSize imageSize = getImageSize(imageCache, recyclerView);
+        final int screens = recyclerView.getScrollState() == RecyclerView.SCROLL_STATE_SETTLING
+                ? FLING_SCREENS : 1;
+        final int count = (last - first + 1) * screens;
+
+        // the window starts at the edge of the screen in the scroll direction
+        final int start = mDirection > 0 ? last + 1 : first - 1;
+        final int end = start + mDirection * count;
+        if (mNextPosition == RecyclerView.NO_POSITION
+                || (mNextPosition - start) * mDirection < 0) {
+            mNextPosition = start;
+        }
+
+        final long budget = (long) (MEMORY_BUDGET_DIVIDER * imageCache.getMemCacheMaxSize());
+        long pendingBytes = prunePending(imageCache, first, last);
+        final DecodeScheduler scheduler = DecodeScheduler.getInstance();
+        while ((end - mNextPosition) * mDirection > 0
+                && mNextPosition >= 0 && mNextPosition < adapter.getItemCount()) {
+            if (pendingBytes >= budget || !scheduler.canPrefetch()) {
+                // try again on the next scroll
+                return;
+            }
+
+            final Target target = mSource.getPrefetchTarget(mNextPosition);
+            if (target != null) {
+                final Prefetch prefetch = submit(imageCache, target, mNextPosition,
+                        target.mImageType == ImageType.PLAYLIST ? ImageSize.FULL : imageSize);
+                if (prefetch != null) {
+                    mPending.add(prefetch);
+                    pendingBytes += prefetch.mBytes;
+                }
+            }
+            mNextPosition += mDirection;
+        }
+    }
+
+    private Prefetch submit(final ImageCache imageCache, final Target target,
+                            final int position, final ImageSize imageSize) {
+        final String sizedKey = ImageCache.getSizedKey(target.mKey, imageSize);
+        if (imageCache.getBitmapFromMemCache(sizedKey) != null) {
+            return null;
+        }
+
+        final int side = imageCache.getTargetSize(imageSize);
+        final Prefetch prefetch = new Prefetch(position, sizedKey, 4L * side * side);
+        prefetch.mRequest = DecodeScheduler.getInstance().submit(
+                DecodeScheduler.Priority.PREFETCH, () -> {
+                    final Bitmap bitmap = ImageWorker.getBitmapInBackground(
+                            mImageWorker.mContext, imageCache, target.mKey, target.mAlbumId,
+                            target.mImageType, imageSize);
+                    prefetch.mBytes = bitmap != null ? bitmap.getAllocationByteCount() : 0;
+                    prefetch.mLoaded = true;
+                    // only the caches keep the image
+                    imageCache.getBitmapPool().release(bitmap);
+                });
+        return prefetch.mRequest != null ? prefetch : null;
+    }
+
+    /**
+     * Forgets the prefetches whose image is shown or was evicted already
+     *
+     * @return The number of bytes the remaining prefetches take, or will once they're loaded
+     */
+    private long prunePending(final ImageCache imageCache, final int first, final int last) {
+        final int edge = mDirection > 0 ? last : first;
+        long pendingBytes = 0;
+        for (int i = mPending.size() - 1; i >= 0; i--) {
+            final Prefetch prefetch = mPending.get(i);
+            if ((prefetch.mPosition - edge) * mDirection <= 0 || (prefetch.mLoaded
+                    && imageCache.getBitmapFromMemCache(prefetch.mSizedKey) == null)) {
+                mPending.remove(i);
+            } else {
+                pendingBytes += prefetch.mBytes;
+            }
+        }
+        return pendingBytes;
+    }
+
+    /**
+     * @return The size the images of the visible items are loaded at
+     */
+    private static ImageSize getImageSize(final ImageCache imageCache,
+                                          final RecyclerView recyclerView) {
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            final View image = recyclerView.getChildAt(i).findViewById(R.id.image);
+            if (image != null) {
+                return imageCache.getImageSize(image);
+            }
+        }
+        return ImageSize.THUMBNAIL;
+    }
+
+    /**
+     * An image queued to be prefetched, or prefetched but not shown yet
+     */
+    private static final class Prefetch {
+        final int mPosition;
+        final String mSizedKey;
+        DecodeScheduler.Request mRequest;
+
+        // the size the image is expected to take until it's loaded, then the size it takes
+        volatile long mBytes;
+        volatile boolean mLoaded;
+
+        Prefetch(final int position, final String sizedKey, final long bytes) {
+            mPosition = position;
+            mSizedKey = sizedKey;
+            mBytes = bytes;
+        }
+    }
+}
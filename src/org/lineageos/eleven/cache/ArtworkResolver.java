@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.lineageos.eleven.cache.ImageCache.ImageSize;
+
+import java.io.PrintWriter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves album artwork through the memory cache, then the disk cache and finally the
+ * MediaStore.  Artwork decoded from the MediaStore is written back to both caches, and callers
+ * asking for the same artwork at the same time share a single decode.
+ */
+public final class ArtworkResolver {
+    private static final String TAG = ArtworkResolver.class.getSimpleName();
+
+    private static ArtworkResolver sInstance;
+
+    private final Context mContext;
+
+    private final ImageCache mImageCache;
+
+    // the decodes running by sized key
+    private final ConcurrentHashMap<String, FutureTask<Bitmap>> mInFlight =
+            new ConcurrentHashMap<>();
+
+    private final AtomicLong mMemoryHits = new AtomicLong();
+    private final AtomicLong mDiskHits = new AtomicLong();
+    private final AtomicLong mSharedDecodes = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mDecodes = new AtomicLong();
+    private final AtomicLong mDecodeTimeMs = new AtomicLong();
+
+    private ArtworkResolver(final Context context) {
+        mContext = context;
+        mImageCache = ImageCache.getInstance(context);
+    }
+
+    /**
+     * @param context The {@link Context} to use
+     * @return The shared instance of the resolver
+     */
+    public static synchronized ArtworkResolver getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new ArtworkResolver(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Gets the artwork of an album.  This can hit the disk so it must not be called from the
+     * main thread.  The artwork is held for the caller, which must release it to the
+     * {@link BitmapPool} once it doesn't use it anymore
+     *
+     * @param key     The cache key of the artwork
+     * @param albumId The id of the album, or a negative value to only look in the caches
+     * @param size    The size of the artwork
+     * @return The artwork, or null if there is none
+     */
+    public Bitmap getArtwork(final String key, final long albumId, final ImageSize size) {
+        if (key == null) {
+            return null;
+        }
+
+        // its colors go with it if it's removed
+        mImageCache.setAlbumId(key, albumId);
+
+        final String sizedKey = ImageCache.getSizedKey(key, size);
+        final Bitmap cached = mImageCache.acquireFromMemCache(sizedKey);
+        if (cached != null) {
+            mMemoryHits.incrementAndGet();
+            return cached;
+        }
+
+        final FutureTask<Bitmap> task = new FutureTask<>(() -> load(key, albumId, size));
+        FutureTask<Bitmap> running = mInFlight.putIfAbsent(sizedKey, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                mInFlight.remove(sizedKey, task);
+            }
+        } else {
+            mSharedDecodes.incrementAndGet();
+        }
+
+        try {
+            final Bitmap bitmap = running.get();
+            if (running == task || bitmap == null) {
+                // the decode holds its result for the caller that ran it
+                return bitmap;
+            }
+            // the callers sharing it hold it from the memory cache, unless it was evicted
+            // already
+            final Bitmap shared = mImageCache.acquireFromMemCache(sizedKey);
+            return shared != null ? shared : load(key, albumId, size);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Failed to load the artwork of " + key, e.getCause());
+        }
+        return null;
+    }
+
+    private Bitmap load(final String key, final long albumId, final ImageSize size) {
+        Bitmap bitmap = mImageCache.acquireCachedBitmap(key, size);
+        if (bitmap != null) {
+            mDiskHits.incrementAndGet();
+            return bitmap;
+        }
+
+        mMisses.incrementAndGet();
+        if (albumId < 0) {
+            return null;
+        }
+
+        final long start = SystemClock.elapsedRealtime();
+        bitmap = mImageCache.getArtworkFromFile(mContext, albumId, size);
+        mDecodes.incrementAndGet();
+        mDecodeTimeMs.addAndGet(SystemClock.elapsedRealtime() - start);
+
+        if (bitmap != null) {
+            // held before the caches have it, so it can't be evicted and reused first
+            mImageCache.getBitmapPool().acquire(bitmap);
+            mImageCache.addBitmapToCache(key, size, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return The number of requests answered from the memory cache
+     */
+    public long getMemoryHits() {
+        return mMemoryHits.get();
+    }
+
+    /**
+     * @return The number of requests answered from the disk cache
+     */
+    public long getDiskHits() {
+        return mDiskHits.get();
+    }
+
+    /**
+     * @return The number of requests that weren't in either cache
+     */
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * @return The total time spent decoding artwork from the MediaStore
+     */
+    public long getDecodeTimeMs() {
+        return mDecodeTimeMs.get();
+    }
+
+    /**
+     * Prints the resolver counters
+     *
+     * @param writer the writer to print to
+     */
+    public void dump(final PrintWriter writer) {
+        final long decodes = mDecodes.get();
+        writer.println("Artwork resolver:");
+        writer.println("  memory hits: " + mMemoryHits.get());
+        writer.println("  disk hits: " + mDiskHits.get());
+        writer.println("  shared decodes: " + mSharedDecodes.get());
+        writer.println("  misses: " + mMisses.get());
+        writer.println("  decodes: " + decodes + " avgDecode="
+                + (decodes > 0 ? mDecodeTimeMs.get() / decodes : 0) + "ms");
+    }
+}
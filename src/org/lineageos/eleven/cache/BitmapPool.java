@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps bitmaps nobody uses anymore so their memory can be reused by the next decodes instead of
+ * being allocated again.  The bitmaps are bucketed by allocation size.
+ * <p>
+ * Only the bitmaps decoded by the {@link ImageCache} are tracked.  Each holder of such a bitmap,
+ * the memory cache and the views showing it, holds a reference and the bitmap goes to the pool
+ * when the last one is released.  A tracked bitmap handed out somewhere that doesn't release it
+ * must be pinned so it's never reused.
+ */
+public final class BitmapPool {
+    /* a pooled bitmap isn't used for requests of less than this fraction of its size */
+    private static final int MAX_SIZE_MULTIPLE = 2;
+
+    private final int mMaxSize;
+
+    private int mSize;
+
+    // the free bitmaps by allocation size
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> mBuckets = new TreeMap<>();
+
+    // the number of holders of each tracked bitmap, bitmaps don't override equals() so this is
+    // by identity, and the ones that are simply dropped by their holders can still be collected
+    private final WeakHashMap<Bitmap, Integer> mRefs = new WeakHashMap<>();
+
+    private long mRequests;
+    private long mHits;
+    private long mPuts;
+    private long mDropped;
+
+    /**
+     * @param maxSize the maximum number of bytes of the free bitmaps
+     */
+    public BitmapPool(final int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Starts tracking a bitmap that was just decoded, without any holder
+     */
+    public synchronized void track(final Bitmap bitmap) {
+        if (bitmap != null && bitmap.isMutable()) {
+            mRefs.put(bitmap, 0);
+        }
+    }
+
+    /**
+     * Adds a holder of a bitmap
+     */
+    public synchronized void acquire(final Bitmap bitmap) {
+        final Integer refs = bitmap != null ? mRefs.get(bitmap) : null;
+        if (refs == null) {
+            return;
+        }
+
+        if (refs == 0) {
+            // it may have been released to the pool already
+            final ArrayDeque<Bitmap> bucket = mBuckets.get(bitmap.getAllocationByteCount());
+            if (bucket != null && bucket.remove(bitmap)) {
+                mSize -= bitmap.getAllocationByteCount();
+                if (bucket.isEmpty()) {
+                    mBuckets.remove(bitmap.getAllocationByteCount());
+                }
+            }
+        }
+        mRefs.put(bitmap, refs + 1);
+    }
+
+    /**
+     * Removes a holder of a bitmap, the bitmap goes to the pool when it was the last one
+     */
+    public synchronized void release(final Bitmap bitmap) {
+        final Integer refs = bitmap != null ? mRefs.get(bitmap) : null;
+        if (refs == null || refs == 0) {
+            return;
+        }
+
+        if (refs > 1) {
+            mRefs.put(bitmap, refs - 1);
+        } else {
+            mRefs.put(bitmap, 0);
+            addToPool(bitmap);
+        }
+    }
+
+    /**
+     * Stops tracking a bitmap, it's never reused
+     */
+    public synchronized void pin(final Bitmap bitmap) {
+        if (bitmap != null && mRefs.remove(bitmap) != null) {
+            final ArrayDeque<Bitmap> bucket = mBuckets.get(bitmap.getAllocationByteCount());
+            if (bucket != null && bucket.remove(bitmap)) {
+                mSize -= bitmap.getAllocationByteCount();
+                if (bucket.isEmpty()) {
+                    mBuckets.remove(bitmap.getAllocationByteCount());
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts a bitmap that its owner doesn't use anymore in the pool
+     */
+    public synchronized void put(final Bitmap bitmap) {
+        if (bitmap == null || mRefs.containsKey(bitmap)) {
+            // tracked bitmaps go to the pool once they're released
+            return;
+        }
+        mRefs.put(bitmap, 0);
+        addToPool(bitmap);
+    }
+
+    private void addToPool(final Bitmap bitmap) {
+        final int size = bitmap.getAllocationByteCount();
+        if (bitmap.isRecycled() || !bitmap.isMutable() || size > mMaxSize / 2) {
+            mRefs.remove(bitmap);
+            mDropped++;
+            return;
+        }
+
+        mBuckets.computeIfAbsent(size, key -> new ArrayDeque<>()).push(bitmap);
+        mSize += size;
+        mPuts++;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Gets a bitmap that can hold an image of the given dimensions, usable as
+     * {@link android.graphics.BitmapFactory.Options#inBitmap}.  The bitmap is no longer tracked
+     *
+     * @return a transparent bitmap of the exact dimensions, or null if the pool has none that fits
+     */
+    public Bitmap get(final int width, final int height, final Bitmap.Config config) {
+        final Bitmap bitmap = take(width, height, config);
+        if (bitmap != null) {
+            bitmap.reconfigure(width, height, config);
+            bitmap.eraseColor(Color.TRANSPARENT);
+        }
+        return bitmap;
+    }
+
+    private synchronized Bitmap take(final int width, final int height,
+                                     final Bitmap.Config config) {
+        mRequests++;
+        final int needed = width * height * getBytesPerPixel(config);
+        if (needed <= 0) {
+            return null;
+        }
+
+        final Map.Entry<Integer, ArrayDeque<Bitmap>> entry = mBuckets.ceilingEntry(needed);
+        if (entry == null || entry.getKey() > needed * MAX_SIZE_MULTIPLE) {
+            return null;
+        }
+
+        final Bitmap bitmap = entry.getValue().pop();
+        if (entry.getValue().isEmpty()) {
+            mBuckets.remove(entry.getKey());
+        }
+        mSize -= entry.getKey();
+        mRefs.remove(bitmap);
+        mHits++;
+        return bitmap;
+    }
+
+    /**
+     * Drops the free bitmaps, the largest first, until they fit in the given size
+     */
+    public synchronized void trimToSize(final int maxSize) {
+        while (mSize > maxSize && !mBuckets.isEmpty()) {
+            final Map.Entry<Integer, ArrayDeque<Bitmap>> entry = mBuckets.lastEntry();
+            final Bitmap bitmap = entry.getValue().removeLast();
+            if (entry.getValue().isEmpty()) {
+                mBuckets.remove(entry.getKey());
+            }
+            mSize -= entry.getKey();
+            mRefs.remove(bitmap);
+            mDropped++;
+        }
+    }
+
+    /**
+     * Drops all the free bitmaps
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    private static int getBytesPerPixel(final Bitmap.Config config) {
+        if (config == Bitmap.Config.RGBA_F16) {
+            return 8;
+        } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        } else if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        return 4;
+    }
+
+    /**
+     * Prints the pool counters
+     *
+     * @param writer the writer to print to
+     */
+    public synchronized void dump(final PrintWriter writer) {
+        writer.println("Bitmap pool:");
+        writer.println("  size: " + (mSize / 1024) + "KB (max " + (mMaxSize / 1024) + "KB)");
+        writer.println("  tracked: " + mRefs.size());
+        writer.println("  requests: " + mRequests + " hits: " + mHits + " hitRate="
+                + (mRequests > 0 ? 100 * mHits / mRequests : 0) + "%");
+        writer.println("  puts: " + mPuts + " dropped: " + mDropped);
+    }
+}
@@ -21,18 +21,33 @@ import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.TransitionDrawable;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.widget.ImageView;
 
+import androidx.annotation.MainThread;
+import androidx.annotation.WorkerThread;
+
 import org.lineageos.eleven.cache.ImageWorker.ImageType;
 
 import java.lang.ref.WeakReference;
 
 /**
- * The actual {@link android.os.AsyncTask} that will process the image.
+ * The actual task that will process the image.  The work runs on the {@link DecodeScheduler}
+ * and the result is delivered on the main thread.
  */
-public abstract class BitmapWorkerTask<Params, Progress, Result>
-        extends AsyncTask<Params, Progress, Result> {
+public abstract class BitmapWorkerTask<Params, Result> {
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Set once the task is cancelled, the result is then never delivered
+     */
+    private volatile boolean mCancelled;
+
+    /**
+     * The queued work of the task
+     */
+    private DecodeScheduler.Request mRequest;
     /**
      * The {@link android.widget.ImageView} used to set the result
      */
@@ -43,6 +58,11 @@ public abstract class BitmapWorkerTask<Params, Progress, Result>
      */
     protected final ImageWorker.ImageType mImageType;
 
+    /**
+     * The size to decode the image at
+     */
+    protected final ImageCache.ImageSize mImageSize;
+
     /**
      * Layer drawable used to cross fade the result from the worker
      */
@@ -67,11 +87,13 @@ public abstract class BitmapWorkerTask<Params, Progress, Result>
      * @param key          used for caching the image
      * @param imageView    The {@link ImageView} to use.
      * @param imageType    The type of image URL to fetch for.
+     * @param imageSize    The size to decode the image at
      * @param fromDrawable what drawable to transition from
      */
     public BitmapWorkerTask(final String key, final ImageView imageView, final ImageType imageType,
-                            final Drawable fromDrawable, final Context context) {
-        this(key, imageView, imageType, fromDrawable, context, false);
+                            final ImageCache.ImageSize imageSize, final Drawable fromDrawable,
+                            final Context context) {
+        this(key, imageView, imageType, imageSize, fromDrawable, context, false);
     }
 
     /**
@@ -80,12 +102,14 @@ public abstract class BitmapWorkerTask<Params, Progress, Result>
      * @param key            used for caching the image
      * @param imageView      The {@link ImageView} to use.
      * @param imageType      The type of image URL to fetch for.
+     * @param imageSize      The size to decode the image at
      * @param fromDrawable   what drawable to transition from
      * @param scaleImgToView flag to scale the bitmap to the image view bounds
      */
     public BitmapWorkerTask(final String key, final ImageView imageView,
-                            final ImageType imageType, final Drawable fromDrawable,
-                            final Context context, final boolean scaleImgToView) {
+                            final ImageType imageType, final ImageCache.ImageSize imageSize,
+                            final Drawable fromDrawable, final Context context,
+                            final boolean scaleImgToView) {
         mKey = key;
 
         mContext = new WeakReference<>(context);
@@ -94,6 +118,7 @@ public abstract class BitmapWorkerTask<Params, Progress, Result>
 
         mImageReference = new WeakReference<>(imageView);
         mImageType = imageType;
+        mImageSize = imageSize;
 
         // A transparent image (layer 0) and the new result (layer 1)
         mFromDrawable = fromDrawable;
@@ -101,6 +126,77 @@ public abstract class BitmapWorkerTask<Params, Progress, Result>
         mScaleImgToView = scaleImgToView;
     }
 
+    /**
+     * Queues the task
+     *
+     * @param priority The priority class of the task
+     * @param params   The parameters of {@link #doInBackground(Object[])}
+     * @return false if the scheduler refused the task
+     */
+    @SafeVarargs
+    @MainThread
+    public final boolean execute(final DecodeScheduler.Priority priority,
+                                 final Params... params) {
+        mRequest = DecodeScheduler.getInstance().submit(priority, () -> {
+            final Result result = mCancelled ? null : doInBackground(params);
+            sMainHandler.post(() -> {
+                if (mCancelled) {
+                    onCancelled(result);
+                } else {
+                    onPostExecute(result);
+                }
+            });
+        });
+        return mRequest != null;
+    }
+
+    /**
+     * Cancels the task, it's removed from the queue if it hasn't started yet and its result
+     * won't be delivered otherwise
+     */
+    @MainThread
+    public final void cancel() {
+        mCancelled = true;
+        if (mRequest != null) {
+            mRequest.cancel();
+        }
+    }
+
+    /**
+     * @return Whether the task has been cancelled
+     */
+    public final boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Does the work of the task on a background thread
+     *
+     * @param params The parameters passed to {@link #execute}
+     * @return The result delivered to {@link #onPostExecute(Object)}
+     */
+    @SuppressWarnings("unchecked")
+    @WorkerThread
+    protected abstract Result doInBackground(Params... params);
+
+    /**
+     * Called on the main thread with the result of a task that wasn't cancelled
+     *
+     * @param result The result of {@link #doInBackground(Object[])}
+     */
+    @MainThread
+    protected void onPostExecute(final Result result) {
+    }
+
+    /**
+     * Called on the main thread with the result of a task that was cancelled while it ran
+     *
+     * @param result The result of {@link #doInBackground(Object[])}, may be null
+     */
+    @MainThread
+    protected void onCancelled(final Result result) {
+    }
+
     /**
      * @return The {@link ImageView} associated with this task as long as
      * the ImageView's task still points to this task as well.
@@ -109,7 +205,7 @@ public abstract class BitmapWorkerTask<Params, Progress, Result>
     protected ImageView getAttachedImageView() {
         final ImageView imageView = mImageReference.get();
         if (imageView != null) {
-            final BitmapWorkerTask<?, ?, ?> bitmapWorkerTask =
+            final BitmapWorkerTask<?, ?> bitmapWorkerTask =
                     ImageWorker.getBitmapWorkerTask(imageView);
             if (this == bitmapWorkerTask) {
                 return imageView;
@@ -120,14 +216,14 @@ public abstract class BitmapWorkerTask<Params, Progress, Result>
     }
 
     /**
-     * Gets the bitmap given the input params
+     * Gets the bitmap given the input params, held for the task which must release it
      *
      * @param params artistName, albumName, albumId
      * @return Bitmap
      */
     protected Bitmap getBitmapInBackground(final String... params) {
         return ImageWorker.getBitmapInBackground(mContext.get(), mImageCache, mKey,
-                Long.parseLong(params[2]), mImageType);
+                Long.parseLong(params[2]), mImageType, mImageSize);
     }
 
     /**
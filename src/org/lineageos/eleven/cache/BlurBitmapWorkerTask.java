@@ -18,6 +18,7 @@ package org.lineageos.eleven.cache;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Color;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.TransitionDrawable;
 import android.widget.ImageView;
@@ -28,14 +29,17 @@ import org.lineageos.eleven.widgets.AlbumScrimImage;
 import java.lang.ref.WeakReference;
 
 /**
- * This will download the image (if needed) and create a blur and set the scrim as well on the
- * BlurScrimImage
+ * This will load the blurred scrim of the artwork, rendering and caching it from the artwork the
+ * first time, and set it on the BlurScrimImage
  */
-public class BlurBitmapWorkerTask extends BitmapWorkerTask<String, Void,
+public class BlurBitmapWorkerTask extends BitmapWorkerTask<String,
         BlurBitmapWorkerTask.ResultContainer> {
 
     private static final String TAG = BlurBitmapWorkerTask.class.getSimpleName();
 
+    /* the scrims are darkened to 50% gray so the controls stay readable over them */
+    private static final int SCRIM_TINT_COLOR = 0x7f000000;
+
     // container for the result
     public static class ResultContainer {
         public TransitionDrawable mImageViewBitmapDrawable;
@@ -53,12 +57,13 @@ public class BlurBitmapWorkerTask extends BitmapWorkerTask<String, Void,
      * @param key             used for caching the image
      * @param albumScrimImage The {@link AlbumScrimImage} to use.
      * @param imageType       The type of image URL to fetch for.
+     * @param imageSize       The size to decode the image at
      * @param fromDrawable    what drawable to transition from
      */
     public BlurBitmapWorkerTask(final String key, final AlbumScrimImage albumScrimImage,
-                                final ImageType imageType, final Drawable fromDrawable,
-                                final Context context) {
-        super(key, albumScrimImage.getImageView(), imageType, fromDrawable, context);
+                                final ImageType imageType, final ImageCache.ImageSize imageSize,
+                                final Drawable fromDrawable, final Context context) {
+        super(key, albumScrimImage.getImageView(), imageType, imageSize, fromDrawable, context);
         mBlurScrimImage = new WeakReference<>(albumScrimImage);
 
         // use the existing image as the drawable and if it doesn't exist fallback to transparent
@@ -74,20 +79,37 @@ public class BlurBitmapWorkerTask extends BitmapWorkerTask<String, Void,
             return null;
         }
 
+        final String scrimKey = ImageCache.getScrimKey(mKey);
+        Bitmap scrim = mImageCache.acquireCachedBitmap(scrimKey);
+        if (scrim == null) {
+            final Bitmap bitmap = getBitmapInBackground(params);
+            if (bitmap == null || isCancelled()) {
+                mImageCache.getBitmapPool().release(bitmap);
+                return null;
+            }
+
+            // rendered once per artwork, then kept next to it in the caches
+            scrim = ScrimRenderer.render(bitmap, SCRIM_TINT_COLOR);
+            mImageCache.getBitmapPool().release(bitmap);
+            mImageCache.addBitmapToCache(scrimKey, scrim);
+        }
+
+        // the scrim keeps showing it while fading to the next one
+        mImageCache.getBitmapPool().pin(scrim);
+
         final ResultContainer result = new ResultContainer();
-        final Bitmap bitmap = getBitmapInBackground(params);
-        if (bitmap != null) {
-            // Set the scrim color to be 50% gray
-            result.mPaletteColor = 0x7f000000;
 
-            // create the bitmap transition drawable
-            result.mImageViewBitmapDrawable = createImageTransitionDrawable(bitmap,
-                    ImageWorker.FADE_IN_TIME_SLOW, true);
+        // the scrim is tinted already
+        result.mPaletteColor = Color.TRANSPARENT;
 
-            return result;
-        }
+        // create the bitmap transition drawable
+        result.mImageViewBitmapDrawable = createImageTransitionDrawable(scrim,
+                ImageWorker.FADE_IN_TIME_SLOW, true);
 
-        return null;
+        // the small scrim is stretched over the whole view, filter it so it doesn't show blocks
+        result.mImageViewBitmapDrawable.getDrawable(1).setFilterBitmap(true);
+
+        return result;
     }
 
     @Override
@@ -106,7 +128,6 @@ public class BlurBitmapWorkerTask extends BitmapWorkerTask<String, Void,
                 // set the transition drawable
                 albumScrimImage.setTransitionDrawable(resultContainer.mImageViewBitmapDrawable,
                         paletteTransition);
-                albumScrimImage.applyBlurEffect();
             }
         }
     }
@@ -114,7 +135,7 @@ public class BlurBitmapWorkerTask extends BitmapWorkerTask<String, Void,
     @Override
     protected final ImageView getAttachedImageView() {
         final AlbumScrimImage blurImage = mBlurScrimImage.get();
-        final BitmapWorkerTask<?, ?, ?> bitmapWorkerTask =
+        final BitmapWorkerTask<?, ?> bitmapWorkerTask =
                 ImageWorker.getBitmapWorkerTask(blurImage);
         if (this == bitmapWorkerTask) {
             return blurImage.getImageView();
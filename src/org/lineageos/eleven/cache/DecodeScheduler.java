@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import androidx.annotation.NonNull;
+
+import org.lineageos.eleven.utils.AppExecutors;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the image decodes on the {@link AppExecutors.Pool#DECODE} pool.  Requests run by
+ * priority class, and within a class the newest request runs first since it's the one most
+ * likely to still be on screen.  Queued requests can be cancelled, e.g. when the view they
+ * load into is recycled.
+ * <p>
+ * Requests for visible images are always accepted, and since the views cancel theirs when they
+ * are recycled the queue stays bounded by what's on screen.  Prefetch requests are refused once
+ * enough of them are queued, so the prefetcher slows down instead of piling up work.
+ */
+public final class DecodeScheduler {
+    /* # of prefetch requests that can be queued */
+    private static final int MAX_QUEUED_PREFETCHES = 32;
+
+    private static DecodeScheduler sInstance;
+
+    /**
+     * The priority classes, the first ones run first
+     */
+    public enum Priority {
+        /* the now playing artwork and its scrim */
+        NOW_PLAYING,
+        /* the images of the views on screen */
+        VISIBLE,
+        /* the images of the views about to be shown */
+        PREFETCH,
+    }
+
+    private final ThreadPoolExecutor mExecutor;
+
+    private final AtomicLong mSequence = new AtomicLong();
+
+    private final AtomicInteger mQueuedPrefetches = new AtomicInteger();
+
+    private DecodeScheduler() {
+        // the pool queues by priority, which the requests define
+        mExecutor = AppExecutors.get(AppExecutors.Pool.DECODE);
+    }
+
+    /**
+     * @return The shared scheduler
+     */
+    public static synchronized DecodeScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new DecodeScheduler();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Queues some work
+     *
+     * @param priority The priority class of the work
+     * @param work     The work to run
+     * @return The request, or null if the work was refused because too many prefetches are
+     * queued already
+     */
+    public Request submit(final Priority priority, final Runnable work) {
+        if (priority == Priority.PREFETCH
+                && mQueuedPrefetches.incrementAndGet() > MAX_QUEUED_PREFETCHES) {
+            mQueuedPrefetches.decrementAndGet();
+            return null;
+        }
+
+        final Request request = new Request(priority, mSequence.incrementAndGet(), work);
+        mExecutor.execute(request);
+        return request;
+    }
+
+    /**
+     * @return Whether prefetch requests would be accepted right now
+     */
+    public boolean canPrefetch() {
+        return mQueuedPrefetches.get() < MAX_QUEUED_PREFETCHES;
+    }
+
+    /**
+     * A queued piece of work
+     */
+    public final class Request implements Runnable, Comparable<Request> {
+        private final Priority mPriority;
+        private final long mSequence;
+        private final Runnable mWork;
+        private final AtomicInteger mState = new AtomicInteger(STATE_QUEUED);
+
+        private static final int STATE_QUEUED = 0;
+        private static final int STATE_STARTED = 1;
+        private static final int STATE_CANCELLED = 2;
+
+        private Request(final Priority priority, final long sequence, final Runnable work) {
+            mPriority = priority;
+            mSequence = sequence;
+            mWork = work;
+        }
+
+        /**
+         * Removes the request from the queue if it hasn't started yet
+         *
+         * @return true if the request won't run
+         */
+        public boolean cancel() {
+            if (!mState.compareAndSet(STATE_QUEUED, STATE_CANCELLED)) {
+                return mState.get() == STATE_CANCELLED;
+            }
+            mExecutor.remove(this);
+            onDequeued();
+            return true;
+        }
+
+        /**
+         * @return Whether the request is still waiting to run
+         */
+        public boolean isQueued() {
+            return mState.get() == STATE_QUEUED;
+        }
+
+        @Override
+        public void run() {
+            if (mState.compareAndSet(STATE_QUEUED, STATE_STARTED)) {
+                onDequeued();
+                mWork.run();
+            }
+        }
+
+        private void onDequeued() {
+            if (mPriority == Priority.PREFETCH) {
+                mQueuedPrefetches.decrementAndGet();
+            }
+        }
+
+        @Override
+        public int compareTo(@NonNull final Request other) {
+            if (mPriority != other.mPriority) {
+                return mPriority.compareTo(other.mPriority);
+            }
+            // newest first
+            return Long.compare(other.mSequence, mSequence);
+        }
+    }
+}
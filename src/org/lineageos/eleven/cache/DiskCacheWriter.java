@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
+import android.os.SystemClock;
+
+import org.lineageos.eleven.utils.AppExecutors;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+
+/**
+ * Encodes the images written to the disk cache one at a time on the
+ * {@link AppExecutors.Pool#IO} pool, so the threads decoding them are done as soon as the images
+ * are in the memory cache.  A write that is still pending when the same key is written again is
+ * replaced instead of encoded twice.
+ * <p>
+ * The bitmaps are held in the {@link BitmapPool} until they are written.  When too many writes
+ * are pending the callers write synchronously instead, which bounds that memory.
+ */
+public final class DiskCacheWriter {
+    /* # of writes that can be pending */
+    private static final int MAX_PENDING = 16;
+
+    /* one write every this many is also encoded the old way to estimate the savings */
+    private static final int BASELINE_SAMPLE_RATE = 32;
+
+    /* how the images were encoded before */
+    private static final CompressFormat BASELINE_FORMAT = CompressFormat.JPEG;
+    private static final int BASELINE_QUALITY = 98;
+
+    /**
+     * The kinds of images written to the disk cache, each has its own encoding
+     */
+    public enum ImageClass {
+        /* artwork and artist images, these are photos */
+        ARTWORK(CompressFormat.WEBP_LOSSY, 90),
+        /* images generated by the app, e.g. the playlist collages */
+        COLLAGE(CompressFormat.WEBP_LOSSLESS, 100);
+
+        private final CompressFormat mDefaultFormat;
+        private final int mDefaultQuality;
+
+        ImageClass(final CompressFormat format, final int quality) {
+            mDefaultFormat = format;
+            mDefaultQuality = quality;
+        }
+    }
+
+    /**
+     * Writes an encoded image to the disk cache
+     */
+    interface Sink {
+        /**
+         * @param key     The key of the image
+         * @param bitmap  The image
+         * @param replace Whether to replace an existing entry
+         * @param format  The format to encode the image in
+         * @param quality The quality to encode the image at
+         * @return The number of bytes written, or -1 if nothing was written
+         */
+        long write(String key, Bitmap bitmap, boolean replace, CompressFormat format,
+                   int quality);
+    }
+
+    private static final class Write {
+        final String mKey;
+        final Bitmap mBitmap;
+        final boolean mReplace;
+        final ImageClass mImageClass;
+        boolean mStarted;
+
+        Write(final String key, final Bitmap bitmap, final boolean replace,
+              final ImageClass imageClass) {
+            mKey = key;
+            mBitmap = bitmap;
+            mReplace = replace;
+            mImageClass = imageClass;
+        }
+    }
+
+    private final BitmapPool mPool;
+
+    private final Sink mSink;
+
+    private final EnumMap<ImageClass, CompressFormat> mFormats = new EnumMap<>(ImageClass.class);
+    private final EnumMap<ImageClass, Integer> mQualities = new EnumMap<>(ImageClass.class);
+
+    // the pending writes by key, and the order they're written in
+    private final HashMap<String, Write> mPending = new HashMap<>();
+    private final ArrayDeque<String> mQueue = new ArrayDeque<>();
+    private boolean mDraining;
+
+    private long mWrites;
+    private long mDeduped;
+    private long mSynchronousWrites;
+    private long mBytesWritten;
+    private long mEncodeTimeMs;
+    private long mSampledBytes;
+    private long mSampledBaselineBytes;
+
+    DiskCacheWriter(final BitmapPool pool, final Sink sink) {
+        mPool = pool;
+        mSink = sink;
+        for (ImageClass imageClass : ImageClass.values()) {
+            mFormats.put(imageClass, imageClass.mDefaultFormat);
+            mQualities.put(imageClass, imageClass.mDefaultQuality);
+        }
+    }
+
+    /**
+     * Changes how a class of images is encoded
+     *
+     * @param imageClass The class of images
+     * @param format     The format to encode them in
+     * @param quality    The quality to encode them at, ignored by lossless formats
+     */
+    public synchronized void setEncoding(final ImageClass imageClass, final CompressFormat format,
+                                         final int quality) {
+        mFormats.put(imageClass, format);
+        mQualities.put(imageClass, quality);
+    }
+
+    /**
+     * Queues an image to be written
+     *
+     * @param key        The key of the image
+     * @param bitmap     The image
+     * @param replace    Whether to replace an existing entry
+     * @param imageClass The class of the image
+     */
+    public void write(final String key, final Bitmap bitmap, final boolean replace,
+                      final ImageClass imageClass) {
+        final Write write = new Write(key, bitmap, replace, imageClass);
+        synchronized (this) {
+            final Write previous = mPending.get(key);
+            if (previous != null || mPending.size() < MAX_PENDING) {
+                // hold the bitmap until it's written
+                mPool.acquire(bitmap);
+                mPending.put(key, write);
+                if (previous == null || previous.mStarted) {
+                    mQueue.add(key);
+                } else {
+                    // the previous image wasn't written yet, it never will be
+                    mPool.release(previous.mBitmap);
+                    mDeduped++;
+                }
+                if (!mDraining) {
+                    mDraining = true;
+                    AppExecutors.get(AppExecutors.Pool.IO).execute(this::drain);
+                }
+                return;
+            }
+            mSynchronousWrites++;
+        }
+
+        // too many writes are pending, slow the caller down
+        encode(write);
+    }
+
+    /**
+     * @param key The key of an image
+     * @return The image if it's still waiting to be written, null otherwise
+     */
+    public synchronized Bitmap getPending(final String key) {
+        final Write write = mPending.get(key);
+        return write != null ? write.mBitmap : null;
+    }
+
+    /**
+     * Drops the pending write of an image
+     *
+     * @param key The key of the image
+     */
+    public synchronized void cancel(final String key) {
+        final Write write = mPending.get(key);
+        if (write != null && !write.mStarted) {
+            mPending.remove(key);
+            mPool.release(write.mBitmap);
+        }
+    }
+
+    /**
+     * Drops all the pending writes
+     */
+    public synchronized void cancelAll() {
+        for (String key : mQueue) {
+            cancel(key);
+        }
+        mQueue.clear();
+    }
+
+    private void drain() {
+        while (true) {
+            final Write write;
+            synchronized (this) {
+                final String key = mQueue.poll();
+                if (key == null) {
+                    mDraining = false;
+                    return;
+                }
+                write = mPending.get(key);
+                if (write == null || write.mStarted) {
+                    // it was cancelled, or queued again while being written
+                    continue;
+                }
+                write.mStarted = true;
+            }
+
+            try {
+                encode(write);
+            } finally {
+                synchronized (this) {
+                    mPending.remove(write.mKey, write);
+                    mPool.release(write.mBitmap);
+                }
+            }
+        }
+    }
+
+    private void encode(final Write write) {
+        final CompressFormat format;
+        final int quality;
+        final boolean sample;
+        synchronized (this) {
+            format = mFormats.get(write.mImageClass);
+            quality = mQualities.get(write.mImageClass);
+            sample = format != BASELINE_FORMAT && mWrites % BASELINE_SAMPLE_RATE == 0;
+            mWrites++;
+        }
+
+        final long start = SystemClock.elapsedRealtime();
+        final long bytes = mSink.write(write.mKey, write.mBitmap, write.mReplace, format,
+                quality);
+        final long elapsed = SystemClock.elapsedRealtime() - start;
+
+        long baselineBytes = -1;
+        if (sample && bytes >= 0) {
+            final CountingOutputStream out = new CountingOutputStream();
+            write.mBitmap.compress(BASELINE_FORMAT, BASELINE_QUALITY, out);
+            baselineBytes = out.getCount();
+        }
+
+        synchronized (this) {
+            mEncodeTimeMs += elapsed;
+            if (bytes >= 0) {
+                mBytesWritten += bytes;
+            }
+            if (baselineBytes >= 0) {
+                mSampledBytes += bytes;
+                mSampledBaselineBytes += baselineBytes;
+            }
+        }
+    }
+
+    /**
+     * Prints the writer counters
+     *
+     * @param writer the writer to print to
+     */
+    public synchronized void dump(final PrintWriter writer) {
+        writer.println("Disk cache writer:");
+        for (ImageClass imageClass : ImageClass.values()) {
+            writer.println("  " + imageClass + ": " + mFormats.get(imageClass) + " q"
+                    + mQualities.get(imageClass));
+        }
+        writer.println("  writes: " + mWrites + " deduped: " + mDeduped + " synchronous: "
+                + mSynchronousWrites + " pending: " + mPending.size());
+        writer.println("  written: " + (mBytesWritten / 1024) + "KB avgEncode="
+                + (mWrites > 0 ? mEncodeTimeMs / mWrites : 0) + "ms");
+        if (mSampledBytes > 0 && mSampledBaselineBytes > 0) {
+            // extrapolate the sampled ratio to everything written
+            final long baselineBytes = mBytesWritten * mSampledBaselineBytes / mSampledBytes;
+            writer.println("  saved vs " + BASELINE_FORMAT + " q" + BASELINE_QUALITY + ": ~"
+                    + ((baselineBytes - mBytesWritten) / 1024) + "KB ("
+                    + (100 - 100 * mSampledBytes / mSampledBaselineBytes) + "%)");
+        }
+    }
+
+    /**
+     * Counts the bytes written to it and drops them
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        private long mCount;
+
+        @Override
+        public void write(final int b) {
+            mCount++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            mCount += len;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+    }
+
+    /**
+     * Counts the bytes written through it
+     */
+    static final class CountingFilterOutputStream extends FilterOutputStream {
+        private long mCount;
+
+        CountingFilterOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            mCount++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            mCount += len;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+    }
+}
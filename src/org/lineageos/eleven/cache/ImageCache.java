@@ -26,35 +26,42 @@ import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.CompressFormat;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.ParcelFileDescriptor;
+import android.util.DisplayMetrics;
 import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentActivity;
 import androidx.fragment.app.FragmentManager;
 
+import org.lineageos.eleven.R;
 import org.lineageos.eleven.cache.disklrucache.DiskLruCache;
-import org.lineageos.eleven.utils.ElevenUtils;
+import org.lineageos.eleven.utils.AppExecutors;
 import org.lineageos.eleven.utils.IoUtils;
+import org.lineageos.eleven.utils.colors.BitmapWithColors;
 
 import java.io.File;
 import java.io.FileDescriptor;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class holds the memory and disk bitmap caches.
  */
 public final class ImageCache {
     private static final String TAG = ImageCache.class.getSimpleName();
+    private static final boolean D = false;
 
     /**
      * The {@link Uri} used to retrieve album art
@@ -67,14 +74,14 @@ public final class ImageCache {
     private static final float MEM_CACHE_DIVIDER = 0.50f;
 
     /**
-     * Default disk cache size 50MB
+     * Size of the bitmap pool as a fraction of the memory cache size
      */
-    private static final int DISK_CACHE_SIZE = 50 * 1024 * 1024;
+    private static final float BITMAP_POOL_DIVIDER = 0.25f;
 
     /**
-     * Compression settings when writing images to disk cache
+     * Default disk cache size 50MB
      */
-    private static final CompressFormat COMPRESS_FORMAT = CompressFormat.JPEG;
+    private static final int DISK_CACHE_SIZE = 50 * 1024 * 1024;
 
     /**
      * Disk cache index to read from
@@ -82,20 +89,38 @@ public final class ImageCache {
     private static final int DISK_CACHE_INDEX = 0;
 
     /**
-     * Image compression quality
+     * The size in pixels of the short side of the images of each {@link ImageSize}
      */
-    private static final int COMPRESS_QUALITY = 98;
+    private final int[] mTargetSizes = new int[ImageSize.values().length];
 
     /**
      * LRU cache
      */
     private MemoryCache mLruCache;
 
+    /**
+     * The bitmaps that can be reused by the decodes
+     */
+    private BitmapPool mBitmapPool;
+
     /**
      * Disk LRU cache
      */
     private DiskLruCache mDiskCache;
 
+    /**
+     * Encodes the images written to the disk cache in the background
+     */
+    private DiskCacheWriter mDiskCacheWriter;
+
+    /**
+     * The ids of the albums by the key of their artwork, the colors extracted from an artwork
+     * are dropped along with it
+     */
+    private final ConcurrentHashMap<String, Long> mAlbumIds = new ConcurrentHashMap<>();
+
+    private Context mContext;
+
     private static ImageCache sInstance;
 
     static {
@@ -130,17 +155,71 @@ public final class ImageCache {
      * @param context     The {@link Context} to use
      */
     private void init(final Context context) {
-        ElevenUtils.execute(new AsyncTask<Void, Void, Void>() {
-
-            @Override
-            protected Void doInBackground(final Void... unused) {
-                // Initialize the disk cache in a background thread
-                initDiskCache(context);
-                return null;
-            }
-        }, (Void[]) null);
+        mContext = context.getApplicationContext();
+        // Initialize the disk cache in a background thread
+        AppExecutors.get(AppExecutors.Pool.IO).execute(() -> initDiskCache(context));
         // Set up the memory cache
         initLruCache(context);
+        initTargetSizes(context);
+    }
+
+    /**
+     * Computes the target sizes of the image sizes from the display
+     *
+     * @param context The {@link Context} to use
+     */
+    private void initTargetSizes(final Context context) {
+        final DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        final int shortSide = Math.min(metrics.widthPixels, metrics.heightPixels);
+        mTargetSizes[ImageSize.THUMBNAIL.ordinal()] = context.getResources()
+                .getDimensionPixelSize(R.dimen.list_item_image_width);
+        mTargetSizes[ImageSize.GRID.ordinal()] = shortSide / 2;
+        mTargetSizes[ImageSize.FULL.ordinal()] = shortSide;
+    }
+
+    /**
+     * @param size The image size
+     * @return The size in pixels of the short side of images of that size
+     */
+    public int getTargetSize(final ImageSize size) {
+        return mTargetSizes[size.ordinal()];
+    }
+
+    /**
+     * Finds the smallest image size that fills a view.  Views that haven't been laid out and
+     * don't have a fixed size get the grid size
+     *
+     * @param view The view the image is shown in
+     * @return The image size to load
+     */
+    public ImageSize getImageSize(final View view) {
+        int size = 0;
+        final ViewGroup.LayoutParams params = view.getLayoutParams();
+        if (params != null) {
+            size = Math.max(params.width, params.height);
+        }
+        if (size <= 0) {
+            size = Math.max(view.getWidth(), view.getHeight());
+        }
+        if (size <= 0) {
+            return ImageSize.GRID;
+        }
+        return getImageSize(size);
+    }
+
+    /**
+     * Finds the smallest image size that covers a size
+     *
+     * @param size The size in pixels
+     * @return The image size to load
+     */
+    public ImageSize getImageSize(final int size) {
+        for (ImageSize imageSize : ImageSize.values()) {
+            if (size <= getTargetSize(imageSize)) {
+                return imageSize;
+            }
+        }
+        return ImageSize.FULL;
     }
 
     /**
@@ -162,6 +241,11 @@ public final class ImageCache {
             if (getUsableSpace(diskCacheDir) > DISK_CACHE_SIZE) {
                 try {
                     mDiskCache = DiskLruCache.open(diskCacheDir, 1, 1, DISK_CACHE_SIZE);
+                    if (D) {
+                        Log.d(TAG, "Opened the disk cache with " + mDiskCache.getEntryCount()
+                                + " entries from " + mDiskCache.getJournalRecordCount()
+                                + " journal records in " + mDiskCache.getOpenTimeMillis() + "ms");
+                    }
                 } catch (final IOException ignored) {
                 }
             }
@@ -177,7 +261,9 @@ public final class ImageCache {
         final ActivityManager activityManager = context.getSystemService(ActivityManager.class);
         final int lruCacheSize = Math.round(MEM_CACHE_DIVIDER * activityManager.getMemoryClass()
                 * 1024 * 1024);
-        mLruCache = new MemoryCache(lruCacheSize);
+        mBitmapPool = new BitmapPool(Math.round(BITMAP_POOL_DIVIDER * lruCacheSize));
+        mLruCache = new MemoryCache(lruCacheSize, mBitmapPool);
+        mDiskCacheWriter = new DiskCacheWriter(mBitmapPool, this::writeToDiskCache);
 
         // Release some memory as needed
         context.registerComponentCallbacks(new ComponentCallbacks2() {
@@ -188,6 +274,7 @@ public final class ImageCache {
                     evictAll();
                 } else if (level >= TRIM_MEMORY_BACKGROUND) {
                     mLruCache.trimToSize(mLruCache.size() / 2);
+                    mBitmapPool.clear();
                 }
             }
 
@@ -203,6 +290,27 @@ public final class ImageCache {
         });
     }
 
+    /**
+     * @return The maximum number of bytes of the memory cache
+     */
+    public int getMemCacheMaxSize() {
+        return mLruCache != null ? mLruCache.maxSize() : 0;
+    }
+
+    /**
+     * @return The writer encoding the images of the disk cache
+     */
+    public DiskCacheWriter getDiskCacheWriter() {
+        return mDiskCacheWriter;
+    }
+
+    /**
+     * @return The pool the bitmaps decoded by this cache are recycled to
+     */
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
     /**
      * Find and return an existing ImageCache stored in a {@link RetainFragment}
      * , if not found a new one is created using the supplied params and saved
@@ -259,6 +367,20 @@ public final class ImageCache {
         addBitmapToCache(data, bitmap, false);
     }
 
+    /**
+     * Adds a new image to the memory and disk caches
+     *
+     * @param data   The key used to store the image
+     * @param size   The size the image was decoded at
+     * @param bitmap The {@link Bitmap} to cache
+     */
+    public void addBitmapToCache(final String data, final ImageSize size, final Bitmap bitmap) {
+        if (data == null) {
+            return;
+        }
+        addBitmapToCache(getSizedKey(data, size), bitmap, false);
+    }
+
     /**
      * Adds a new image to the memory and disk caches
      *
@@ -267,42 +389,71 @@ public final class ImageCache {
      * @param replace force a replace even if the bitmap exists in the cache
      */
     public void addBitmapToCache(final String data, final Bitmap bitmap, final boolean replace) {
+        addBitmapToCache(data, bitmap, replace, DiskCacheWriter.ImageClass.ARTWORK);
+    }
+
+    /**
+     * Adds a new image to the memory cache, and queues it to be written to the disk cache
+     *
+     * @param data       The key used to store the image
+     * @param bitmap     The {@link Bitmap} to cache
+     * @param replace    force a replace even if the bitmap exists in the cache
+     * @param imageClass The kind of image, which decides how it's encoded on disk
+     */
+    public void addBitmapToCache(final String data, final Bitmap bitmap, final boolean replace,
+                                 final DiskCacheWriter.ImageClass imageClass) {
         if (data == null || bitmap == null) {
             return;
         }
 
+        if (replace) {
+            // the colors of the artwork it replaces don't match it anymore
+            removeAlbumColors(data, false);
+        }
+
         // Add to memory cache
         addBitmapToMemCache(data, bitmap, replace);
 
         // Add to disk cache
-        if (mDiskCache != null && !mDiskCache.isClosed()) {
-            final String key = hashKeyForDisk(data);
-            OutputStream out = null;
-            try {
-                final DiskLruCache.Snapshot snapshot = mDiskCache.get(key);
-                if (snapshot != null) {
-                    snapshot.getInputStream(DISK_CACHE_INDEX).close();
-                }
+        mDiskCacheWriter.write(data, bitmap, replace, imageClass);
+    }
 
-                if (snapshot == null || replace) {
-                    final DiskLruCache.Editor editor = mDiskCache.edit(key);
-                    if (editor != null) {
-                        out = editor.newOutputStream(DISK_CACHE_INDEX);
-                        bitmap.compress(COMPRESS_FORMAT, COMPRESS_QUALITY, out);
-                        editor.commit();
-                        out.close();
-                        flush();
-                    }
+    /**
+     * Encodes an image to the disk cache, called by the {@link DiskCacheWriter}
+     *
+     * @return The number of bytes written, or -1 if nothing was written
+     */
+    private long writeToDiskCache(final String data, final Bitmap bitmap, final boolean replace,
+                                  final CompressFormat format, final int quality) {
+        final DiskLruCache diskCache = mDiskCache;
+        if (diskCache == null || diskCache.isClosed()) {
+            return -1;
+        }
+
+        final String key = hashKeyForDisk(data);
+        DiskCacheWriter.CountingFilterOutputStream out = null;
+        try {
+            // the disk cache flushes its journal itself once the edits settle
+            if (replace || !diskCache.contains(key)) {
+                final DiskLruCache.Editor editor = diskCache.edit(key);
+                if (editor != null) {
+                    out = new DiskCacheWriter.CountingFilterOutputStream(
+                            editor.newOutputStream(DISK_CACHE_INDEX));
+                    bitmap.compress(format, quality, out);
+                    editor.commit();
+                    out.close();
+                    return out.getCount();
                 }
-            } catch (final IOException e) {
-                // if the user clears the cache while we have an async task going we could try
-                // writing to the disk cache while it isn't ready. Catching here will silently
-                // fail instead
-                Log.e(TAG, "addBitmapToCache", e);
-            } finally {
-                IoUtils.closeQuietly(out);
             }
+        } catch (final IOException | IllegalStateException e) {
+            // if the user clears the cache while we have a write going we could try
+            // writing to the disk cache while it isn't ready. Catching here will silently
+            // fail instead
+            Log.e(TAG, "writeToDiskCache", e);
+        } finally {
+            IoUtils.closeQuietly(out);
         }
+        return -1;
     }
 
     /**
@@ -328,12 +479,16 @@ public final class ImageCache {
         }
         // Add to memory cache
         if (replace || getBitmapFromMemCache(data) == null) {
+            // the cache holds the bitmap until it's evicted
+            mBitmapPool.acquire(bitmap);
             mLruCache.put(data, bitmap);
         }
     }
 
     /**
-     * Fetches a cached image from the memory cache
+     * Fetches a cached image from the memory cache.  The bitmap may be reused as soon as it's
+     * evicted, so this is only good to check for the image, use {@link #acquireFromMemCache}
+     * to keep it
      *
      * @param data Unique identifier for which item to get
      * @return The {@link Bitmap} if found in cache, null otherwise
@@ -343,89 +498,129 @@ public final class ImageCache {
     }
 
     /**
-     * Fetches a cached image from the disk cache
+     * Fetches a cached image of a given size from the memory cache, only to check for it
      *
      * @param data Unique identifier for which item to get
+     * @param size The size of the image
      * @return The {@link Bitmap} if found in cache, null otherwise
      */
-    public Bitmap getBitmapFromDiskCache(final String data) {
-        if (data == null) {
+    public Bitmap getBitmapFromMemCache(final String data, final ImageSize size) {
+        return data == null ? null : getBitmapFromMemCache(getSizedKey(data, size));
+    }
+
+    /**
+     * Fetches a cached image from the memory cache and holds it, so it isn't reused if it's
+     * evicted before the caller is done with it.  The caller must release it to the
+     * {@link BitmapPool} once it doesn't use it anymore
+     *
+     * @param data Unique identifier for which item to get
+     * @return The {@link Bitmap} if found in cache, null otherwise
+     */
+    public Bitmap acquireFromMemCache(final String data) {
+        if (data == null || mLruCache == null) {
             return null;
         }
+        // an evicted bitmap is released to the pool under its lock, so it's either gone from
+        // the cache already or released after this holds it
+        synchronized (mBitmapPool) {
+            final Bitmap bitmap = mLruCache.get(data);
+            mBitmapPool.acquire(bitmap);
+            return bitmap;
+        }
+    }
+
+    /**
+     * Fetches a cached image of a given size from the memory cache and holds it, the caller
+     * must release it
+     *
+     * @param data Unique identifier for which item to get
+     * @param size The size of the image
+     * @return The {@link Bitmap} if found in cache, null otherwise
+     */
+    public Bitmap acquireFromMemCache(final String data, final ImageSize size) {
+        return data == null ? null : acquireFromMemCache(getSizedKey(data, size));
+    }
 
-        // Check in the memory cache here to avoid going to the disk cache less
-        // often
-        if (getBitmapFromMemCache(data) != null) {
-            return getBitmapFromMemCache(data);
+    /**
+     * Decodes an image of the disk cache, sampled down to the target size
+     *
+     * @param sizedKey The key of the entry
+     * @param size     The size to decode the image at
+     * @return The {@link Bitmap} if found in cache, null otherwise
+     */
+    private Bitmap decodeFromDiskCache(final String sizedKey, final ImageSize size) {
+        // the image may not be written yet
+        final Bitmap pending = mDiskCacheWriter.getPending(sizedKey);
+        if (pending != null) {
+            // it's handed out without a holder, so it must never be reused
+            mBitmapPool.pin(pending);
+            return pending;
         }
 
-        final String key = hashKeyForDisk(data);
-        if (mDiskCache != null) {
-            InputStream inputStream = null;
-            try {
-                final DiskLruCache.Snapshot snapshot = mDiskCache.get(key);
-                if (snapshot != null) {
-                    inputStream = snapshot.getInputStream(DISK_CACHE_INDEX);
-                    if (inputStream != null) {
-                        final Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-                        if (bitmap != null) {
-                            return bitmap;
-                        }
-                    }
+        final DiskLruCache diskCache = mDiskCache;
+        if (diskCache == null) {
+            return null;
+        }
+
+        final String key = hashKeyForDisk(sizedKey);
+        try {
+            return decodeSampledBitmap(options -> {
+                final DiskLruCache.Snapshot snapshot = diskCache.get(key);
+                if (snapshot == null) {
+                    return null;
                 }
-            } catch (final IOException e) {
-                Log.e(TAG, "getBitmapFromDiskCache", e);
-            } finally {
-                IoUtils.closeQuietly(inputStream);
-            }
+                final InputStream inputStream = snapshot.getInputStream(DISK_CACHE_INDEX);
+                try {
+                    return BitmapFactory.decodeStream(inputStream, null, options);
+                } finally {
+                    IoUtils.closeQuietly(inputStream);
+                }
+            }, getTargetSize(size));
+        } catch (final IOException e) {
+            Log.e(TAG, "decodeFromDiskCache", e);
         }
         return null;
     }
 
     /**
      * Tries to return a cached image from memory cache before fetching from the
-     * disk cache
+     * disk cache.  The image is held for the caller, which must release it
      *
      * @param data Unique identifier for which item to get
      * @return The {@link Bitmap} if found in cache, null otherwise
      */
-    public Bitmap getCachedBitmap(final String data) {
-        if (data == null) {
-            return null;
-        }
-        Bitmap cachedImage = getBitmapFromMemCache(data);
-        if (cachedImage == null) {
-            cachedImage = getBitmapFromDiskCache(data);
-        }
-        if (cachedImage != null) {
-            addBitmapToMemCache(data, cachedImage);
-            return cachedImage;
-        }
-        return null;
+    public Bitmap acquireCachedBitmap(final String data) {
+        return acquireCachedBitmap(data, ImageSize.FULL);
     }
 
     /**
-     * Tries to return the album art from memory cache and disk cache, before
-     * calling {@code #getArtworkFromFile(Context, String)} again
+     * Tries to return a cached image of a given size from memory cache before fetching from the
+     * disk cache.  The image is held for the caller, which must release it
      *
-     * @param context The {@link Context} to use
-     * @param data    The name of the album art
-     * @param id      The ID of the album to find artwork for
-     * @return The artwork for an album
+     * @param data Unique identifier for which item to get
+     * @param size The size of the image
+     * @return The {@link Bitmap} if found in cache, null otherwise
      */
-    public Bitmap getCachedArtwork(final Context context, final String data, final long id) {
-        if (context == null || data == null) {
+    public Bitmap acquireCachedBitmap(final String data, final ImageSize size) {
+        if (data == null) {
             return null;
         }
-        Bitmap cachedImage = getCachedBitmap(data);
-        if (cachedImage == null && id >= 0) {
-            cachedImage = getArtworkFromFile(context, id);
+        final Bitmap memBitmap = acquireFromMemCache(data, size);
+        if (memBitmap != null) {
+            return memBitmap;
         }
-        if (cachedImage != null) {
-            addBitmapToMemCache(data, cachedImage);
-            return cachedImage;
+
+        final String sizedKey = getSizedKey(data, size);
+        Bitmap bitmap = decodeFromDiskCache(sizedKey, size);
+        if (bitmap == null && size != ImageSize.FULL) {
+            bitmap = decodeFromDiskCache(data, size);
         }
-        return null;
+        if (bitmap != null) {
+            // nobody else has it yet, so it's held before the cache can evict it
+            mBitmapPool.acquire(bitmap);
+            addBitmapToMemCache(sizedKey, bitmap);
+        }
+        return bitmap;
     }
 
     /**
@@ -433,9 +628,11 @@ public final class ImageCache {
      *
      * @param context The {@link Context} to use
      * @param albumId The ID of the album to find artwork for
+     * @param size    The size to decode the artwork at
      * @return The artwork for an album
      */
-    public Bitmap getArtworkFromFile(final Context context, final long albumId) {
+    public Bitmap getArtworkFromFile(final Context context, final long albumId,
+                                     final ImageSize size) {
         if (albumId < 0) {
             return null;
         }
@@ -446,13 +643,17 @@ public final class ImageCache {
             final Uri uri = ContentUris.withAppendedId(mArtworkUri, albumId);
             parcelFileDescriptor = context.getContentResolver().openFileDescriptor(uri, "r");
             if (parcelFileDescriptor != null) {
+                // the position of the descriptor isn't changed by decoding, so it can be read
+                // once for the bounds and once for the pixels
                 final FileDescriptor fileDescriptor = parcelFileDescriptor.getFileDescriptor();
-                artwork = BitmapFactory.decodeFileDescriptor(fileDescriptor);
+                artwork = decodeSampledBitmap(options ->
+                        BitmapFactory.decodeFileDescriptor(fileDescriptor, null, options),
+                        getTargetSize(size));
             }
         } catch (final IllegalStateException e) {
             // Log.e(TAG, "IllegalStateException - getArtworkFromFile - ", e);
-        } catch (final FileNotFoundException e) {
-            // Log.e(TAG, "FileNotFoundException - getArtworkFromFile - ", e);
+        } catch (final IOException e) {
+            // Log.e(TAG, "IOException - getArtworkFromFile - ", e);
         } catch (final IllegalArgumentException e) {
             // Log.e(TAG, "IllegalArgumentException - getArtworkFromFile - ", e);
         } catch (final OutOfMemoryError evict) {
@@ -464,25 +665,105 @@ public final class ImageCache {
         return artwork;
     }
 
+    /**
+     * Decodes the bounds of an image first, then decodes it sampled down as close as possible
+     * to the target size and scales it the rest of the way.  The pixels are decoded and scaled
+     * into pooled bitmaps when there are some that fit
+     *
+     * @param decoder    Decodes the image with the given options
+     * @param targetSize The size in pixels of the short side of the result
+     * @return The decoded {@link Bitmap}, or null if it couldn't be decoded
+     */
+    private Bitmap decodeSampledBitmap(final Decoder decoder, final int targetSize)
+            throws IOException {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decoder.decode(options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        final int shortSide = Math.min(options.outWidth, options.outHeight);
+        options.inSampleSize = calculateSampleSize(shortSide, targetSize);
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inBitmap = mBitmapPool.get(
+                divideRoundingUp(options.outWidth, options.inSampleSize),
+                divideRoundingUp(options.outHeight, options.inSampleSize),
+                Bitmap.Config.ARGB_8888);
+
+        Bitmap sampled;
+        try {
+            sampled = decoder.decode(options);
+        } catch (final IllegalArgumentException e) {
+            // the pooled bitmap can't be reused for this image
+            mBitmapPool.put(options.inBitmap);
+            options.inBitmap = null;
+            sampled = decoder.decode(options);
+        }
+        if (sampled == null) {
+            mBitmapPool.put(options.inBitmap);
+            return null;
+        }
+
+        final int sampledShortSide = Math.min(sampled.getWidth(), sampled.getHeight());
+        if (targetSize <= 0 || sampledShortSide <= targetSize) {
+            mBitmapPool.track(sampled);
+            return sampled;
+        }
+
+        final float scale = (float) targetSize / sampledShortSide;
+        final int width = Math.max(1, Math.round(sampled.getWidth() * scale));
+        final int height = Math.max(1, Math.round(sampled.getHeight() * scale));
+        final Bitmap.Config config = sampled.getConfig() != null
+                ? sampled.getConfig() : Bitmap.Config.ARGB_8888;
+        Bitmap scaled = mBitmapPool.get(width, height, config);
+        if (scaled == null) {
+            scaled = Bitmap.createBitmap(width, height, config);
+        }
+        new Canvas(scaled).drawBitmap(sampled, null, new Rect(0, 0, width, height),
+                new Paint(Paint.FILTER_BITMAP_FLAG));
+
+        // only the scaled bitmap is kept
+        mBitmapPool.put(sampled);
+        mBitmapPool.track(scaled);
+        return scaled;
+    }
+
+    private static int divideRoundingUp(final int value, final int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    /**
+     * @param shortSide  The short side of the image in pixels
+     * @param targetSize The wanted short side in pixels
+     * @return The largest power of two sample size that keeps the short side at least as large
+     * as the target size
+     */
+    private static int calculateSampleSize(final int shortSide, final int targetSize) {
+        int sampleSize = 1;
+        if (targetSize > 0) {
+            while (shortSide / (sampleSize * 2) >= targetSize) {
+                sampleSize *= 2;
+            }
+        }
+        return sampleSize;
+    }
+
     /**
      * flush() is called to synchronize up other methods that are accessing the
      * cache first
      */
     public void flush() {
-        ElevenUtils.execute(new AsyncTask<Void, Void, Void>() {
-
-            @Override
-            protected Void doInBackground(final Void... unused) {
-                if (mDiskCache != null) {
-                    try {
-                        if (!mDiskCache.isClosed()) {
-                            mDiskCache.flush();
-                        }
-                    } catch (final IOException e) {
-                        Log.e(TAG, "flush", e);
+        AppExecutors.get(AppExecutors.Pool.IO).execute(() -> {
+            if (mDiskCache != null) {
+                try {
+                    if (!mDiskCache.isClosed()) {
+                        mDiskCache.flush();
                     }
+                } catch (final IOException e) {
+                    Log.e(TAG, "flush", e);
                 }
-                return null;
             }
         });
     }
@@ -491,23 +772,19 @@ public final class ImageCache {
      * Clears the disk and memory caches
      */
     public void clearCaches() {
-        ElevenUtils.execute(new AsyncTask<Void, Void, Void>() {
-
-            @Override
-            protected Void doInBackground(final Void... unused) {
-                // Clear the disk cache
-                try {
-                    if (mDiskCache != null) {
-                        mDiskCache.delete();
-                        mDiskCache = null;
-                    }
-                } catch (final IOException e) {
-                    Log.e(TAG, "clearCaches", e);
+        AppExecutors.get(AppExecutors.Pool.IO).execute(() -> {
+            // Clear the disk cache
+            mDiskCacheWriter.cancelAll();
+            try {
+                if (mDiskCache != null) {
+                    mDiskCache.delete();
+                    mDiskCache = null;
                 }
-                // Clear the memory cache
-                evictAll();
-                return null;
+            } catch (final IOException e) {
+                Log.e(TAG, "clearCaches", e);
             }
+            // Clear the memory cache
+            evictAll();
         });
     }
 
@@ -517,21 +794,16 @@ public final class ImageCache {
      * thread.
      */
     public void close() {
-        ElevenUtils.execute(new AsyncTask<Void, Void, Void>() {
-
-            @Override
-            protected Void doInBackground(final Void... unused) {
-                if (mDiskCache != null) {
-                    try {
-                        if (!mDiskCache.isClosed()) {
-                            mDiskCache.close();
-                            mDiskCache = null;
-                        }
-                    } catch (final IOException e) {
-                        Log.e(TAG, "close", e);
+        AppExecutors.get(AppExecutors.Pool.IO).execute(() -> {
+            if (mDiskCache != null) {
+                try {
+                    if (!mDiskCache.isClosed()) {
+                        mDiskCache.close();
+                        mDiskCache = null;
                     }
+                } catch (final IOException e) {
+                    Log.e(TAG, "close", e);
                 }
-                return null;
             }
         });
     }
@@ -544,6 +816,9 @@ public final class ImageCache {
         if (mLruCache != null) {
             mLruCache.evictAll();
         }
+        if (mBitmapPool != null) {
+            mBitmapPool.clear();
+        }
         System.gc();
     }
 
@@ -554,20 +829,80 @@ public final class ImageCache {
         if (key == null) {
             return;
         }
-        // Remove the Lru entry
-        if (mLruCache != null) {
-            mLruCache.remove(key);
+
+        for (ImageSize size : ImageSize.values()) {
+            final String sizedKey = getSizedKey(key, size);
+            // Drop the pending write
+            mDiskCacheWriter.cancel(sizedKey);
+            // Remove the Lru entry
+            if (mLruCache != null) {
+                mLruCache.remove(sizedKey);
+            }
+
+            try {
+                // Remove the disk entry
+                if (mDiskCache != null) {
+                    mDiskCache.remove(hashKeyForDisk(sizedKey));
+                }
+            } catch (final IOException e) {
+                Log.e(TAG, "removeFromCache(" + sizedKey + ")", e);
+            }
         }
 
+        // the scrim was rendered from the image
+        final String scrimKey = getScrimKey(key);
+        mDiskCacheWriter.cancel(scrimKey);
+        if (mLruCache != null) {
+            mLruCache.remove(scrimKey);
+        }
         try {
-            // Remove the disk entry
             if (mDiskCache != null) {
-                mDiskCache.remove(hashKeyForDisk(key));
+                mDiskCache.remove(hashKeyForDisk(scrimKey));
             }
         } catch (final IOException e) {
-            Log.e(TAG, "removeFromCache(" + key + ")", e);
+            Log.e(TAG, "removeFromCache(" + scrimKey + ")", e);
         }
         flush();
+
+        removeAlbumColors(key, true);
+    }
+
+    /**
+     * Records the album an artwork is of, so the colors extracted from the artwork are dropped
+     * when it's removed or replaced
+     *
+     * @param key     The key of the artwork
+     * @param albumId The id of the album
+     */
+    public void setAlbumId(final String key, final long albumId) {
+        if (key != null && albumId >= 0) {
+            mAlbumIds.put(key, albumId);
+        }
+    }
+
+    private void removeAlbumColors(final String key, final boolean forget) {
+        final Long albumId = forget ? mAlbumIds.remove(key) : mAlbumIds.get(key);
+        if (albumId != null) {
+            BitmapWithColors.removeColors(mContext, albumId);
+        }
+    }
+
+    /**
+     * @param key  The key of the image
+     * @param size The size of the image
+     * @return The key the image of that size is cached under, full size images use the key
+     * itself
+     */
+    public static String getSizedKey(final String key, final ImageSize size) {
+        return size == ImageSize.FULL ? key : key + "_" + size.name();
+    }
+
+    /**
+     * @param key The key of an image
+     * @return The key the blurred scrim rendered from the image is cached under
+     */
+    public static String getScrimKey(final String key) {
+        return key + "_SCRIM";
     }
 
     /**
@@ -643,6 +978,25 @@ public final class ImageCache {
         return builder.toString();
     }
 
+    /**
+     * The sizes images are decoded and cached at, from the smallest to the largest
+     */
+    public enum ImageSize {
+        /* list rows */
+        THUMBNAIL,
+        /* grid cells, notification and browser icons */
+        GRID,
+        /* the now playing screen */
+        FULL,
+    }
+
+    /**
+     * Decodes an image, with the options deciding whether only the bounds are read
+     */
+    private interface Decoder {
+        Bitmap decode(BitmapFactory.Options options) throws IOException;
+    }
+
     /**
      * A simple non-UI Fragment that stores a single Object and is retained over
      * configuration changes. In this sample it will be used to retain an
@@ -692,25 +1046,46 @@ public final class ImageCache {
      */
     public static final class MemoryCache extends LruCache<String, Bitmap> {
 
+        private final BitmapPool mPool;
+
         /**
          * Constructor of <code>MemoryCache</code>
          *
          * @param maxSize The allowed size of the {@link LruCache}
          */
         public MemoryCache(final int maxSize) {
+            this(maxSize, null);
+        }
+
+        /**
+         * Constructor of <code>MemoryCache</code>
+         *
+         * @param maxSize The allowed size of the {@link LruCache}
+         * @param pool    The pool the removed bitmaps are released to, or null
+         */
+        public MemoryCache(final int maxSize, final BitmapPool pool) {
             super(maxSize);
+            mPool = pool;
         }
 
         /**
          * Get the size in bytes of a bitmap.
          */
         public static int getBitmapSize(final Bitmap bitmap) {
-            return bitmap.getByteCount();
+            return bitmap.getAllocationByteCount();
         }
 
         @Override
         protected int sizeOf(final String paramString, final Bitmap paramBitmap) {
             return getBitmapSize(paramBitmap);
         }
+
+        @Override
+        protected void entryRemoved(final boolean evicted, final String key,
+                                    final Bitmap oldValue, final Bitmap newValue) {
+            if (mPool != null) {
+                mPool.release(oldValue);
+            }
+        }
     }
 }
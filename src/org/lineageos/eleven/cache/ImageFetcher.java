@@ -83,17 +83,19 @@ public class ImageFetcher extends ImageWorker {
      * @param imageView  imageview to load into
      */
     public void loadPlaylistArtistImage(final long playlistId, final ImageView imageView) {
-        loadPlaylistImage(playlistId, PlaylistWorkerType.Artist, imageView);
+        loadPlaylistImage(playlistId, -1, PlaylistWorkerType.Artist, imageView);
     }
 
     /**
      * Loads a playlist's most played songs into a combined image, or show 1 if not enough images
      *
      * @param playlistId id of the playlist
+     * @param songCount  # of songs in the playlist, or -1 if it isn't known
      * @param imageView  imageview to load into
      */
-    public void loadPlaylistCoverArtImage(final long playlistId, final ImageView imageView) {
-        loadPlaylistImage(playlistId, PlaylistWorkerType.CoverArt, imageView);
+    public void loadPlaylistCoverArtImage(final long playlistId, final int songCount,
+                                          final ImageView imageView) {
+        loadPlaylistImage(playlistId, songCount, PlaylistWorkerType.CoverArt, imageView);
     }
 
     /**
@@ -110,7 +112,8 @@ public class ImageFetcher extends ImageWorker {
      */
     public void loadCurrentArtwork(final ImageView imageView) {
         loadImage(getCurrentCacheKey(), MusicUtils.getArtistName(), MusicUtils.getAlbumName(),
-                MusicUtils.getCurrentAlbumId(), imageView, ImageType.ALBUM);
+                MusicUtils.getCurrentAlbumId(), imageView, ImageType.ALBUM, false,
+                ImageCache.ImageSize.FULL, DecodeScheduler.Priority.NOW_PLAYING);
     }
 
     public void updateScrimImage(final AlbumScrimImage image,
@@ -185,32 +188,32 @@ public class ImageFetcher extends ImageWorker {
      *
      * @param albumName  The name of the current album
      * @param albumId    The ID of the current album
-     * @param smallArtwork Get the small version of the default artwork if no artwork exists
+     * @param smallArtwork Get the small version of the artwork, and of the default artwork if no
+     *                     artwork exists
      * @return The album art as an {@link Bitmap}
      */
     public BitmapWithColors getArtwork(final String albumName, final long albumId,
                                        boolean smallArtwork) {
         final String key = String.valueOf(albumId);
-        final Bitmap artwork = getArtworkBitmap(albumName, albumId);
+        final Bitmap artwork = getArtworkBitmap(albumName, albumId,
+                smallArtwork ? ImageCache.ImageSize.GRID : ImageCache.ImageSize.FULL);
         if (artwork != null) {
-            return new BitmapWithColors(artwork, key.hashCode());
+            return new BitmapWithColors(mContext, artwork, albumId);
         }
 
         return LetterTileDrawable.createDefaultBitmap(mContext, key, ImageType.ALBUM, false,
                 smallArtwork);
     }
 
-    public Bitmap getArtworkBitmap(final String albumName, final long albumId) {
-        final String key = String.valueOf(albumId);
-        Bitmap artwork = null;
-
-        if (albumName != null && mImageCache != null) {
-            artwork = mImageCache.getBitmapFromDiskCache(key);
-        }
-        if (artwork == null && albumId >= 0 && mImageCache != null) {
-            artwork = mImageCache.getArtworkFromFile(mContext, albumId);
+    public Bitmap getArtworkBitmap(final String albumName, final long albumId,
+                                   final ImageCache.ImageSize size) {
+        // decoded once, then served from the caches
+        final Bitmap artwork = ArtworkResolver.getInstance(mContext).getArtwork(
+                String.valueOf(albumId), albumId, size);
+        if (mImageCache != null) {
+            // the callers hold on to it for as long as they like
+            mImageCache.getBitmapPool().pin(artwork);
         }
-
         return artwork;
     }
 
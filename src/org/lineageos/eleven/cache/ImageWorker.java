@@ -30,7 +30,6 @@ import android.widget.ImageView;
 
 import org.lineageos.eleven.cache.PlaylistWorkerTask.PlaylistWorkerType;
 import org.lineageos.eleven.provider.PlaylistArtworkStore;
-import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.ImageUtils;
 import org.lineageos.eleven.widgets.AlbumScrimImage;
 import org.lineageos.eleven.widgets.LetterTileDrawable;
@@ -39,7 +38,7 @@ import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.concurrent.RejectedExecutionException;
+import java.util.WeakHashMap;
 
 /**
  * This class wraps up completing some arbitrary long running work when loading
@@ -55,6 +54,11 @@ public abstract class ImageWorker {
      */
     public static final Set<String> sKeys = Collections.synchronizedSet(new HashSet<>());
 
+    /**
+     * The bitmap each view shows, only used from the main thread
+     */
+    private static final WeakHashMap<View, Bitmap> sDisplayedBitmaps = new WeakHashMap<>();
+
     /**
      * Default transition drawable fade time
      */
@@ -65,6 +69,11 @@ public abstract class ImageWorker {
      */
     public static final int FADE_IN_TIME_SLOW = 1000;
 
+    /**
+     * Prefix of the keys of the tasks loading a playlist's cover art
+     */
+    private static final String PLAYLIST_COVER_TASK_KEY = "playlist_cover_task_";
+
     /**
      * First layer of the transition drawable
      */
@@ -145,26 +154,28 @@ public abstract class ImageWorker {
         return letterTileDrawable;
     }
 
+    /**
+     * Gets an image through the caches, held for the caller which must release it to the
+     * {@link BitmapPool} once it doesn't use it anymore
+     */
     public static Bitmap getBitmapInBackground(final Context context, final ImageCache imageCache,
                                                final String key, final long albumId,
-                                               final ImageType imageType) {
+                                               final ImageType imageType,
+                                               final ImageCache.ImageSize imageSize) {
         // The result
         Bitmap bitmap = null;
 
-        // First, check the disk cache for the image
-        if (key != null && imageCache != null) {
-            bitmap = imageCache.getCachedBitmap(key);
-        }
-
-        // Second, if we're fetching artwork, check the device for the image
-        if (bitmap == null && imageType.equals(ImageType.ALBUM) && albumId >= 0
-                && key != null && imageCache != null) {
-            bitmap = imageCache.getCachedArtwork(context, key, albumId);
-        }
+        if (imageType.equals(ImageType.ALBUM) && albumId >= 0 && context != null) {
+            // Artwork goes through the caches and then the device, and is cached on the way
+            bitmap = ArtworkResolver.getInstance(context).getArtwork(key, albumId, imageSize);
+        } else if (key != null && imageCache != null) {
+            // Otherwise, check the disk cache for the image
+            bitmap = imageCache.acquireCachedBitmap(key, imageSize);
 
-        // Finally, add the new image to the cache
-        if (bitmap != null) {
-            imageCache.addBitmapToCache(key, bitmap);
+            // Finally, add the new image to the cache
+            if (bitmap != null) {
+                imageCache.addBitmapToCache(key, imageSize, bitmap);
+            }
         }
 
         sKeys.add(key);
@@ -172,6 +183,27 @@ public abstract class ImageWorker {
         return bitmap;
     }
 
+    /**
+     * Records the bitmap a view now shows so the one it showed before can be reused once
+     * nothing else holds it.  This must be called from the main thread
+     *
+     * @param imageCache The cache the bitmaps come from
+     * @param view       The view
+     * @param bitmap     The bitmap the view shows, or null if it doesn't show one anymore
+     */
+    public static void setDisplayedBitmap(final ImageCache imageCache, final View view,
+                                          final Bitmap bitmap) {
+        final BitmapPool pool = imageCache.getBitmapPool();
+        final Bitmap previous;
+        if (bitmap != null) {
+            pool.acquire(bitmap);
+            previous = sDisplayedBitmaps.put(view, bitmap);
+        } else {
+            previous = sDisplayedBitmaps.remove(view);
+        }
+        pool.release(previous);
+    }
+
     /**
      * Parses the drawable for instances of TransitionDrawable and breaks them open until it finds
      * a drawable that isn't a transition drawable
@@ -265,13 +297,16 @@ public abstract class ImageWorker {
      * @param image ImageView/BlurScrimImage to check
      */
     public static void cancelWork(final View image) {
+        if (image == null) {
+            return;
+        }
         Object tag = image.getTag();
         if (tag instanceof AsyncTaskContainer) {
             AsyncTaskContainer asyncTaskContainer = (AsyncTaskContainer) tag;
-            BitmapWorkerTask<?, ?, ?> bitmapWorkerTask =
+            BitmapWorkerTask<?, ?> bitmapWorkerTask =
                     asyncTaskContainer.getBitmapWorkerTask();
             if (bitmapWorkerTask != null) {
-                bitmapWorkerTask.cancel(false);
+                bitmapWorkerTask.cancel();
             }
 
             // clear out the tag
@@ -344,7 +379,7 @@ public abstract class ImageWorker {
      */
     public static final class AsyncTaskContainer {
 
-        private final WeakReference<BitmapWorkerTask<?, ?, ?>> mBitmapWorkerTaskReference;
+        private final WeakReference<BitmapWorkerTask<?, ?>> mBitmapWorkerTaskReference;
         // keep a copy of the key in case the worker task mBitmapWorkerTaskReference is released
         // after completion
         private final String mKey;
@@ -352,7 +387,7 @@ public abstract class ImageWorker {
         /**
          * Constructor of <code>AsyncDrawable</code>
          */
-        public AsyncTaskContainer(final BitmapWorkerTask<?, ?, ?> bitmapWorkerTask) {
+        public AsyncTaskContainer(final BitmapWorkerTask<?, ?> bitmapWorkerTask) {
             mBitmapWorkerTaskReference = new WeakReference<>(bitmapWorkerTask);
             mKey = bitmapWorkerTask.mKey;
         }
@@ -360,7 +395,7 @@ public abstract class ImageWorker {
         /**
          * @return The {@link BitmapWorkerTask} associated with this drawable
          */
-        public BitmapWorkerTask<?, ?, ?> getBitmapWorkerTask() {
+        public BitmapWorkerTask<?, ?> getBitmapWorkerTask() {
             return mBitmapWorkerTaskReference.get();
         }
 
@@ -378,6 +413,10 @@ public abstract class ImageWorker {
     public void loadDefaultImage(final ImageView imageView, final ImageType imageType,
                                  final String name, final String identifier) {
         if (imageView != null) {
+            if (mImageCache != null) {
+                setDisplayedBitmap(mImageCache, imageView, null);
+            }
+
             // if an existing letter drawable exists, re-use it
             Drawable existingDrawable = imageView.getDrawable();
             if (existingDrawable instanceof LetterTileDrawable) {
@@ -424,19 +463,46 @@ public abstract class ImageWorker {
     protected void loadImage(final String key, final String artistName, final String albumName,
                              final long albumId, final ImageView imageView,
                              final ImageType imageType, final boolean scaleImgToView) {
+        if (mImageCache == null || imageView == null) {
+            return;
+        }
+        loadImage(key, artistName, albumName, albumId, imageView, imageType, scaleImgToView,
+                mImageCache.getImageSize(imageView), DecodeScheduler.Priority.VISIBLE);
+    }
+
+    /**
+     * Called to fetch the artist or album art.
+     *
+     * @param key            The unique identifier for the image.
+     * @param artistName     The artist name for the Last.fm API.
+     * @param albumName      The album name for the Last.fm API.
+     * @param albumId        The album art index, to check for missing artwork.
+     * @param imageView      The {@link ImageView} used to set the cached
+     *                       {@link Bitmap}.
+     * @param imageType      The type of image URL to fetch for.
+     * @param scaleImgToView config option to scale the image to the image view's dimensions
+     * @param imageSize      The size to decode the image at
+     * @param priority       The priority of the decode
+     */
+    protected void loadImage(final String key, final String artistName, final String albumName,
+                             final long albumId, final ImageView imageView,
+                             final ImageType imageType, final boolean scaleImgToView,
+                             final ImageCache.ImageSize imageSize,
+                             final DecodeScheduler.Priority priority) {
         if (key == null || mImageCache == null || imageView == null) {
             return;
         }
 
         // First, check the memory for the image
-        final Bitmap lruBitmap = mImageCache.getBitmapFromMemCache(key);
+        final Bitmap lruBitmap = mImageCache.acquireFromMemCache(key, imageSize);
         if (lruBitmap != null) {   // Bitmap found in memory cache
             // scale image if necessary
-            if (scaleImgToView) {
-                imageView.setImageBitmap(ImageUtils.scaleBitmapForImageView(lruBitmap, imageView));
-            } else {
-                imageView.setImageBitmap(lruBitmap);
-            }
+            final Bitmap bitmap = scaleImgToView ? ImageUtils.scaleBitmapForImageView(lruBitmap,
+                    imageView, mImageCache.getBitmapPool()) : lruBitmap;
+            setDisplayedBitmap(mImageCache, imageView, bitmap);
+            imageView.setImageBitmap(bitmap);
+            // the view holds it now
+            mImageCache.getBitmapPool().release(lruBitmap);
         } else {
             // load the default image
             if (imageType == ImageType.ARTIST) {
@@ -458,16 +524,15 @@ public abstract class ImageWorker {
 
                 // Otherwise run the worker task
                 final SimpleBitmapWorkerTask bitmapWorkerTask = new SimpleBitmapWorkerTask(key,
-                        imageView, imageType, fromDrawable, mContext, scaleImgToView);
+                        imageView, imageType, imageSize, fromDrawable, mContext, scaleImgToView);
 
                 final AsyncTaskContainer asyncTaskContainer =
                         new AsyncTaskContainer(bitmapWorkerTask);
                 imageView.setTag(asyncTaskContainer);
-                try {
-                    ElevenUtils.execute(bitmapWorkerTask,
-                            artistName, albumName, String.valueOf(albumId));
-                } catch (RejectedExecutionException e) {
-                    // Executor has exhausted queue space
+                if (!bitmapWorkerTask.execute(priority,
+                        artistName, albumName, String.valueOf(albumId))) {
+                    // the scheduler has too much queued work already
+                    imageView.setTag(null);
                 }
             }
         }
@@ -475,42 +540,68 @@ public abstract class ImageWorker {
 
 
     /**
-     * Called to fetch a playlist's top artist or cover art
+     * Called to fetch a playlist's top artist or cover art.  When the caller knows the # of songs
+     * in the playlist and the image is current, this doesn't start any work
      *
      * @param playlistId playlist identifier
+     * @param songCount  the # of songs in the playlist, or -1 if it isn't known
      * @param type       of work to get (Artist or CoverArt)
      * @param imageView  to set the image to
      */
-    public void loadPlaylistImage(final long playlistId, final PlaylistWorkerType type,
-                                  final ImageView imageView) {
+    public void loadPlaylistImage(final long playlistId, final int songCount,
+                                  final PlaylistWorkerType type, final ImageView imageView) {
         if (mImageCache == null || imageView == null) {
             return;
         }
 
+        // the store is loaded along with the playlists, until then the worker looks it up
+        final PlaylistArtworkStore store = PlaylistArtworkStore.getInstance(mContext);
+        final boolean storeLoaded = store.isLoaded();
+
+        // the cover art is keyed by its albums so the task is keyed by the playlist instead
         String key = null;
+        String taskKey = null;
         switch (type) {
             case Artist:
                 key = PlaylistArtworkStore.getArtistCacheKey(playlistId);
+                taskKey = key;
                 break;
             case CoverArt:
-                key = PlaylistArtworkStore.getCoverCacheKey(playlistId);
+                key = storeLoaded ? store.getCoverCacheKeyForPlaylist(playlistId) : null;
+                taskKey = PLAYLIST_COVER_TASK_KEY + playlistId;
                 break;
         }
 
         // First, check the memory for the image
-        final Bitmap lruBitmap = mImageCache.getBitmapFromMemCache(key);
+        final Bitmap lruBitmap = key != null ? mImageCache.acquireFromMemCache(key) : null;
         if (lruBitmap != null) {
             // Bitmap found in memory cache
+            setDisplayedBitmap(mImageCache, imageView, lruBitmap);
             imageView.setImageBitmap(lruBitmap);
+            // the view holds it now
+            mImageCache.getBitmapPool().release(lruBitmap);
         } else {
             // load the default image
             loadDefaultImage(imageView, ImageType.PLAYLIST, null, String.valueOf(playlistId));
         }
 
+        // if the playlist didn't change since the image was made and the image is shown, or
+        // there is none, there is nothing left to do
+        if (storeLoaded && songCount >= 0 && (lruBitmap != null || (key == null
+                && type == PlaylistWorkerType.CoverArt))) {
+            final boolean needsUpdate = type == PlaylistWorkerType.Artist
+                    ? store.needsArtistArtUpdate(playlistId, songCount)
+                    : store.needsCoverArtUpdate(playlistId, songCount);
+            if (!needsUpdate) {
+                cancelWork(imageView);
+                return;
+            }
+        }
+
         // even though we may have found the image in the cache, we want to check if the playlist
         // has been updated, or it's been too long since the last update and change the image
         // accordingly
-        if (executePotentialWork(key, imageView)) {
+        if (executePotentialWork(taskKey, imageView)) {
             // since a playlist's image can change based on changes to the playlist
             // set the from drawable to be the existing image (if it exists) instead of transparent
             // and fade from there
@@ -520,15 +611,12 @@ public abstract class ImageWorker {
             }
 
             // Otherwise run the worker task
-            final PlaylistWorkerTask bitmapWorkerTask = new PlaylistWorkerTask(key, playlistId,
-                    type, lruBitmap != null, imageView, fromDrawable, mContext);
+            final PlaylistWorkerTask bitmapWorkerTask = new PlaylistWorkerTask(taskKey,
+                    playlistId, songCount, type, lruBitmap != null, imageView, fromDrawable,
+                    mContext);
             final AsyncTaskContainer asyncTaskContainer = new AsyncTaskContainer(bitmapWorkerTask);
             imageView.setTag(asyncTaskContainer);
-            try {
-                ElevenUtils.execute(bitmapWorkerTask);
-            } catch (RejectedExecutionException e) {
-                // Executor has exhausted queue space
-            }
+            bitmapWorkerTask.execute(DecodeScheduler.Priority.VISIBLE);
         }
     }
 
@@ -551,17 +639,13 @@ public abstract class ImageWorker {
         if (executePotentialWork(key, albumScrimImage)) {
             // Otherwise run the worker task
             final BlurBitmapWorkerTask blurWorkerTask = new BlurBitmapWorkerTask(key,
-                    albumScrimImage, ImageType.ALBUM, mTransparentDrawable, mContext);
+                    albumScrimImage, ImageType.ALBUM, ImageCache.ImageSize.GRID,
+                    mTransparentDrawable, mContext);
             final AsyncTaskContainer asyncTaskContainer = new AsyncTaskContainer(blurWorkerTask);
             albumScrimImage.setTag(asyncTaskContainer);
 
-            try {
-                ElevenUtils.execute(blurWorkerTask, artistName, albumName,
-                        String.valueOf(albumId));
-            } catch (RejectedExecutionException e) {
-                // Executor has exhausted queue space, show default artwork
-                albumScrimImage.transitionToDefaultState();
-            }
+            blurWorkerTask.execute(DecodeScheduler.Priority.NOW_PLAYING, artistName, albumName,
+                    String.valueOf(albumId));
         }
     }
 
@@ -17,7 +17,7 @@
 package org.lineageos.eleven.cache;
 
 // NOTE: upstream of this class is android.util.LruCache, changes below
-// expose trimToSize() to be called externally.
+// expose trimToSize() to be called externally and report removed entries.
 
 import android.annotation.SuppressLint;
 
@@ -108,6 +108,10 @@ public class LruCache<K, V> {
             }
         }
 
+        if (previous != null) {
+            entryRemoved(false, key, previous, value);
+        }
+
         trimToSize(maxSize);
         return previous;
     }
@@ -136,6 +140,8 @@ public class LruCache<K, V> {
                 this.map.remove(key);
                 this.size -= safeSizeOf(key, value);
             }
+
+            entryRemoved(true, key, value, null);
         }
     }
 
@@ -158,9 +164,32 @@ public class LruCache<K, V> {
             }
         }
 
+        if (previous != null) {
+            entryRemoved(false, key, previous, null);
+        }
+
         return previous;
     }
 
+    /**
+     * Called for entries that have been evicted or removed. This method is
+     * invoked when a value is evicted to make space, removed by a call to
+     * {@link #remove}, or replaced by a call to {@link #put}. The default
+     * implementation does nothing.
+     * <p>
+     * The method is called without synchronization: other threads may
+     * access the cache while this method is executing.
+     *
+     * @param evicted  true if the entry is being removed to make space, false
+     *                 if the removal was caused by a {@link #put} or {@link #remove}.
+     * @param newValue the new value for {@code key}, if it exists. If non-null,
+     *                 this removal was caused by a {@link #put}. Otherwise it was caused by
+     *                 an eviction or a {@link #remove}.
+     */
+    protected void entryRemoved(final boolean evicted, final K key, final V oldValue,
+                                final V newValue) {
+    }
+
     private int safeSizeOf(final K key, final V value) {
         final int result = sizeOf(key, value);
         if (result < 0) {
@@ -187,6 +216,15 @@ public class LruCache<K, V> {
         trimToSize(-1); // -1 will evict 0-sized elements
     }
 
+    /**
+     * For caches that do not override {@link #sizeOf}, this returns the maximum
+     * number of entries in the cache. For all other caches, this returns the
+     * maximum sum of the sizes of the entries in this cache.
+     */
+    public final int maxSize() {
+        return this.maxSize;
+    }
+
     /**
      * For caches that do not override {@link #sizeOf}, this returns the number
      * of entries in the cache. For all other caches, this returns the sum of
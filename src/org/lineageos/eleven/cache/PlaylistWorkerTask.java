@@ -20,6 +20,7 @@ import android.content.Context;
 import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.TransitionDrawable;
@@ -31,6 +32,7 @@ import org.lineageos.eleven.loaders.PlaylistSongLoader;
 import org.lineageos.eleven.loaders.SortedCursor;
 import org.lineageos.eleven.provider.PlaylistArtworkStore;
 import org.lineageos.eleven.provider.SongPlayCount;
+import org.lineageos.eleven.utils.MusicUtils;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -39,9 +41,10 @@ import java.util.HashSet;
  * The playlistWorkerTask will load either the top artist image or the cover art (a combination of
  * up to 4 of the top song's album images) into the designated ImageView.  If not enough time has
  * elapsed since the last update or if the # of songs in the playlist hasn't changed, no new images
- * will be loaded.
+ * will be loaded.  Even then the cover art is only made again if the albums on top of the
+ * playlist changed, since it's cached under a fingerprint of those albums.
  */
-public class PlaylistWorkerTask extends BitmapWorkerTask<Void, Void, TransitionDrawable> {
+public class PlaylistWorkerTask extends BitmapWorkerTask<Void, TransitionDrawable> {
     // the work type
     public enum PlaylistWorkerType {
         Artist, CoverArt
@@ -54,6 +57,9 @@ public class PlaylistWorkerTask extends BitmapWorkerTask<Void, Void, TransitionD
     protected final PlaylistArtworkStore mPlaylistStore;
     protected final PlaylistWorkerType mWorkerType;
 
+    // the # of songs in the playlist, or -1 if the caller doesn't know it
+    protected int mSongCount;
+
     // if we've found it in the cache, don't do any more logic unless enough time has elapsed or
     // if the playlist has changed
     protected final boolean mFoundInCache;
@@ -64,20 +70,23 @@ public class PlaylistWorkerTask extends BitmapWorkerTask<Void, Void, TransitionD
     /**
      * Constructor of <code>PlaylistWorkerTask</code>
      *
-     * @param key          the key of the image to store to
+     * @param key          the key of the task, the artist image is stored to it
      * @param playlistId   the playlist identifier
+     * @param songCount    the # of songs in the playlist, or -1 to count them
      * @param type         Artist or CoverArt?
      * @param foundInCache does this exist in the memory cache already
      * @param imageView    The {@link ImageView} to use.
      * @param fromDrawable what drawable to transition from
      */
-    public PlaylistWorkerTask(final String key, final long playlistId,
+    public PlaylistWorkerTask(final String key, final long playlistId, final int songCount,
                               final PlaylistWorkerType type, final boolean foundInCache,
                               final ImageView imageView, final Drawable fromDrawable,
                               final Context context) {
-        super(key, imageView, ImageType.PLAYLIST, fromDrawable, context);
+        super(key, imageView, ImageType.PLAYLIST, ImageCache.ImageSize.GRID, fromDrawable,
+                context);
 
         mPlaylistId = playlistId;
+        mSongCount = songCount;
         mWorkerType = type;
         mPlaylistStore = PlaylistArtworkStore.getInstance(mContext.get());
         mFoundInCache = foundInCache;
@@ -90,15 +99,19 @@ public class PlaylistWorkerTask extends BitmapWorkerTask<Void, Void, TransitionD
             return null;
         }
 
+        if (mSongCount < 0) {
+            mSongCount = MusicUtils.getSongCountForPlaylist(mContext.get(), mPlaylistId);
+        }
+
         Bitmap bitmap = null;
 
         // See if we need to update the image
         boolean needsUpdate = false;
         if (mWorkerType == PlaylistWorkerType.Artist
-                && mPlaylistStore.needsArtistArtUpdate(mPlaylistId)) {
+                && mPlaylistStore.needsArtistArtUpdate(mPlaylistId, mSongCount)) {
             needsUpdate = true;
         } else if (mWorkerType == PlaylistWorkerType.CoverArt
-                && mPlaylistStore.needsCoverArtUpdate(mPlaylistId)) {
+                && mPlaylistStore.needsCoverArtUpdate(mPlaylistId, mSongCount)) {
             needsUpdate = true;
         }
 
@@ -107,9 +120,13 @@ public class PlaylistWorkerTask extends BitmapWorkerTask<Void, Void, TransitionD
             return null;
         }
 
+        final String key = getImageKey();
+
         // if we didn't find it in memory cache, try the disk cache
         if (!mFoundInCache) {
-            bitmap = mImageCache.getCachedBitmap(mKey);
+            bitmap = mImageCache.acquireCachedBitmap(key);
+            // the playlist image is shown without being tracked, it's held until then
+            mImageCache.getBitmapPool().pin(bitmap);
         }
 
         // if we don't need an update, return something
@@ -117,10 +134,11 @@ public class PlaylistWorkerTask extends BitmapWorkerTask<Void, Void, TransitionD
             if (bitmap != null) {
                 // if we found a bitmap, return it
                 return createImageTransitionDrawable(bitmap);
-            } else {
+            } else if (key == null || mWorkerType == PlaylistWorkerType.Artist) {
                 // otherwise return null since we don't need an update
                 return null;
             }
+            // the cover art was evicted from the caches, make it again
         }
 
         // otherwise re-run the logic to get the bitmap
@@ -136,23 +154,21 @@ public class PlaylistWorkerTask extends BitmapWorkerTask<Void, Void, TransitionD
                 // and reset to the default art
                 if (mWorkerType == PlaylistWorkerType.Artist) {
                     // update the timestamp
-                    mPlaylistStore.updateArtistArt(mPlaylistId);
+                    mPlaylistStore.updateArtistArt(mPlaylistId, mSongCount);
                     // remove the cached image
                     mImageCache.removeFromCache(
                             PlaylistArtworkStore.getArtistCacheKey(mPlaylistId));
                 } else {
-                    // update the timestamp
-                    mPlaylistStore.updateCoverArt(mPlaylistId);
-                    // remove the cached image
-                    mImageCache.removeFromCache(
-                            PlaylistArtworkStore.getCoverCacheKey(mPlaylistId));
+                    // update the timestamp, the cover art may be shared so it's left cached
+                    mPlaylistStore.updateCoverArt(mPlaylistId, mSongCount,
+                            PlaylistArtworkStore.NO_FINGERPRINT, 0);
                 }
                 // revert back to default image
                 mFallbackToDefaultImage = true;
             } else if (mWorkerType == PlaylistWorkerType.Artist) {
                 bitmap = loadTopArtist(sortedCursor);
             } else {
-                bitmap = loadTopSongs(sortedCursor);
+                bitmap = loadTopSongs(sortedCursor, bitmap);
             }
         }
 
@@ -164,6 +180,14 @@ public class PlaylistWorkerTask extends BitmapWorkerTask<Void, Void, TransitionD
         return null;
     }
 
+    /**
+     * @return the key the image is cached under, null if the playlist has no cover art
+     */
+    private String getImageKey() {
+        return mWorkerType == PlaylistWorkerType.Artist ? mKey
+                : mPlaylistStore.getCoverCacheKeyForPlaylist(mPlaylistId);
+    }
+
     /**
      * This gets the sorted cursor of the songs from a playlist based on play count
      *
@@ -237,15 +261,18 @@ public class PlaylistWorkerTask extends BitmapWorkerTask<Void, Void, TransitionD
             artistName = sortedCursor.getString(artistIndex);
             // try to load the bitmap
             bitmap = ImageWorker.getBitmapInBackground(mContext.get(), mImageCache, artistName,
-                    -1, ImageType.ARTIST);
+                    -1, ImageType.ARTIST, mImageSize);
         } while (sortedCursor.moveToNext() && bitmap == null);
 
         if (bitmap == null) {
             // if we can't find any artist images, try loading the top songs image
-            bitmap = mImageCache.getCachedBitmap(
-                    PlaylistArtworkStore.getCoverCacheKey(mPlaylistId));
+            bitmap = mImageCache.acquireCachedBitmap(
+                    mPlaylistStore.getCoverCacheKeyForPlaylist(mPlaylistId));
         }
 
+        // the artist image becomes the playlist image, which is shown without being tracked
+        mImageCache.getBitmapPool().pin(bitmap);
+
         if (bitmap != null) {
             // add the image to the cache
             mImageCache.addBitmapToCache(mKey, bitmap, true);
@@ -255,109 +282,158 @@ public class PlaylistWorkerTask extends BitmapWorkerTask<Void, Void, TransitionD
         }
 
         // store the fact that we ran this code into the db to prevent multiple re-runs
-        mPlaylistStore.updateArtistArt(mPlaylistId);
+        mPlaylistStore.updateArtistArt(mPlaylistId, mSongCount);
 
         return bitmap;
     }
 
     /**
-     * Gets the Cover Art of the playlist, which is a combination of the top song's album image
+     * Gets the Cover Art of the playlist, which is a combination of the top song's album image.
+     * The albums are looked at in order and the ids of those looked at make the fingerprint the
+     * cover art is cached under, so if the same albums are still on top the cached cover art is
+     * used as is.  Otherwise it's composited at the size it's shown at from album images of the
+     * smallest size that covers a quarter of it.
      *
-     * @param sortedCursor the sorted playlist song cursor
-     * @return Bitmap of the artist
+     * @param sortedCursor  the sorted playlist song cursor
+     * @param currentBitmap the cover art found in the cache, if any
+     * @return Bitmap of the cover art, null if it didn't change
      */
-    protected Bitmap loadTopSongs(Cursor sortedCursor) {
+    protected Bitmap loadTopSongs(Cursor sortedCursor, final Bitmap currentBitmap) {
         if (sortedCursor == null || !sortedCursor.moveToFirst()) {
             return null;
         }
 
-        ArrayList<Bitmap> loadedBitmaps = new ArrayList<>(MAX_NUM_BITMAPS_TO_LOAD);
-
         final int artistIdx = sortedCursor.getColumnIndex(MediaStore.Audio.AudioColumns.ARTIST);
         final int albumIdIdx = sortedCursor.getColumnIndex(MediaStore.Audio.AudioColumns.ALBUM_ID);
         final int albumIdx = sortedCursor.getColumnIndex(MediaStore.Audio.AudioColumns.ALBUM);
 
-        Bitmap bitmap = null;
-        String artistName;
-        String albumName;
-        long albumId;
+        // the albums of the top songs in order, without loading images from the same album
+        // multiple times
+        final int songCount = sortedCursor.getCount();
+        final long[] albumIds = new long[songCount];
+        final String[] albumKeys = new String[songCount];
+        final HashSet<String> keys = new HashSet<>(songCount);
+        int albumCount = 0;
+        do {
+            final String key = ImageFetcher.generateAlbumCacheKey(
+                    sortedCursor.getString(albumIdx), sortedCursor.getString(artistIdx));
+            // if we successfully added the key (ie the key didn't previously exist)
+            if (keys.add(key)) {
+                albumIds[albumCount] = sortedCursor.getLong(albumIdIdx);
+                albumKeys[albumCount] = key;
+                albumCount++;
+            }
+        } while (sortedCursor.moveToNext());
+
+        // if the albums the cover art was made of are still on top, it didn't change
+        final long lastFingerprint = mPlaylistStore.getCoverFingerprint(mPlaylistId);
+        final int lastAlbumCount = mPlaylistStore.getCoverAlbumCount(mPlaylistId);
+        if (lastFingerprint != PlaylistArtworkStore.NO_FINGERPRINT
+                && (mFoundInCache || currentBitmap != null)
+                && lastAlbumCount <= albumCount
+                && PlaylistArtworkStore.getFingerprint(albumIds, lastAlbumCount)
+                == lastFingerprint) {
+            mPlaylistStore.updateCoverArt(mPlaylistId, mSongCount, lastFingerprint,
+                    lastAlbumCount);
+            return currentBitmap;
+        }
 
-        // create a hashset of the keys so we don't load images from the same album multiple times
-        HashSet<String> keys = new HashSet<>(sortedCursor.getCount());
+        // the collage is made at the size it's shown at, each album takes a quarter of it
+        final int size = mImageCache.getTargetSize(mImageSize);
+        final int half = size / 2;
+        final ImageCache.ImageSize tileSize = mImageCache.getImageSize(half);
 
-        do {
+        final BitmapPool pool = mImageCache.getBitmapPool();
+        final ArrayList<Bitmap> loadedBitmaps = new ArrayList<>(MAX_NUM_BITMAPS_TO_LOAD);
+        int firstLoaded = -1;
+        int considered = 0;
+        while (considered < albumCount && loadedBitmaps.size() < MAX_NUM_BITMAPS_TO_LOAD) {
             if (isCancelled()) {
+                releaseAll(pool, loadedBitmaps);
                 return null;
             }
 
-            artistName = sortedCursor.getString(artistIdx);
-            albumName = sortedCursor.getString(albumIdx);
-            albumId = sortedCursor.getLong(albumIdIdx);
+            // try to load the image, it's held so it isn't reused until it's drawn
+            final Bitmap bitmap = ImageWorker.getBitmapInBackground(mContext.get(), mImageCache,
+                    albumKeys[considered], albumIds[considered], ImageType.ALBUM, tileSize);
 
-            String key = ImageFetcher.generateAlbumCacheKey(albumName, artistName);
-
-            // if we successfully added the key (ie the key didn't previously exist)
-            if (keys.add(key)) {
-                // try to load the bitmap
-                bitmap = ImageWorker.getBitmapInBackground(mContext.get(), mImageCache,
-                        key, albumId, ImageType.ALBUM);
-
-                // if we got the bitmap, add it to the list
-                if (bitmap != null) {
-                    loadedBitmaps.add(bitmap);
-                    bitmap = null;
+            // if we got the bitmap, add it to the list
+            if (bitmap != null) {
+                loadedBitmaps.add(bitmap);
+                if (firstLoaded < 0) {
+                    firstLoaded = considered;
                 }
             }
-        } while (sortedCursor.moveToNext() && loadedBitmaps.size() < MAX_NUM_BITMAPS_TO_LOAD);
-
-        // if we found at least 1 bitmap
-        if (loadedBitmaps.size() > 0) {
-            // get the first bitmap
-            bitmap = loadedBitmaps.get(0);
-
-            // if we have many bitmaps
-            if (loadedBitmaps.size() == MAX_NUM_BITMAPS_TO_LOAD) {
-                // create a combined bitmap of the 4 images
-                final int width = bitmap.getWidth();
-                final int height = bitmap.getHeight();
-                Bitmap combinedBitmap = Bitmap.createBitmap(width, height,
-                        bitmap.getConfig());
-                Canvas combinedCanvas = new Canvas(combinedBitmap);
-
-                // top left
-                combinedCanvas.drawBitmap(loadedBitmaps.get(0), null,
-                        new Rect(0, 0, width / 2, height / 2), null);
-
-                // top right
-                combinedCanvas.drawBitmap(loadedBitmaps.get(1), null,
-                        new Rect(width / 2, 0, width, height / 2), null);
-
-                // bottom left
-                combinedCanvas.drawBitmap(loadedBitmaps.get(2), null,
-                        new Rect(0, height / 2, width / 2, height), null);
-
-                // bottom right
-                combinedCanvas.drawBitmap(loadedBitmaps.get(3), null,
-                        new Rect(width / 2, height / 2, width, height), null);
-
-                bitmap = combinedBitmap;
+            considered++;
+        }
+
+        Bitmap bitmap = null;
+        DiskCacheWriter.ImageClass imageClass = DiskCacheWriter.ImageClass.ARTWORK;
+
+        // if we have many bitmaps
+        if (loadedBitmaps.size() == MAX_NUM_BITMAPS_TO_LOAD) {
+            // create a combined bitmap of the 4 images
+            bitmap = pool.get(size, size, Bitmap.Config.ARGB_8888);
+            if (bitmap == null) {
+                bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
             }
+            final Canvas combinedCanvas = new Canvas(bitmap);
+            final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+            // top left
+            combinedCanvas.drawBitmap(loadedBitmaps.get(0), null,
+                    new Rect(0, 0, half, half), paint);
+
+            // top right
+            combinedCanvas.drawBitmap(loadedBitmaps.get(1), null,
+                    new Rect(half, 0, size, half), paint);
+
+            // bottom left
+            combinedCanvas.drawBitmap(loadedBitmaps.get(2), null,
+                    new Rect(0, half, half, size), paint);
+
+            // bottom right
+            combinedCanvas.drawBitmap(loadedBitmaps.get(3), null,
+                    new Rect(half, half, size, size), paint);
+
+            imageClass = DiskCacheWriter.ImageClass.COLLAGE;
+        } else if (firstLoaded >= 0 && !isCancelled()) {
+            // a single album image becomes the playlist image, the tile may be too small
+            bitmap = ImageWorker.getBitmapInBackground(mContext.get(), mImageCache,
+                    albumKeys[firstLoaded], albumIds[firstLoaded], ImageType.ALBUM,
+                    mImageSize);
+            pool.pin(bitmap);
         }
 
-        // store the fact that we ran this code into the db to prevent multiple re-runs
-        mPlaylistStore.updateCoverArt(mPlaylistId);
+        releaseAll(pool, loadedBitmaps);
+
+        if (isCancelled()) {
+            return null;
+        }
 
         if (bitmap != null) {
+            // store the fact that we ran this code into the db to prevent multiple re-runs
+            final long fingerprint = PlaylistArtworkStore.getFingerprint(albumIds, considered);
+            mPlaylistStore.updateCoverArt(mPlaylistId, mSongCount, fingerprint, considered);
+
             // add the image to the cache
-            mImageCache.addBitmapToCache(mKey, bitmap, true);
+            mImageCache.addBitmapToCache(PlaylistArtworkStore.getCoverCacheKey(fingerprint),
+                    bitmap, true, imageClass);
         } else {
-            mImageCache.removeFromCache(mKey);
+            mPlaylistStore.updateCoverArt(mPlaylistId, mSongCount,
+                    PlaylistArtworkStore.NO_FINGERPRINT, 0);
             mFallbackToDefaultImage = true;
         }
 
         return bitmap;
     }
 
+    private static void releaseAll(final BitmapPool pool, final ArrayList<Bitmap> bitmaps) {
+        for (Bitmap bitmap : bitmaps) {
+            pool.release(bitmap);
+        }
+    }
+
     @Override
     protected void onPostExecute(TransitionDrawable transitionDrawable) {
         final ImageView imageView = getAttachedImageView();
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+/**
+ * Renders the images shown blurred behind the now playing screen: the artwork is scaled down,
+ * blurred on the CPU and tinted.  The result is small enough to be rendered in a couple of
+ * milliseconds and is shown scaled up, which smooths it some more, so showing it costs a plain
+ * texture draw instead of a blur every frame.
+ */
+final class ScrimRenderer {
+    /* the size of the longest side of the rendered images */
+    private static final int SCRIM_SIZE = 96;
+
+    /* the blur radius in pixels of the rendered image, which are scaled up about tenfold */
+    private static final int BLUR_RADIUS = 4;
+
+    /* # of box blur passes, three of them come close to a gaussian blur */
+    private static final int BLUR_PASSES = 3;
+
+    private ScrimRenderer() {
+    }
+
+    /**
+     * @param artwork   The artwork
+     * @param tintColor The color drawn over the blurred artwork
+     * @return The blurred and tinted artwork, at most {@link #SCRIM_SIZE} pixels wide and high
+     */
+    static Bitmap render(Bitmap artwork, final int tintColor) {
+        if (artwork.getConfig() == Bitmap.Config.HARDWARE) {
+            // the pixels of those can't be read
+            artwork = artwork.copy(Bitmap.Config.ARGB_8888, false);
+        }
+
+        final float scale = Math.min(1f,
+                (float) SCRIM_SIZE / Math.max(artwork.getWidth(), artwork.getHeight()));
+        final int width = Math.max(1, Math.round(artwork.getWidth() * scale));
+        final int height = Math.max(1, Math.round(artwork.getHeight() * scale));
+        final Bitmap scaled = Bitmap.createScaledBitmap(artwork, width, height, true);
+
+        final int[] pixels = new int[width * height];
+        final int[] transposed = new int[width * height];
+        scaled.getPixels(pixels, 0, width, 0, 0, width, height);
+
+        // blurring the rows into a transposed copy and then the rows of that copy back blurs
+        // the columns without a second loop that strides through memory
+        for (int i = 0; i < BLUR_PASSES; i++) {
+            blurRowsTransposed(pixels, transposed, width, height);
+            blurRowsTransposed(transposed, pixels, height, width);
+        }
+
+        final Bitmap scrim = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        scrim.setPixels(pixels, 0, width, 0, 0, width, height);
+        new Canvas(scrim).drawColor(tintColor);
+        return scrim;
+    }
+
+    /**
+     * Box blurs the rows of an opaque image, with the pixels past the edges repeating the edge
+     * pixels
+     *
+     * @param in     The pixels of the image, row by row
+     * @param out    The blurred pixels, column by column
+     * @param width  The width of the image
+     * @param height The height of the image
+     */
+    private static void blurRowsTransposed(final int[] in, final int[] out, final int width,
+                                           final int height) {
+        final int window = 2 * BLUR_RADIUS + 1;
+        for (int y = 0; y < height; y++) {
+            final int row = y * width;
+
+            // the window starts centered on the first pixel
+            int red = 0;
+            int green = 0;
+            int blue = 0;
+            for (int i = -BLUR_RADIUS; i <= BLUR_RADIUS; i++) {
+                final int pixel = in[row + Math.min(Math.max(i, 0), width - 1)];
+                red += (pixel >> 16) & 0xff;
+                green += (pixel >> 8) & 0xff;
+                blue += pixel & 0xff;
+            }
+
+            for (int x = 0; x < width; x++) {
+                out[x * height + y] = 0xff000000 | (red / window) << 16 | (green / window) << 8
+                        | (blue / window);
+
+                // slide the window by one pixel
+                final int added = in[row + Math.min(x + BLUR_RADIUS + 1, width - 1)];
+                final int removed = in[row + Math.max(x - BLUR_RADIUS, 0)];
+                red += ((added >> 16) & 0xff) - ((removed >> 16) & 0xff);
+                green += ((added >> 8) & 0xff) - ((removed >> 8) & 0xff);
+                blue += (added & 0xff) - (removed & 0xff);
+            }
+        }
+    }
+}
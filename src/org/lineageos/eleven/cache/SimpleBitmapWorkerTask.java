@@ -26,9 +26,19 @@ import org.lineageos.eleven.cache.ImageWorker.ImageType;
 import org.lineageos.eleven.utils.ImageUtils;
 
 /**
- * The actual {@link android.os.AsyncTask} that will process the image.
+ * The actual task that will process the image.
  */
-public class SimpleBitmapWorkerTask extends BitmapWorkerTask<String, Void, TransitionDrawable> {
+public class SimpleBitmapWorkerTask extends BitmapWorkerTask<String, TransitionDrawable> {
+
+    /**
+     * The loaded bitmap, held until the task is done so it can't be reused meanwhile
+     */
+    private Bitmap mBitmap;
+
+    /**
+     * The bitmap shown by the result
+     */
+    private Bitmap mDisplayedBitmap;
 
     /**
      * Constructor of <code>BitmapWorkerTask</code>
@@ -36,13 +46,15 @@ public class SimpleBitmapWorkerTask extends BitmapWorkerTask<String, Void, Trans
      * @param key            the key of the image to store to
      * @param imageView      The {@link ImageView} to use.
      * @param imageType      The type of image URL to fetch for.
+     * @param imageSize      The size to decode the image at
      * @param fromDrawable   what drawable to transition from
      * @param scaleImgToView flag to scale the bitmap to the image view bounds
      */
     public SimpleBitmapWorkerTask(final String key, final ImageView imageView,
-                                  final ImageType imageType, final Drawable fromDrawable,
-                                  final Context context, final boolean scaleImgToView) {
-        super(key, imageView, imageType, fromDrawable, context, scaleImgToView);
+                                  final ImageType imageType, final ImageCache.ImageSize imageSize,
+                                  final Drawable fromDrawable, final Context context,
+                                  final boolean scaleImgToView) {
+        super(key, imageView, imageType, imageSize, fromDrawable, context, scaleImgToView);
     }
 
     @Override
@@ -51,23 +63,33 @@ public class SimpleBitmapWorkerTask extends BitmapWorkerTask<String, Void, Trans
             return null;
         }
 
+        // held until the view holds it
         final Bitmap bitmap = getBitmapInBackground(params);
+        mBitmap = bitmap;
+
         if (mScaleImgToView) {
-            Bitmap scaledBitmap = ImageUtils.scaleBitmapForImageView(bitmap,
-                    getAttachedImageView());
-            return createImageTransitionDrawable(scaledBitmap);
+            mDisplayedBitmap = ImageUtils.scaleBitmapForImageView(bitmap,
+                    getAttachedImageView(), mImageCache.getBitmapPool());
         } else {
-            return createImageTransitionDrawable(bitmap);
+            mDisplayedBitmap = bitmap;
         }
+        return createImageTransitionDrawable(mDisplayedBitmap);
     }
 
     @Override
     protected void onPostExecute(TransitionDrawable transitionDrawable) {
         final ImageView imageView = getAttachedImageView();
         if (transitionDrawable != null && imageView != null) {
+            ImageWorker.setDisplayedBitmap(mImageCache, imageView, mDisplayedBitmap);
             imageView.setImageDrawable(transitionDrawable);
         } else if (imageView != null) {
             imageView.setImageDrawable(mFromDrawable);
         }
+        mImageCache.getBitmapPool().release(mBitmap);
+    }
+
+    @Override
+    protected void onCancelled(TransitionDrawable transitionDrawable) {
+        mImageCache.getBitmapPool().release(mBitmap);
     }
 }
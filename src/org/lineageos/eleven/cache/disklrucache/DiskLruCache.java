@@ -16,8 +16,11 @@
  */
 package org.lineageos.eleven.cache.disklrucache;
 
-import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
@@ -27,17 +30,20 @@ import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -79,6 +85,9 @@ import java.util.regex.Pattern;
  * observe the value at the time that {@link #get} was called. Updates and
  * removals after the call do not impact ongoing reads.
  *
+ * <p>Operations on different keys don't block each other: each key is guarded
+ * by one of a fixed set of striped locks, and reads don't touch the journal.
+ *
  * <p>This class is tolerant of some I/O errors. If files are missing from the
  * filesystem, the corresponding entries will be dropped from the cache. If
  * an error occurs while writing a cache value, the edit will fail silently.
@@ -89,54 +98,56 @@ public final class DiskLruCache implements Closeable {
     static final String JOURNAL_FILE = "journal";
     static final String JOURNAL_FILE_TEMP = "journal.tmp";
     static final String JOURNAL_FILE_BACKUP = "journal.bkp";
-    static final String MAGIC = "libcore.io.DiskLruCache";
-    static final String VERSION_1 = "1";
+    static final int MAGIC = 0x45444c43; // "EDLC"
+    static final int VERSION_2 = 2;
     static final long ANY_SEQUENCE_NUMBER = -1;
     static final String STRING_KEY_PATTERN = "[a-z0-9_-]{1,120}";
     static final Pattern LEGAL_KEY_PATTERN = Pattern.compile(STRING_KEY_PATTERN);
-    private static final String CLEAN = "CLEAN";
-    private static final String DIRTY = "DIRTY";
-    private static final String REMOVE = "REMOVE";
-    private static final String READ = "READ";
+    private static final byte CLEAN = 1;
+    private static final byte REMOVE = 2;
+
+    /* # of striped locks guarding the entries */
+    private static final int LOCK_STRIPES = 32;
+
+    /* # of redundant records before the journal is compacted */
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    /* # of reads after which the LRU order is snapshotted */
+    private static final int SNAPSHOT_READ_THRESHOLD = 500;
+
+    /* minimum time between two snapshots of the LRU order */
+    private static final long SNAPSHOT_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
+
+    /* delay before the journal is flushed, so close edits share one write */
+    private static final long FLUSH_DELAY_MS = 1000;
+
+    /* size of the journal buffers */
+    private static final int JOURNAL_BUFFER_SIZE = 64 * 1024;
 
     /*
-     * This cache uses a journal file named "journal". A typical journal file
-     * looks like this:
-     *     libcore.io.DiskLruCache
-     *     1
-     *     100
-     *     2
+     * This cache uses a binary journal file named "journal". It starts with
+     * a header of four ints: the magic number, the journal version, the
+     * application's version and the value count.
      *
-     *     CLEAN 3400330d1dfc7f3f7f4b8d4d803dfcf6 832 21054
-     *     DIRTY 335c4c6028171cfddfbaae1a9c313c52
-     *     CLEAN 335c4c6028171cfddfbaae1a9c313c52 3934 2342
-     *     REMOVE 335c4c6028171cfddfbaae1a9c313c52
-     *     DIRTY 1ab96a171faeeee38496d8b330771a7a
-     *     CLEAN 1ab96a171faeeee38496d8b330771a7a 1600 234
-     *     READ 335c4c6028171cfddfbaae1a9c313c52
-     *     READ 3400330d1dfc7f3f7f4b8d4d803dfcf6
+     * Each subsequent record is the state of a cache entry: an op byte and the
+     * entry's key, written as modified UTF-8.
+     *   o CLEAN records track a cache entry that has been successfully
+     *     published and may be read. The key is followed by the lengths of
+     *     each of its values, as longs.
+     *   o REMOVE records track entries that have been deleted.
      *
-     * The first five lines of the journal form its header. They are the
-     * constant string "libcore.io.DiskLruCache", the disk cache's version,
-     * the application's version, the value count, and a blank line.
+     * Reads aren't journaled. Instead the journal is periodically replaced by
+     * a snapshot that holds one CLEAN record per entry, least recently used
+     * first, so that replaying it restores the LRU order. Snapshots are also
+     * taken when most of the records are redundant, which bounds the size of
+     * the journal, and so the time to open the cache, by the number of
+     * entries. A temporary file named "journal.tmp" is used while the
+     * snapshot is written; that file is deleted if it exists when the cache
+     * is opened.
      *
-     * Each of the subsequent lines in the file is a record of the state of a
-     * cache entry. Each line contains space-separated values: a state, a key,
-     * and optional state-specific values.
-     *   o DIRTY lines track that an entry is actively being created or updated.
-     *     Every successful DIRTY action should be followed by a CLEAN or REMOVE
-     *     action. DIRTY lines without a matching CLEAN or REMOVE indicate that
-     *     temporary files may need to be deleted.
-     *   o CLEAN lines track a cache entry that has been successfully published
-     *     and may be read. A publish line is followed by the lengths of each of
-     *     its values.
-     *   o READ lines track accesses for LRU.
-     *   o REMOVE lines track entries that have been deleted.
-     *
-     * The journal file is appended to as cache operations occur. The journal may
-     * occasionally be compacted by dropping redundant lines. A temporary file named
-     * "journal.tmp" will be used during compaction; that file should be deleted if
-     * it exists when the cache is opened.
+     * Files being edited are named after their entry with a ".tmp" suffix.
+     * The ones left behind by a crash are deleted when the next snapshot is
+     * taken.
      */
 
     private final File directory;
@@ -146,37 +157,62 @@ public final class DiskLruCache implements Closeable {
     private final int appVersion;
     private final long maxSize;
     private final int valueCount;
-    private long size = 0;
-    private Writer journalWriter;
-    private final LinkedHashMap<String, Entry> lruEntries =
-            new LinkedHashMap<>(0, 0.75f, true);
+    private final AtomicLong size = new AtomicLong();
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * Guards the journal writer and the record counts.
+     */
+    private final Object journalLock = new Object();
+    private DataOutputStream journalWriter;
+    private volatile boolean closed;
     private int redundantOpCount;
+    private long lastSnapshotTime;
+
+    /**
+     * Orders the entries by their last access, the lowest is the least
+     * recently used.
+     */
+    private final AtomicLong accessCounter = new AtomicLong();
+    private final AtomicInteger readsSinceSnapshot = new AtomicInteger();
 
     /**
      * To differentiate between old and current snapshots, each entry is given
      * a sequence number each time an edit is committed. A snapshot is stale if
      * its sequence number is not equal to its entry's sequence number.
      */
-    private long nextSequenceNumber = 0;
+    private final AtomicLong nextSequenceNumber = new AtomicLong();
+
+    private long openTimeMillis;
+    private int journalRecordCount;
 
     /**
-     * This cache uses a single background thread to evict entries.
+     * This cache uses a single background thread to evict entries and flush
+     * the journal.
      */
-    final ThreadPoolExecutor executorService =
-            new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
-    private final Callable<Void> cleanupCallable = new Callable<Void>() {
-        public Void call() throws Exception {
-            synchronized (DiskLruCache.this) {
-                if (journalWriter == null) {
-                    return null; // Closed.
-                }
-                trimToSize();
-                if (journalRebuildRequired()) {
-                    rebuildJournal();
-                    redundantOpCount = 0;
+    final ScheduledThreadPoolExecutor executorService = new ScheduledThreadPoolExecutor(1);
+    private final AtomicBoolean cleanupScheduled = new AtomicBoolean();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final Runnable cleanupRunnable = () -> {
+        cleanupScheduled.set(false);
+        try {
+            cleanup();
+        } catch (IOException ignored) {
+        }
+    };
+
+    private final Runnable flushRunnable = () -> {
+        flushScheduled.set(false);
+        try {
+            cleanup();
+            synchronized (journalLock) {
+                if (journalWriter != null) {
+                    journalWriter.flush();
                 }
             }
-            return null;
+        } catch (IOException ignored) {
         }
     };
 
@@ -188,6 +224,11 @@ public final class DiskLruCache implements Closeable {
         this.journalFileBackup = new File(directory, JOURNAL_FILE_BACKUP);
         this.valueCount = valueCount;
         this.maxSize = maxSize;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        executorService.setKeepAliveTime(60L, TimeUnit.SECONDS);
+        executorService.allowCoreThreadTimeOut(true);
     }
 
     /**
@@ -208,6 +249,8 @@ public final class DiskLruCache implements Closeable {
             throw new IllegalArgumentException("valueCount <= 0");
         }
 
+        final long start = System.nanoTime();
+
         // If a bkp file exists, use it instead.
         File backupFile = new File(directory, JOURNAL_FILE_BACKUP);
         if (backupFile.exists()) {
@@ -227,6 +270,7 @@ public final class DiskLruCache implements Closeable {
             try {
                 cache.readJournal();
                 cache.processJournal();
+                cache.openTimeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
                 return cache;
             } catch (IOException journalIsCorrupt) {
                 System.out
@@ -244,151 +288,182 @@ public final class DiskLruCache implements Closeable {
         directory.mkdirs();
         cache = new DiskLruCache(directory, appVersion, valueCount, maxSize);
         cache.rebuildJournal();
+        cache.openTimeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
         return cache;
     }
 
     private void readJournal() throws IOException {
-        StrictLineReader reader = new StrictLineReader(Files.newInputStream(journalFile.toPath()),
-                Util.US_ASCII);
-        try {
-            String magic = reader.readLine();
-            String version = reader.readLine();
-            String appVersionString = reader.readLine();
-            String valueCountString = reader.readLine();
-            String blank = reader.readLine();
-            if (!MAGIC.equals(magic)
-                    || !VERSION_1.equals(version)
-                    || !Integer.toString(appVersion).equals(appVersionString)
-                    || !Integer.toString(valueCount).equals(valueCountString)
-                    || !"".equals(blank)) {
-                throw new IOException("unexpected journal header: [" + magic + ", " + version + ", "
-                        + valueCountString + ", " + blank + "]");
-            }
-
-            int lineCount = 0;
+        // the entries in the order they were last written, which is the LRU order
+        final LinkedHashMap<String, long[]> records = new LinkedHashMap<>();
+        boolean truncated = false;
+        int recordCount = 0;
+
+        try (DataInputStream reader = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(journalFile.toPath()), JOURNAL_BUFFER_SIZE))) {
+            final int magic;
+            final int version;
+            final int appVersionValue;
+            final int valueCountValue;
+            try {
+                magic = reader.readInt();
+                version = reader.readInt();
+                appVersionValue = reader.readInt();
+                valueCountValue = reader.readInt();
+            } catch (EOFException e) {
+                throw new IOException("truncated journal header");
+            }
+            if (magic != MAGIC
+                    || version != VERSION_2
+                    || appVersionValue != appVersion
+                    || valueCountValue != valueCount) {
+                throw new IOException("unexpected journal header: [" + magic + ", " + version
+                        + ", " + appVersionValue + ", " + valueCountValue + "]");
+            }
+
             while (true) {
+                final byte op;
                 try {
-                    readJournalLine(reader.readLine());
-                    lineCount++;
+                    op = reader.readByte();
                 } catch (EOFException endOfJournal) {
                     break;
                 }
-            }
-            redundantOpCount = lineCount - lruEntries.size();
-
-            // If we ended on a truncated line, rebuild the journal before appending to it.
-            if (reader.hasUnterminatedLine()) {
-                rebuildJournal();
-            } else {
-                journalWriter = new BufferedWriter(new OutputStreamWriter(
-                        new FileOutputStream(journalFile, true), Util.US_ASCII));
-            }
-        } finally {
-            Util.closeQuietly(reader);
-        }
-    }
-
-    private void readJournalLine(String line) throws IOException {
-        int firstSpace = line.indexOf(' ');
-        if (firstSpace == -1) {
-            throw new IOException("unexpected journal line: " + line);
-        }
 
-        int keyBegin = firstSpace + 1;
-        int secondSpace = line.indexOf(' ', keyBegin);
-        final String key;
-        if (secondSpace == -1) {
-            key = line.substring(keyBegin);
-            if (firstSpace == REMOVE.length() && line.startsWith(REMOVE)) {
-                lruEntries.remove(key);
-                return;
+                try {
+                    final String key = reader.readUTF();
+                    if (op == CLEAN) {
+                        final long[] lengths = new long[valueCount];
+                        for (int i = 0; i < valueCount; i++) {
+                            lengths[i] = reader.readLong();
+                        }
+                        // re-insert so the entry moves to the end of the order
+                        records.remove(key);
+                        records.put(key, lengths);
+                    } else if (op == REMOVE) {
+                        records.remove(key);
+                    } else {
+                        throw new IOException("unexpected journal record: " + op);
+                    }
+                    recordCount++;
+                } catch (EOFException e) {
+                    // we ended on a truncated record
+                    truncated = true;
+                    break;
+                }
             }
-        } else {
-            key = line.substring(keyBegin, secondSpace);
         }
 
-        Entry entry = lruEntries.get(key);
-        if (entry == null) {
-            entry = new Entry(key);
-            lruEntries.put(key, entry);
+        for (Map.Entry<String, long[]> record : records.entrySet()) {
+            final Entry entry = new Entry(record.getKey());
+            entry.readable = true;
+            entry.lengths = record.getValue();
+            entry.accessSequence = accessCounter.incrementAndGet();
+            entries.put(entry.key, entry);
         }
+        journalRecordCount = recordCount;
+        redundantOpCount = recordCount - entries.size();
+        lastSnapshotTime = System.currentTimeMillis();
 
-        if (secondSpace != -1 && firstSpace == CLEAN.length() && line.startsWith(CLEAN)) {
-            String[] parts = line.substring(secondSpace + 1).split(" ");
-            entry.readable = true;
-            entry.currentEditor = null;
-            entry.setLengths(parts);
-        } else if (secondSpace == -1 && firstSpace == DIRTY.length() && line.startsWith(DIRTY)) {
-            entry.currentEditor = new Editor(entry);
-        } else if (secondSpace == -1 && firstSpace == READ.length() && line.startsWith(READ)) {
-            // This work was already done by calling lruEntries.get().
+        // If we ended on a truncated record, rebuild the journal before appending to it.
+        if (truncated) {
+            rebuildJournal();
         } else {
-            throw new IOException("unexpected journal line: " + line);
+            journalWriter = newJournalWriter();
         }
     }
 
     /**
-     * Computes the initial size and collects garbage as a part of opening the
-     * cache. Dirty entries are assumed to be inconsistent and will be deleted.
+     * Computes the initial size as a part of opening the cache.
      */
     private void processJournal() throws IOException {
         deleteIfExists(journalFileTmp);
-        for (Iterator<Entry> i = lruEntries.values().iterator(); i.hasNext(); ) {
-            Entry entry = i.next();
-            if (entry.currentEditor == null) {
-                for (int t = 0; t < valueCount; t++) {
-                    size += entry.lengths[t];
-                }
-            } else {
-                entry.currentEditor = null;
-                for (int t = 0; t < valueCount; t++) {
-                    deleteIfExists(entry.getCleanFile(t));
-                    deleteIfExists(entry.getDirtyFile(t));
-                }
-                i.remove();
+        long total = 0;
+        for (Entry entry : entries.values()) {
+            for (long length : entry.lengths) {
+                total += length;
             }
         }
+        size.set(total);
+    }
+
+    private DataOutputStream newJournalWriter() throws FileNotFoundException {
+        return new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(journalFile, true), JOURNAL_BUFFER_SIZE));
     }
 
     /**
-     * Creates a new journal that omits redundant information. This replaces the
-     * current journal if it exists.
+     * Creates a new journal that omits redundant information and holds the
+     * entries in LRU order. This replaces the current journal if it exists.
      */
-    private synchronized void rebuildJournal() throws IOException {
-        if (journalWriter != null) {
-            journalWriter.close();
-        }
-
-        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
-                Files.newOutputStream(journalFileTmp.toPath()), Util.US_ASCII))) {
-            writer.write(MAGIC);
-            writer.write("\n");
-            writer.write(VERSION_1);
-            writer.write("\n");
-            writer.write(Integer.toString(appVersion));
-            writer.write("\n");
-            writer.write(Integer.toString(valueCount));
-            writer.write("\n");
-            writer.write("\n");
-
-            for (Entry entry : lruEntries.values()) {
-                if (entry.currentEditor != null) {
-                    writer.write(DIRTY + ' ' + entry.key + '\n');
-                } else {
-                    writer.write(CLEAN + ' ' + entry.key + entry.getLengths() + '\n');
+    private void rebuildJournal() throws IOException {
+        synchronized (journalLock) {
+            if (journalWriter != null) {
+                journalWriter.close();
+                journalWriter = null;
+            }
+
+            final List<Entry> snapshot = getEntriesByAccess();
+            try (DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(journalFileTmp.toPath()), JOURNAL_BUFFER_SIZE))) {
+                writer.writeInt(MAGIC);
+                writer.writeInt(VERSION_2);
+                writer.writeInt(appVersion);
+                writer.writeInt(valueCount);
+
+                for (Entry entry : snapshot) {
+                    if (entry.readable) {
+                        writeClean(writer, entry.key, entry.lengths);
+                    }
                 }
             }
+
+            if (journalFile.exists()) {
+                renameTo(journalFile, journalFileBackup, true);
+            }
+            renameTo(journalFileTmp, journalFile, false);
+            //noinspection ResultOfMethodCallIgnored
+            journalFileBackup.delete();
+
+            journalWriter = newJournalWriter();
+            redundantOpCount = 0;
+            readsSinceSnapshot.set(0);
+            lastSnapshotTime = System.currentTimeMillis();
         }
+    }
 
-        if (journalFile.exists()) {
-            renameTo(journalFile, journalFileBackup, true);
+    private static void writeClean(DataOutputStream writer, String key, long[] lengths)
+            throws IOException {
+        writer.writeByte(CLEAN);
+        writer.writeUTF(key);
+        for (long length : lengths) {
+            writer.writeLong(length);
         }
-        renameTo(journalFileTmp, journalFile, false);
-        //noinspection ResultOfMethodCallIgnored
-        journalFileBackup.delete();
+    }
 
-        journalWriter = new BufferedWriter(
-                new OutputStreamWriter(new FileOutputStream(journalFile, true), Util.US_ASCII));
+    /**
+     * Appends a record to the journal. The journal is flushed in batches.
+     */
+    private void appendRecord(byte op, String key, long[] lengths) throws IOException {
+        synchronized (journalLock) {
+            if (journalWriter == null) {
+                return;
+            }
+            if (op == CLEAN) {
+                writeClean(journalWriter, key, lengths);
+            } else {
+                journalWriter.writeByte(op);
+                journalWriter.writeUTF(key);
+            }
+            redundantOpCount++;
+        }
+    }
+
+    /**
+     * @return the entries, least recently used first
+     */
+    private List<Entry> getEntriesByAccess() {
+        final List<Entry> result = new ArrayList<>(entries.values());
+        result.sort(Comparator.comparingLong(entry -> entry.accessSequence));
+        return result;
     }
 
     private static void deleteIfExists(File file) throws IOException {
@@ -406,52 +481,66 @@ public final class DiskLruCache implements Closeable {
         }
     }
 
+    private Object lockFor(String key) {
+        return locks[(key.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
     /**
      * Returns a snapshot of the entry named {@code key}, or null if it doesn't
      * exist is not currently readable. If a value is returned, it is moved to
      * the head of the LRU queue.
      */
-    public synchronized Snapshot get(String key) throws IOException {
+    public Snapshot get(String key) throws IOException {
         checkNotClosed();
         validateKey(key);
-        Entry entry = lruEntries.get(key);
+        Entry entry = entries.get(key);
         if (entry == null) {
             return null;
         }
 
-        if (!entry.readable) {
-            return null;
-        }
-
-        // Open all streams eagerly to guarantee that we see a single published
-        // snapshot. If we opened streams lazily then the streams could come
-        // from different edits.
         InputStream[] ins = new InputStream[valueCount];
-        try {
-            for (int i = 0; i < valueCount; i++) {
-                ins[i] = new FileInputStream(entry.getCleanFile(i));
+        synchronized (lockFor(key)) {
+            if (!entry.readable || entries.get(key) != entry) {
+                return null;
             }
-        } catch (FileNotFoundException e) {
-            // A file must have been deleted manually!
-            for (int i = 0; i < valueCount; i++) {
-                if (ins[i] != null) {
-                    Util.closeQuietly(ins[i]);
-                } else {
-                    break;
+
+            // Open all streams eagerly to guarantee that we see a single published
+            // snapshot. If we opened streams lazily then the streams could come
+            // from different edits.
+            try {
+                for (int i = 0; i < valueCount; i++) {
+                    ins[i] = new FileInputStream(entry.getCleanFile(i));
+                }
+            } catch (FileNotFoundException e) {
+                // A file must have been deleted manually!
+                for (int i = 0; i < valueCount; i++) {
+                    if (ins[i] != null) {
+                        Util.closeQuietly(ins[i]);
+                    } else {
+                        break;
+                    }
                 }
+                return null;
             }
-            return null;
-        }
-
-        redundantOpCount++;
-        journalWriter.append(READ + ' ').append(key).append(String.valueOf('\n'));
-        if (journalRebuildRequired()) {
-            executorService.submit(cleanupCallable);
         }
 
+        entry.accessSequence = accessCounter.incrementAndGet();
+        readsSinceSnapshot.incrementAndGet();
         return new Snapshot(ins);
     }
 
+    /**
+     * Returns true if the entry named {@code key} exists and is readable.
+     * Unlike {@link #get} this doesn't open the entry's files nor count as an
+     * access for the LRU order.
+     */
+    public boolean contains(String key) {
+        checkNotClosed();
+        validateKey(key);
+        Entry entry = entries.get(key);
+        return entry != null && entry.readable;
+    }
+
     /**
      * Returns an editor for the entry named {@code key}, or null if another
      * edit is in progress.
@@ -460,84 +549,88 @@ public final class DiskLruCache implements Closeable {
         return edit(key, ANY_SEQUENCE_NUMBER);
     }
 
-    private synchronized Editor edit(String key, long expectedSequenceNumber) throws IOException {
+    private Editor edit(String key, long expectedSequenceNumber) throws IOException {
         checkNotClosed();
         validateKey(key);
-        Entry entry = lruEntries.get(key);
-        if (expectedSequenceNumber != ANY_SEQUENCE_NUMBER && (entry == null
-                || entry.sequenceNumber != expectedSequenceNumber)) {
-            return null; // Snapshot is stale.
-        }
-        if (entry == null) {
-            entry = new Entry(key);
-            lruEntries.put(key, entry);
-        } else if (entry.currentEditor != null) {
-            return null; // Another edit is in progress.
-        }
-
-        Editor editor = new Editor(entry);
-        entry.currentEditor = editor;
+        synchronized (lockFor(key)) {
+            Entry entry = entries.get(key);
+            if (expectedSequenceNumber != ANY_SEQUENCE_NUMBER && (entry == null
+                    || entry.sequenceNumber != expectedSequenceNumber)) {
+                return null; // Snapshot is stale.
+            }
+            if (entry == null) {
+                entry = new Entry(key);
+                entry.accessSequence = accessCounter.incrementAndGet();
+                entries.put(key, entry);
+            } else if (entry.currentEditor != null) {
+                return null; // Another edit is in progress.
+            }
 
-        // Flush the journal before creating files to prevent file leaks.
-        journalWriter.write(DIRTY + ' ' + key + '\n');
-        journalWriter.flush();
-        return editor;
+            Editor editor = new Editor(entry);
+            entry.currentEditor = editor;
+            return editor;
+        }
     }
 
-    private synchronized void completeEdit(Editor editor, boolean success) throws IOException {
+    private void completeEdit(Editor editor, boolean success) throws IOException {
         Entry entry = editor.entry;
-        if (entry.currentEditor != editor) {
-            throw new IllegalStateException();
-        }
+        synchronized (lockFor(entry.key)) {
+            if (entry.currentEditor != editor) {
+                throw new IllegalStateException();
+            }
 
-        // If this edit is creating the entry for the first time, every index must have a value.
-        if (success && !entry.readable) {
-            for (int i = 0; i < valueCount; i++) {
-                if (!editor.written[i]) {
-                    editor.abort();
-                    throw new IllegalStateException(
-                            "Newly created entry didn't create value for index " + i);
-                }
-                if (!entry.getDirtyFile(i).exists()) {
-                    editor.abort();
-                    return;
+            // If this edit is creating the entry for the first time, every index must have a
+            // value.
+            if (success && !entry.readable) {
+                for (int i = 0; i < valueCount; i++) {
+                    if (!editor.written[i]) {
+                        editor.abort();
+                        throw new IllegalStateException(
+                                "Newly created entry didn't create value for index " + i);
+                    }
+                    if (!entry.getDirtyFile(i).exists()) {
+                        editor.abort();
+                        return;
+                    }
                 }
             }
-        }
 
-        for (int i = 0; i < valueCount; i++) {
-            File dirty = entry.getDirtyFile(i);
-            if (success) {
-                if (dirty.exists()) {
-                    File clean = entry.getCleanFile(i);
-                    //noinspection ResultOfMethodCallIgnored
-                    dirty.renameTo(clean);
-                    long oldLength = entry.lengths[i];
-                    long newLength = clean.length();
-                    entry.lengths[i] = newLength;
-                    size = size - oldLength + newLength;
+            final long[] lengths = entry.lengths.clone();
+            for (int i = 0; i < valueCount; i++) {
+                File dirty = entry.getDirtyFile(i);
+                if (success) {
+                    if (dirty.exists()) {
+                        File clean = entry.getCleanFile(i);
+                        //noinspection ResultOfMethodCallIgnored
+                        dirty.renameTo(clean);
+                        long oldLength = lengths[i];
+                        long newLength = clean.length();
+                        lengths[i] = newLength;
+                        size.addAndGet(newLength - oldLength);
+                    }
+                } else {
+                    deleteIfExists(dirty);
                 }
-            } else {
-                deleteIfExists(dirty);
             }
-        }
+            entry.lengths = lengths;
 
-        redundantOpCount++;
-        entry.currentEditor = null;
-        if (entry.readable | success) {
-            entry.readable = true;
-            journalWriter.write(CLEAN + ' ' + entry.key + entry.getLengths() + '\n');
-            if (success) {
-                entry.sequenceNumber = nextSequenceNumber++;
+            entry.currentEditor = null;
+            if (entry.readable | success) {
+                entry.readable = true;
+                entry.accessSequence = accessCounter.incrementAndGet();
+                appendRecord(CLEAN, entry.key, lengths);
+                if (success) {
+                    entry.sequenceNumber = nextSequenceNumber.getAndIncrement();
+                }
+            } else {
+                // the entry was never published, so it's not in the journal
+                entries.remove(entry.key, entry);
             }
-        } else {
-            lruEntries.remove(entry.key);
-            journalWriter.write(REMOVE + ' ' + entry.key + '\n');
         }
-        journalWriter.flush();
 
-        if (size > maxSize || journalRebuildRequired()) {
-            executorService.submit(cleanupCallable);
+        scheduleFlush();
+        if (size.get() > maxSize || journalRebuildRequired()) {
+            scheduleCleanup();
         }
     }
 
@@ -546,9 +639,83 @@ public final class DiskLruCache implements Closeable {
      * and eliminate at least 2000 ops.
      */
     private boolean journalRebuildRequired() {
-        final int redundantOpCompactThreshold = 2000;
-        return redundantOpCount >= redundantOpCompactThreshold //
-                && redundantOpCount >= lruEntries.size();
+        synchronized (journalLock) {
+            return redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD
+                    && redundantOpCount >= entries.size();
+        }
+    }
+
+    /**
+     * The LRU order is snapshotted once enough reads changed it, at most every
+     * few minutes.
+     */
+    private boolean snapshotRequired() {
+        synchronized (journalLock) {
+            return readsSinceSnapshot.get() >= SNAPSHOT_READ_THRESHOLD
+                    && System.currentTimeMillis() - lastSnapshotTime >= SNAPSHOT_INTERVAL_MS;
+        }
+    }
+
+    private void scheduleCleanup() {
+        if (cleanupScheduled.compareAndSet(false, true)) {
+            executorService.execute(cleanupRunnable);
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            executorService.schedule(flushRunnable, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void cleanup() throws IOException {
+        if (closed) {
+            return;
+        }
+        trimToSize();
+        if (journalRebuildRequired() || snapshotRequired()) {
+            rebuildJournal();
+            deleteStaleFiles();
+        }
+    }
+
+    /**
+     * Deletes the files of the directory that no entry uses, which are left
+     * behind by edits interrupted by a crash.
+     */
+    private void deleteStaleFiles() {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        final Set<String> used = new HashSet<>();
+        used.add(JOURNAL_FILE);
+        used.add(JOURNAL_FILE_TEMP);
+        used.add(JOURNAL_FILE_BACKUP);
+        for (Entry entry : entries.values()) {
+            for (int i = 0; i < valueCount; i++) {
+                used.add(entry.getCleanFile(i).getName());
+                if (entry.currentEditor != null) {
+                    used.add(entry.getDirtyFile(i).getName());
+                }
+            }
+        }
+
+        for (File file : files) {
+            if (file.isFile() && !used.contains(file.getName())) {
+                final String key = file.getName().substring(0,
+                        Math.max(0, file.getName().indexOf('.')));
+                // don't race with an edit of that key
+                synchronized (lockFor(key)) {
+                    final Entry entry = entries.get(key);
+                    if (entry == null || entry.currentEditor == null) {
+                        //noinspection ResultOfMethodCallIgnored
+                        file.delete();
+                    }
+                }
+            }
+        }
     }
 
     /**
@@ -558,80 +725,103 @@ public final class DiskLruCache implements Closeable {
      * @return true if an entry was removed.
      */
     @SuppressWarnings("UnusedReturnValue")
-    public synchronized boolean remove(String key) throws IOException {
+    public boolean remove(String key) throws IOException {
         checkNotClosed();
         validateKey(key);
-        Entry entry = lruEntries.get(key);
-        if (entry == null || entry.currentEditor != null) {
-            return false;
-        }
-
-        for (int i = 0; i < valueCount; i++) {
-            File file = entry.getCleanFile(i);
-            if (file.exists() && !file.delete()) {
-                throw new IOException("failed to delete " + file);
-            }
-            size -= entry.lengths[i];
-            entry.lengths[i] = 0;
-        }
-
-        redundantOpCount++;
-        journalWriter.append(REMOVE + ' ').append(key).append(String.valueOf('\n'));
-        lruEntries.remove(key);
+        final boolean removed = removeEntry(key);
 
         if (journalRebuildRequired()) {
-            executorService.submit(cleanupCallable);
+            scheduleCleanup();
         }
 
-        return true;
+        return removed;
     }
 
     /**
      * Returns true if this cache has been closed.
      */
-    public synchronized boolean isClosed() {
-        return journalWriter == null;
+    public boolean isClosed() {
+        return closed;
     }
 
     private void checkNotClosed() {
-        if (journalWriter == null) {
+        if (closed) {
             throw new IllegalStateException("cache is closed");
         }
     }
 
     /**
-     * Force buffered operations to the filesystem.
+     * Force buffered operations to the filesystem. The flush happens on the
+     * background thread shortly after, so that close calls share one write.
      */
-    public synchronized void flush() throws IOException {
+    public void flush() throws IOException {
         checkNotClosed();
-        trimToSize();
-        journalWriter.flush();
+        scheduleFlush();
     }
 
     /**
      * Closes this cache. Stored values will remain on the filesystem.
      */
-    public synchronized void close() throws IOException {
-        if (journalWriter == null) {
-            return; // Already closed.
+    public void close() throws IOException {
+        synchronized (journalLock) {
+            if (closed) {
+                return; // Already closed.
+            }
+            closed = true;
         }
-        for (Entry entry : new ArrayList<>(lruEntries.values())) {
-            if (entry.currentEditor != null) {
-                entry.currentEditor.abort();
+        for (Entry entry : new ArrayList<>(entries.values())) {
+            final Editor editor = entry.currentEditor;
+            if (editor != null) {
+                try {
+                    editor.abort();
+                } catch (IllegalStateException ignored) {
+                    // the edit completed meanwhile
+                }
             }
         }
         trimToSize();
-        journalWriter.close();
-        journalWriter = null;
+        synchronized (journalLock) {
+            if (journalWriter != null) {
+                journalWriter.close();
+                journalWriter = null;
+            }
+        }
     }
 
     private void trimToSize() throws IOException {
-        while (size > maxSize) {
-            Map.Entry<String, Entry> toEvict = lruEntries.entrySet().iterator().next();
-            remove(toEvict.getKey());
+        if (size.get() <= maxSize) {
+            return;
+        }
+        for (Entry entry : getEntriesByAccess()) {
+            if (size.get() <= maxSize) {
+                break;
+            }
+            removeEntry(entry.key);
         }
     }
 
+    private boolean removeEntry(String key) throws IOException {
+        synchronized (lockFor(key)) {
+            Entry entry = entries.get(key);
+            if (entry == null || entry.currentEditor != null) {
+                return false;
+            }
+
+            for (int i = 0; i < valueCount; i++) {
+                File file = entry.getCleanFile(i);
+                if (file.exists() && !file.delete()) {
+                    throw new IOException("failed to delete " + file);
+                }
+                size.addAndGet(-entry.lengths[i]);
+            }
+            entry.lengths = new long[valueCount];
+            entry.readable = false;
+            entries.remove(key);
+            appendRecord(REMOVE, key, null);
+        }
+        return true;
+    }
+
     /**
      * Closes the cache and deletes all of its stored values. This will delete
      * all files in the cache directory including files that weren't created by
@@ -642,6 +832,36 @@ public final class DiskLruCache implements Closeable {
         Util.deleteContents(directory);
     }
 
+    /**
+     * Returns the number of bytes currently being used to store the values in
+     * this cache.
+     */
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * Returns the number of entries of the cache.
+     */
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the time it took to open the cache, reading its journal included.
+     */
+    public long getOpenTimeMillis() {
+        return openTimeMillis;
+    }
+
+    /**
+     * Returns the number of records read from the journal when the cache was
+     * opened.
+     */
+    public int getJournalRecordCount() {
+        return journalRecordCount;
+    }
+
     private void validateKey(String key) {
         Matcher matcher = LEGAL_KEY_PATTERN.matcher(key);
         if (!matcher.matches()) {
@@ -707,7 +927,7 @@ public final class DiskLruCache implements Closeable {
                         + "be greater than 0 and less than the maximum value count "
                         + "of " + valueCount);
             }
-            synchronized (DiskLruCache.this) {
+            synchronized (lockFor(entry.key)) {
                 if (entry.currentEditor != this) {
                     throw new IllegalStateException();
                 }
@@ -801,57 +1021,34 @@ public final class DiskLruCache implements Closeable {
         private final String key;
 
         /**
-         * Lengths of this entry's files.
+         * Lengths of this entry's files. The array is replaced, never
+         * modified, so it can be read without the entry's lock.
          */
-        private final long[] lengths;
+        private volatile long[] lengths;
 
         /**
          * True if this entry has ever been published.
          */
-        private boolean readable;
+        private volatile boolean readable;
 
         /**
          * The ongoing edit or null if this entry is not being edited.
          */
-        private Editor currentEditor;
+        private volatile Editor currentEditor;
 
         /**
          * The sequence number of the most recently committed edit to this entry.
          */
         private long sequenceNumber;
 
-        private Entry(String key) {
-            this.key = key;
-            this.lengths = new long[valueCount];
-        }
-
-        public String getLengths() {
-            StringBuilder result = new StringBuilder();
-            for (long size : lengths) {
-                result.append(' ').append(size);
-            }
-            return result.toString();
-        }
-
         /**
-         * Set lengths using decimal numbers like "10123".
+         * The value of the access counter when this entry was last used.
          */
-        private void setLengths(String[] strings) throws IOException {
-            if (strings.length != valueCount) {
-                throw invalidLengths(strings);
-            }
+        private volatile long accessSequence;
 
-            try {
-                for (int i = 0; i < strings.length; i++) {
-                    lengths[i] = Long.parseLong(strings[i]);
-                }
-            } catch (NumberFormatException e) {
-                throw invalidLengths(strings);
-            }
-        }
-
-        private IOException invalidLengths(String[] strings) throws IOException {
-            throw new IOException("unexpected journal line: " + java.util.Arrays.toString(strings));
+        private Entry(String key) {
+            this.key = key;
+            this.lengths = new long[valueCount];
         }
 
         public File getCleanFile(int i) {
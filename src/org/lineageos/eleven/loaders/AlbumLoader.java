@@ -24,14 +24,17 @@ import android.provider.MediaStore;
 import android.provider.MediaStore.Audio.AlbumColumns;
 
 import org.lineageos.eleven.model.Album;
+import org.lineageos.eleven.provider.LibraryCatalog;
 import org.lineageos.eleven.provider.LocalizedStore;
 import org.lineageos.eleven.provider.LocalizedStore.SortParameter;
+import org.lineageos.eleven.sectionadapter.PagedSectionCreator;
 import org.lineageos.eleven.sectionadapter.SectionCreator;
 import org.lineageos.eleven.utils.EmptyCursor;
 import org.lineageos.eleven.utils.Lists;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.utils.PreferenceUtils;
 import org.lineageos.eleven.utils.SortOrder;
+import org.lineageos.eleven.utils.collections.LongArrayList;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -44,6 +47,15 @@ import java.util.List;
  */
 public class AlbumLoader extends SectionCreator.SimpleListLoader<Album> {
 
+    /**
+     * The columns of the album cursor, the albums themselves are read from the
+     * {@link LibraryCatalog}
+     */
+    private static final String[] PROJECTION = new String[]{
+            /* 0 */
+            AlbumColumns.ALBUM_ID,
+    };
+
     /**
      * The result
      */
@@ -75,32 +87,11 @@ public class AlbumLoader extends SectionCreator.SimpleListLoader<Album> {
     public List<Album> loadInBackground() {
         // Create the Cursor
         Cursor cursor = makeAlbumCursor(getContext(), mArtistId);
-        // Gather the data
+        // Gather the ids, the albums themselves come from the catalog
+        final LongArrayList ids = new LongArrayList();
         if (cursor != null && cursor.moveToFirst()) {
             do {
-                // Copy the album id
-                final long id = cursor.getLong(0);
-
-                // Copy the album name
-                final String albumName = cursor.getString(1);
-
-                // Copy the artist name
-                final String artist = cursor.getString(2);
-
-                // Copy the number of songs
-                final int songCount = cursor.getInt(3);
-
-                // Copy the release year
-                final String year = cursor.getString(4);
-
-                // as per designer's request, don't show unknown albums
-                if (MediaStore.UNKNOWN_STRING.equals(albumName)) {
-                    continue;
-                }
-
-                // Create a new album and add everything up
-                final Album album = new Album(id, albumName, artist, songCount, year);
-                mAlbumsList.add(album);
+                ids.add(cursor.getLong(0));
             } while (cursor.moveToNext());
         }
         // Close the cursor
@@ -108,6 +99,15 @@ public class AlbumLoader extends SectionCreator.SimpleListLoader<Album> {
             cursor.close();
         }
 
+        for (Album album : LibraryCatalog.getInstance(getContext()).getAlbums(ids.toArray())) {
+            // as per designer's request, don't show unknown albums
+            if (album == null || MediaStore.UNKNOWN_STRING.equals(album.mAlbumName)) {
+                continue;
+            }
+
+            mAlbumsList.add(album);
+        }
+
         return mAlbumsList;
     }
 
@@ -135,6 +135,23 @@ public class AlbumLoader extends SectionCreator.SimpleListLoader<Album> {
      * @return The {@link Cursor} used to run the album query.
      */
     public static Cursor makeAlbumCursor(final Context context, final Long artistId) {
+        return makeAlbumCursor(context, artistId, PROJECTION, null, null, true);
+    }
+
+    /**
+     * Creates the {@link Cursor} used to run the query.
+     *
+     * @param context       The {@link Context} to use.
+     * @param artistId      The artistId we want to find albums for or null if we want all albums
+     * @param projection    The columns to query, the first one must be the album id
+     * @param selection     The selection statement to use, may be null
+     * @param selectionArgs The arguments of the selection
+     * @param runSort       Whether to run the additional localization sort
+     * @return The {@link Cursor} used to run the album query.
+     */
+    private static Cursor makeAlbumCursor(final Context context, final Long artistId,
+                                          final String[] projection, final String selection,
+                                          final String[] selectionArgs, final boolean runSort) {
         // requested album ordering
         final String albumSortOrder = PreferenceUtils.getInstance(context).getAlbumSortOrder();
         Uri uri = MediaStore.Audio.Albums.EXTERNAL_CONTENT_URI;
@@ -146,29 +163,47 @@ public class AlbumLoader extends SectionCreator.SimpleListLoader<Album> {
                     artistId);
         }
 
-        Cursor cursor = context.getContentResolver().query(uri,
-                new String[]{
-                        /* 0 */
-                        AlbumColumns.ALBUM_ID,
-                        /* 1 */
-                        AlbumColumns.ALBUM,
-                        /* 2 */
-                        AlbumColumns.ARTIST,
-                        /* 3 */
-                        AlbumColumns.NUMBER_OF_SONGS,
-                        /* 4 */
-                        AlbumColumns.FIRST_YEAR
-                }, null, null, albumSortOrder);
+        Cursor cursor = context.getContentResolver().query(uri, projection, selection,
+                selectionArgs, albumSortOrder);
 
         // if our sort is a localized-based sort, grab localized data from the store
         final SortParameter sortParameter = getSortParameter(albumSortOrder);
-        if (sortParameter != null && cursor != null) {
+        if (runSort && sortParameter != null && cursor != null) {
             final boolean descending = MusicUtils.isSortOrderDesending(albumSortOrder);
             return LocalizedStore.getInstance(context).getLocalizedSort(cursor,
                     AlbumColumns.ALBUM_ID, SortParameter.Album, sortParameter,
-                    descending, artistId == null);
+                    descending, artistId == null && selection == null);
         }
 
         return cursor;
     }
+
+    /**
+     * Pages through all the albums of the library, only reading the ids in list order up front
+     */
+    public static class PagedAlbumSource implements PagedSectionCreator.PagedSource<Album> {
+        private final Context mContext;
+
+        public PagedAlbumSource(final Context context) {
+            mContext = context.getApplicationContext();
+        }
+
+        @Override
+        public Cursor queryKeys() {
+            // as per designer's request, don't show unknown albums
+            return makeAlbumCursor(mContext, null, PROJECTION, AlbumColumns.ALBUM + "!=?",
+                    new String[]{MediaStore.UNKNOWN_STRING}, true);
+        }
+
+        @Override
+        public Album createKeyItem(final Cursor cursor) {
+            // the albums have no sections
+            return null;
+        }
+
+        @Override
+        public List<Album> loadPage(final long[] ids) {
+            return LibraryCatalog.getInstance(mContext).getAlbums(ids);
+        }
+    }
 }
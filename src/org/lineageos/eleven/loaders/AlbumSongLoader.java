@@ -18,31 +18,20 @@
 package org.lineageos.eleven.loaders;
 
 import android.content.Context;
-import android.database.Cursor;
-import android.provider.BaseColumns;
-import android.provider.MediaStore;
-import android.provider.MediaStore.Audio.AudioColumns;
 
 import org.lineageos.eleven.model.Song;
-import org.lineageos.eleven.utils.Lists;
-import org.lineageos.eleven.utils.PreferenceUtils;
+import org.lineageos.eleven.provider.LibraryCatalog;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Used to query MediaStore.Audio.Media.EXTERNAL_CONTENT_URI and return
- * the Song for a particular album.
+ * Used to read the songs of a particular album from the {@link LibraryCatalog}, in track
+ * order.
  *
  * @author Andrew Neal (andrewdneal@gmail.com)
  */
 public class AlbumSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
 
-    /**
-     * The result
-     */
-    private final ArrayList<Song> mSongList = Lists.newArrayList();
-
     /**
      * The Id of the album the songs belong to.
      */
@@ -61,72 +50,6 @@ public class AlbumSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
 
     @Override
     public List<Song> loadInBackground() {
-        // Create the Cursor
-        Cursor cursor = makeAlbumSongCursor(getContext(), mAlbumID);
-        // Gather the data
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                // Copy the song Id
-                final long id = cursor.getLong(0);
-
-                // Copy the song name
-                final String songName = cursor.getString(1);
-
-                // Copy the artist name
-                final String artist = cursor.getString(2);
-
-                // Copy the album name
-                final String album = cursor.getString(3);
-
-                // Copy the duration
-                final long duration = cursor.getLong(4);
-
-                // Make the duration label
-                final int seconds = (int) (duration / 1000);
-
-                // Grab the Song Year
-                final int year = cursor.getInt(5);
-
-                // Create a new song
-                final Song song = new Song(id, songName, artist, album, mAlbumID, seconds, year);
-
-                // Add everything up
-                mSongList.add(song);
-            } while (cursor.moveToNext());
-        }
-        // Close the cursor
-        if (cursor != null) {
-            cursor.close();
-        }
-        return mSongList;
+        return LibraryCatalog.getInstance(getContext()).getSnapshot().getAlbumSongs(mAlbumID);
     }
-
-    /**
-     * @param context The {@link Context} to use.
-     * @param albumId The Id of the album the songs belong to.
-     * @return The {@link Cursor} used to run the query.
-     */
-    public static Cursor makeAlbumSongCursor(final Context context, final Long albumId) {
-        // Match the songs up with the artist
-        String selection = (AudioColumns.IS_MUSIC + "=1") +
-                " AND " + AudioColumns.TITLE + " != ''" +
-                " AND " + AudioColumns.ALBUM_ID + "=" + albumId;
-        return context.getContentResolver().query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                new String[]{
-                        /* 0 */
-                        BaseColumns._ID,
-                        /* 1 */
-                        AudioColumns.TITLE,
-                        /* 2 */
-                        AudioColumns.ARTIST,
-                        /* 3 */
-                        AudioColumns.ALBUM,
-                        /* 4 */
-                        AudioColumns.DURATION,
-                        /* 5 */
-                        AudioColumns.YEAR,
-                }, selection, null,
-                PreferenceUtils.getInstance(context).getAlbumSongSortOrder());
-    }
-
 }
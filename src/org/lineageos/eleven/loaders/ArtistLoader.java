@@ -23,13 +23,16 @@ import android.provider.MediaStore;
 import android.provider.MediaStore.Audio.Artists;
 
 import org.lineageos.eleven.model.Artist;
+import org.lineageos.eleven.provider.LibraryCatalog;
 import org.lineageos.eleven.provider.LocalizedStore;
 import org.lineageos.eleven.provider.LocalizedStore.SortParameter;
+import org.lineageos.eleven.sectionadapter.PagedSectionCreator;
 import org.lineageos.eleven.sectionadapter.SectionCreator;
 import org.lineageos.eleven.utils.Lists;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.utils.PreferenceUtils;
 import org.lineageos.eleven.utils.SortOrder;
+import org.lineageos.eleven.utils.collections.LongArrayList;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -42,6 +45,29 @@ import java.util.List;
  */
 public class ArtistLoader extends SectionCreator.SimpleListLoader<Artist> {
 
+    /**
+     * The columns of the artist cursor, the artists themselves are read from the
+     * {@link LibraryCatalog}
+     */
+    private static final String[] PROJECTION = new String[] {
+            /* 0 */
+            Artists._ID,
+    };
+
+    /**
+     * The columns the paged artists are sectioned by
+     */
+    private static final String[] KEY_PROJECTION = new String[] {
+            /* 0 */
+            Artists._ID,
+            /* 1 */
+            Artists.ARTIST,
+            /* 2 */
+            Artists.NUMBER_OF_TRACKS,
+            /* 3 */
+            Artists.NUMBER_OF_ALBUMS,
+    };
+
     /**
      * The result
      */
@@ -60,34 +86,16 @@ public class ArtistLoader extends SectionCreator.SimpleListLoader<Artist> {
     public List<Artist> loadInBackground() {
         // Create the Cursor
         Cursor cursor = makeArtistCursor(getContext());
-        // Gather the data
+        // Gather the ids, the artists themselves come from the catalog
+        final LongArrayList ids = new LongArrayList();
+        final ArrayList<Object> bucketLabels = new ArrayList<>();
         if (cursor != null && cursor.moveToFirst()) {
             do {
-                // Copy the artist id
-                final long id = cursor.getLong(0);
-
-                // Copy the artist name
-                final String artistName = cursor.getString(1);
-
-                // Copy the number of albums
-                final int albumCount = cursor.getInt(2);
-
-                // Copy the number of songs
-                final int songCount = cursor.getInt(3);
-
-                // as per designer's request, don't show unknown artist
-                if (MediaStore.UNKNOWN_STRING.equals(artistName)) {
-                    continue;
-                }
-
-                // Create a new artist
-                final Artist artist = new Artist(id, artistName, songCount, albumCount);
+                ids.add(cursor.getLong(0));
 
                 if (cursor instanceof SortedCursor) {
-                    artist.mBucketLabel = (String)((SortedCursor) cursor).getExtraData();
+                    bucketLabels.add(((SortedCursor) cursor).getExtraData());
                 }
-
-                mArtistsList.add(artist);
             } while (cursor.moveToNext());
         }
         // Close the cursor
@@ -95,6 +103,23 @@ public class ArtistLoader extends SectionCreator.SimpleListLoader<Artist> {
             cursor.close();
         }
 
+        final List<Artist> artists =
+                LibraryCatalog.getInstance(getContext()).getArtists(ids.toArray());
+        for (int i = 0; i < artists.size(); i++) {
+            final Artist artist = artists.get(i);
+
+            // as per designer's request, don't show unknown artist
+            if (artist == null || MediaStore.UNKNOWN_STRING.equals(artist.mArtistName)) {
+                continue;
+            }
+
+            if (!bucketLabels.isEmpty()) {
+                artist.mBucketLabel = (String) bucketLabels.get(i);
+            }
+
+            mArtistsList.add(artist);
+        }
+
         return mArtistsList;
     }
 
@@ -117,29 +142,73 @@ public class ArtistLoader extends SectionCreator.SimpleListLoader<Artist> {
      * @return The {@link Cursor} used to run the artist query.
      */
     public static Cursor makeArtistCursor(final Context context) {
+        return makeArtistCursor(context, PROJECTION, null, null, true);
+    }
+
+    /**
+     * Creates the {@link Cursor} used to run the query.
+     *
+     * @param context       The {@link Context} to use.
+     * @param projection    The columns to query, the first one must be the artist id
+     * @param selection     The selection statement to use, may be null
+     * @param selectionArgs The arguments of the selection
+     * @param runSort       Whether to run the additional localization sort
+     * @return The {@link Cursor} used to run the artist query.
+     */
+    private static Cursor makeArtistCursor(final Context context, final String[] projection,
+                                           final String selection, final String[] selectionArgs,
+                                           final boolean runSort) {
         // requested artist ordering
         final String artistSortOrder = PreferenceUtils.getInstance(context).getArtistSortOrder();
 
         Cursor cursor = context.getContentResolver().query(Artists.EXTERNAL_CONTENT_URI,
-                new String[] {
-                        /* 0 */
-                        Artists._ID,
-                        /* 1 */
-                        Artists.ARTIST,
-                        /* 2 */
-                        Artists.NUMBER_OF_ALBUMS,
-                        /* 3 */
-                        Artists.NUMBER_OF_TRACKS
-                }, null, null, artistSortOrder);
+                projection, selection, selectionArgs, artistSortOrder);
 
         // if our sort is a localized-based sort, grab localized data from the store
         final SortParameter sortParameter = getSortParameter(artistSortOrder);
-        if (sortParameter != null && cursor != null) {
+        if (runSort && sortParameter != null && cursor != null) {
             final boolean descending = MusicUtils.isSortOrderDesending(artistSortOrder);
             return LocalizedStore.getInstance(context).getLocalizedSort(cursor, Artists._ID,
-                    SortParameter.Artist, sortParameter, descending, true);
+                    SortParameter.Artist, sortParameter, descending, selection == null);
         }
 
         return cursor;
     }
+
+    /**
+     * Pages through all the artists of the library, only reading the ids and the values used
+     * for the sections up front
+     */
+    public static class PagedArtistSource implements PagedSectionCreator.PagedSource<Artist> {
+        private final Context mContext;
+
+        public PagedArtistSource(final Context context) {
+            mContext = context.getApplicationContext();
+        }
+
+        @Override
+        public Cursor queryKeys() {
+            // as per designer's request, don't show unknown artist
+            return makeArtistCursor(mContext, KEY_PROJECTION, Artists.ARTIST + "!=?",
+                    new String[] {MediaStore.UNKNOWN_STRING}, true);
+        }
+
+        @Override
+        public Artist createKeyItem(final Cursor cursor) {
+            // only the values compared by the sections, read along with the ids
+            final Artist artist = new Artist(cursor.getLong(0), cursor.getString(1),
+                    cursor.getInt(2), cursor.getInt(3));
+
+            if (cursor instanceof SortedCursor) {
+                artist.mBucketLabel = (String) ((SortedCursor) cursor).getExtraData();
+            }
+
+            return artist;
+        }
+
+        @Override
+        public List<Artist> loadPage(final long[] ids) {
+            return LibraryCatalog.getInstance(mContext).getArtists(ids);
+        }
+    }
 }
@@ -18,31 +18,21 @@
 package org.lineageos.eleven.loaders;
 
 import android.content.Context;
-import android.database.Cursor;
-import android.provider.BaseColumns;
-import android.provider.MediaStore;
-import android.provider.MediaStore.Audio.AudioColumns;
 
 import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.provider.LibraryCatalog;
 import org.lineageos.eleven.sectionadapter.SectionCreator;
-import org.lineageos.eleven.utils.Lists;
 import org.lineageos.eleven.utils.PreferenceUtils;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Used to query MediaStore.Audio.Media.EXTERNAL_CONTENT_URI and return
- * the Song the user added over the past four of weeks.
+ * Used to read the songs the user added over the past four of weeks from the
+ * {@link LibraryCatalog}.
  *
  * @author Andrew Neal (andrewdneal@gmail.com)
  */
 public class LastAddedLoader extends SectionCreator.SimpleListLoader<Song> {
-    /**
-     * The result
-     */
-    private final ArrayList<Song> mSongList = Lists.newArrayList();
-
     /**
      * Constructor of <code>LastAddedHandler</code>
      *
@@ -54,55 +44,15 @@ public class LastAddedLoader extends SectionCreator.SimpleListLoader<Song> {
 
     @Override
     public List<Song> loadInBackground() {
-        // Create the xCursor
-        Cursor cursor = makeLastAddedCursor(getContext());
-        // Gather the data
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                // Copy the song Id
-                final long id = cursor.getLong(0);
-
-                // Copy the song name
-                final String songName = cursor.getString(1);
-
-                // Copy the artist name
-                final String artist = cursor.getString(2);
-
-                // Copy the album id
-                final long albumId = cursor.getLong(3);
-
-                // Copy the album name
-                final String album = cursor.getString(4);
-
-                // Copy the duration
-                final long duration = cursor.getLong(5);
-
-                // Convert the duration into seconds
-                final int durationInSecs = (int) duration / 1000;
-
-                // Grab the Song Year
-                final int year = cursor.getInt(6);
-
-                // Create a new song
-                final Song song = new Song(id, songName, artist, album, albumId, durationInSecs,
-                        year);
-
-                // Add everything up
-                mSongList.add(song);
-            } while (cursor.moveToNext());
-        }
-        // Close the cursor
-        if (cursor != null) {
-            cursor.close();
-        }
-        return mSongList;
+        return LibraryCatalog.getInstance(getContext()).getSnapshot()
+                .getSongsAddedAfter(getCutoff(getContext()));
     }
 
     /**
      * @param context The {@link Context} to use.
-     * @return The {@link Cursor} used to run the song query.
+     * @return the date in seconds after which songs count as last added
      */
-    public static Cursor makeLastAddedCursor(final Context context) {
+    public static long getCutoff(final Context context) {
         // timestamp of four weeks ago
         long fourWeeksAgo = (System.currentTimeMillis() / 1000) - (4 * 3600 * 24 * 7);
         // possible saved timestamp caused by user "clearing" the last added playlist
@@ -112,27 +62,6 @@ public class LastAddedLoader extends SectionCreator.SimpleListLoader<Song> {
             cutoff = fourWeeksAgo;
         }
 
-        String selection = (AudioColumns.IS_MUSIC + "=1") +
-                " AND " + AudioColumns.TITLE + " != ''" +
-                " AND " + MediaStore.Audio.Media.DATE_ADDED + ">" +
-                cutoff;
-
-        return context.getContentResolver().query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                new String[]{
-                        /* 0 */
-                        BaseColumns._ID,
-                        /* 1 */
-                        AudioColumns.TITLE,
-                        /* 2 */
-                        AudioColumns.ARTIST,
-                        /* 3 */
-                        AudioColumns.ALBUM_ID,
-                        /* 4 */
-                        AudioColumns.ALBUM,
-                        /* 5 */
-                        AudioColumns.DURATION,
-                        /* 6 */
-                        AudioColumns.YEAR,
-                }, selection, null, MediaStore.Audio.Media.DATE_ADDED + " DESC");
+        return cutoff;
     }
 }
@@ -24,13 +24,21 @@ import android.provider.BaseColumns;
 import android.provider.MediaStore;
 import android.provider.MediaStore.Audio.AudioColumns;
 
+import org.lineageos.eleven.utils.IdResolver;
 import org.lineageos.eleven.utils.MusicUtils;
+import org.lineageos.eleven.utils.collections.LongArrayList;
 
-import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * A custom {@link Cursor} used to return the queue and allow for easy dragging
  * and dropping of the items in it.
+ * <p>
+ * Only the ids of the queue are held up front, the rows are read from the MediaStore a chunk
+ * of positions at a time as the cursor is moved and the recently used chunks are kept. The
+ * songs found missing while reading the chunks are removed from the queue together once the
+ * cursor is requeried or closed.
  */
 @SuppressLint("NewApi")
 public class NowPlayingCursor extends AbstractCursor {
@@ -52,17 +60,37 @@ public class NowPlayingCursor extends AbstractCursor {
             AudioColumns.YEAR,
     };
 
+    /* # of queue positions read at once */
+    private static final int CHUNK_SIZE = 64;
+
+    /* # of chunks kept in memory */
+    private static final int MAX_CHUNKS = 8;
+
     private final Context mContext;
 
     private long[] mNowPlaying;
 
-    private long[] mCursorIndexes;
+    private int mQueueVersion = -1;
 
     private int mSize;
 
     private int mCurPos;
 
-    private Cursor mQueueCursor;
+    // the rows of each chunk by chunk index, in access order so the eldest is the least
+    // recently used
+    private final LinkedHashMap<Integer, Object[][]> mChunks =
+            new LinkedHashMap<Integer, Object[][]>(MAX_CHUNKS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Object[][]> eldest) {
+                    return size() > MAX_CHUNKS;
+                }
+            };
+
+    // the row at the current position, null if its song doesn't exist
+    private Object[] mRow;
+
+    // the ids of the read chunks that aren't in the MediaStore, still to be removed
+    private final LongArrayList mMissingIds = new LongArrayList();
 
     /**
      * Constructor of <code>NowPlayingCursor</code>
@@ -81,74 +109,94 @@ public class NowPlayingCursor extends AbstractCursor {
 
     @Override
     public boolean onMove(final int oldPosition, final int newPosition) {
-        if (oldPosition == newPosition) {
+        if (oldPosition == newPosition && mRow != null) {
             return true;
         }
 
-        if (mNowPlaying == null || mCursorIndexes == null || newPosition >= mNowPlaying.length) {
+        if (mNowPlaying == null || newPosition < 0 || newPosition >= mSize) {
             return false;
         }
 
-        final long id = mNowPlaying[newPosition];
-        final int cursorIndex = Arrays.binarySearch(mCursorIndexes, id);
-        mQueueCursor.moveToPosition(cursorIndex);
+        final int chunk = newPosition / CHUNK_SIZE;
+        Object[][] rows = mChunks.get(chunk);
+        if (rows == null) {
+            rows = readChunk(chunk);
+            mChunks.put(chunk, rows);
+        }
+
+        mRow = rows[newPosition - chunk * CHUNK_SIZE];
         mCurPos = newPosition;
         return true;
     }
 
+    private Object getValue(final int column) {
+        if (column < 0 || column >= PROJECTION.length) {
+            throw new IllegalArgumentException("Invalid column " + column);
+        }
+        return mRow != null ? mRow[column] : null;
+    }
+
     @Override
     public String getString(final int column) {
-        try {
-            return mQueueCursor.getString(column);
-        } catch (final Exception ignored) {
-            onChange(true);
+        if (mRow == null) {
+            // the song was removed after the queue was checked
             return "";
         }
+        final Object value = getValue(column);
+        return value != null ? value.toString() : null;
     }
 
     @Override
     public short getShort(final int column) {
-        return mQueueCursor.getShort(column);
+        return (short) getLong(column);
     }
 
     @Override
     public int getInt(final int column) {
-        try {
-            return mQueueCursor.getInt(column);
-        } catch (final Exception ignored) {
-            onChange(true);
-            return 0;
-        }
+        return (int) getLong(column);
     }
 
     @Override
     public long getLong(final int column) {
-        try {
-            return mQueueCursor.getLong(column);
-        } catch (final Exception ignored) {
-            onChange(true);
-            return 0;
+        final Object value = getValue(column);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else if (value instanceof String) {
+            try {
+                return Long.parseLong((String) value);
+            } catch (final NumberFormatException ignored) {
+            }
         }
+        return 0;
     }
 
     @Override
     public float getFloat(final int column) {
-        return mQueueCursor.getFloat(column);
+        return (float) getDouble(column);
     }
 
     @Override
     public double getDouble(final int column) {
-        return mQueueCursor.getDouble(column);
+        final Object value = getValue(column);
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
     }
 
     @Override
     public int getType(final int column) {
-        return mQueueCursor.getType(column);
+        final Object value = getValue(column);
+        if (value == null) {
+            return FIELD_TYPE_NULL;
+        } else if (value instanceof Long) {
+            return FIELD_TYPE_INTEGER;
+        } else if (value instanceof Double) {
+            return FIELD_TYPE_FLOAT;
+        }
+        return FIELD_TYPE_STRING;
     }
 
     @Override
     public boolean isNull(final int column) {
-        return mQueueCursor.isNull(column);
+        return getValue(column) == null;
     }
 
     @Override
@@ -159,9 +207,8 @@ public class NowPlayingCursor extends AbstractCursor {
     @SuppressWarnings("deprecation")
     @Override
     public void deactivate() {
-        if (mQueueCursor != null) {
-            mQueueCursor.deactivate();
-        }
+        mChunks.clear();
+        mRow = null;
     }
 
     @Override
@@ -172,72 +219,71 @@ public class NowPlayingCursor extends AbstractCursor {
 
     @Override
     public void close() {
-        try {
-            if (mQueueCursor != null) {
-                mQueueCursor.close();
-                mQueueCursor = null;
-            }
-        } catch (final Exception ignored) {
-        }
+        removeMissing();
+        mChunks.clear();
+        mRow = null;
         super.close();
     }
 
     /**
-     * Actually makes the queue
+     * Actually makes the queue.  The queue is only fetched again if it changed since the last
+     * time, which includes the removal of the songs found missing so far
      */
     private void makeNowPlayingCursor() {
-        mQueueCursor = null;
-        mNowPlaying = MusicUtils.getQueue();
-        mSize = mNowPlaying.length;
-        if (mSize == 0) {
-            return;
-        }
+        removeMissing();
 
-        final StringBuilder selection = new StringBuilder();
-        selection.append(MediaStore.Audio.Media._ID + " IN (");
-        for (int i = 0; i < mSize; i++) {
-            selection.append(mNowPlaying[i]);
-            if (i < mSize - 1) {
-                selection.append(",");
-            }
+        final int version = MusicUtils.getQueueVersion();
+        if (mNowPlaying != null && version >= 0 && version == mQueueVersion) {
+            return;
         }
-        selection.append(")");
 
-        mQueueCursor = mContext.getContentResolver().query(
-                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, PROJECTION, selection.toString(),
-                null, MediaStore.Audio.Media._ID);
+        mChunks.clear();
+        mRow = null;
+        mCurPos = -1;
+        mQueueVersion = version;
+        mNowPlaying = MusicUtils.getQueue();
+        mSize = mNowPlaying.length;
+    }
 
-        if (mQueueCursor == null) {
-            mSize = 0;
+    /**
+     * Removes the songs that the read chunks found missing from the queue, in one go
+     */
+    private void removeMissing() {
+        if (mMissingIds.isEmpty()) {
             return;
         }
+        final long[] missing = mMissingIds.toArray();
+        mMissingIds.clear();
+        MusicUtils.removeTracks(missing);
+    }
 
-        final int playlistSize = mQueueCursor.getCount();
-        mCursorIndexes = new long[playlistSize];
-        mQueueCursor.moveToFirst();
-        final int columnIndex = mQueueCursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
-        for (int i = 0; i < playlistSize; i++) {
-            mCursorIndexes[i] = mQueueCursor.getLong(columnIndex);
-            mQueueCursor.moveToNext();
-        }
-        mQueueCursor.moveToFirst();
-        mCurPos = -1;
-
-        int removed = 0;
-        for (int i = mNowPlaying.length - 1; i >= 0; i--) {
-            final long trackId = mNowPlaying[i];
-            final int cursorIndex = Arrays.binarySearch(mCursorIndexes, trackId);
-            if (cursorIndex < 0) {
-                removed += MusicUtils.removeTrack(trackId);
+    /**
+     * Reads the rows of a chunk of the queue
+     *
+     * @param chunk the index of the chunk
+     * @return the rows of the chunk by position, with null for songs that don't exist
+     */
+    private Object[][] readChunk(final int chunk) {
+        final int start = chunk * CHUNK_SIZE;
+        final int end = Math.min(start + CHUNK_SIZE, mSize);
+        final long[] ids = new long[end - start];
+        System.arraycopy(mNowPlaying, start, ids, 0, ids.length);
+
+        final Object[][] rows = new Object[ids.length][];
+        final IdResolver.Result result = IdResolver.resolve(mContext.getContentResolver(),
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, PROJECTION, null, ids);
+        if (result != null) {
+            for (int i = 0; i < ids.length; i++) {
+                rows[i] = result.getRow(i);
             }
-        }
-        if (removed > 0) {
-            mNowPlaying = MusicUtils.getQueue();
-            mSize = mNowPlaying.length;
-            if (mSize == 0) {
-                mCursorIndexes = null;
+            for (long id : result.getMissingIds()) {
+                // a chunk is read again when it was dropped or the positions moved
+                if (mMissingIds.indexOf(id) < 0) {
+                    mMissingIds.add(id);
+                }
             }
         }
+        return rows;
     }
 
     /**
@@ -253,6 +299,11 @@ public class NowPlayingCursor extends AbstractCursor {
             mNowPlaying[i] = mNowPlaying[i + 1];
             i++;
         }
-        onMove(-1, mCurPos);
+        // the positions after the removed one moved, so their chunks are read again
+        mChunks.clear();
+        mQueueVersion = -1;
+        final int position = mCurPos;
+        mRow = null;
+        onMove(-1, position);
     }
 }
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.loaders;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.lineageos.eleven.utils.collections.LongIntHashMap;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.ToLongFunction;
+
+/**
+ * A read only list that only holds the ids of its items up front.  The items themselves are
+ * loaded a page at a time around the positions being read, with the neighbouring pages
+ * prefetched and the least recently used pages evicted, so the memory used doesn't grow with
+ * the size of the library.
+ * <p>
+ * {@link #get(int)} returns null for items whose page isn't loaded yet and the
+ * {@link Listener} is told once it is, so apart from the first page this must only be used
+ * from the main thread.
+ *
+ * @param <T> the type of the items
+ */
+public class PagedList<T> extends AbstractList<T> {
+    private static final String TAG = PagedList.class.getSimpleName();
+
+    /* # of items loaded at once */
+    public static final int PAGE_SIZE = 64;
+
+    /* # of pages kept in memory */
+    private static final int MAX_PAGES = 12;
+
+    /* # of pages loaded ahead of and behind the one being read */
+    private static final int PREFETCH_PAGES = 1;
+
+    private static final ExecutorService sPageExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Loads the items of a page
+     *
+     * @param <T> the type of the items
+     */
+    public interface PageLoader<T> {
+        /**
+         * This runs on a background thread
+         *
+         * @param ids the ids of the items
+         * @return the items in the same order as the ids, with null for any item that
+         * doesn't exist anymore
+         */
+        List<T> loadPage(long[] ids);
+    }
+
+    /**
+     * Notified on the main thread when a page has been loaded
+     */
+    public interface Listener {
+        void onRangeLoaded(int positionStart, int itemCount);
+    }
+
+    private final long[] mIds;
+    private final PageLoader<T> mPageLoader;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // pages by index, in access order so the eldest is the least recently used
+    private final LinkedHashMap<Integer, Object[]> mPages =
+            new LinkedHashMap<Integer, Object[]>(MAX_PAGES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Object[]> eldest) {
+                    return size() > MAX_PAGES;
+                }
+            };
+    private final boolean[] mLoading;
+
+    private Listener mListener;
+
+    /**
+     * @param ids        the ids of the items, in order
+     * @param pageLoader used to load the items
+     */
+    public PagedList(final long[] ids, final PageLoader<T> pageLoader) {
+        mIds = ids;
+        mPageLoader = pageLoader;
+        mLoading = new boolean[(ids.length + PAGE_SIZE - 1) / PAGE_SIZE];
+    }
+
+    /**
+     * Loads the first page on the calling thread, this is meant to be called from the loader
+     * before the list is handed to the ui so the first rows don't need to wait for a page
+     */
+    public void loadFirstPage() {
+        if (mLoading.length > 0) {
+            mPages.put(0, loadPage(0));
+        }
+    }
+
+    /**
+     * @param listener notified when pages are loaded, or null to stop listening
+     */
+    public void setListener(final Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public int size() {
+        return mIds.length;
+    }
+
+    /**
+     * @param position the position of the item
+     * @return the id of the item, which is always available
+     */
+    public long getId(final int position) {
+        return mIds[position];
+    }
+
+    /**
+     * @return the ids of all the items, this must not be modified
+     */
+    public long[] getIds() {
+        return mIds;
+    }
+
+    /**
+     * Copies the pages loaded so far without loading any more, this must be called from the main
+     * thread but the copy can be read from any thread
+     *
+     * @return the loaded items
+     */
+    public LoadedItems<T> getLoadedItems() {
+        return new LoadedItems<>(new HashMap<>(mPages));
+    }
+
+    /**
+     * @param position the position of the item
+     * @return the item, or null if its page is still loading
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(final int position) {
+        if (position < 0 || position >= mIds.length) {
+            throw new IndexOutOfBoundsException("position " + position + " size " + mIds.length);
+        }
+
+        // the page being read is requested first so it loads before the prefetched ones
+        final int page = position / PAGE_SIZE;
+        final Object[] items = mPages.get(page);
+        if (items == null) {
+            requestPage(page);
+        }
+
+        for (int i = Math.max(0, page - PREFETCH_PAGES);
+             i <= Math.min(mLoading.length - 1, page + PREFETCH_PAGES); i++) {
+            requestPage(i);
+        }
+
+        return items != null ? (T) items[position - page * PAGE_SIZE] : null;
+    }
+
+    private void requestPage(final int page) {
+        if (mLoading[page] || mPages.containsKey(page)) {
+            return;
+        }
+
+        mLoading[page] = true;
+        sPageExecutor.execute(() -> {
+            Object[] items = null;
+            try {
+                items = loadPage(page);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to load page " + page, e);
+            }
+
+            final Object[] loadedItems = items;
+            mHandler.post(() -> {
+                mLoading[page] = false;
+                if (loadedItems == null) {
+                    return;
+                }
+
+                mPages.put(page, loadedItems);
+                if (mListener != null) {
+                    final int start = page * PAGE_SIZE;
+                    mListener.onRangeLoaded(start, loadedItems.length);
+                }
+            });
+        });
+    }
+
+    /**
+     * Puts the loaded items of a page in the order of its ids
+     *
+     * @param ids   the ids of the page
+     * @param items the items that were found, in any order
+     * @param idOf  gets the id of an item
+     * @param <T>   the type of the items
+     * @return the items in the order of the ids, with null for the ones that weren't found
+     */
+    public static <T> List<T> orderByIds(final long[] ids, final List<T> items,
+                                         final ToLongFunction<T> idOf) {
+        final LongIntHashMap positions = new LongIntHashMap(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            positions.put(ids[i], i);
+        }
+
+        final ArrayList<T> ordered = new ArrayList<>(Collections.nCopies(ids.length, null));
+        for (T item : items) {
+            final int position = positions.get(idOf.applyAsLong(item), -1);
+            if (position >= 0) {
+                ordered.set(position, item);
+            }
+        }
+        return ordered;
+    }
+
+    private Object[] loadPage(final int page) {
+        final int start = page * PAGE_SIZE;
+        final int end = Math.min(start + PAGE_SIZE, mIds.length);
+        final long[] ids = new long[end - start];
+        System.arraycopy(mIds, start, ids, 0, ids.length);
+
+        final List<T> items = mPageLoader.loadPage(ids);
+        return items.toArray(new Object[0]);
+    }
+
+    /**
+     * The items of a list that were loaded at some point
+     *
+     * @param <T> the type of the items
+     */
+    public static final class LoadedItems<T> {
+        private final HashMap<Integer, Object[]> mPages;
+
+        private LoadedItems(final HashMap<Integer, Object[]> pages) {
+            mPages = pages;
+        }
+
+        /**
+         * @param position the position of the item
+         * @return the item, or null if it wasn't loaded
+         */
+        @SuppressWarnings("unchecked")
+        public T get(final int position) {
+            final int page = position / PAGE_SIZE;
+            final Object[] items = mPages.get(page);
+            return items != null ? (T) items[position - page * PAGE_SIZE] : null;
+        }
+    }
+}
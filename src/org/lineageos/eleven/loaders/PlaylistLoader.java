@@ -26,6 +26,7 @@ import android.provider.MediaStore.Audio.PlaylistsColumns;
 
 import org.lineageos.eleven.Config.SmartPlaylistType;
 import org.lineageos.eleven.model.Playlist;
+import org.lineageos.eleven.provider.PlaylistArtworkStore;
 import org.lineageos.eleven.utils.Lists;
 import org.lineageos.eleven.utils.MusicUtils;
 
@@ -83,6 +84,9 @@ public class PlaylistLoader extends WrappedAsyncTaskLoader<List<Playlist>> {
         if (cursor != null) {
             cursor.close();
         }
+
+        // load the playlist artwork details now, so binding the playlists doesn't query them
+        PlaylistArtworkStore.getInstance(getContext()).load();
         return mPlaylistList;
     }
 
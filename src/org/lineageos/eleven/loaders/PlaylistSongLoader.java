@@ -29,7 +29,9 @@ import android.provider.MediaStore.Audio.Playlists;
 import android.util.Log;
 
 import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.provider.LibraryCatalog;
 import org.lineageos.eleven.utils.Lists;
+import org.lineageos.eleven.utils.collections.LongArrayList;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -115,52 +117,26 @@ public class PlaylistSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
             }
         }
 
-        // Gather the data
+        // Gather the ids, the songs themselves come from the catalog
+        final LongArrayList ids = new LongArrayList();
         if (cursor != null && cursor.moveToFirst()) {
+            final int idCol = cursor.getColumnIndexOrThrow(Playlists.Members.AUDIO_ID);
             do {
-                // Copy the song Id
-                final long id = cursor.getLong(cursor
-                        .getColumnIndexOrThrow(MediaStore.Audio.Playlists.Members.AUDIO_ID));
-
-                // Copy the song name
-                final String songName = cursor.getString(cursor
-                        .getColumnIndexOrThrow(AudioColumns.TITLE));
-
-                // Copy the artist name
-                final String artist = cursor.getString(cursor
-                        .getColumnIndexOrThrow(AudioColumns.ARTIST));
-
-                // Copy the album id
-                final long albumId = cursor.getLong(cursor
-                        .getColumnIndexOrThrow(AudioColumns.ALBUM_ID));
-
-                // Copy the album name
-                final String album = cursor.getString(cursor
-                        .getColumnIndexOrThrow(AudioColumns.ALBUM));
-
-                // Copy the duration
-                final long duration = cursor.getLong(cursor
-                        .getColumnIndexOrThrow(AudioColumns.DURATION));
-
-                // Convert the duration into seconds
-                final int durationInSecs = (int) duration / 1000;
-
-                // Grab the Song Year
-                final int year = cursor.getInt(cursor
-                        .getColumnIndexOrThrow(AudioColumns.YEAR));
-
-                // Create a new song
-                final Song song = new Song(id, songName, artist, album, albumId, durationInSecs,
-                        year);
-
-                // Add everything up
-                mSongList.add(song);
+                ids.add(cursor.getLong(idCol));
             } while (cursor.moveToNext());
         }
+
         // Close the cursor
         if (cursor != null) {
             cursor.close();
         }
+
+        for (Song song : LibraryCatalog.getInstance(getContext()).getSongs(ids.toArray())) {
+            if (song != null) {
+                mSongList.add(song);
+            }
+        }
+
         return mSongList;
     }
 
@@ -238,7 +214,8 @@ public class PlaylistSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
     }
 
     /**
-     * Creates the {@link Cursor} used to run the query.
+     * Creates the {@link Cursor} used to run the query.  This only holds the playlist members,
+     * the songs themselves are read from the {@link LibraryCatalog}
      *
      * @param context    The {@link Context} to use.
      * @param playlistID The playlist the songs belong to.
@@ -255,18 +232,6 @@ public class PlaylistSongLoader extends WrappedAsyncTaskLoader<List<Song>> {
                         /* 1 */
                         MediaStore.Audio.Playlists.Members.AUDIO_ID,
                         /* 2 */
-                        AudioColumns.TITLE,
-                        /* 3 */
-                        AudioColumns.ARTIST,
-                        /* 4 */
-                        AudioColumns.ALBUM_ID,
-                        /* 5 */
-                        AudioColumns.ALBUM,
-                        /* 6 */
-                        AudioColumns.DURATION,
-                        /* 7 */
-                        AudioColumns.YEAR,
-                        /* 8 */
                         Playlists.Members.PLAY_ORDER,
                 }, mSelection, null,
                 MediaStore.Audio.Playlists.Members.DEFAULT_SORT_ORDER);
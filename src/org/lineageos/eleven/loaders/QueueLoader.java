@@ -54,6 +54,11 @@ public class QueueLoader extends WrappedAsyncTaskLoader<List<Song>> {
         // Gather the data
         if (cursor.moveToFirst()) {
             do {
+                // Skip the songs that don't exist anymore, the cursor removes them from the queue
+                if (cursor.isNull(0)) {
+                    continue;
+                }
+
                 // Copy the song Id
                 final long id = cursor.getLong(0);
 
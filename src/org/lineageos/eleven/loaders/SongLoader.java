@@ -23,13 +23,16 @@ import android.provider.MediaStore.Audio;
 import android.text.TextUtils;
 
 import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.provider.LibraryCatalog;
 import org.lineageos.eleven.provider.LocalizedStore;
 import org.lineageos.eleven.provider.LocalizedStore.SortParameter;
+import org.lineageos.eleven.sectionadapter.PagedSectionCreator;
 import org.lineageos.eleven.sectionadapter.SectionCreator;
 import org.lineageos.eleven.utils.Lists;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.utils.PreferenceUtils;
 import org.lineageos.eleven.utils.SortOrder;
+import org.lineageos.eleven.utils.collections.LongArrayList;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -74,42 +77,16 @@ public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
         // Create the Cursor
         Cursor cursor = getCursor();
 
-        // Gather the data
+        // Gather the ids, the songs themselves come from the catalog
+        final LongArrayList ids = new LongArrayList();
+        final ArrayList<Object> bucketLabels = new ArrayList<>();
         if (cursor != null && cursor.moveToFirst()) {
             do {
-                // Copy the song Id
-                final long id = cursor.getLong(0);
-
-                // Copy the song name
-                final String songName = cursor.getString(1);
-
-                // Copy the artist name
-                final String artist = cursor.getString(2);
-
-                // Copy the album id
-                final long albumId = cursor.getLong(3);
-
-                // Copy the album name
-                final String album = cursor.getString(4);
-
-                // Copy the duration
-                final long duration = cursor.getLong(5);
-
-                // Convert the duration into seconds
-                final int durationInSecs = (int) duration / 1000;
-
-                // Copy the Year
-                final int year = cursor.getInt(6);
-
-                // Create a new song
-                final Song song = new Song(id, songName, artist, album, albumId,
-                        durationInSecs, year);
+                ids.add(cursor.getLong(0));
 
                 if (cursor instanceof SortedCursor) {
-                    song.mBucketLabel = (String) ((SortedCursor) cursor).getExtraData();
+                    bucketLabels.add(((SortedCursor) cursor).getExtraData());
                 }
-
-                mSongList.add(song);
             } while (cursor.moveToNext());
         }
         // Close the cursor
@@ -117,6 +94,20 @@ public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
             cursor.close();
         }
 
+        final List<Song> songs = LibraryCatalog.getInstance(getContext()).getSongs(ids.toArray());
+        for (int i = 0; i < songs.size(); i++) {
+            final Song song = songs.get(i);
+            if (song == null) {
+                continue;
+            }
+
+            if (!bucketLabels.isEmpty()) {
+                song.mBucketLabel = (String) bucketLabels.get(i);
+            }
+
+            mSongList.add(song);
+        }
+
         return mSongList;
     }
 
@@ -149,7 +140,8 @@ public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
     }
 
     /**
-     * Creates the {@link Cursor} used to run the query.
+     * Creates the {@link Cursor} used to run the query.  This only holds the song ids in list
+     * order, the songs themselves are read from the {@link LibraryCatalog}
      *
      * @param context   The {@link Context} to use.
      * @param selection Additional selection statement to use
@@ -160,7 +152,8 @@ public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
     }
 
     /**
-     * Creates the {@link Cursor} used to run the query.
+     * Creates the {@link Cursor} used to run the query.  This only holds the song ids in list
+     * order, the songs themselves are read from the {@link LibraryCatalog}
      *
      * @param context   The {@link Context} to use.
      * @param selection Additional selection statement to use
@@ -171,6 +164,23 @@ public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
      */
     public static Cursor makeSongCursor(final Context context, final String selection,
                                         final boolean runSort) {
+        return makeSongCursor(context, new String[]{
+                /* 0 */
+                Audio.Media._ID,
+        }, selection, runSort);
+    }
+
+    /**
+     * Creates the {@link Cursor} used to run the query.
+     *
+     * @param context    The {@link Context} to use.
+     * @param projection The columns to query, the first one must be the id
+     * @param selection  Additional selection statement to use
+     * @param runSort    Whether to run the additional localization sort
+     * @return The {@link Cursor} used to run the song query.
+     */
+    private static Cursor makeSongCursor(final Context context, final String[] projection,
+                                         final String selection, final boolean runSort) {
         String selectionStatement = MusicUtils.MUSIC_ONLY_SELECTION;
         if (!TextUtils.isEmpty(selection)) {
             selectionStatement += " AND " + selection;
@@ -179,22 +189,7 @@ public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
         final String songSortOrder = PreferenceUtils.getInstance(context).getSongSortOrder();
 
         Cursor cursor = context.getContentResolver().query(Audio.Media.EXTERNAL_CONTENT_URI,
-                new String[]{
-                        /* 0 */
-                        Audio.Media._ID,
-                        /* 1 */
-                        Audio.Media.TITLE,
-                        /* 2 */
-                        Audio.Media.ARTIST,
-                        /* 3 */
-                        Audio.Media.ALBUM_ID,
-                        /* 4 */
-                        Audio.Media.ALBUM,
-                        /* 5 */
-                        Audio.Media.DURATION,
-                        /* 6 */
-                        Audio.Media.YEAR,
-                }, selectionStatement, null, songSortOrder);
+                projection, selectionStatement, null, songSortOrder);
 
         // if our sort is a localized-based sort, grab localized data from the store
         final SortParameter sortParameter = getSortParameter(songSortOrder);
@@ -206,4 +201,53 @@ public class SongLoader extends SectionCreator.SimpleListLoader<Song> {
 
         return cursor;
     }
+
+    /**
+     * Pages through all the songs of the library, only reading the ids and the values used for
+     * the sections up front
+     */
+    public static class PagedSongSource implements PagedSectionCreator.PagedSource<Song> {
+        private final Context mContext;
+
+        public PagedSongSource(final Context context) {
+            mContext = context.getApplicationContext();
+        }
+
+        @Override
+        public Cursor queryKeys() {
+            return makeSongCursor(mContext, new String[]{
+                    /* 0 */
+                    Audio.Media._ID,
+                    /* 1 */
+                    Audio.Media.TITLE,
+                    /* 2 */
+                    Audio.Media.ARTIST,
+                    /* 3 */
+                    Audio.Media.ALBUM,
+                    /* 4 */
+                    Audio.Media.DURATION,
+                    /* 5 */
+                    Audio.Media.YEAR,
+            }, null, true);
+        }
+
+        @Override
+        public Song createKeyItem(final Cursor cursor) {
+            // only the values compared by the sections, read along with the ids
+            final Song song = new Song(cursor.getLong(0), cursor.getString(1),
+                    cursor.getString(2), cursor.getString(3), -1,
+                    (int) cursor.getLong(4) / 1000, cursor.getInt(5));
+
+            if (cursor instanceof SortedCursor) {
+                song.mBucketLabel = (String) ((SortedCursor) cursor).getExtraData();
+            }
+
+            return song;
+        }
+
+        @Override
+        public List<Song> loadPage(final long[] ids) {
+            return LibraryCatalog.getInstance(mContext).getSongs(ids);
+        }
+    }
 }
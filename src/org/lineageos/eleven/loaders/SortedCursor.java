@@ -19,9 +19,11 @@ package org.lineageos.eleven.loaders;
 import android.database.AbstractCursor;
 import android.database.Cursor;
 
+import org.lineageos.eleven.utils.collections.IntArrayList;
+import org.lineageos.eleven.utils.collections.LongArrayList;
+import org.lineageos.eleven.utils.collections.LongIntHashMap;
+
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -33,13 +35,15 @@ public class SortedCursor extends AbstractCursor {
     // cursor to wrap
     private final Cursor mCursor;
     // the map of external indices to internal indices
-    private ArrayList<Integer> mOrderedPositions;
+    private IntArrayList mOrderedPositions;
     // this contains the ids that weren't found in the underlying cursor
-    private final ArrayList<Long> mMissingIds;
+    private final LongArrayList mMissingIds;
     // this contains the mapped cursor positions and afterwards the extra ids that weren't found
-    private HashMap<Long, Integer> mMapCursorPositions;
+    private LongIntHashMap mMapCursorPositions;
     // extra we want to store with the cursor
     private ArrayList<Object> mExtraData;
+    // the bucket of each row, if the order came with buckets
+    private IntArrayList mBuckets;
 
     /**
      * @param cursor     to wrap
@@ -48,12 +52,25 @@ public class SortedCursor extends AbstractCursor {
      */
     public SortedCursor(final Cursor cursor, final long[] order, final String columnName,
                         final List<?> extraData) {
+        this(cursor, order, columnName, extraData, null);
+    }
+
+    /**
+     * @param cursor     to wrap
+     * @param order      the list of unique ids in sorted order to display
+     * @param columnName the column name of the id to look up in the internal cursor
+     * @param extraData  Extra data we want to add to the cursor, in the same order as the ids
+     * @param buckets    the bucket of each id, the rows of a bucket being next to each other in
+     *                   the order, or null if there are none
+     */
+    public SortedCursor(final Cursor cursor, final long[] order, final String columnName,
+                        final List<?> extraData, final int[] buckets) {
         if (cursor == null) {
             throw new IllegalArgumentException("Non-null cursor is needed");
         }
 
         mCursor = cursor;
-        mMissingIds = buildCursorPositionMapping(order, columnName, extraData);
+        mMissingIds = buildCursorPositionMapping(order, columnName, extraData, buckets);
     }
 
     /**
@@ -62,17 +79,22 @@ public class SortedCursor extends AbstractCursor {
      *
      * @param order     the target order of the internal cursor
      * @param extraData Extra data we want to add to the cursor
+     * @param buckets   the buckets of the ids, may be null
      * @return returns the ids that aren't found in the underlying cursor
      */
-    private ArrayList<Long> buildCursorPositionMapping(final long[] order,
-                                                       final String columnName,
-                                                       final List<?> extraData) {
-        ArrayList<Long> missingIds = new ArrayList<>();
+    private LongArrayList buildCursorPositionMapping(final long[] order,
+                                                     final String columnName,
+                                                     final List<?> extraData,
+                                                     final int[] buckets) {
+        LongArrayList missingIds = new LongArrayList();
 
-        mOrderedPositions = new ArrayList<>(mCursor.getCount());
+        mOrderedPositions = new IntArrayList(mCursor.getCount());
         mExtraData = new ArrayList<>();
+        if (buckets != null) {
+            mBuckets = new IntArrayList(mCursor.getCount());
+        }
 
-        mMapCursorPositions = new HashMap<>(mCursor.getCount());
+        mMapCursorPositions = new LongIntHashMap(mCursor.getCount());
         final int idPosition = mCursor.getColumnIndex(columnName);
 
         if (mCursor.moveToFirst()) {
@@ -85,12 +107,16 @@ public class SortedCursor extends AbstractCursor {
             // external sort order
             for (int i = 0; order != null && i < order.length; i++) {
                 final long id = order[i];
-                if (mMapCursorPositions.containsKey(id)) {
-                    mOrderedPositions.add(mMapCursorPositions.get(id));
+                final int position = mMapCursorPositions.get(id, -1);
+                if (position >= 0) {
+                    mOrderedPositions.add(position);
                     mMapCursorPositions.remove(id);
                     if (extraData != null) {
                         mExtraData.add(extraData.get(i));
                     }
+                    if (buckets != null) {
+                        mBuckets.add(buckets[i]);
+                    }
                 } else {
                     missingIds.add(id);
                 }
@@ -105,15 +131,15 @@ public class SortedCursor extends AbstractCursor {
     /**
      * @return the list of ids that weren't found in the underlying cursor
      */
-    public ArrayList<Long> getMissingIds() {
+    public LongArrayList getMissingIds() {
         return mMissingIds;
     }
 
     /**
      * @return the list of ids that were in the underlying cursor but not part of the ordered list
      */
-    public Collection<Long> getExtraIds() {
-        return mMapCursorPositions.keySet();
+    public long[] getExtraIds() {
+        return mMapCursorPositions.keys();
     }
 
     /**
@@ -124,6 +150,20 @@ public class SortedCursor extends AbstractCursor {
         return position < mExtraData.size() ? mExtraData.get(position) : null;
     }
 
+    /**
+     * @return whether the rows have buckets, see {@link #getBucket}
+     */
+    public boolean hasBuckets() {
+        return mBuckets != null;
+    }
+
+    /**
+     * @return the bucket of the current row, rows of the same bucket are next to each other
+     */
+    public int getBucket() {
+        return mBuckets.get(getPosition());
+    }
+
     @Override
     public void close() {
         mCursor.close();
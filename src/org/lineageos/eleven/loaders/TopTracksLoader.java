@@ -19,12 +19,14 @@ package org.lineageos.eleven.loaders;
 import android.content.Context;
 import android.database.Cursor;
 import android.provider.BaseColumns;
+import android.provider.MediaStore;
 
 import org.lineageos.eleven.provider.RecentStore;
 import org.lineageos.eleven.provider.SongPlayCount;
 import org.lineageos.eleven.provider.SongPlayCount.SongPlayCountColumns;
-
-import java.util.ArrayList;
+import org.lineageos.eleven.utils.IdResolver;
+import org.lineageos.eleven.utils.MusicUtils;
+import org.lineageos.eleven.utils.collections.LongArrayList;
 
 /**
  * Used to query MediaStore.Audio.Media.EXTERNAL_CONTENT_URI and return
@@ -58,12 +60,13 @@ public class TopTracksLoader extends SongLoader {
 
         // clean up the databases with any ids not found
         if (retCursor != null) {
-            ArrayList<Long> missingIds = retCursor.getMissingIds();
+            LongArrayList missingIds = retCursor.getMissingIds();
             if (missingIds != null && missingIds.size() > 0) {
                 // for each not found id, remove it from the database
                 // this code-path should only really be hit if the user removes songs
                 // outside of the Eleven app
-                for (long id : missingIds) {
+                for (int i = 0; i < missingIds.size(); i++) {
+                    final long id = missingIds.get(i);
                     if (mQueryType == QueryType.TopTracks) {
                         SongPlayCount.getInstance(mContext.get()).removeItem(id);
                     } else if (mQueryType == QueryType.RecentSongs) {
@@ -118,33 +121,19 @@ public class TopTracksLoader extends SongLoader {
     public static SortedCursor makeSortedCursor(final Context context, final Cursor cursor,
                                                 final int idColumn) {
         if (cursor != null && cursor.moveToFirst()) {
-            // create the list of ids to select against
-            StringBuilder selection = new StringBuilder();
-            selection.append(BaseColumns._ID);
-            selection.append(" IN (");
-
             // this tracks the order of the ids
             long[] order = new long[cursor.getCount()];
-
-            long id = cursor.getLong(idColumn);
-            selection.append(id);
-            order[cursor.getPosition()] = id;
-
-            while (cursor.moveToNext()) {
-                selection.append(",");
-
-                id = cursor.getLong(idColumn);
-                order[cursor.getPosition()] = id;
-                selection.append(id);
-            }
-
-            selection.append(")");
-
-            // get a list of songs with the data given the selection statement
-            Cursor songCursor = makeSongCursor(context, selection.toString(), false);
-            if (songCursor != null) {
+            do {
+                order[cursor.getPosition()] = cursor.getLong(idColumn);
+            } while (cursor.moveToNext());
+
+            // get the songs of the ids, a chunk at a time
+            final IdResolver.Result result = IdResolver.resolve(context.getContentResolver(),
+                    MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                    new String[]{BaseColumns._ID}, MusicUtils.MUSIC_ONLY_SELECTION, order);
+            if (result != null) {
                 // now return the wrapped TopTracksCursor to handle sorting given order
-                return new SortedCursor(songCursor, order, BaseColumns._ID, null);
+                return new SortedCursor(result.toCursor(), order, BaseColumns._ID, null);
             }
         }
 
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import org.lineageos.eleven.utils.AppExecutors;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Keeps the colors extracted from the artwork of each album, so the palette of an album is only
+ * ever computed once.  The whole table is small and is loaded in memory on first use, the
+ * lookups never hit the database after that.
+ * <p>
+ * The colors are stored in the order vibrant, vibrant dark, vibrant light, dominant.
+ */
+public class AlbumColorStore {
+    private static final String TAG = AlbumColorStore.class.getSimpleName();
+
+    /* # of colors stored per album */
+    public static final int COLOR_COUNT = 4;
+
+    private static final String INSERT_COLORS_SQL = "INSERT OR REPLACE INTO "
+            + AlbumColorColumns.NAME + "("
+            + AlbumColorColumns.ALBUM_ID + ","
+            + AlbumColorColumns.VIBRANT + ","
+            + AlbumColorColumns.VIBRANT_DARK + ","
+            + AlbumColorColumns.VIBRANT_LIGHT + ","
+            + AlbumColorColumns.DOMINANT + ") VALUES (?,?,?,?,?)";
+
+    private static final String DELETE_COLORS_SQL = "DELETE FROM " + AlbumColorColumns.NAME
+            + " WHERE " + AlbumColorColumns.ALBUM_ID + "=?";
+
+    private static AlbumColorStore sInstance = null;
+
+    private final MusicDB mMusicDatabase;
+
+    // the colors by album id, null until loaded from the database
+    private HashMap<Long, int[]> mColors;
+
+    // the albums whose colors were removed while the table wasn't loaded yet
+    private final HashSet<Long> mRemovedBeforeLoad = new HashSet<>();
+
+    private long mHits;
+    private long mMisses;
+    private long mWrites;
+
+    /**
+     * @param context The {@link Context} to use
+     * @return A new instance of this class.
+     */
+    public static synchronized AlbumColorStore getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new AlbumColorStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private AlbumColorStore(final Context context) {
+        mMusicDatabase = MusicDB.getInstance(context);
+    }
+
+    public void onCreate(final SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + AlbumColorColumns.NAME + "("
+                + AlbumColorColumns.ALBUM_ID + " INTEGER PRIMARY KEY,"
+                + AlbumColorColumns.VIBRANT + " INTEGER NOT NULL,"
+                + AlbumColorColumns.VIBRANT_DARK + " INTEGER NOT NULL,"
+                + AlbumColorColumns.VIBRANT_LIGHT + " INTEGER NOT NULL,"
+                + AlbumColorColumns.DOMINANT + " INTEGER NOT NULL);");
+    }
+
+    public void onUpgrade(final SQLiteDatabase db, final int oldVersion) {
+        // this table was created in version 8 so call the onCreate method if oldVersion <= 7
+        if (oldVersion <= 7) {
+            onCreate(db);
+        }
+    }
+
+    public void onDowngrade(SQLiteDatabase db) {
+        // If we ever have downgrade, drop the table to be safe
+        db.execSQL("DROP TABLE IF EXISTS " + AlbumColorColumns.NAME);
+        onCreate(db);
+    }
+
+    /**
+     * Loads the table in the background, so the first lookup doesn't have to
+     */
+    public void preload() {
+        AppExecutors.get(AppExecutors.Pool.DB).execute(this::getLoadedColors);
+    }
+
+    /**
+     * @param albumId The id of the album
+     * @return The colors of the album's artwork, or null if they weren't computed yet
+     */
+    public int[] getColors(final long albumId) {
+        final HashMap<Long, int[]> colors = getLoadedColors();
+        synchronized (this) {
+            final int[] albumColors = colors.get(albumId);
+            if (albumColors != null) {
+                mHits++;
+            } else {
+                mMisses++;
+            }
+            return albumColors;
+        }
+    }
+
+    /**
+     * @param albumId The id of the album
+     * @return Whether the colors of the album's artwork were computed already
+     */
+    public boolean hasColors(final long albumId) {
+        final HashMap<Long, int[]> colors = getLoadedColors();
+        synchronized (this) {
+            return colors.containsKey(albumId);
+        }
+    }
+
+    /**
+     * Stores the colors of an album's artwork
+     *
+     * @param albumId The id of the album
+     * @param colors  The colors, in the order described in {@link AlbumColorStore}
+     */
+    public void setColors(final long albumId, final int[] colors) {
+        if (colors.length != COLOR_COUNT) {
+            throw new IllegalArgumentException("Expected " + COLOR_COUNT + " colors");
+        }
+
+        final int[] albumColors = colors.clone();
+        final HashMap<Long, int[]> loadedColors = getLoadedColors();
+        synchronized (this) {
+            loadedColors.put(albumId, albumColors);
+            mWrites++;
+        }
+
+        final MusicDBExecutor executor = mMusicDatabase.getExecutor();
+        executor.execute(TAG, db -> {
+            final SQLiteStatement insert = executor.getStatement(INSERT_COLORS_SQL);
+            insert.bindLong(1, albumId);
+            for (int i = 0; i < COLOR_COUNT; i++) {
+                insert.bindLong(i + 2, albumColors[i]);
+            }
+            insert.executeInsert();
+        });
+    }
+
+    /**
+     * Forgets the colors of an album, when its artwork is removed or replaced
+     *
+     * @param albumId The id of the album
+     */
+    public void removeColors(final long albumId) {
+        synchronized (this) {
+            if (mColors != null) {
+                mColors.remove(albumId);
+            } else {
+                // a load already running may still read them
+                mRemovedBeforeLoad.add(albumId);
+            }
+        }
+
+        final MusicDBExecutor executor = mMusicDatabase.getExecutor();
+        executor.execute(TAG, db -> {
+            final SQLiteStatement delete = executor.getStatement(DELETE_COLORS_SQL);
+            delete.bindLong(1, albumId);
+            delete.executeUpdateDelete();
+        });
+    }
+
+    /**
+     * Loads the table the first time it's needed
+     */
+    private HashMap<Long, int[]> getLoadedColors() {
+        synchronized (this) {
+            if (mColors != null) {
+                return mColors;
+            }
+        }
+
+        // read outside the lock, a racing load is merged rather than lost and the removals
+        // made meanwhile are applied to it
+        final HashMap<Long, int[]> colors = new HashMap<>();
+        final SQLiteDatabase database = mMusicDatabase.getReadableDatabase();
+        try (Cursor c = database.query(AlbumColorColumns.NAME, new String[]{
+                AlbumColorColumns.ALBUM_ID,
+                AlbumColorColumns.VIBRANT,
+                AlbumColorColumns.VIBRANT_DARK,
+                AlbumColorColumns.VIBRANT_LIGHT,
+                AlbumColorColumns.DOMINANT,
+        }, null, null, null, null, null)) {
+            while (c.moveToNext()) {
+                final int[] albumColors = new int[COLOR_COUNT];
+                for (int i = 0; i < COLOR_COUNT; i++) {
+                    albumColors[i] = c.getInt(i + 1);
+                }
+                colors.put(c.getLong(0), albumColors);
+            }
+        }
+
+        synchronized (this) {
+            if (mColors == null) {
+                mColors = colors;
+            } else {
+                colors.forEach(mColors::putIfAbsent);
+            }
+            for (Long albumId : mRemovedBeforeLoad) {
+                mColors.remove(albumId);
+            }
+            mRemovedBeforeLoad.clear();
+            return mColors;
+        }
+    }
+
+    /**
+     * Prints the store counters
+     *
+     * @param writer the writer to print to
+     */
+    public synchronized void dump(final PrintWriter writer) {
+        writer.println("Album colors:");
+        writer.println("  albums: " + (mColors != null ? mColors.size() : "not loaded"));
+        writer.println("  hits: " + mHits + " misses: " + mMisses + " computed: " + mWrites);
+    }
+
+    public interface AlbumColorColumns {
+        /* Table name */
+        String NAME = "album_colors";
+
+        /* Album ID column */
+        String ALBUM_ID = "albumid";
+
+        /* The vibrant color of the artwork */
+        String VIBRANT = "vibrant";
+
+        /* The dark vibrant color of the artwork */
+        String VIBRANT_DARK = "vibrant_dark";
+
+        /* The light vibrant color of the artwork */
+        String VIBRANT_LIGHT = "vibrant_light";
+
+        /* The color covering the most of the artwork */
+        String DOMINANT = "dominant";
+    }
+}
@@ -0,0 +1,859 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.provider.MediaStore.Audio.AlbumColumns;
+import android.provider.MediaStore.Audio.ArtistColumns;
+import android.provider.MediaStore.Audio.AudioColumns;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.lineageos.eleven.model.Album;
+import org.lineageos.eleven.model.Artist;
+import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.utils.MusicUtils;
+import org.lineageos.eleven.utils.collections.IntArrayList;
+import org.lineageos.eleven.utils.collections.LongArrayList;
+import org.lineageos.eleven.utils.collections.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * An in-memory copy of the songs, albums and artists of the media store that the loaders read
+ * from instead of querying the media store for every list.  The values are kept in primitive
+ * columns and the artist and album names are shared through a single string table, so an
+ * artist name is only held once no matter how many songs it has.
+ * <p>
+ * The catalog is built once and then only the songs modified since the last update are read
+ * back, each update publishing a new immutable {@link Snapshot}.
+ */
+public class LibraryCatalog {
+    private static final String TAG = LibraryCatalog.class.getSimpleName();
+    private static final boolean DEBUG = false;
+    private static LibraryCatalog sInstance = null;
+
+    private static final int UPDATE = 0;
+
+    /* Delay before updating after a media store change, so bursts of changes are merged */
+    private static final long UPDATE_DELAY_MS = 2000;
+
+    private static final String[] SONG_PROJECTION = new String[]{
+            /* 0 */
+            AudioColumns._ID,
+            /* 1 */
+            AudioColumns.TITLE,
+            /* 2 */
+            AudioColumns.ARTIST_ID,
+            /* 3 */
+            AudioColumns.ARTIST,
+            /* 4 */
+            AudioColumns.ALBUM_ID,
+            /* 5 */
+            AudioColumns.ALBUM,
+            /* 6 */
+            AudioColumns.DURATION,
+            /* 7 */
+            AudioColumns.YEAR,
+            /* 8 */
+            AudioColumns.TRACK,
+            /* 9 */
+            AudioColumns.DATE_ADDED,
+            /* 10 */
+            AudioColumns.GENERATION_MODIFIED,
+    };
+
+    private static final String[] ALBUM_PROJECTION = new String[]{
+            /* 0 */
+            AlbumColumns.ALBUM_ID,
+            /* 1 */
+            AlbumColumns.ALBUM,
+            /* 2 */
+            AlbumColumns.ARTIST,
+            /* 3 */
+            AlbumColumns.NUMBER_OF_SONGS,
+            /* 4 */
+            AlbumColumns.FIRST_YEAR,
+    };
+
+    private static final String[] ARTIST_PROJECTION = new String[]{
+            /* 0 */
+            MediaStore.Audio.Artists._ID,
+            /* 1 */
+            ArtistColumns.ARTIST,
+            /* 2 */
+            ArtistColumns.NUMBER_OF_ALBUMS,
+            /* 3 */
+            ArtistColumns.NUMBER_OF_TRACKS,
+    };
+
+    private final Context mContext;
+    private final Handler mHandler;
+
+    private final Object mLock = new Object();
+    private volatile Snapshot mSnapshot;
+    private boolean mStale = true;
+    private int mUpdateCount;
+
+    // only accessed from the catalog thread
+    private String mMediaStoreVersion;
+    private long mGeneration;
+
+    /**
+     * @param context The {@link android.content.Context} to use
+     * @return A new instance of this class.
+     */
+    public static synchronized LibraryCatalog getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new LibraryCatalog(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private LibraryCatalog(final Context context) {
+        mContext = context;
+
+        final HandlerThread handlerThread = new HandlerThread("LibraryCatalog",
+                android.os.Process.THREAD_PRIORITY_BACKGROUND);
+        handlerThread.start();
+        mHandler = new Handler(handlerThread.getLooper()) {
+            @Override
+            public void handleMessage(@NonNull Message msg) {
+                if (msg.what == UPDATE) {
+                    update();
+                }
+            }
+        };
+
+        mContext.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true,
+                new ContentObserver(mHandler) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        scheduleUpdate(UPDATE_DELAY_MS);
+                    }
+                });
+    }
+
+    /**
+     * Gets the current snapshot, waiting for it to be built if this is the first use.  This
+     * queries the media store the first time so it shouldn't be called from the main thread
+     *
+     * @return the snapshot, which is empty if the media store couldn't be read
+     */
+    public Snapshot getSnapshot() {
+        synchronized (mLock) {
+            if (!mStale) {
+                return mSnapshot;
+            }
+
+            scheduleUpdate(0);
+
+            final int updateCount = mUpdateCount;
+            boolean interrupted = false;
+            while (updateCount == mUpdateCount) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            return mSnapshot;
+        }
+    }
+
+    /**
+     * Gets the current snapshot without waiting for it, so this can be called from the main
+     * thread
+     *
+     * @return the snapshot, or null if it wasn't built yet in which case it's being built
+     */
+    public Snapshot peekSnapshot() {
+        synchronized (mLock) {
+            if (!mStale) {
+                return mSnapshot;
+            }
+
+            if (!mHandler.hasMessages(UPDATE)) {
+                scheduleUpdate(0);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Gets the songs for a list of ids, scheduling an update if some of them aren't in the
+     * catalog yet
+     *
+     * @param ids the song ids
+     * @return the songs in the same order as the ids, with null for the ones not found
+     */
+    public List<Song> getSongs(final long[] ids) {
+        final Snapshot snapshot = getSnapshot();
+        final ArrayList<Song> songs = new ArrayList<>(ids.length);
+        boolean missing = false;
+        for (long id : ids) {
+            final Song song = snapshot.getSong(id);
+            missing |= song == null;
+            songs.add(song);
+        }
+
+        if (missing) {
+            scheduleUpdate(0);
+        }
+        return songs;
+    }
+
+    /**
+     * Gets the albums for a list of ids, scheduling an update if some of them aren't in the
+     * catalog yet
+     *
+     * @param ids the album ids
+     * @return the albums in the same order as the ids, with null for the ones not found
+     */
+    public List<Album> getAlbums(final long[] ids) {
+        final Snapshot snapshot = getSnapshot();
+        final ArrayList<Album> albums = new ArrayList<>(ids.length);
+        boolean missing = false;
+        for (long id : ids) {
+            final Album album = snapshot.getAlbum(id);
+            missing |= album == null;
+            albums.add(album);
+        }
+
+        if (missing) {
+            scheduleUpdate(0);
+        }
+        return albums;
+    }
+
+    /**
+     * Gets the artists for a list of ids, scheduling an update if some of them aren't in the
+     * catalog yet
+     *
+     * @param ids the artist ids
+     * @return the artists in the same order as the ids, with null for the ones not found
+     */
+    public List<Artist> getArtists(final long[] ids) {
+        final Snapshot snapshot = getSnapshot();
+        final ArrayList<Artist> artists = new ArrayList<>(ids.length);
+        boolean missing = false;
+        for (long id : ids) {
+            final Artist artist = snapshot.getArtist(id);
+            missing |= artist == null;
+            artists.add(artist);
+        }
+
+        if (missing) {
+            scheduleUpdate(0);
+        }
+        return artists;
+    }
+
+    /**
+     * Schedules an update of the catalog, replacing any pending one
+     *
+     * @param delayMs the delay before running it
+     */
+    private void scheduleUpdate(final long delayMs) {
+        mHandler.removeMessages(UPDATE);
+        mHandler.sendEmptyMessageDelayed(UPDATE, delayMs);
+    }
+
+    private void update() {
+        final long start = SystemClock.elapsedRealtime();
+        final Snapshot previous = mSnapshot;
+
+        Snapshot snapshot = null;
+        try {
+            final String mediaStoreVersion = MediaStore.getVersion(mContext);
+
+            // the generations are only comparable within the same media store version
+            if (previous != null && mediaStoreVersion.equals(mMediaStoreVersion)) {
+                snapshot = applyChanges(previous);
+            }
+
+            if (snapshot == null) {
+                snapshot = build(mediaStoreVersion);
+            }
+        } catch (RuntimeException e) {
+            // this is also how a missing permission shows up
+            Log.e(TAG, "Failed to read the media store", e);
+        }
+
+        synchronized (mLock) {
+            if (snapshot != null) {
+                mSnapshot = snapshot;
+            } else if (mSnapshot == null) {
+                mSnapshot = new Snapshot(new SnapshotBuilder());
+            }
+
+            // a failed read is retried by the next reader
+            mStale = snapshot == null;
+            mUpdateCount++;
+            mLock.notifyAll();
+        }
+
+        if (previous != null && snapshot != null && snapshot != previous) {
+            // let the lists reload with the new data
+            MusicUtils.refresh();
+        }
+
+        if (DEBUG && snapshot != null) {
+            Log.d(TAG, "Updated " + snapshot.getSongCount() + " songs in "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
+    }
+
+    /**
+     * Reads the whole library
+     *
+     * @param mediaStoreVersion the current media store version
+     * @return the snapshot, or null if the media store couldn't be read
+     */
+    private Snapshot build(final String mediaStoreVersion) {
+        final SnapshotBuilder builder = new SnapshotBuilder();
+        long generation = 0;
+
+        try (Cursor cursor = querySongs(null)) {
+            if (cursor == null) {
+                return null;
+            }
+
+            while (cursor.moveToNext()) {
+                builder.addSong(cursor);
+                generation = Math.max(generation, cursor.getLong(10));
+            }
+        }
+
+        if (!addAlbumsAndArtists(builder)) {
+            return null;
+        }
+
+        mMediaStoreVersion = mediaStoreVersion;
+        mGeneration = generation;
+        return new Snapshot(builder);
+    }
+
+    /**
+     * Creates a new snapshot from the previous one and the songs modified since it was built.
+     * Deletions don't bump any generation so the current ids are read as well, which also
+     * gives the position of the new songs
+     *
+     * @param previous the previous snapshot
+     * @return the new snapshot, the previous one if nothing changed or null if a full build is
+     * needed
+     */
+    private Snapshot applyChanges(final Snapshot previous) {
+        final LongArrayList ids = new LongArrayList(previous.getSongCount());
+        try (Cursor cursor = mContext.getContentResolver().query(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                new String[]{AudioColumns._ID}, MusicUtils.MUSIC_ONLY_SELECTION, null,
+                MediaStore.Audio.Media.DEFAULT_SORT_ORDER)) {
+            if (cursor == null) {
+                return null;
+            }
+
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        }
+
+        final SnapshotBuilder changes = new SnapshotBuilder();
+        final LongArrayList generations = new LongArrayList();
+        try (Cursor cursor = querySongs(AudioColumns.GENERATION_MODIFIED + ">" + mGeneration)) {
+            if (cursor == null) {
+                return null;
+            }
+
+            while (cursor.moveToNext()) {
+                changes.addSong(cursor);
+                generations.add(cursor.getLong(10));
+            }
+        }
+
+        final LongIntHashMap changedRows = new LongIntHashMap(changes.mIds.size());
+        for (int i = 0; i < changes.mIds.size(); i++) {
+            changedRows.put(changes.mIds.get(i), i);
+        }
+
+        if (changedRows.isEmpty() && ids.size() == previous.getSongCount()) {
+            boolean same = true;
+            for (int i = 0; i < ids.size() && same; i++) {
+                same = ids.get(i) == previous.mIds[i];
+            }
+
+            if (same) {
+                return previous;
+            }
+        }
+
+        final SnapshotBuilder builder = new SnapshotBuilder();
+        final LongIntHashMap usedRows = new LongIntHashMap(changedRows.size());
+        for (int i = 0; i < ids.size(); i++) {
+            final long id = ids.get(i);
+            final int changedRow = changedRows.get(id, -1);
+            if (changedRow >= 0) {
+                builder.addSong(changes, changedRow);
+                usedRows.put(id, changedRow);
+                continue;
+            }
+
+            final int row = previous.getSongRow(id);
+            if (row < 0) {
+                // a song we never saw that wasn't modified since, so start over
+                return null;
+            }
+            builder.addSong(previous, row);
+        }
+
+        if (!addAlbumsAndArtists(builder)) {
+            return null;
+        }
+
+        // songs added between the two queries aren't in this snapshot yet, so keep the
+        // watermark below them for the next update to pick them up
+        long generation = mGeneration;
+        long skippedGeneration = Long.MAX_VALUE;
+        for (int i = 0; i < generations.size(); i++) {
+            if (usedRows.containsKey(changes.mIds.get(i))) {
+                generation = Math.max(generation, generations.get(i));
+            } else {
+                skippedGeneration = Math.min(skippedGeneration, generations.get(i));
+            }
+        }
+        mGeneration = Math.min(generation, skippedGeneration - 1);
+
+        return new Snapshot(builder);
+    }
+
+    private Cursor querySongs(final String selection) {
+        String selectionStatement = MusicUtils.MUSIC_ONLY_SELECTION;
+        if (selection != null) {
+            selectionStatement += " AND " + selection;
+        }
+
+        // rows are kept in title order, which is the order the album songs fall back to
+        return mContext.getContentResolver().query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                SONG_PROJECTION, selectionStatement, null,
+                MediaStore.Audio.Media.DEFAULT_SORT_ORDER);
+    }
+
+    /**
+     * Reads the albums and artists, these are small enough to be read whole on every update
+     *
+     * @return false if the media store couldn't be read
+     */
+    private boolean addAlbumsAndArtists(final SnapshotBuilder builder) {
+        try (Cursor cursor = mContext.getContentResolver().query(
+                MediaStore.Audio.Albums.EXTERNAL_CONTENT_URI, ALBUM_PROJECTION, null, null,
+                null)) {
+            if (cursor == null) {
+                return false;
+            }
+
+            while (cursor.moveToNext()) {
+                builder.addAlbum(cursor);
+            }
+        }
+
+        try (Cursor cursor = mContext.getContentResolver().query(
+                MediaStore.Audio.Artists.EXTERNAL_CONTENT_URI, ARTIST_PROJECTION, null, null,
+                null)) {
+            if (cursor == null) {
+                return false;
+            }
+
+            while (cursor.moveToNext()) {
+                builder.addArtist(cursor);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Collects the columns of a snapshot, interning the names as they are added
+     */
+    private static final class SnapshotBuilder {
+        private final HashMap<String, Integer> mNameIndexes = new HashMap<>();
+        private final ArrayList<String> mNames = new ArrayList<>();
+
+        final LongArrayList mIds = new LongArrayList();
+        final ArrayList<String> mTitles = new ArrayList<>();
+        final LongArrayList mArtistIds = new LongArrayList();
+        final IntArrayList mArtists = new IntArrayList();
+        final LongArrayList mAlbumIds = new LongArrayList();
+        final IntArrayList mAlbums = new IntArrayList();
+        final IntArrayList mDurations = new IntArrayList();
+        final IntArrayList mYears = new IntArrayList();
+        final IntArrayList mTracks = new IntArrayList();
+        final LongArrayList mDatesAdded = new LongArrayList();
+
+        final LongArrayList mAlbumRowIds = new LongArrayList();
+        final IntArrayList mAlbumNames = new IntArrayList();
+        final IntArrayList mAlbumArtists = new IntArrayList();
+        final IntArrayList mAlbumSongCounts = new IntArrayList();
+        final IntArrayList mAlbumYears = new IntArrayList();
+
+        final LongArrayList mArtistRowIds = new LongArrayList();
+        final IntArrayList mArtistNames = new IntArrayList();
+        final IntArrayList mArtistAlbumCounts = new IntArrayList();
+        final IntArrayList mArtistTrackCounts = new IntArrayList();
+
+        int intern(final String name) {
+            Integer index = mNameIndexes.get(name);
+            if (index == null) {
+                index = mNames.size();
+                mNames.add(name);
+                mNameIndexes.put(name, index);
+            }
+            return index;
+        }
+
+        void addSong(final Cursor cursor) {
+            mIds.add(cursor.getLong(0));
+            mTitles.add(cursor.getString(1));
+            mArtistIds.add(cursor.getLong(2));
+            mArtists.add(intern(cursor.getString(3)));
+            mAlbumIds.add(cursor.getLong(4));
+            mAlbums.add(intern(cursor.getString(5)));
+            mDurations.add((int) (cursor.getLong(6) / 1000));
+            mYears.add(cursor.getInt(7));
+            mTracks.add(cursor.getInt(8));
+            mDatesAdded.add(cursor.getLong(9));
+        }
+
+        void addSong(final SnapshotBuilder builder, final int row) {
+            mIds.add(builder.mIds.get(row));
+            mTitles.add(builder.mTitles.get(row));
+            mArtistIds.add(builder.mArtistIds.get(row));
+            mArtists.add(intern(builder.mNames.get(builder.mArtists.get(row))));
+            mAlbumIds.add(builder.mAlbumIds.get(row));
+            mAlbums.add(intern(builder.mNames.get(builder.mAlbums.get(row))));
+            mDurations.add(builder.mDurations.get(row));
+            mYears.add(builder.mYears.get(row));
+            mTracks.add(builder.mTracks.get(row));
+            mDatesAdded.add(builder.mDatesAdded.get(row));
+        }
+
+        void addSong(final Snapshot snapshot, final int row) {
+            mIds.add(snapshot.mIds[row]);
+            mTitles.add(snapshot.mTitles[row]);
+            mArtistIds.add(snapshot.mArtistIds[row]);
+            mArtists.add(intern(snapshot.mNames[snapshot.mArtists[row]]));
+            mAlbumIds.add(snapshot.mAlbumIds[row]);
+            mAlbums.add(intern(snapshot.mNames[snapshot.mAlbums[row]]));
+            mDurations.add(snapshot.mDurations[row]);
+            mYears.add(snapshot.mYears[row]);
+            mTracks.add(snapshot.mTracks[row]);
+            mDatesAdded.add(snapshot.mDatesAdded[row]);
+        }
+
+        void addAlbum(final Cursor cursor) {
+            mAlbumRowIds.add(cursor.getLong(0));
+            mAlbumNames.add(intern(cursor.getString(1)));
+            mAlbumArtists.add(intern(cursor.getString(2)));
+            mAlbumSongCounts.add(cursor.getInt(3));
+            mAlbumYears.add(cursor.getInt(4));
+        }
+
+        void addArtist(final Cursor cursor) {
+            mArtistRowIds.add(cursor.getLong(0));
+            mArtistNames.add(intern(cursor.getString(1)));
+            mArtistAlbumCounts.add(cursor.getInt(2));
+            mArtistTrackCounts.add(cursor.getInt(3));
+        }
+    }
+
+    /**
+     * An immutable copy of the library.  Every getter creates a new model object so callers are
+     * free to modify what they get
+     */
+    public static final class Snapshot {
+        // the artist and album names, shared by the songs, albums and artists
+        private final String[] mNames;
+
+        // the songs, in title order
+        private final long[] mIds;
+        private final String[] mTitles;
+        private final long[] mArtistIds;
+        private final int[] mArtists;
+        private final long[] mAlbumIds;
+        private final int[] mAlbums;
+        private final int[] mDurations;
+        private final int[] mYears;
+        private final int[] mTracks;
+        private final long[] mDatesAdded;
+        private final LongIntHashMap mSongRows;
+
+        // the song rows grouped by album, see getAlbumSongRows
+        private final LongIntHashMap mAlbumGroups;
+        private final int[] mAlbumGroupStarts;
+        private final int[] mAlbumGroupRows;
+
+        private final long[] mAlbumRowIds;
+        private final int[] mAlbumNames;
+        private final int[] mAlbumArtists;
+        private final int[] mAlbumSongCounts;
+        private final int[] mAlbumYears;
+        private final LongIntHashMap mAlbumRows;
+
+        private final long[] mArtistRowIds;
+        private final int[] mArtistNames;
+        private final int[] mArtistAlbumCounts;
+        private final int[] mArtistTrackCounts;
+        private final LongIntHashMap mArtistRows;
+
+        private Snapshot(final SnapshotBuilder builder) {
+            mNames = builder.mNames.toArray(new String[0]);
+
+            mIds = builder.mIds.toArray();
+            mTitles = builder.mTitles.toArray(new String[0]);
+            mArtistIds = builder.mArtistIds.toArray();
+            mArtists = builder.mArtists.toArray();
+            mAlbumIds = builder.mAlbumIds.toArray();
+            mAlbums = builder.mAlbums.toArray();
+            mDurations = builder.mDurations.toArray();
+            mYears = builder.mYears.toArray();
+            mTracks = builder.mTracks.toArray();
+            mDatesAdded = builder.mDatesAdded.toArray();
+            mSongRows = createRowIndex(mIds);
+
+            // counting sort of the rows by album, which keeps them in title order in each album
+            mAlbumGroups = new LongIntHashMap();
+            final IntArrayList groupSizes = new IntArrayList();
+            final int[] groups = new int[mIds.length];
+            for (int row = 0; row < mIds.length; row++) {
+                int group = mAlbumGroups.get(mAlbumIds[row], -1);
+                if (group < 0) {
+                    group = mAlbumGroups.size();
+                    mAlbumGroups.put(mAlbumIds[row], group);
+                    groupSizes.add(0);
+                }
+                groups[row] = group;
+            }
+
+            mAlbumGroupStarts = new int[mAlbumGroups.size() + 1];
+            for (int group : groups) {
+                mAlbumGroupStarts[group + 1]++;
+            }
+            for (int i = 1; i < mAlbumGroupStarts.length; i++) {
+                mAlbumGroupStarts[i] += mAlbumGroupStarts[i - 1];
+            }
+
+            final int[] next = Arrays.copyOf(mAlbumGroupStarts, mAlbumGroupStarts.length - 1);
+            mAlbumGroupRows = new int[mIds.length];
+            for (int row = 0; row < mIds.length; row++) {
+                mAlbumGroupRows[next[groups[row]]++] = row;
+            }
+
+            mAlbumRowIds = builder.mAlbumRowIds.toArray();
+            mAlbumNames = builder.mAlbumNames.toArray();
+            mAlbumArtists = builder.mAlbumArtists.toArray();
+            mAlbumSongCounts = builder.mAlbumSongCounts.toArray();
+            mAlbumYears = builder.mAlbumYears.toArray();
+            mAlbumRows = createRowIndex(mAlbumRowIds);
+
+            mArtistRowIds = builder.mArtistRowIds.toArray();
+            mArtistNames = builder.mArtistNames.toArray();
+            mArtistAlbumCounts = builder.mArtistAlbumCounts.toArray();
+            mArtistTrackCounts = builder.mArtistTrackCounts.toArray();
+            mArtistRows = createRowIndex(mArtistRowIds);
+        }
+
+        private static LongIntHashMap createRowIndex(final long[] ids) {
+            final LongIntHashMap rows = new LongIntHashMap(ids.length);
+            for (int row = 0; row < ids.length; row++) {
+                rows.put(ids[row], row);
+            }
+            return rows;
+        }
+
+        /**
+         * @return the number of songs
+         */
+        public int getSongCount() {
+            return mIds.length;
+        }
+
+        private int getSongRow(final long id) {
+            return mSongRows.get(id, -1);
+        }
+
+        private Song createSong(final int row) {
+            return new Song(mIds[row], mTitles[row], mNames[mArtists[row]],
+                    mNames[mAlbums[row]], mAlbumIds[row], mDurations[row], mYears[row]);
+        }
+
+        private List<Song> createSongs(final int[] rows) {
+            final ArrayList<Song> songs = new ArrayList<>(rows.length);
+            for (int row : rows) {
+                songs.add(createSong(row));
+            }
+            return songs;
+        }
+
+        private long[] getIds(final int[] rows) {
+            final long[] ids = new long[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                ids[i] = mIds[rows[i]];
+            }
+            return ids;
+        }
+
+        /**
+         * @param id the song id
+         * @return the song, or null if it isn't in the library
+         */
+        public Song getSong(final long id) {
+            final int row = getSongRow(id);
+            return row >= 0 ? createSong(row) : null;
+        }
+
+        /**
+         * @param id the album id
+         * @return the album, or null if it isn't in the library
+         */
+        public Album getAlbum(final long id) {
+            final int row = mAlbumRows.get(id, -1);
+            if (row < 0) {
+                return null;
+            }
+
+            final int year = mAlbumYears[row];
+            return new Album(id, mNames[mAlbumNames[row]], mNames[mAlbumArtists[row]],
+                    mAlbumSongCounts[row], year != 0 ? String.valueOf(year) : null);
+        }
+
+        /**
+         * @param id the artist id
+         * @return the artist, or null if it isn't in the library
+         */
+        public Artist getArtist(final long id) {
+            final int row = mArtistRows.get(id, -1);
+            if (row < 0) {
+                return null;
+            }
+
+            return new Artist(id, mNames[mArtistNames[row]], mArtistTrackCounts[row],
+                    mArtistAlbumCounts[row]);
+        }
+
+        /**
+         * @param albumId the album id
+         * @return the rows of the songs of the album in track order, the songs with the same
+         * track number being in title order
+         */
+        private int[] getAlbumSongRows(final long albumId) {
+            final int group = mAlbumGroups.get(albumId, -1);
+            if (group < 0) {
+                return new int[0];
+            }
+
+            final int[] rows = Arrays.copyOfRange(mAlbumGroupRows, mAlbumGroupStarts[group],
+                    mAlbumGroupStarts[group + 1]);
+
+            // albums are short so a stable insertion sort is all that's needed
+            for (int i = 1; i < rows.length; i++) {
+                final int row = rows[i];
+                int j = i - 1;
+                while (j >= 0 && mTracks[rows[j]] > mTracks[row]) {
+                    rows[j + 1] = rows[j];
+                    j--;
+                }
+                rows[j + 1] = row;
+            }
+            return rows;
+        }
+
+        /**
+         * @param albumId the album id
+         * @return the songs of the album in track order
+         */
+        public List<Song> getAlbumSongs(final long albumId) {
+            return createSongs(getAlbumSongRows(albumId));
+        }
+
+        /**
+         * @param albumId the album id
+         * @return the ids of the songs of the album in track order
+         */
+        public long[] getAlbumSongIds(final long albumId) {
+            return getIds(getAlbumSongRows(albumId));
+        }
+
+        /**
+         * @param cutoff the date in seconds
+         * @return the rows of the songs added after the date, most recent first
+         */
+        private int[] getRowsAddedAfter(final long cutoff) {
+            final IntArrayList rows = new IntArrayList();
+            for (int row = 0; row < mIds.length; row++) {
+                if (mDatesAdded[row] > cutoff) {
+                    rows.add(row);
+                }
+            }
+
+            // sort on the date and row packed in a long, the rows being inverted so that the
+            // songs added at the same time stay in title order once the keys are reversed
+            final long[] keys = new long[rows.size()];
+            for (int i = 0; i < keys.length; i++) {
+                final int row = rows.get(i);
+                keys[i] = (mDatesAdded[row] << 32) | (Integer.MAX_VALUE - row);
+            }
+            Arrays.sort(keys);
+
+            final int[] result = new int[keys.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = Integer.MAX_VALUE - (int) keys[keys.length - 1 - i];
+            }
+            return result;
+        }
+
+        /**
+         * @param cutoff the date in seconds
+         * @return the songs added after the date, most recent first
+         */
+        public List<Song> getSongsAddedAfter(final long cutoff) {
+            return createSongs(getRowsAddedAfter(cutoff));
+        }
+
+        /**
+         * @param cutoff the date in seconds
+         * @return the ids of the songs added after the date, most recent first
+         */
+        public long[] getSongIdsAddedAfter(final long cutoff) {
+            return getIds(getRowsAddedAfter(cutoff));
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import org.lineageos.eleven.Config;
+
+import java.util.ArrayList;
+
+/**
+ * Append-only log of play sessions (what was played, where it was played from, how long it was
+ * listened to and whether it was skipped).  Sessions are buffered in memory and written in
+ * batches.  It's only a record of the sessions: Recent and Top Tracks read the aggregates kept
+ * by {@link RecentStore} and {@link SongPlayCount}, which are updated as the tracks are played,
+ * and nothing reads or aggregates the log itself.
+ */
+public class ListeningHistoryStore {
+    private static final String TAG = ListeningHistoryStore.class.getSimpleName();
+
+    /* Number of sessions to buffer before they are written out */
+    private static final int BATCH_SIZE = 16;
+
+    /* Maximum # of sessions kept in the log */
+    private static final int MAX_ITEMS_IN_DB = 10000;
+
+    private static final String INSERT_SESSION_SQL = "INSERT INTO "
+            + ListeningHistoryColumns.NAME + "("
+            + ListeningHistoryColumns.SONG_ID + ","
+            + ListeningHistoryColumns.SOURCE_ID + ","
+            + ListeningHistoryColumns.SOURCE_TYPE + ","
+            + ListeningHistoryColumns.TIME_PLAYED + ","
+            + ListeningHistoryColumns.LISTENED_DURATION + ","
+            + ListeningHistoryColumns.OUTCOME + ") VALUES (?,?,?,?,?,?)";
+
+    private static final String TRIM_SQL = "DELETE FROM " + ListeningHistoryColumns.NAME
+            + " WHERE " + ListeningHistoryColumns.ID + " <= (SELECT MAX("
+            + ListeningHistoryColumns.ID + ") FROM " + ListeningHistoryColumns.NAME
+            + ") - " + MAX_ITEMS_IN_DB;
+
+    private static ListeningHistoryStore sInstance = null;
+
+    private final MusicDB mMusicDatabase;
+
+    private final ArrayList<PlaySession> mPendingSessions = new ArrayList<>(BATCH_SIZE);
+
+    /**
+     * How a play session ended
+     */
+    public enum Outcome {
+        /* The track was listened to (nearly) until the end */
+        Completed(0),
+        /* The track was listened to for a while but not until the end */
+        Partial(1),
+        /* The track was skipped shortly after it started */
+        Skipped(2);
+
+        public final int mId;
+
+        Outcome(final int id) {
+            mId = id;
+        }
+    }
+
+    /**
+     * @param context The {@link Context} to use
+     * @return A new instance of this class.
+     */
+    public static synchronized ListeningHistoryStore getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new ListeningHistoryStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ListeningHistoryStore(final Context context) {
+        mMusicDatabase = MusicDB.getInstance(context);
+    }
+
+    public void onCreate(final SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + ListeningHistoryColumns.NAME + "("
+                + ListeningHistoryColumns.ID + " INTEGER PRIMARY KEY,"
+                + ListeningHistoryColumns.SONG_ID + " INTEGER NOT NULL,"
+                + ListeningHistoryColumns.SOURCE_ID + " INTEGER NOT NULL,"
+                + ListeningHistoryColumns.SOURCE_TYPE + " INTEGER NOT NULL,"
+                + ListeningHistoryColumns.TIME_PLAYED + " INTEGER NOT NULL,"
+                + ListeningHistoryColumns.LISTENED_DURATION + " INTEGER NOT NULL,"
+                + ListeningHistoryColumns.OUTCOME + " INTEGER NOT NULL);");
+    }
+
+    public void onUpgrade(final SQLiteDatabase db, final int oldVersion) {
+        // this table was created in version 6 so call the onCreate method if oldVersion <= 5
+        if (oldVersion <= 5) {
+            onCreate(db);
+        }
+    }
+
+    public void onDowngrade(SQLiteDatabase db) {
+        // If we ever have downgrade, drop the table to be safe
+        db.execSQL("DROP TABLE IF EXISTS " + ListeningHistoryColumns.NAME);
+        onCreate(db);
+    }
+
+    /**
+     * Queues a finished play session to be written to the log.  The sessions are written out
+     * once enough of them are pending or when {@link #flush()} is called
+     *
+     * @param songId     the id of the track that was played
+     * @param sourceId   the id of the artist/album/playlist the track was played from
+     * @param sourceType the type of the source
+     * @param timePlayed when the session started, in ms since epoch
+     * @param listened   how long the track was actually listened to, in ms
+     * @param outcome    how the session ended
+     */
+    public void addPlaySession(final long songId, final long sourceId,
+                               final Config.IdType sourceType, final long timePlayed,
+                               final long listened, final Outcome outcome) {
+        if (songId < 0) {
+            return;
+        }
+
+        final boolean needsFlush;
+        synchronized (mPendingSessions) {
+            mPendingSessions.add(new PlaySession(songId, sourceId, sourceType, timePlayed,
+                    listened, outcome));
+            needsFlush = mPendingSessions.size() >= BATCH_SIZE;
+        }
+
+        if (needsFlush) {
+            flush();
+        }
+    }
+
+    /**
+     * Queues all the pending play sessions to be written to the log
+     */
+    public void flush() {
+        final ArrayList<PlaySession> sessions;
+        synchronized (mPendingSessions) {
+            if (mPendingSessions.isEmpty()) {
+                return;
+            }
+            sessions = new ArrayList<>(mPendingSessions);
+            mPendingSessions.clear();
+        }
+
+        final MusicDBExecutor executor = mMusicDatabase.getExecutor();
+        executor.execute(TAG, db -> {
+            final SQLiteStatement insertSession = executor.getStatement(INSERT_SESSION_SQL);
+
+            for (PlaySession session : sessions) {
+                insertSession.bindLong(1, session.songId);
+                insertSession.bindLong(2, session.sourceId);
+                insertSession.bindLong(3, session.sourceType.mId);
+                insertSession.bindLong(4, session.timePlayed);
+                insertSession.bindLong(5, session.listened);
+                insertSession.bindLong(6, session.outcome.mId);
+                insertSession.executeInsert();
+            }
+
+            // the ids only grow, so trimming the log is a single range delete on the primary key
+            executor.getStatement(TRIM_SQL).executeUpdateDelete();
+        });
+    }
+
+    /**
+     * @param songId to remove.
+     */
+    public void removeItem(final long songId) {
+        mMusicDatabase.getExecutor().execute(TAG, db -> db.delete(ListeningHistoryColumns.NAME,
+                ListeningHistoryColumns.SONG_ID + " = ?", new String[]{String.valueOf(songId)}));
+    }
+
+    public void deleteAll() {
+        synchronized (mPendingSessions) {
+            mPendingSessions.clear();
+        }
+
+        mMusicDatabase.getExecutor().executeAndWait(TAG, db -> {
+            db.delete(ListeningHistoryColumns.NAME, null, null);
+        });
+    }
+
+    private static final class PlaySession {
+        final long songId;
+        final long sourceId;
+        final Config.IdType sourceType;
+        final long timePlayed;
+        final long listened;
+        final Outcome outcome;
+
+        PlaySession(final long songId, final long sourceId, final Config.IdType sourceType,
+                    final long timePlayed, final long listened, final Outcome outcome) {
+            this.songId = songId;
+            this.sourceId = sourceId;
+            this.sourceType = sourceType;
+            this.timePlayed = timePlayed;
+            this.listened = listened;
+            this.outcome = outcome;
+        }
+    }
+
+    public interface ListeningHistoryColumns {
+        /* Table name */
+        String NAME = "listeninghistory";
+
+        /* Session id column, increases with every session */
+        String ID = "_id";
+
+        /* Song IDs column */
+        String SONG_ID = "songid";
+
+        /* Artist/Album/Playlist id the song was played from */
+        String SOURCE_ID = "sourceid";
+
+        /* Config.IdType of the source */
+        String SOURCE_TYPE = "sourcetype";
+
+        /* Time the session started */
+        String TIME_PLAYED = "timeplayed";
+
+        /* Time actually spent listening, in ms */
+        String LISTENED_DURATION = "listened";
+
+        /* Outcome of the session */
+        String OUTCOME = "outcome";
+    }
+}
@@ -16,10 +16,11 @@
  */
 package org.lineageos.eleven.provider;
 
-import android.content.ContentValues;
 import android.content.Context;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
@@ -36,11 +37,19 @@ import org.lineageos.eleven.loaders.SortedCursor;
 import org.lineageos.eleven.locale.LocaleSet;
 import org.lineageos.eleven.locale.LocaleSetManager;
 import org.lineageos.eleven.locale.LocaleUtils;
+import org.lineageos.eleven.utils.AppExecutors;
+import org.lineageos.eleven.utils.IdResolver;
 import org.lineageos.eleven.utils.MusicUtils;
+import org.lineageos.eleven.utils.collections.LongArrayList;
+import org.lineageos.eleven.utils.collections.LongHashSet;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Because sqlite localized collator isn't sufficient, we need to store more specialized logic
@@ -53,15 +62,48 @@ public class LocalizedStore {
     private static LocalizedStore sInstance = null;
 
     private static final int LOCALE_CHANGED = 0;
+    private static final int RECONCILE = 1;
+
+    /* # of names computed and inserted at once when rebuilding */
+    private static final int REBUILD_CHUNK_SIZE = 500;
+
+    /* Appended to the table names for the tables being rebuilt */
+    private static final String SHADOW_SUFFIX = "_shadow";
+
+    /* Delay before reconciling after a media store change, to aggregate the changes */
+    private static final long RECONCILE_DELAY_MS = 2000;
+
+    private static final String INSERT_SONG_SQL = createInsert("IGNORE",
+            SongSortColumns.TABLE_NAME + SHADOW_SUFFIX, SongSortColumns.COLUMNS);
+
+    private static final String INSERT_ALBUM_SQL = createInsert("IGNORE",
+            AlbumSortColumns.TABLE_NAME + SHADOW_SUFFIX, AlbumSortColumns.COLUMNS);
+
+    private static final String INSERT_ARTIST_SQL = createInsert("IGNORE",
+            ArtistSortColumns.TABLE_NAME + SHADOW_SUFFIX, ArtistSortColumns.COLUMNS);
+
+    private static final String REPLACE_SONG_SQL = createInsert("REPLACE",
+            SongSortColumns.TABLE_NAME, SongSortColumns.COLUMNS);
+
+    private static final String REPLACE_ALBUM_SQL = createInsert("REPLACE",
+            AlbumSortColumns.TABLE_NAME, AlbumSortColumns.COLUMNS);
+
+    private static final String REPLACE_ARTIST_SQL = createInsert("REPLACE",
+            ArtistSortColumns.TABLE_NAME, ArtistSortColumns.COLUMNS);
 
     private final MusicDB mMusicDatabase;
     private final Context mContext;
-    private final ContentValues mContentValues = new ContentValues(10);
     private final LocaleSetManager mLocaleSetManager;
 
     private final HandlerThread mHandlerThread;
     private final Handler mHandler;
 
+    private volatile int mRebuildProgress = -1;
+
+    // the sort orders keyed by item type/sort type/direction, see getSortOrder
+    private final HashMap<String, SortData> mSortCache = new HashMap<>();
+    private int mSortCacheGeneration;
+
     public enum SortParameter {
         Song,
         Artist,
@@ -71,6 +113,46 @@ public class LocalizedStore {
     private static class SortData {
         long[] ids;
         List<String> bucketLabels;
+        int[] buckets;
+    }
+
+    /**
+     * The ids and raw names of the library, read once at the start of a rebuild
+     */
+    private static class LibrarySnapshot {
+        long[] songIds;
+        String[] songNames;
+        long[] songArtistIds;
+        long[] songAlbumIds;
+
+        long[] albumIds;
+        String[] albumNames;
+        long[] albumArtistIds;
+
+        long[] artistIds;
+        String[] artistNames;
+
+        // the highest media store generation of the songs read
+        long maxGeneration;
+    }
+
+    /**
+     * The computed sort data for a chunk of names
+     */
+    private static class SortRows {
+        final String[] names;
+        final String[] labels;
+        final int[] buckets;
+
+        SortRows(final int size) {
+            names = new String[size];
+            labels = new String[size];
+            buckets = new int[size];
+        }
+
+        int size() {
+            return names.length;
+        }
     }
 
     /**
@@ -95,19 +177,51 @@ public class LocalizedStore {
         mHandler = new Handler(mHandlerThread.getLooper()) {
             @Override
             public void handleMessage(@NonNull Message msg) {
-                if (msg.what == LOCALE_CHANGED && mLocaleSetManager.localeSetNeedsUpdate()) {
-                    rebuildLocaleData(mLocaleSetManager.getSystemLocaleSet());
+                switch (msg.what) {
+                    case LOCALE_CHANGED:
+                        if (mLocaleSetManager.localeSetNeedsUpdate()) {
+                            rebuildLocaleData(mLocaleSetManager.getSystemLocaleSet());
+                        }
+                        break;
+                    case RECONCILE:
+                        try {
+                            reconcile();
+                        } catch (RuntimeException e) {
+                            Log.e(TAG, "Failed to reconcile the sort tables", e);
+                        }
+                        break;
                 }
             }
         };
 
-        // check to see if locale has changed
+        mContext.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true,
+                new ContentObserver(mHandler) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        scheduleReconcile(RECONCILE_DELAY_MS);
+                    }
+                });
+
+        // check to see if locale has changed, then catch up with what changed while we weren't
+        // running
         onLocaleChanged();
+        scheduleReconcile(0);
     }
 
     public void onCreate(final SQLiteDatabase db) {
+        createTables(db, "");
+    }
+
+    /**
+     * Creates the sort tables
+     *
+     * @param db     database to use
+     * @param suffix appended to the table names, used to create the shadow tables
+     */
+    private static void createTables(final SQLiteDatabase db, final String suffix) {
         String[] tables = new String[]{
-                "CREATE TABLE IF NOT EXISTS " + SongSortColumns.TABLE_NAME + "(" +
+                "CREATE TABLE IF NOT EXISTS " + SongSortColumns.TABLE_NAME + suffix + "(" +
                         SongSortColumns.ID + " INTEGER PRIMARY KEY," +
                         SongSortColumns.ARTIST_ID + " INTEGER NOT NULL," +
                         SongSortColumns.ALBUM_ID + " INTEGER NOT NULL," +
@@ -115,14 +229,14 @@ public class LocalizedStore {
                         SongSortColumns.NAME_LABEL + " TEXT," +
                         SongSortColumns.NAME_BUCKET + " INTEGER);",
 
-                "CREATE TABLE IF NOT EXISTS " + AlbumSortColumns.TABLE_NAME + "(" +
+                "CREATE TABLE IF NOT EXISTS " + AlbumSortColumns.TABLE_NAME + suffix + "(" +
                         AlbumSortColumns.ID + " INTEGER PRIMARY KEY," +
                         AlbumSortColumns.ARTIST_ID + " INTEGER NOT NULL," +
                         AlbumSortColumns.NAME + " TEXT COLLATE LOCALIZED," +
                         AlbumSortColumns.NAME_LABEL + " TEXT," +
                         AlbumSortColumns.NAME_BUCKET + " INTEGER);",
 
-                "CREATE TABLE IF NOT EXISTS " + ArtistSortColumns.TABLE_NAME + "(" +
+                "CREATE TABLE IF NOT EXISTS " + ArtistSortColumns.TABLE_NAME + suffix + "(" +
                         ArtistSortColumns.ID + " INTEGER PRIMARY KEY," +
                         ArtistSortColumns.NAME + " TEXT COLLATE LOCALIZED," +
                         ArtistSortColumns.NAME_LABEL + " TEXT," +
@@ -159,37 +273,123 @@ public class LocalizedStore {
         mHandler.obtainMessage(LOCALE_CHANGED).sendToTarget();
     }
 
+    /**
+     * Schedules a reconcile of the sort tables with the media store, replacing any pending one
+     *
+     * @param delayMs the delay before running it
+     */
+    private void scheduleReconcile(final long delayMs) {
+        mHandler.removeMessages(RECONCILE);
+        mHandler.sendEmptyMessageDelayed(RECONCILE, delayMs);
+    }
+
+    /**
+     * @return the progress of the running locale rebuild in percent, or -1 if none is running
+     */
+    public int getRebuildProgress() {
+        return mRebuildProgress;
+    }
+
+    /**
+     * Rebuilds the sort tables for the new locales.  The bucket computation runs in parallel
+     * over chunks of the library and the results are inserted into shadow tables which are only
+     * swapped in once complete, so the old data keeps serving until then
+     *
+     * @param locales the new locales
+     */
     private void rebuildLocaleData(LocaleSet locales) {
         if (DEBUG) {
             Log.d(TAG, "Locale has changed, rebuilding sorting data");
         }
 
         final long start = SystemClock.elapsedRealtime();
-        final SQLiteDatabase db = mMusicDatabase.getWritableDatabase();
-        db.beginTransaction();
-        try {
-            db.execSQL("DELETE FROM " + SongSortColumns.TABLE_NAME);
-            db.execSQL("DELETE FROM " + AlbumSortColumns.TABLE_NAME);
-            db.execSQL("DELETE FROM " + ArtistSortColumns.TABLE_NAME);
+        final MusicDBExecutor executor = mMusicDatabase.getExecutor();
+        mRebuildProgress = 0;
+
+        final ExecutorService workers = AppExecutors.get(AppExecutors.Pool.COMPUTE);
+        final ArrayList<Future<SortRows>> chunks = new ArrayList<>();
 
+        try {
             // prep the localization classes
             mLocaleSetManager.updateLocaleSet(locales);
 
-            updateLocalizedStore(db, null);
+            final String mediaStoreVersion = MediaStore.getVersion(mContext);
+            final LibrarySnapshot library = queryLibrary(null);
+
+            executor.executeAndWait(TAG, db -> {
+                dropTables(db, SHADOW_SUFFIX);
+                createTables(db, SHADOW_SUFFIX);
+            });
+
+            // queue up all the chunks so the workers stay busy while we insert
+            final ArrayList<Future<SortRows>> artistChunks = submitChunks(workers,
+                    library.artistNames);
+            final ArrayList<Future<SortRows>> albumChunks = submitChunks(workers,
+                    library.albumNames);
+            final ArrayList<Future<SortRows>> songChunks = submitChunks(workers,
+                    library.songNames);
+            chunks.addAll(artistChunks);
+            chunks.addAll(albumChunks);
+            chunks.addAll(songChunks);
+
+            final int totalChunks = artistChunks.size() + albumChunks.size()
+                    + songChunks.size();
+            int insertedChunks = 0;
+
+            for (int i = 0; i < artistChunks.size(); i++) {
+                final SortRows rows = artistChunks.get(i).get();
+                final int offset = i * REBUILD_CHUNK_SIZE;
+                executor.executeAndWait(TAG, db -> insertRows(db, INSERT_ARTIST_SQL, offset, rows,
+                        library.artistIds));
+                mRebuildProgress = 100 * ++insertedChunks / totalChunks;
+            }
 
-            // Update the ICU version used to generate the locale derived data
-            // so we can tell when we need to rebuild with new ICU versions.
-            // But assume that ICU versions are only able to change on Android version upgrades and
-            // use SDK INT as identifier.
-            PropertiesStore.getInstance(mContext).storeProperty(
-                    PropertiesStore.DbProperties.ICU_VERSION,
-                    String.valueOf(Build.VERSION.SDK_INT));
-            PropertiesStore.getInstance(mContext).storeProperty(PropertiesStore.DbProperties.LOCALE,
-                    locales.toString());
+            for (int i = 0; i < albumChunks.size(); i++) {
+                final SortRows rows = albumChunks.get(i).get();
+                final int offset = i * REBUILD_CHUNK_SIZE;
+                executor.executeAndWait(TAG, db -> insertRows(db, INSERT_ALBUM_SQL, offset, rows,
+                        library.albumIds, library.albumArtistIds));
+                mRebuildProgress = 100 * ++insertedChunks / totalChunks;
+            }
 
-            db.setTransactionSuccessful();
+            for (int i = 0; i < songChunks.size(); i++) {
+                final SortRows rows = songChunks.get(i).get();
+                final int offset = i * REBUILD_CHUNK_SIZE;
+                executor.executeAndWait(TAG, db -> insertRows(db, INSERT_SONG_SQL, offset, rows,
+                        library.songIds, library.songArtistIds, library.songAlbumIds));
+                mRebuildProgress = 100 * ++insertedChunks / totalChunks;
+            }
+
+            // swap the shadow tables in, this all happens in a single transaction
+            executor.executeAndWait(TAG, db -> {
+                dropTables(db, "");
+                db.execSQL(createRename(SongSortColumns.TABLE_NAME));
+                db.execSQL(createRename(AlbumSortColumns.TABLE_NAME));
+                db.execSQL(createRename(ArtistSortColumns.TABLE_NAME));
+
+                // Update the ICU version used to generate the locale derived data
+                // so we can tell when we need to rebuild with new ICU versions.
+                // But assume that ICU versions are only able to change on Android version
+                // upgrades and use SDK INT as identifier.
+                PropertiesStore.getInstance(mContext).storeProperty(
+                        PropertiesStore.DbProperties.ICU_VERSION,
+                        String.valueOf(Build.VERSION.SDK_INT));
+                PropertiesStore.getInstance(mContext).storeProperty(
+                        PropertiesStore.DbProperties.LOCALE, locales.toString());
+
+                // the tables now match the library as of the snapshot
+                storeWatermark(mediaStoreVersion, library.maxGeneration);
+            });
+            invalidateSortCache();
+        } catch (InterruptedException | ExecutionException | RuntimeException e) {
+            // e.g. a SQLiteException from a write, don't let it take the locale thread down
+            Log.e(TAG, "Failed to rebuild the locale data", e);
         } finally {
-            db.endTransaction();
+            // the workers are shared, only drop what's left of this rebuild
+            for (Future<SortRows> chunk : chunks) {
+                chunk.cancel(false);
+            }
+            mRebuildProgress = -1;
         }
 
         if (DEBUG) {
@@ -199,134 +399,411 @@ public class LocalizedStore {
     }
 
     /**
-     * This will grab all the songs from the medistore and add the localized data to the db
+     * Reads the ids and names of the songs, albums and artists from the media store
      *
-     * @param selection if we only want to do this for some songs, this selection will filter it out
+     * @param selection an additional filter on the songs, or null to read the whole library
+     * @return the library snapshot
      */
-    private void updateLocalizedStore(final SQLiteDatabase db, final String selection) {
-        db.beginTransaction();
-        try {
-            Cursor cursor = null;
+    private LibrarySnapshot queryLibrary(final String selection) {
+        final LibrarySnapshot library = new LibrarySnapshot();
+        final String combinedSelection = MusicUtils.MUSIC_ONLY_SELECTION +
+                (TextUtils.isEmpty(selection) ? "" : " AND " + selection);
+
+        // order by artist/album/id to minimize artist/album duplicates
+        final String orderBy = AudioColumns.ARTIST_ID + "," + AudioColumns.ALBUM + ","
+                + AudioColumns._ID;
+
+        try (Cursor cursor = mContext.getContentResolver().query(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                new String[]{
+                        // 0
+                        AudioColumns._ID,
+                        // 1
+                        AudioColumns.TITLE,
+                        // 2
+                        AudioColumns.ARTIST_ID,
+                        // 3
+                        AudioColumns.ARTIST,
+                        // 4
+                        AudioColumns.ALBUM_ID,
+                        // 5
+                        AudioColumns.ALBUM,
+                        // 6
+                        AudioColumns.GENERATION_MODIFIED,
+                }, combinedSelection, null, orderBy)) {
+            final int count = cursor != null ? cursor.getCount() : 0;
+            library.songIds = new long[count];
+            library.songNames = new String[count];
+            library.songArtistIds = new long[count];
+            library.songAlbumIds = new long[count];
+
+            final long[] artistIds = new long[count];
+            final String[] artistNames = new String[count];
+            final long[] albumIds = new long[count];
+            final long[] albumArtistIds = new long[count];
+            final String[] albumNames = new String[count];
+            int numArtists = 0;
+            int numAlbums = 0;
+
+            long previousArtistId = -1;
+            long previousAlbumId = -1;
+
+            while (cursor != null && cursor.moveToNext()) {
+                final int position = cursor.getPosition();
+                final long artistId = cursor.getLong(2);
+                final long albumId = cursor.getLong(4);
+
+                if (artistId != previousArtistId) {
+                    previousArtistId = artistId;
+                    artistIds[numArtists] = artistId;
+                    artistNames[numArtists++] = cursor.getString(3);
+                }
 
-            try {
-                final String combinedSelection = MusicUtils.MUSIC_ONLY_SELECTION +
-                        (TextUtils.isEmpty(selection) ? "" : " AND " + selection);
+                if (albumId != previousAlbumId) {
+                    previousAlbumId = albumId;
+                    albumIds[numAlbums] = albumId;
+                    albumArtistIds[numAlbums] = artistId;
+                    albumNames[numAlbums++] = cursor.getString(5);
+                }
 
-                // order by artist/album/id to minimize artist/album re-inserts
-                final String orderBy = AudioColumns.ARTIST_ID + "," + AudioColumns.ALBUM + ","
-                        + AudioColumns._ID;
+                library.songIds[position] = cursor.getLong(0);
+                library.songNames[position] = cursor.getString(1);
+                library.songArtistIds[position] = artistId;
+                library.songAlbumIds[position] = albumId;
+                library.maxGeneration = Math.max(library.maxGeneration, cursor.getLong(6));
+            }
 
-                if (DEBUG) {
-                    Log.d(TAG, "Running selection query: " + combinedSelection);
-                }
+            library.artistIds = Arrays.copyOf(artistIds, numArtists);
+            library.artistNames = Arrays.copyOf(artistNames, numArtists);
+            library.albumIds = Arrays.copyOf(albumIds, numAlbums);
+            library.albumArtistIds = Arrays.copyOf(albumArtistIds, numAlbums);
+            library.albumNames = Arrays.copyOf(albumNames, numAlbums);
+        }
 
-                cursor = mContext.getContentResolver().query(
-                        MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                        new String[]{
-                                // 0
-                                AudioColumns._ID,
-                                // 1
-                                AudioColumns.TITLE,
-                                // 2
-                                AudioColumns.ARTIST_ID,
-                                // 3
-                                AudioColumns.ARTIST,
-                                // 4
-                                AudioColumns.ALBUM_ID,
-                                // 5
-                                AudioColumns.ALBUM,
-                        }, combinedSelection, null, orderBy);
-
-                long previousArtistId = -1;
-                long previousAlbumId = -1;
-                long artistId;
-                long albumId;
-
-                if (cursor != null && cursor.moveToFirst()) {
-                    do {
-                        albumId = cursor.getLong(4);
-                        artistId = cursor.getLong(2);
-
-                        if (artistId != previousArtistId) {
-                            previousArtistId = artistId;
-                            updateArtistData(db, artistId, cursor.getString(3));
-                        }
+        return library;
+    }
 
-                        if (albumId != previousAlbumId) {
-                            previousAlbumId = albumId;
+    /**
+     * Splits the names into chunks and queues the computation of their sort data
+     *
+     * @param workers the executor to run the computation on
+     * @param names   the raw names
+     * @return the futures of the computed chunks, in order
+     */
+    private static ArrayList<Future<SortRows>> submitChunks(final ExecutorService workers,
+                                                            final String[] names) {
+        final ArrayList<Future<SortRows>> chunks = new ArrayList<>();
+        for (int start = 0; start < names.length; start += REBUILD_CHUNK_SIZE) {
+            final int from = start;
+            final int to = Math.min(start + REBUILD_CHUNK_SIZE, names.length);
+            chunks.add(workers.submit(() -> computeSortRows(names, from, to)));
+        }
+        return chunks;
+    }
 
-                            updateAlbumData(db, albumId, cursor.getString(5), artistId);
-                        }
+    /**
+     * Computes the trimmed names and buckets for a range of names
+     *
+     * @param names the raw names
+     * @param from  the first index, inclusive
+     * @param to    the last index, exclusive
+     * @return the sort data
+     */
+    private static SortRows computeSortRows(final String[] names, final int from, final int to) {
+        final LocaleUtils localeUtils = LocaleUtils.getInstance();
+        final SortRows rows = new SortRows(to - from);
 
-                        updateSongData(db, cursor.getLong(0), cursor.getString(1), artistId,
-                                albumId);
-                    } while (cursor.moveToNext());
-                }
-            } finally {
-                if (cursor != null) {
-                    cursor.close();
+        for (int i = from; i < to; i++) {
+            final String name = MusicUtils.getTrimmedName(names[i]);
+            final int bucketIndex = localeUtils.getBucketIndex(name);
+
+            rows.names[i - from] = name;
+            rows.buckets[i - from] = bucketIndex;
+            rows.labels[i - from] = localeUtils.getBucketLabel(bucketIndex);
+        }
+
+        return rows;
+    }
+
+    /**
+     * Inserts a chunk of computed sort data.  The ids and any other id columns are bound first,
+     * followed by the name, label and bucket
+     *
+     * @param db      the database, this must be called from the writer thread
+     * @param sql     the insert statement
+     * @param offset  the index of the first row of the chunk in the id columns
+     * @param rows    the sort data of the chunk
+     * @param columns the id columns of the whole library
+     */
+    private static void insertRows(final SQLiteDatabase db, final String sql, final int offset,
+                                   final SortRows rows, final long[]... columns) {
+        final SQLiteStatement insert = db.compileStatement(sql);
+        try {
+            for (int i = 0; i < rows.size(); i++) {
+                for (int column = 0; column < columns.length; column++) {
+                    insert.bindLong(column + 1, columns[column][offset + i]);
                 }
+                bindSortRow(insert, columns.length + 1, rows, i);
+                insert.executeInsert();
             }
-
-            db.setTransactionSuccessful();
         } finally {
-            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    /**
+     * Binds the name, label and bucket of a row, in that order
+     *
+     * @param insert the statement
+     * @param index  the index of the first parameter to bind
+     * @param rows   the sort data
+     * @param row    the row to bind
+     */
+    private static void bindSortRow(final SQLiteStatement insert, final int index,
+                                    final SortRows rows, final int row) {
+        if (rows.names[row] != null) {
+            insert.bindString(index, rows.names[row]);
+        } else {
+            insert.bindNull(index);
         }
+        insert.bindString(index + 1, rows.labels[row]);
+        insert.bindLong(index + 2, rows.buckets[row]);
     }
 
-    private void updateArtistData(SQLiteDatabase db, long id, String name) {
-        mContentValues.clear();
-        name = MusicUtils.getTrimmedName(name);
+    private static void dropTables(final SQLiteDatabase db, final String suffix) {
+        db.execSQL("DROP TABLE IF EXISTS " + SongSortColumns.TABLE_NAME + suffix);
+        db.execSQL("DROP TABLE IF EXISTS " + AlbumSortColumns.TABLE_NAME + suffix);
+        db.execSQL("DROP TABLE IF EXISTS " + ArtistSortColumns.TABLE_NAME + suffix);
+    }
 
-        final LocaleUtils localeUtils = LocaleUtils.getInstance();
-        final int bucketIndex = localeUtils.getBucketIndex(name);
+    private static String createRename(final String tableName) {
+        return "ALTER TABLE " + tableName + SHADOW_SUFFIX + " RENAME TO " + tableName;
+    }
+
+    /**
+     * Brings the sort tables in line with the media store.  Songs modified since the stored
+     * generation watermark are (re)inserted and rows of items that aren't in the library anymore
+     * are deleted, so the loaders only ever read the tables
+     */
+    private void reconcile() {
+        final long start = SystemClock.elapsedRealtime();
+        final PropertiesStore properties = PropertiesStore.getInstance(mContext);
+        final String mediaStoreVersion = MediaStore.getVersion(mContext);
+
+        // the generations are only comparable within the same media store version
+        long watermark = 0;
+        if (mediaStoreVersion.equals(properties.getProperty(
+                PropertiesStore.DbProperties.MEDIA_STORE_VERSION))) {
+            try {
+                watermark = Long.parseLong(properties.getProperty(
+                        PropertiesStore.DbProperties.MEDIA_STORE_GENERATION, "0"));
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Invalid media store generation, doing a full sync", e);
+            }
+        }
 
-        mContentValues.put(ArtistSortColumns.ID, id);
-        mContentValues.put(ArtistSortColumns.NAME, name);
-        mContentValues.put(ArtistSortColumns.NAME_BUCKET, bucketIndex);
-        mContentValues.put(ArtistSortColumns.NAME_LABEL,
-                localeUtils.getBucketLabel(bucketIndex));
+        final LongHashSet songIds = new LongHashSet();
+        final LongHashSet albumIds = new LongHashSet();
+        final LongHashSet artistIds = new LongHashSet();
+        // the items with a song modified since the watermark, the delta query returns those
+        final LongHashSet changedSongIds = new LongHashSet();
+        final LongHashSet changedAlbumIds = new LongHashSet();
+        final LongHashSet changedArtistIds = new LongHashSet();
+        try (Cursor cursor = mContext.getContentResolver().query(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                new String[]{
+                        // 0
+                        AudioColumns._ID,
+                        // 1
+                        AudioColumns.ALBUM_ID,
+                        // 2
+                        AudioColumns.ARTIST_ID,
+                        // 3
+                        AudioColumns.GENERATION_MODIFIED,
+                }, MusicUtils.MUSIC_ONLY_SELECTION, null, null)) {
+            if (cursor == null) {
+                // never mistake a failed query for an empty library
+                return;
+            }
+
+            while (cursor.moveToNext()) {
+                songIds.add(cursor.getLong(0));
+                albumIds.add(cursor.getLong(1));
+                artistIds.add(cursor.getLong(2));
+                if (cursor.getLong(3) > watermark) {
+                    changedSongIds.add(cursor.getLong(0));
+                    changedAlbumIds.add(cursor.getLong(1));
+                    changedArtistIds.add(cursor.getLong(2));
+                }
+            }
+        }
+
+        final int generation;
+        synchronized (mSortCache) {
+            generation = mSortCacheGeneration;
+        }
+
+        // deletions don't bump any generation so they are found by comparing the ids
+        boolean untracked = removeStaleIds(SongSortColumns.TABLE_NAME, SongSortColumns.ID,
+                songIds, changedSongIds);
+        untracked |= removeStaleIds(AlbumSortColumns.TABLE_NAME, AlbumSortColumns.ID, albumIds,
+                changedAlbumIds);
+        untracked |= removeStaleIds(ArtistSortColumns.TABLE_NAME, ArtistSortColumns.ID,
+                artistIds, changedArtistIds);
+
+        // if some items are missing without having been modified since the watermark, the
+        // tables were out of sync before we started tracking it, so sync everything once
+        final LibrarySnapshot changes = queryLibrary(untracked ? null
+                : AudioColumns.GENERATION_MODIFIED + ">" + watermark);
+        insertRows(REPLACE_ARTIST_SQL, changes.artistNames, changes.artistIds);
+        insertRows(REPLACE_ALBUM_SQL, changes.albumNames, changes.albumIds,
+                changes.albumArtistIds);
+        insertRows(REPLACE_SONG_SQL, changes.songNames, changes.songIds, changes.songArtistIds,
+                changes.songAlbumIds);
+
+        final long newWatermark = Math.max(watermark, changes.maxGeneration);
+        mMusicDatabase.getExecutor().executeAndWait(TAG,
+                db -> storeWatermark(mediaStoreVersion, newWatermark));
+
+        if (changes.songIds.length > 0) {
+            invalidateSortCache();
+        }
+
+        final boolean modified;
+        synchronized (mSortCache) {
+            modified = generation != mSortCacheGeneration;
+        }
+
+        if (modified) {
+            // let the lists reload with the new sort data
+            MusicUtils.refresh();
+        }
 
-        db.insertWithOnConflict(ArtistSortColumns.TABLE_NAME, null, mContentValues,
-                SQLiteDatabase.CONFLICT_IGNORE);
+        if (DEBUG) {
+            Log.d(TAG, "Reconciled " + changes.songIds.length + " changed songs in "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+        }
     }
 
-    private void updateAlbumData(SQLiteDatabase db, long id, String name, long artistId) {
-        mContentValues.clear();
-        name = MusicUtils.getTrimmedName(name);
+    /**
+     * Deletes the rows of a sort table whose ids aren't in the library anymore
+     *
+     * @param tableName  the sort table
+     * @param idColumn   the id column of the table
+     * @param libraryIds the ids currently in the library
+     * @param changedIds the library ids with songs modified since the watermark, which the
+     *                   delta query (re)inserts anyway
+     * @return true if some of the library ids that weren't modified aren't in the table
+     */
+    private boolean removeStaleIds(final String tableName, final String idColumn,
+                                   final LongHashSet libraryIds, final LongHashSet changedIds) {
+        final LongArrayList staleIds = new LongArrayList();
+        int trackedIds = 0;
+
+        try (Cursor cursor = mMusicDatabase.getReadableDatabase().rawQuery(
+                "SELECT " + idColumn + " FROM " + tableName, null)) {
+            while (cursor != null && cursor.moveToNext()) {
+                final long id = cursor.getLong(0);
+                if (libraryIds.contains(id)) {
+                    if (!changedIds.contains(id)) {
+                        trackedIds++;
+                    }
+                } else {
+                    staleIds.add(id);
+                }
+            }
+        }
 
-        final LocaleUtils localeUtils = LocaleUtils.getInstance();
-        final int bucketIndex = localeUtils.getBucketIndex(name);
+        if (!staleIds.isEmpty()) {
+            if (DEBUG) {
+                Log.d(TAG, "Deleting " + staleIds.size() + " stale ids from " + tableName);
+            }
 
-        mContentValues.put(AlbumSortColumns.ID, id);
-        mContentValues.put(AlbumSortColumns.NAME, name);
-        mContentValues.put(AlbumSortColumns.NAME_BUCKET, bucketIndex);
-        mContentValues.put(AlbumSortColumns.NAME_LABEL,
-                localeUtils.getBucketLabel(bucketIndex));
-        mContentValues.put(AlbumSortColumns.ARTIST_ID, artistId);
+            final MusicDBExecutor executor = mMusicDatabase.getExecutor();
+            executor.executeAndWait(TAG, db -> IdResolver.forEachChunk(idColumn,
+                    staleIds.toArray(), (selection, selectionArgs) ->
+                            db.delete(tableName, selection, selectionArgs)));
+            invalidateSortCache();
+        }
 
-        db.insertWithOnConflict(AlbumSortColumns.TABLE_NAME, null, mContentValues,
-                SQLiteDatabase.CONFLICT_IGNORE);
+        // newly added items are only missing until the delta query inserts them
+        return trackedIds < libraryIds.size() - changedIds.size();
     }
 
-    private void updateSongData(SQLiteDatabase db, long id, String name, long artistId,
-                                long albumId) {
-        mContentValues.clear();
-        name = MusicUtils.getTrimmedName(name);
+    /**
+     * Computes and inserts the sort data of the given names, a chunk at a time
+     *
+     * @param sql     the insert statement
+     * @param names   the raw names
+     * @param columns the id columns matching the names
+     */
+    private void insertRows(final String sql, final String[] names, final long[]... columns) {
+        final MusicDBExecutor executor = mMusicDatabase.getExecutor();
+        for (int start = 0; start < names.length; start += REBUILD_CHUNK_SIZE) {
+            final int offset = start;
+            final SortRows rows = computeSortRows(names, start,
+                    Math.min(start + REBUILD_CHUNK_SIZE, names.length));
+            executor.executeAndWait(TAG, db -> insertRows(db, sql, offset, rows, columns));
+        }
+    }
 
-        final LocaleUtils localeUtils = LocaleUtils.getInstance();
-        final int bucketIndex = localeUtils.getBucketIndex(name);
+    /**
+     * Stores the media store state the sort tables are in sync with.  This must be called from
+     * the writer thread
+     *
+     * @param mediaStoreVersion the media store version
+     * @param generation        the highest generation that has been synced
+     */
+    private void storeWatermark(final String mediaStoreVersion, final long generation) {
+        final PropertiesStore properties = PropertiesStore.getInstance(mContext);
+        properties.storeProperty(PropertiesStore.DbProperties.MEDIA_STORE_VERSION,
+                mediaStoreVersion);
+        properties.storeProperty(PropertiesStore.DbProperties.MEDIA_STORE_GENERATION,
+                String.valueOf(generation));
+    }
 
-        mContentValues.put(SongSortColumns.ID, id);
-        mContentValues.put(SongSortColumns.NAME, name);
-        mContentValues.put(SongSortColumns.NAME_BUCKET, bucketIndex);
-        mContentValues.put(SongSortColumns.NAME_LABEL,
-                localeUtils.getBucketLabel(bucketIndex));
-        mContentValues.put(SongSortColumns.ARTIST_ID, artistId);
-        mContentValues.put(SongSortColumns.ALBUM_ID, albumId);
+    /**
+     * Gets the list of saved ids and labels for the itemType in localized sorted order.  The
+     * result is cached until the sort tables are written to, so it must not be modified
+     *
+     * @param itemType   the type of item we're querying for (artists, albums, songs)
+     * @param sortType   the type we want to sort by, see {@link #querySortOrder}
+     * @param descending Whether we want to sort ascending or descending
+     * @return sorted list of ids and bucket labels for the itemType
+     */
+    public SortData getSortOrder(SortParameter itemType, SortParameter sortType,
+                                 boolean descending) {
+        final String key = itemType + "/" + sortType + "/" + descending;
+        final int generation;
+
+        synchronized (mSortCache) {
+            final SortData cached = mSortCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            generation = mSortCacheGeneration;
+        }
+
+        final SortData sortData = querySortOrder(itemType, sortType, descending);
+
+        synchronized (mSortCache) {
+            // only cache it if the tables weren't written to while we were querying
+            if (generation == mSortCacheGeneration) {
+                mSortCache.put(key, sortData);
+            }
+        }
 
-        db.insertWithOnConflict(SongSortColumns.TABLE_NAME, null, mContentValues,
-                SQLiteDatabase.CONFLICT_IGNORE);
+        return sortData;
+    }
+
+    /**
+     * Drops the cached sort orders, this needs to be called after any write to the sort tables
+     */
+    private void invalidateSortCache() {
+        synchronized (mSortCache) {
+            mSortCache.clear();
+            mSortCacheGeneration++;
+        }
     }
 
     /**
@@ -342,8 +819,8 @@ public class LocalizedStore {
      *                   otherwise ascending is always assumed
      * @return sorted list of ids and bucket labels for the itemType
      */
-    public SortData getSortOrder(SortParameter itemType, SortParameter sortType,
-                                 boolean descending) {
+    private SortData querySortOrder(SortParameter itemType, SortParameter sortType,
+                                    boolean descending) {
         SortData sortData = new SortData();
         String tableName = "";
         String joinClause = "";
@@ -358,35 +835,37 @@ public class LocalizedStore {
                 tableName = SongSortColumns.TABLE_NAME;
 
                 if (sortType == SortParameter.Artist) {
-                    selectParams += ArtistSortColumns.NAME_LABEL;
+                    selectParams += ArtistSortColumns.NAME_LABEL + ","
+                            + ArtistSortColumns.NAME_BUCKET;
                     prefixOrder = ArtistSortColumns.getOrderBy(false) + ",";
                     joinClause = createJoin(ArtistSortColumns.TABLE_NAME,
                             SongSortColumns.ARTIST_ID, ArtistSortColumns.CONCRETE_ID);
                 } else if (sortType == SortParameter.Album) {
-                    selectParams += AlbumSortColumns.NAME_LABEL;
+                    selectParams += AlbumSortColumns.NAME_LABEL + ","
+                            + AlbumSortColumns.NAME_BUCKET;
                     prefixOrder = AlbumSortColumns.getOrderBy(false) + ",";
                     joinClause = createJoin(AlbumSortColumns.TABLE_NAME,
                             SongSortColumns.ALBUM_ID, AlbumSortColumns.CONCRETE_ID);
                 } else {
-                    selectParams += SongSortColumns.NAME_LABEL;
+                    selectParams += SongSortColumns.NAME_LABEL + ","
+                            + SongSortColumns.NAME_BUCKET;
                 }
                 break;
             case Artist:
-                selectParams = ArtistSortColumns.CONCRETE_ID + "," + ArtistSortColumns.NAME_LABEL;
+                selectParams = ArtistSortColumns.CONCRETE_ID + "," + ArtistSortColumns.NAME_LABEL
+                        + "," + ArtistSortColumns.NAME_BUCKET;
                 postfixOrder = ArtistSortColumns.getOrderBy(descending);
                 tableName = ArtistSortColumns.TABLE_NAME;
                 break;
             case Album:
-                selectParams = AlbumSortColumns.CONCRETE_ID + ",";
+                selectParams = AlbumSortColumns.CONCRETE_ID + ","
+                        + AlbumSortColumns.NAME_LABEL + "," + AlbumSortColumns.NAME_BUCKET;
                 postfixOrder = AlbumSortColumns.getOrderBy(descending);
                 tableName = AlbumSortColumns.TABLE_NAME;
                 if (sortType == SortParameter.Artist) {
-                    selectParams += AlbumSortColumns.NAME_LABEL;
                     prefixOrder = ArtistSortColumns.getOrderBy(false) + ",";
                     joinClause = createJoin(ArtistSortColumns.TABLE_NAME,
                             AlbumSortColumns.ARTIST_ID, ArtistSortColumns.CONCRETE_ID);
-                } else {
-                    selectParams += AlbumSortColumns.NAME_LABEL;
                 }
                 break;
         }
@@ -404,9 +883,21 @@ public class LocalizedStore {
             if (c != null && c.moveToFirst()) {
                 sortData.ids = new long[c.getCount()];
                 sortData.bucketLabels = new ArrayList<>(c.getCount());
+                sortData.buckets = new int[c.getCount()];
+
+                // there are only a handful of distinct labels, so share the instances
+                final HashMap<String, String> labels = new HashMap<>();
                 do {
                     sortData.ids[c.getPosition()] = c.getLong(0);
-                    sortData.bucketLabels.add(c.getString(1));
+
+                    final String label = c.getString(1);
+                    String sharedLabel = labels.get(label);
+                    if (sharedLabel == null && label != null) {
+                        sharedLabel = label;
+                        labels.put(label, label);
+                    }
+                    sortData.bucketLabels.add(sharedLabel);
+                    sortData.buckets[c.getPosition()] = c.getInt(2);
                 } while (c.moveToNext());
             }
         }
@@ -415,34 +906,31 @@ public class LocalizedStore {
     }
 
     /**
-     * Wraps the cursor with a sorted cursor that sorts it in the proper localized order
+     * Wraps the cursor with a sorted cursor that sorts it in the proper localized order.  This
+     * never writes to the sort tables, discrepancies are left to the reconciler
      *
      * @param cursor     underlying cursor to sort
      * @param columnName the column name of the id
      * @param idType     the type of item that the cursor contains
      * @param sortType   the type to sort by (for example can be song sorted by albums)
      * @param descending descending?
-     * @param update     do we want to update any discrepencies we find - only should be true if the
-     *                   cursor contains all songs/artists/albums and not a subset
+     * @param complete   whether the cursor contains all songs/artists/albums and not a subset,
+     *                   in which case any discrepancies found schedule a reconcile
      * @return the sorted cursor
      */
     public Cursor getLocalizedSort(Cursor cursor, String columnName, SortParameter idType,
-                                   SortParameter sortType, boolean descending, boolean update) {
+                                   SortParameter sortType, boolean descending, boolean complete) {
         if (cursor != null) {
-            SortedCursor sortedCursor = null;
-
-            // iterate up to twice if there are discrepancies found
-            for (int i = 0; i < 2; i++) {
-                // get the sort order for the sort parameter
-                SortData sortData = getSortOrder(idType, sortType, descending);
+            // get the sort order for the sort parameter
+            SortData sortData = getSortOrder(idType, sortType, descending);
 
-                // get the sorted cursor based on the sort
-                sortedCursor = new SortedCursor(cursor, sortData.ids, columnName,
-                        sortData.bucketLabels);
+            // get the sorted cursor based on the sort
+            SortedCursor sortedCursor = new SortedCursor(cursor, sortData.ids, columnName,
+                    sortData.bucketLabels, sortData.buckets);
 
-                if (!update || !updateDiscrepancies(sortedCursor, idType)) {
-                    break;
-                }
+            if (complete && hasDiscrepancies(sortedCursor)) {
+                // the reconciler refreshes the lists once the tables are updated
+                scheduleReconcile(0);
             }
 
             return sortedCursor;
@@ -452,79 +940,27 @@ public class LocalizedStore {
     }
 
     /**
-     * Updates the localized store based on the cursor
-     *
      * @param sortedCursor the current sorting cursor based on the LocalizedStore sort
-     * @param type         the item type in the cursor
-     * @return true if there are new ids in the cursor that aren't tracked in the store
+     * @return true if the cursor and the store don't have the same ids
      */
-    private boolean updateDiscrepancies(SortedCursor sortedCursor, SortParameter type) {
-        boolean hasNewIds = false;
-
-        final ArrayList<Long> missingIds = sortedCursor.getMissingIds();
-        if (missingIds.size() > 0) {
-            removeIds(missingIds, type);
-        }
-
-        final Collection<Long> extraIds = sortedCursor.getExtraIds();
-        if (extraIds != null && extraIds.size() > 0) {
-            addIds(extraIds, type);
-            hasNewIds = true;
-        }
-
-        return hasNewIds;
+    private static boolean hasDiscrepancies(SortedCursor sortedCursor) {
+        final long[] extraIds = sortedCursor.getExtraIds();
+        return !sortedCursor.getMissingIds().isEmpty()
+                || (extraIds != null && extraIds.length > 0);
     }
 
-    private void removeIds(ArrayList<Long> ids, SortParameter idType) {
-        if (ids == null || ids.size() == 0) {
-            return;
-        }
-
-        final String inParams = "(" + MusicUtils.buildCollectionAsString(ids) + ")";
-
-        if (DEBUG) {
-            Log.d(TAG, "Deleting from " + idType + " where id is in " + inParams);
-        }
-
-        switch (idType) {
-            case Song:
-                mMusicDatabase.getWritableDatabase().delete(SongSortColumns.TABLE_NAME,
-                        SongSortColumns.ID + " IN " + inParams, null);
-                break;
-            case Album:
-                mMusicDatabase.getWritableDatabase().delete(AlbumSortColumns.TABLE_NAME,
-                        AlbumSortColumns.ID + " IN " + inParams, null);
-                break;
-            case Artist:
-                mMusicDatabase.getWritableDatabase().delete(ArtistSortColumns.TABLE_NAME,
-                        ArtistSortColumns.ID + " IN " + inParams, null);
-                break;
-        }
+    private static String createJoin(String tableName, String firstParam, String secondParam) {
+        return " JOIN " + tableName + " ON (" + firstParam + "=" + secondParam + ")";
     }
 
-    private void addIds(Collection<Long> ids, SortParameter idType) {
-        StringBuilder builder = new StringBuilder();
-        switch (idType) {
-            case Song:
-                builder.append(AudioColumns._ID);
-                break;
-            case Album:
-                builder.append(AudioColumns.ALBUM_ID);
-                break;
-            case Artist:
-                builder.append(AudioColumns.ARTIST_ID);
-                break;
+    private static String createInsert(String conflict, String tableName, String[] columns) {
+        final StringBuilder builder = new StringBuilder("INSERT OR ").append(conflict)
+                .append(" INTO ").append(tableName).append("(")
+                .append(TextUtils.join(",", columns)).append(") VALUES (?");
+        for (int i = 1; i < columns.length; i++) {
+            builder.append(",?");
         }
-
-        builder.append(" IN (");
-        builder.append(MusicUtils.buildCollectionAsString(ids));
-        builder.append(")");
-
-        updateLocalizedStore(mMusicDatabase.getWritableDatabase(), builder.toString());
-    }
-
-    private static String createJoin(String tableName, String firstParam, String secondParam) {
-        return " JOIN " + tableName + " ON (" + firstParam + "=" + secondParam + ")";
+        return builder.append(")").toString();
     }
 
     private static String createOrderBy(String first, String second, boolean descending) {
@@ -557,6 +993,10 @@ public class LocalizedStore {
         /* Used for joins */
         public static final String CONCRETE_ID = TABLE_NAME + "." + ID;
 
+        /* The columns in insert order */
+        public static final String[] COLUMNS = new String[]{
+                ID, ARTIST_ID, ALBUM_ID, NAME, NAME_LABEL, NAME_BUCKET};
+
         public static String getOrderBy(boolean descending) {
             return createOrderBy(NAME_BUCKET, NAME, descending);
         }
@@ -585,6 +1025,10 @@ public class LocalizedStore {
         /* Used for joins */
         public static final String CONCRETE_ID = TABLE_NAME + "." + ID;
 
+        /* The columns in insert order */
+        public static final String[] COLUMNS = new String[]{
+                ID, ARTIST_ID, NAME, NAME_LABEL, NAME_BUCKET};
+
         public static String getOrderBy(boolean descending) {
             return createOrderBy(NAME_BUCKET, NAME, descending);
         }
@@ -611,6 +1055,10 @@ public class LocalizedStore {
         /* Used for joins */
         public static final String CONCRETE_ID = TABLE_NAME + "." + ID;
 
+        /* The columns in insert order */
+        public static final String[] COLUMNS = new String[]{
+                ID, NAME, NAME_LABEL, NAME_BUCKET};
+
         public static String getOrderBy(boolean descending) {
             return createOrderBy(NAME_BUCKET, NAME, descending);
         }
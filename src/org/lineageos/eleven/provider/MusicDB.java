@@ -32,11 +32,17 @@ public class MusicDB extends SQLiteOpenHelper {
      * v3 Dec 4 2014    Add Sorting tables similar to Contacts to enable other languages like
      * Chinese to properly sort as they would expect
      * v4 Jan 6 2015    Missed Collate keyword on the LocalizedSongSortTable
+     * v5 Oct 18 2026   SongPlayCount stores a packed weekly histogram instead of a column per
+     * week and applies the decay at read time
+     * v6 Oct 18 2026   Added ListeningHistoryStore play session log
+     * v7 Oct 18 2026   RecentStore became a fixed size ring keyed by slot
+     * v8 Oct 18 2026   Added AlbumColorStore to persist the artwork palette of each album
+     * v9 Oct 18 2026   PlaylistArtworkStore keys the cover art by a fingerprint of its albums
      */
 
 
     /* Version constant to increment when the database should be rebuilt */
-    private static final int VERSION = 4;
+    private static final int VERSION = 9;
 
     /* Name of database file */
     private static final String DATABASENAME = "musicdb.db";
@@ -45,6 +51,8 @@ public class MusicDB extends SQLiteOpenHelper {
 
     private final Context mContext;
 
+    private final MusicDBExecutor mExecutor;
+
     /**
      * @param context The {@link android.content.Context} to use
      * @return A new instance of this class.
@@ -59,6 +67,17 @@ public class MusicDB extends SQLiteOpenHelper {
     public MusicDB(final Context context) {
         super(context, DATABASENAME, null, VERSION);
         mContext = context;
+        mExecutor = new MusicDBExecutor(this);
+
+        // all the writes go through the executor, let the reads run concurrently with them
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * @return the executor all the writes to this database go through
+     */
+    public MusicDBExecutor getExecutor() {
+        return mExecutor;
     }
 
     @Override
@@ -67,15 +86,22 @@ public class MusicDB extends SQLiteOpenHelper {
         PlaylistArtworkStore.getInstance(mContext).onCreate(db);
         RecentStore.getInstance(mContext).onCreate(db);
         SongPlayCount.getInstance(mContext).onCreate(db);
+        ListeningHistoryStore.getInstance(mContext).onCreate(db);
         MusicPlaybackState.getInstance(mContext).onCreate(db);
         LocalizedStore.getInstance(mContext).onCreate(db);
+        AlbumColorStore.getInstance(mContext).onCreate(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         PropertiesStore.getInstance(mContext).onUpgrade(db, oldVersion, newVersion);
+        PlaylistArtworkStore.getInstance(mContext).onUpgrade(db, oldVersion);
         MusicPlaybackState.getInstance(mContext).onUpgrade(db, oldVersion, newVersion);
+        RecentStore.getInstance(mContext).onUpgrade(db, oldVersion);
+        SongPlayCount.getInstance(mContext).onUpgrade(db, oldVersion);
+        ListeningHistoryStore.getInstance(mContext).onUpgrade(db, oldVersion);
         LocalizedStore.getInstance(mContext).onUpgrade(db, oldVersion);
+        AlbumColorStore.getInstance(mContext).onUpgrade(db, oldVersion);
     }
 
     @Override
@@ -86,7 +112,9 @@ public class MusicDB extends SQLiteOpenHelper {
         PlaylistArtworkStore.getInstance(mContext).onDowngrade(db);
         RecentStore.getInstance(mContext).onDowngrade(db);
         SongPlayCount.getInstance(mContext).onDowngrade(db);
+        ListeningHistoryStore.getInstance(mContext).onDowngrade(db);
         MusicPlaybackState.getInstance(mContext).onDowngrade(db);
         LocalizedStore.getInstance(mContext).onDowngrade(db);
+        AlbumColorStore.getInstance(mContext).onDowngrade(db);
     }
 }
@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.provider;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Serialises all the writes to the {@link MusicDB} onto a single writer thread.  Writes that are
+ * queued together are run in a single transaction and can reuse compiled statements, while
+ * readers keep using the database directly since it runs in WAL mode.
+ * <p>
+ * A write that throws is never partially committed: its batch is rolled back and the other
+ * writes are run again on their own.  The error is thrown to the caller of
+ * {@link #executeAndWait(String, Write)}, and logged for the writes nobody waits for.  Stores
+ * that keep state in memory along with their writes register a {@link #onRollback(Runnable)}
+ * action to restore it, so the writes run again from the state the database is in.
+ */
+public class MusicDBExecutor {
+    private static final String TAG = MusicDBExecutor.class.getSimpleName();
+
+    /* Maximum # of writes run in a single transaction */
+    private static final int MAX_BATCH_SIZE = 64;
+
+    /**
+     * A write to run on the writer thread
+     */
+    public interface Write {
+        /**
+         * @param db the writable database, already inside a transaction
+         */
+        void run(SQLiteDatabase db);
+    }
+
+    private final MusicDB mMusicDatabase;
+    private final Handler mHandler;
+
+    private final ArrayDeque<PendingWrite> mQueue = new ArrayDeque<>();
+    private boolean mDrainScheduled;
+    private int mMaxQueueDepth;
+    private long mBatchCount;
+
+    // only accessed from the writer thread
+    private final HashMap<String, SQLiteStatement> mStatements = new HashMap<>();
+    private final ArrayList<Runnable> mRollbackActions = new ArrayList<>();
+
+    private final TreeMap<String, StoreStats> mStats = new TreeMap<>();
+
+    private final Runnable mDrainRunnable = this::drain;
+
+    MusicDBExecutor(final MusicDB musicDatabase) {
+        mMusicDatabase = musicDatabase;
+
+        final HandlerThread handlerThread = new HandlerThread("MusicDBWriter",
+                android.os.Process.THREAD_PRIORITY_BACKGROUND);
+        handlerThread.start();
+        mHandler = new Handler(handlerThread.getLooper());
+    }
+
+    /**
+     * Queues a write without waiting for it to run
+     *
+     * @param store the name of the store doing the write, used for the metrics
+     * @param write the write
+     */
+    public void execute(final String store, final Write write) {
+        enqueue(new PendingWrite(store, write, null));
+    }
+
+    /**
+     * Queues a write and waits for it to run.  This is for writes the caller needs to read back
+     * right away; if called from the writer thread the write runs inline
+     *
+     * @param store the name of the store doing the write, used for the metrics
+     * @param write the write
+     */
+    public void executeAndWait(final String store, final Write write) {
+        if (Looper.myLooper() == mHandler.getLooper()) {
+            write.run(mMusicDatabase.getWritableDatabase());
+            return;
+        }
+
+        final PendingWrite pendingWrite = new PendingWrite(store, write, new CountDownLatch(1));
+        enqueue(pendingWrite);
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                pendingWrite.done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (pendingWrite.error != null) {
+            throw pendingWrite.error;
+        }
+    }
+
+    /**
+     * Gets a compiled statement for the sql, compiling it on first use.  This must only be
+     * called from within a {@link Write}
+     *
+     * @param sql the sql of the statement
+     * @return the statement with its bindings cleared
+     */
+    public SQLiteStatement getStatement(final String sql) {
+        if (Looper.myLooper() != mHandler.getLooper()) {
+            throw new IllegalStateException("Statements can only be used on the writer thread");
+        }
+
+        SQLiteStatement statement = mStatements.get(sql);
+        if (statement == null) {
+            statement = mMusicDatabase.getWritableDatabase().compileStatement(sql);
+            mStatements.put(sql, statement);
+        } else {
+            statement.clearBindings();
+        }
+
+        return statement;
+    }
+
+    /**
+     * Registers an action to run if the transaction of the current write is rolled back, e.g.
+     * to drop what the write changed in memory.  This must only be called from within a
+     * {@link Write}
+     *
+     * @param action the action
+     */
+    public void onRollback(final Runnable action) {
+        if (Looper.myLooper() != mHandler.getLooper()) {
+            throw new IllegalStateException("Rollback actions can only be registered by writes");
+        }
+        mRollbackActions.add(action);
+    }
+
+    private void enqueue(final PendingWrite pendingWrite) {
+        synchronized (mQueue) {
+            mQueue.add(pendingWrite);
+            mMaxQueueDepth = Math.max(mMaxQueueDepth, mQueue.size());
+
+            if (!mDrainScheduled) {
+                mDrainScheduled = true;
+                mHandler.post(mDrainRunnable);
+            }
+        }
+    }
+
+    private void drain() {
+        final ArrayDeque<PendingWrite> batch = new ArrayDeque<>(MAX_BATCH_SIZE);
+
+        while (true) {
+            synchronized (mQueue) {
+                while (batch.size() < MAX_BATCH_SIZE && !mQueue.isEmpty()) {
+                    batch.add(mQueue.poll());
+                }
+
+                if (batch.isEmpty()) {
+                    mDrainScheduled = false;
+                    return;
+                }
+            }
+
+            runBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void runBatch(final ArrayDeque<PendingWrite> batch) {
+        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
+
+        try {
+            if (!runInTransaction(database, batch) && batch.size() > 1) {
+                // the whole batch was rolled back, run the writes in a transaction each so
+                // only the failing one is lost
+                for (PendingWrite pendingWrite : batch) {
+                    pendingWrite.error = null;
+                    runInTransaction(database, Collections.singletonList(pendingWrite));
+                }
+            }
+        } finally {
+            synchronized (mQueue) {
+                mBatchCount++;
+            }
+
+            for (PendingWrite pendingWrite : batch) {
+                // counted once, with the time it waited first and its last run
+                if (pendingWrite.startedAt > 0) {
+                    recordStats(pendingWrite.store, pendingWrite.startedAt - pendingWrite.queuedAt,
+                            pendingWrite.runMs);
+                }
+                if (pendingWrite.error != null && pendingWrite.done == null) {
+                    // nobody waits for this write, so this is the only trace of the failure
+                    Log.e(TAG, "Write from " + pendingWrite.store + " failed",
+                            pendingWrite.error);
+                }
+                if (pendingWrite.done != null) {
+                    pendingWrite.done.countDown();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs writes in a single transaction, which is only committed if none of them fails
+     *
+     * @param database the writable database
+     * @param writes   the writes
+     * @return whether the transaction was committed, otherwise the error of the write that
+     * failed is set
+     */
+    private boolean runInTransaction(final SQLiteDatabase database,
+                                     final Collection<PendingWrite> writes) {
+        boolean committed = false;
+        database.beginTransaction();
+        try {
+            for (PendingWrite pendingWrite : writes) {
+                final long start = SystemClock.elapsedRealtime();
+                if (pendingWrite.startedAt == 0) {
+                    pendingWrite.startedAt = start;
+                }
+                try {
+                    pendingWrite.write.run(database);
+                } catch (RuntimeException e) {
+                    // a partially applied write must not be committed
+                    pendingWrite.error = e;
+                    return false;
+                } finally {
+                    pendingWrite.runMs = SystemClock.elapsedRealtime() - start;
+                }
+            }
+
+            database.setTransactionSuccessful();
+            committed = true;
+            return true;
+        } finally {
+            database.endTransaction();
+
+            if (!committed) {
+                // newest first, so each action sees the state the one after it left
+                for (int i = mRollbackActions.size() - 1; i >= 0; i--) {
+                    mRollbackActions.get(i).run();
+                }
+            }
+            mRollbackActions.clear();
+        }
+    }
+
+    private void recordStats(final String store, final long waitMs, final long runMs) {
+        synchronized (mStats) {
+            StoreStats stats = mStats.get(store);
+            if (stats == null) {
+                stats = new StoreStats();
+                mStats.put(store, stats);
+            }
+
+            stats.count++;
+            stats.totalWaitMs += waitMs;
+            stats.totalRunMs += runMs;
+            stats.maxLatencyMs = Math.max(stats.maxLatencyMs, waitMs + runMs);
+        }
+    }
+
+    /**
+     * Prints the queue depth and per store latencies, used by dumpsys
+     *
+     * @param writer the writer to print to
+     */
+    public void dump(final PrintWriter writer) {
+        synchronized (mQueue) {
+            writer.println("MusicDB writer:");
+            writer.println("  queue depth: " + mQueue.size() + " (max " + mMaxQueueDepth + ")");
+            writer.println("  batches: " + mBatchCount);
+        }
+
+        synchronized (mStats) {
+            for (Map.Entry<String, StoreStats> entry : mStats.entrySet()) {
+                final StoreStats stats = entry.getValue();
+                writer.println("  " + entry.getKey() + ": writes=" + stats.count
+                        + " avgWait=" + (stats.totalWaitMs / stats.count) + "ms"
+                        + " avgRun=" + (stats.totalRunMs / stats.count) + "ms"
+                        + " maxLatency=" + stats.maxLatencyMs + "ms");
+            }
+        }
+    }
+
+    private static final class PendingWrite {
+        final String store;
+        final Write write;
+        final CountDownLatch done;
+        final long queuedAt = SystemClock.elapsedRealtime();
+        long startedAt;
+        long runMs;
+        RuntimeException error;
+
+        PendingWrite(final String store, final Write write, final CountDownLatch done) {
+            this.store = store;
+            this.write = write;
+            this.done = done;
+        }
+    }
+
+    private static final class StoreStats {
+        long count;
+        long totalWaitMs;
+        long totalRunMs;
+        long maxLatencyMs;
+    }
+}
@@ -16,23 +16,33 @@
  */
 package org.lineageos.eleven.provider;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import org.lineageos.eleven.Config;
 import org.lineageos.eleven.service.MusicPlaybackTrack;
 import org.lineageos.eleven.utils.Lists;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.LinkedList;
 
 /**
  * This keeps track of the music playback and history state of the playback service
  */
 public class MusicPlaybackState {
+    private static final String TAG = MusicPlaybackState.class.getSimpleName();
+
+    private static final String INSERT_TRACK_SQL = "INSERT INTO " + PlaybackQueueColumns.NAME
+            + "(" + PlaybackQueueColumns.TRACK_ID + "," + PlaybackQueueColumns.SOURCE_ID + ","
+            + PlaybackQueueColumns.SOURCE_TYPE + "," + PlaybackQueueColumns.SOURCE_POSITION
+            + ") VALUES (?,?,?,?)";
+
+    private static final String INSERT_HISTORY_SQL = "INSERT INTO "
+            + PlaybackHistoryColumns.NAME + "(" + PlaybackHistoryColumns.POSITION
+            + ") VALUES (?)";
+
     private static MusicPlaybackState sInstance = null;
 
     private final MusicDB mMusicDatabase;
@@ -111,58 +121,32 @@ public class MusicPlaybackState {
      */
     public synchronized void saveState(final ArrayList<MusicPlaybackTrack> queue,
                                        LinkedList<Integer> history) {
-        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
-        database.beginTransaction();
-
-        try {
-            database.delete(PlaybackQueueColumns.NAME, null, null);
-            database.delete(PlaybackHistoryColumns.NAME, null, null);
-            database.setTransactionSuccessful();
-        } finally {
-            database.endTransaction();
-        }
-
-        final int NUM_PROCESS = 20;
-        int position = 0;
-        while (position < queue.size()) {
-            database.beginTransaction();
-            try {
-                for (int i = position; i < queue.size() && i < position + NUM_PROCESS; i++) {
-                    MusicPlaybackTrack track = queue.get(i);
-                    ContentValues values = new ContentValues(4);
-
-                    values.put(PlaybackQueueColumns.TRACK_ID, track.mId);
-                    values.put(PlaybackQueueColumns.SOURCE_ID, track.mSourceId);
-                    values.put(PlaybackQueueColumns.SOURCE_TYPE, track.mSourceType.mId);
-                    values.put(PlaybackQueueColumns.SOURCE_POSITION, track.mSourcePosition);
-
-                    database.insert(PlaybackQueueColumns.NAME, null, values);
-                }
-                database.setTransactionSuccessful();
-            } finally {
-                database.endTransaction();
-                position += NUM_PROCESS;
+        // the service keeps modifying these, so save a snapshot
+        final ArrayList<MusicPlaybackTrack> savedQueue = new ArrayList<>(queue);
+        final ArrayList<Integer> savedHistory = history != null ? new ArrayList<>(history) : null;
+
+        final MusicDBExecutor executor = mMusicDatabase.getExecutor();
+        executor.execute(TAG, db -> {
+            db.delete(PlaybackQueueColumns.NAME, null, null);
+            db.delete(PlaybackHistoryColumns.NAME, null, null);
+
+            final SQLiteStatement insertTrack = executor.getStatement(INSERT_TRACK_SQL);
+            for (MusicPlaybackTrack track : savedQueue) {
+                insertTrack.bindLong(1, track.mId);
+                insertTrack.bindLong(2, track.mSourceId);
+                insertTrack.bindLong(3, track.mSourceType.mId);
+                insertTrack.bindLong(4, track.mSourcePosition);
+                insertTrack.executeInsert();
             }
-        }
-
-        if (history != null) {
-            Iterator<Integer> iter = history.iterator();
-            while (iter.hasNext()) {
-                database.beginTransaction();
-                try {
-                    for (int i = 0; iter.hasNext() && i < NUM_PROCESS; i++) {
-                        ContentValues values = new ContentValues(1);
-                        values.put(PlaybackHistoryColumns.POSITION, iter.next());
 
-                        database.insert(PlaybackHistoryColumns.NAME, null, values);
-                    }
-
-                    database.setTransactionSuccessful();
-                } finally {
-                    database.endTransaction();
+            if (savedHistory != null) {
+                final SQLiteStatement insertHistory = executor.getStatement(INSERT_HISTORY_SQL);
+                for (Integer position : savedHistory) {
+                    insertHistory.bindLong(1, position);
+                    insertHistory.executeInsert();
                 }
             }
-        }
+        });
     }
 
     public ArrayList<MusicPlaybackTrack> getQueue() {
@@ -16,25 +16,51 @@
  */
 package org.lineageos.eleven.provider;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
-import org.lineageos.eleven.utils.MusicUtils;
+import java.io.PrintWriter;
+import java.util.HashMap;
 
 /**
  * This db stores the details to generate the playlist artwork including when it was
- * last updated and the # of songs in the playlist when it last updated
+ * last updated, the # of songs in the playlist when it last updated and the fingerprint of the
+ * albums the cover art was made of.  The whole table is small and is loaded in memory on first
+ * use, so checking whether a playlist's artwork is stale never hits the database.
+ * <p>
+ * The cover art is cached under a key derived from the fingerprint rather than from the
+ * playlist, so it only has to be made again when the albums on top of the playlist change.
  */
 public class PlaylistArtworkStore {
+    private static final String TAG = PlaylistArtworkStore.class.getSimpleName();
+
     private static final long ONE_DAY_IN_MS = 1000 * 60 * 60 * 24;
 
+    /* the fingerprint of cover art that isn't made of any album */
+    public static final long NO_FINGERPRINT = 0;
+
+    private static final String INSERT_ENTRY_SQL = "INSERT OR REPLACE INTO "
+            + PlaylistArtworkStoreColumns.NAME + "("
+            + PlaylistArtworkStoreColumns.ID + ","
+            + PlaylistArtworkStoreColumns.LAST_UPDATE_ARTIST + ","
+            + PlaylistArtworkStoreColumns.NUM_SONGS_LAST_UPDATE_ARTIST + ","
+            + PlaylistArtworkStoreColumns.LAST_UPDATE_COVER + ","
+            + PlaylistArtworkStoreColumns.NUM_SONGS_LAST_UPDATE_COVER + ","
+            + PlaylistArtworkStoreColumns.COVER_FINGERPRINT + ","
+            + PlaylistArtworkStoreColumns.COVER_ALBUM_COUNT + ") VALUES (?,?,?,?,?,?,?)";
+
     private static PlaylistArtworkStore sInstance = null;
 
-    private final Context mContext;
     private final MusicDB mMusicDatabase;
 
+    // the entries by playlist id, null until loaded from the database
+    private HashMap<Long, Entry> mEntries;
+
+    private long mFreshChecks;
+    private long mStaleChecks;
+
     /**
      * @param context The {@link android.content.Context} to use
      * @return A new instance of this class.
@@ -47,11 +73,11 @@ public class PlaylistArtworkStore {
     }
 
     /**
-     * @param playlistId playlist identifier
-     * @return the key used for the imagae cache for the cover art
+     * @param fingerprint the fingerprint of the albums the cover art is made of
+     * @return the key used for the image cache for the cover art
      */
-    public static String getCoverCacheKey(final long playlistId) {
-        return "playlist_cover_" + playlistId;
+    public static String getCoverCacheKey(final long fingerprint) {
+        return "playlist_cover_" + Long.toHexString(fingerprint);
     }
 
     /**
@@ -62,13 +88,33 @@ public class PlaylistArtworkStore {
         return "playlist_artist_" + playlistId;
     }
 
+    /**
+     * Computes the fingerprint of the albums cover art is made of
+     *
+     * @param albumIds the ids of the albums, in the order they were considered
+     * @param count    the # of albums to include
+     * @return the fingerprint, never {@link #NO_FINGERPRINT}
+     */
+    public static long getFingerprint(final long[] albumIds, final int count) {
+        // 64 bit FNV-1a over the ids
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < count; i++) {
+            long id = albumIds[i];
+            for (int b = 0; b < 8; b++) {
+                hash ^= id & 0xff;
+                hash *= 0x100000001b3L;
+                id >>>= 8;
+            }
+        }
+        return hash != NO_FINGERPRINT ? hash : 1;
+    }
+
     /**
      * Constructor of <code>RecentStore</code>
      *
      * @param context The {@link android.content.Context} to use
      */
     public PlaylistArtworkStore(final Context context) {
-        mContext = context;
         mMusicDatabase = MusicDB.getInstance(context);
     }
 
@@ -86,150 +132,290 @@ public class PlaylistArtworkStore {
                 PlaylistArtworkStoreColumns.LAST_UPDATE_COVER +
                 " LONG DEFAULT 0," +
                 PlaylistArtworkStoreColumns.NUM_SONGS_LAST_UPDATE_COVER +
+                " INT DEFAULT 0," +
+                PlaylistArtworkStoreColumns.COVER_FINGERPRINT +
+                " LONG DEFAULT 0," +
+                PlaylistArtworkStoreColumns.COVER_ALBUM_COUNT +
                 " INT DEFAULT 0);";
 
         db.execSQL(builder);
     }
 
+    public void onUpgrade(final SQLiteDatabase db, final int oldVersion) {
+        // the fingerprint columns were added in version 9, the cover art cached before that is
+        // keyed by playlist and is left for the disk cache to evict
+        if (oldVersion <= 8) {
+            db.execSQL("ALTER TABLE " + PlaylistArtworkStoreColumns.NAME + " ADD COLUMN "
+                    + PlaylistArtworkStoreColumns.COVER_FINGERPRINT + " LONG DEFAULT 0");
+            db.execSQL("ALTER TABLE " + PlaylistArtworkStoreColumns.NAME + " ADD COLUMN "
+                    + PlaylistArtworkStoreColumns.COVER_ALBUM_COUNT + " INT DEFAULT 0");
+            // make the cover art again under its new key
+            db.execSQL("UPDATE " + PlaylistArtworkStoreColumns.NAME + " SET "
+                    + PlaylistArtworkStoreColumns.LAST_UPDATE_COVER + "=0");
+        }
+    }
+
     public void onDowngrade(SQLiteDatabase db) {
         // If we ever have downgrade, drop the table to be safe
         db.execSQL("DROP TABLE IF EXISTS " + PlaylistArtworkStoreColumns.NAME);
         onCreate(db);
     }
 
+    /**
+     * Loads the table now, this must be called from a background thread
+     */
+    public void load() {
+        getLoadedEntries();
+    }
+
+    /**
+     * @return whether the table was loaded already, so the other methods won't hit the database
+     */
+    public synchronized boolean isLoaded() {
+        return mEntries != null;
+    }
+
     /**
      * @param playlistId playlist identifier
+     * @param songCount  the # of songs in the playlist
      * @return true if the artist artwork should be updated based on time since last update and
      * whether the # of songs for the playlist has changed
      */
-    public boolean needsArtistArtUpdate(final long playlistId) {
-        return needsUpdate(playlistId, PlaylistArtworkStoreColumns.LAST_UPDATE_ARTIST,
-                PlaylistArtworkStoreColumns.NUM_SONGS_LAST_UPDATE_ARTIST);
+    public boolean needsArtistArtUpdate(final long playlistId, final int songCount) {
+        final Entry entry = getEntry(playlistId);
+        return needsUpdate(entry != null ? entry.mLastUpdateArtist : 0,
+                entry != null ? entry.mSongCountArtist : -1, songCount);
     }
 
     /**
      * @param playlistId playlist identifier
-     * @return true if the cover artwork should be updated based on time since last update and
-     * whether the # of songs for the playlist has changed
+     * @param songCount  the # of songs in the playlist
+     * @return true if the cover artwork should be checked for changes based on time since last
+     * update and whether the # of songs for the playlist has changed
+     */
+    public boolean needsCoverArtUpdate(final long playlistId, final int songCount) {
+        final Entry entry = getEntry(playlistId);
+        return needsUpdate(entry != null ? entry.mLastUpdateCover : 0,
+                entry != null ? entry.mSongCountCover : -1, songCount);
+    }
+
+    /**
+     * @param playlistId playlist identifier
+     * @return the fingerprint of the albums the cover art was last made of, or
+     * {@link #NO_FINGERPRINT} if the playlist has no cover art
+     */
+    public long getCoverFingerprint(final long playlistId) {
+        final Entry entry = getEntry(playlistId);
+        return entry != null ? entry.mCoverFingerprint : NO_FINGERPRINT;
+    }
+
+    /**
+     * @param playlistId playlist identifier
+     * @return the # of albums that went into the fingerprint of the cover art
      */
-    public boolean needsCoverArtUpdate(final long playlistId) {
-        return needsUpdate(playlistId, PlaylistArtworkStoreColumns.LAST_UPDATE_COVER,
-                PlaylistArtworkStoreColumns.NUM_SONGS_LAST_UPDATE_COVER);
+    public int getCoverAlbumCount(final long playlistId) {
+        final Entry entry = getEntry(playlistId);
+        return entry != null ? entry.mCoverAlbumCount : 0;
+    }
+
+    /**
+     * @param playlistId playlist identifier
+     * @return the key used for the image cache for the cover art of the playlist, or null if
+     * it has none
+     */
+    public String getCoverCacheKeyForPlaylist(final long playlistId) {
+        final long fingerprint = getCoverFingerprint(playlistId);
+        return fingerprint != NO_FINGERPRINT ? getCoverCacheKey(fingerprint) : null;
     }
 
     /**
      * Updates the time and the # of songs in the db for the artist section of the table
      *
      * @param playlistId playlist identifier
+     * @param songCount  the # of songs in the playlist
      */
-    public void updateArtistArt(final long playlistId) {
-        updateOrInsertTime(playlistId,
-                PlaylistArtworkStoreColumns.LAST_UPDATE_ARTIST,
-                PlaylistArtworkStoreColumns.NUM_SONGS_LAST_UPDATE_ARTIST);
+    public void updateArtistArt(final long playlistId, final int songCount) {
+        final HashMap<Long, Entry> entries = getLoadedEntries();
+        final Entry entry;
+        synchronized (this) {
+            entry = getOrCreateEntry(entries, playlistId);
+            entry.mLastUpdateArtist = System.currentTimeMillis();
+            entry.mSongCountArtist = songCount;
+        }
+        write(playlistId, entry);
     }
 
     /**
-     * Updates the time and the # of songs in the db for the cover art of the table
+     * Updates the time, the # of songs and the fingerprint in the db for the cover art of the
+     * table
      *
-     * @param playlistId playlist identifier
+     * @param playlistId  playlist identifier
+     * @param songCount   the # of songs in the playlist
+     * @param fingerprint the fingerprint of the albums the cover art is made of
+     * @param albumCount  the # of albums that went into the fingerprint
      */
-    public void updateCoverArt(final long playlistId) {
-        updateOrInsertTime(playlistId,
-                PlaylistArtworkStoreColumns.LAST_UPDATE_COVER,
-                PlaylistArtworkStoreColumns.NUM_SONGS_LAST_UPDATE_COVER);
+    public void updateCoverArt(final long playlistId, final int songCount, final long fingerprint,
+                               final int albumCount) {
+        final HashMap<Long, Entry> entries = getLoadedEntries();
+        final Entry entry;
+        synchronized (this) {
+            entry = getOrCreateEntry(entries, playlistId);
+            entry.mLastUpdateCover = System.currentTimeMillis();
+            entry.mSongCountCover = songCount;
+            entry.mCoverFingerprint = fingerprint;
+            entry.mCoverAlbumCount = albumCount;
+        }
+        write(playlistId, entry);
     }
 
     /**
-     * Internal function to update the entry for the columns passed in
+     * Internal function to write an entry to the db
      *
-     * @param playlistId      playlist identifier
-     * @param columnName      the column to update to the current time
-     * @param countColumnName the column to set the # of songs to based on the playlist
-     */
-    private void updateOrInsertTime(final long playlistId, final String columnName,
-                                    final String countColumnName) {
-        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
-        database.beginTransaction();
-
-        // gets the existing values for the entry if it exists
-        ContentValues values = getExistingContentValues(database, playlistId);
-        boolean existingEntry = values.size() > 0;
-        // update the values
-        values.put(PlaylistArtworkStoreColumns.ID, playlistId);
-        values.put(columnName, System.currentTimeMillis());
-        values.put(countColumnName, MusicUtils.getSongCountForPlaylist(mContext, playlistId));
-
-        // if it is an existing entry, update, otherwise insert
-        if (existingEntry) {
-            database.update(PlaylistArtworkStoreColumns.NAME, values,
-                    PlaylistArtworkStoreColumns.ID + "=" + playlistId, null);
-        } else {
-            database.insert(PlaylistArtworkStoreColumns.NAME, null, values);
+     * @param playlistId playlist identifier
+     * @param entry      the entry
+     */
+    private void write(final long playlistId, final Entry entry) {
+        // copy the entry here rather than on the writer thread
+        final Entry values;
+        synchronized (this) {
+            values = new Entry(entry);
         }
 
-        database.setTransactionSuccessful();
-        database.endTransaction();
+        final MusicDBExecutor executor = mMusicDatabase.getExecutor();
+        executor.execute(TAG, db -> {
+            final SQLiteStatement insert = executor.getStatement(INSERT_ENTRY_SQL);
+            insert.bindLong(1, playlistId);
+            insert.bindLong(2, values.mLastUpdateArtist);
+            insert.bindLong(3, values.mSongCountArtist);
+            insert.bindLong(4, values.mLastUpdateCover);
+            insert.bindLong(5, values.mSongCountCover);
+            insert.bindLong(6, values.mCoverFingerprint);
+            insert.bindLong(7, values.mCoverAlbumCount);
+            insert.executeInsert();
+        });
+    }
+
+    /**
+     * Internal function to return whether an entry shows that this needs an update
+     *
+     * @param lastUpdate           when the entry was last updated
+     * @param lastUpdatedSongCount the # of songs when the entry was last updated
+     * @param songCount            the # of songs in the playlist
+     */
+    private synchronized boolean needsUpdate(final long lastUpdate,
+                                             final int lastUpdatedSongCount,
+                                             final int songCount) {
+        // if the elapsed time since our last update is less than a day and the
+        // number of songs in the playlist hasn't changed, then don't update
+        if (System.currentTimeMillis() - lastUpdate < ONE_DAY_IN_MS &&
+                songCount == lastUpdatedSongCount) {
+            mFreshChecks++;
+            return false;
+        }
+        mStaleChecks++;
+        return true;
     }
 
     /**
-     * Internal function to get the existing values for a playlist entry
+     * Internal function to get the entry for the playlist
      *
      * @param playlistId playlist identifier
-     * @return the content values
-     */
-    private ContentValues getExistingContentValues(final SQLiteDatabase database,
-                                                   final long playlistId) {
-        final ContentValues values = new ContentValues(5);
-        try (final Cursor c = getEntry(database, playlistId)) {
-            if (c != null && c.moveToFirst()) {
-                values.put(PlaylistArtworkStoreColumns.ID, c.getLong(0));
-                values.put(PlaylistArtworkStoreColumns.LAST_UPDATE_ARTIST, c.getLong(1));
-                values.put(PlaylistArtworkStoreColumns.NUM_SONGS_LAST_UPDATE_ARTIST, c.getInt(2));
-                values.put(PlaylistArtworkStoreColumns.LAST_UPDATE_COVER, c.getLong(3));
-                values.put(PlaylistArtworkStoreColumns.NUM_SONGS_LAST_UPDATE_COVER, c.getInt(4));
-            }
+     * @return the entry, or null if there is none
+     */
+    private Entry getEntry(final long playlistId) {
+        final HashMap<Long, Entry> entries = getLoadedEntries();
+        synchronized (this) {
+            return entries.get(playlistId);
         }
+    }
 
-        return values;
+    private static Entry getOrCreateEntry(final HashMap<Long, Entry> entries,
+                                          final long playlistId) {
+        Entry entry = entries.get(playlistId);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(playlistId, entry);
+        }
+        return entry;
     }
 
     /**
-     * Internal function to return whether the columns show that this needs an update
-     *
-     * @param playlistId      playlist identifier
-     * @param columnName      the column to inspect
-     * @param countColumnName the column count to inspect
+     * Loads the table the first time it's needed
      */
-    private boolean needsUpdate(final long playlistId, final String columnName,
-                                final String countColumnName) {
+    private HashMap<Long, Entry> getLoadedEntries() {
+        synchronized (this) {
+            if (mEntries != null) {
+                return mEntries;
+            }
+        }
+
+        // read outside the lock, an entry updated meanwhile is newer than the one read
+        final HashMap<Long, Entry> entries = new HashMap<>();
         final SQLiteDatabase database = mMusicDatabase.getReadableDatabase();
-        try (final Cursor c = getEntry(database, playlistId)) {
-            if (c != null && c.moveToFirst()) {
-                final long lastUpdate = c.getLong(c.getColumnIndex(columnName));
-                final long msSinceEpoch = System.currentTimeMillis();
-                final int songCount = MusicUtils.getSongCountForPlaylist(mContext, playlistId);
-                final int lastUpdatedSongCount = c.getInt(c.getColumnIndex(countColumnName));
-
-                // if the elapsed time since our last update is less than a day and the
-                // number of songs in the playlist hasn't changed, then don't update
-                if (msSinceEpoch - lastUpdate < ONE_DAY_IN_MS &&
-                        songCount == lastUpdatedSongCount) {
-                    return false;
-                }
+        try (Cursor c = database.query(PlaylistArtworkStoreColumns.NAME, new String[]{
+                PlaylistArtworkStoreColumns.ID,
+                PlaylistArtworkStoreColumns.LAST_UPDATE_ARTIST,
+                PlaylistArtworkStoreColumns.NUM_SONGS_LAST_UPDATE_ARTIST,
+                PlaylistArtworkStoreColumns.LAST_UPDATE_COVER,
+                PlaylistArtworkStoreColumns.NUM_SONGS_LAST_UPDATE_COVER,
+                PlaylistArtworkStoreColumns.COVER_FINGERPRINT,
+                PlaylistArtworkStoreColumns.COVER_ALBUM_COUNT,
+        }, null, null, null, null, null)) {
+            while (c.moveToNext()) {
+                final Entry entry = new Entry();
+                entry.mLastUpdateArtist = c.getLong(1);
+                entry.mSongCountArtist = c.getInt(2);
+                entry.mLastUpdateCover = c.getLong(3);
+                entry.mSongCountCover = c.getInt(4);
+                entry.mCoverFingerprint = c.getLong(5);
+                entry.mCoverAlbumCount = c.getInt(6);
+                entries.put(c.getLong(0), entry);
             }
         }
-        return true;
+
+        synchronized (this) {
+            if (mEntries == null) {
+                mEntries = entries;
+            } else {
+                entries.forEach(mEntries::putIfAbsent);
+            }
+            return mEntries;
+        }
     }
 
     /**
-     * Internal function to get the cursor entry for the playlist
+     * Prints the store counters
      *
-     * @param playlistId playlist identifier
-     * @return cursor
+     * @param writer the writer to print to
      */
-    private Cursor getEntry(final SQLiteDatabase database, final long playlistId) {
-        return database.query(PlaylistArtworkStoreColumns.NAME, null,
-                PlaylistArtworkStoreColumns.ID + "=" + playlistId, null, null, null, null);
+    public synchronized void dump(final PrintWriter writer) {
+        writer.println("Playlist artwork:");
+        writer.println("  playlists: " + (mEntries != null ? mEntries.size() : "not loaded"));
+        writer.println("  fresh: " + mFreshChecks + " stale: " + mStaleChecks);
+    }
+
+    /**
+     * The details of a playlist's artwork
+     */
+    private static final class Entry {
+        long mLastUpdateArtist;
+        int mSongCountArtist = -1;
+        long mLastUpdateCover;
+        int mSongCountCover = -1;
+        long mCoverFingerprint = NO_FINGERPRINT;
+        int mCoverAlbumCount;
+
+        Entry() {
+        }
+
+        Entry(final Entry entry) {
+            mLastUpdateArtist = entry.mLastUpdateArtist;
+            mSongCountArtist = entry.mSongCountArtist;
+            mLastUpdateCover = entry.mLastUpdateCover;
+            mSongCountCover = entry.mSongCountCover;
+            mCoverFingerprint = entry.mCoverFingerprint;
+            mCoverAlbumCount = entry.mCoverAlbumCount;
+        }
     }
 
     public interface PlaylistArtworkStoreColumns {
@@ -250,5 +436,11 @@ public class PlaylistArtworkStore {
 
         /* The number of songs when we last updated the cover */
         String NUM_SONGS_LAST_UPDATE_COVER = "num_songs_last_updated_cover";
+
+        /* The fingerprint of the albums the cover was made of */
+        String COVER_FINGERPRINT = "cover_fingerprint";
+
+        /* The number of albums in the fingerprint of the cover */
+        String COVER_ALBUM_COUNT = "cover_album_count";
     }
 }
@@ -24,6 +24,8 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
 public class PropertiesStore {
+    private static final String TAG = PropertiesStore.class.getSimpleName();
+
     private final MusicDB mMusicDatabase;
     private static PropertiesStore sInstance = null;
 
@@ -84,13 +86,16 @@ public class PropertiesStore {
         ContentValues values = new ContentValues(2);
         values.put(PropertiesColumns.PROPERTY_KEY, key);
         values.put(PropertiesColumns.PROPERTY_VALUE, value);
-        mMusicDatabase.getWritableDatabase().replace(PropertiesColumns.TABLE_NAME,
-                null, values);
+        mMusicDatabase.getExecutor().executeAndWait(TAG,
+                db -> db.replace(PropertiesColumns.TABLE_NAME, null, values));
     }
 
     public interface DbProperties {
         String ICU_VERSION = "icu_version";
         String LOCALE = "locale";
+        // the media store state the sort tables were last reconciled with
+        String MEDIA_STORE_VERSION = "media_store_version";
+        String MEDIA_STORE_GENERATION = "media_store_generation";
     }
 
     private static final class PropertiesColumns {
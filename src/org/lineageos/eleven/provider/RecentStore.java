@@ -17,19 +17,37 @@
  */
 package org.lineageos.eleven.provider;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
+/**
+ * Keeps the most recently played songs in a fixed size ring: the slot is the key and an in-memory
+ * head pointer tells where the next song goes, so adding a song overwrites the oldest one with a
+ * single row write instead of having to look for the rows to trim.
+ */
 public class RecentStore {
+    private static final String TAG = RecentStore.class.getSimpleName();
+
     /* Maximum # of items in the db */
     private static final int MAX_ITEMS_IN_DB = 100;
 
+    private static final String INSERT_OR_REPLACE_SQL = "INSERT OR REPLACE INTO "
+            + RecentStoreColumns.NAME + "(" + RecentStoreColumns.SLOT + ","
+            + RecentStoreColumns.ID + "," + RecentStoreColumns.TIME_PLAYED + ") VALUES (?,?,?)";
+
     private static RecentStore sInstance = null;
 
     private final MusicDB mMusicDatabase;
 
+    /* The slot the next song will be written to, or -1 if not loaded yet.  Only accessed from
+       the writer thread */
+    private int mHeadSlot = -1;
+
+    /* The most recently added song, used to avoid adding the same song twice in a row */
+    private long mLastSongId = -1;
+
     /**
      * Constructor of <code>RecentStore</code>
      *
@@ -41,8 +59,31 @@ public class RecentStore {
 
     public void onCreate(final SQLiteDatabase db) {
         db.execSQL("CREATE TABLE IF NOT EXISTS " + RecentStoreColumns.NAME + " ("
+                + RecentStoreColumns.SLOT + " INTEGER PRIMARY KEY,"
                 + RecentStoreColumns.ID + " LONG NOT NULL," + RecentStoreColumns.TIME_PLAYED
                 + " LONG NOT NULL);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + RecentStoreColumns.TIME_PLAYED_INDEX_NAME
+                + " ON " + RecentStoreColumns.NAME + "(" + RecentStoreColumns.TIME_PLAYED + ");");
+    }
+
+    public void onUpgrade(final SQLiteDatabase db, final int oldVersion) {
+        // in version 7 the table became a ring keyed by slot, so move the most recent rows
+        // over into the first slots if oldVersion <= 6
+        if (oldVersion <= 6) {
+            final String legacyTable = RecentStoreColumns.NAME + "_legacy";
+            db.execSQL("DROP TABLE IF EXISTS " + legacyTable);
+            db.execSQL("ALTER TABLE " + RecentStoreColumns.NAME + " RENAME TO " + legacyTable);
+            onCreate(db);
+            db.execSQL("INSERT INTO " + RecentStoreColumns.NAME + "("
+                    + RecentStoreColumns.SLOT + "," + RecentStoreColumns.ID + ","
+                    + RecentStoreColumns.TIME_PLAYED + ")"
+                    + " SELECT ROW_NUMBER() OVER (ORDER BY " + RecentStoreColumns.TIME_PLAYED
+                    + ") - 1," + RecentStoreColumns.ID + "," + RecentStoreColumns.TIME_PLAYED
+                    + " FROM (SELECT * FROM " + legacyTable
+                    + " ORDER BY " + RecentStoreColumns.TIME_PLAYED + " DESC"
+                    + " LIMIT " + MAX_ITEMS_IN_DB + ")");
+            db.execSQL("DROP TABLE IF EXISTS " + legacyTable);
+        }
     }
 
     public void onDowngrade(SQLiteDatabase db) {
@@ -68,42 +109,57 @@ public class RecentStore {
      * @param songId The song id to store
      */
     public void addSongId(final long songId) {
-        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
-        database.beginTransaction();
-
-        try {
-            // see if the most recent item is the same song id, if it is then don't insert
-            try (Cursor mostRecentItem = queryRecentIds("1")) {
-                if (mostRecentItem != null && mostRecentItem.moveToFirst()) {
-                    if (songId == mostRecentItem.getLong(0)) {
-                        return;
-                    }
-                }
+        final MusicDBExecutor executor = mMusicDatabase.getExecutor();
+        executor.execute(TAG, db -> {
+            loadHeadIfNeeded(db);
+
+            // if the most recent item is the same song id then don't insert
+            if (songId == mLastSongId) {
+                return;
             }
 
-            // add the entry
-            final ContentValues values = new ContentValues(2);
-            values.put(RecentStoreColumns.ID, songId);
-            values.put(RecentStoreColumns.TIME_PLAYED, System.currentTimeMillis());
-            database.insert(RecentStoreColumns.NAME, null, values);
-
-            // if our db is too large, delete the extra items
-            try (Cursor oldest = database.query(RecentStoreColumns.NAME,
-                    new String[]{RecentStoreColumns.TIME_PLAYED}, null, null, null, null,
-                    RecentStoreColumns.TIME_PLAYED + " ASC")) {
-
-                if (oldest != null && oldest.getCount() > MAX_ITEMS_IN_DB) {
-                    oldest.moveToPosition(oldest.getCount() - MAX_ITEMS_IN_DB);
-                    long timeOfRecordToKeep = oldest.getLong(0);
-
-                    database.delete(RecentStoreColumns.NAME,
-                            RecentStoreColumns.TIME_PLAYED + " < ?",
-                            new String[]{String.valueOf(timeOfRecordToKeep)});
-                }
+            // overwrite the oldest entry
+            final SQLiteStatement insert = executor.getStatement(INSERT_OR_REPLACE_SQL);
+            insert.bindLong(1, mHeadSlot);
+            insert.bindLong(2, songId);
+            insert.bindLong(3, System.currentTimeMillis());
+            insert.executeInsert();
+
+            mHeadSlot = (mHeadSlot + 1) % MAX_ITEMS_IN_DB;
+            mLastSongId = songId;
+            executor.onRollback(this::forgetHead);
+        });
+    }
+
+    /**
+     * Drops the head of the ring after a rollback, it's read from the database again by the
+     * next write
+     */
+    private void forgetHead() {
+        mHeadSlot = -1;
+        mLastSongId = -1;
+    }
+
+    /**
+     * Finds the slot after the most recently written one, which holds the oldest entry
+     *
+     * @param db the database to use
+     */
+    private void loadHeadIfNeeded(final SQLiteDatabase db) {
+        if (mHeadSlot >= 0) {
+            return;
+        }
+
+        mHeadSlot = 0;
+        mLastSongId = -1;
+
+        try (Cursor mostRecentItem = db.query(RecentStoreColumns.NAME,
+                new String[]{RecentStoreColumns.SLOT, RecentStoreColumns.ID}, null, null, null,
+                null, RecentStoreColumns.TIME_PLAYED + " DESC", "1")) {
+            if (mostRecentItem != null && mostRecentItem.moveToFirst()) {
+                mHeadSlot = (mostRecentItem.getInt(0) + 1) % MAX_ITEMS_IN_DB;
+                mLastSongId = mostRecentItem.getLong(1);
             }
-        } finally {
-            database.setTransactionSuccessful();
-            database.endTransaction();
         }
     }
 
@@ -111,14 +167,28 @@ public class RecentStore {
      * @param songId to remove.
      */
     public void removeItem(final long songId) {
-        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
-        database.delete(RecentStoreColumns.NAME, RecentStoreColumns.ID + " = ?",
-                new String[]{String.valueOf(songId)});
+        final MusicDBExecutor executor = mMusicDatabase.getExecutor();
+        executor.executeAndWait(TAG, db -> {
+            db.delete(RecentStoreColumns.NAME, RecentStoreColumns.ID + " = ?",
+                    new String[]{String.valueOf(songId)});
+
+            // the emptied slots simply get reused as the ring comes around
+            if (songId == mLastSongId) {
+                mLastSongId = -1;
+                executor.onRollback(this::forgetHead);
+            }
+        });
     }
 
     public void deleteAll() {
-        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
-        database.delete(RecentStoreColumns.NAME, null, null);
+        final MusicDBExecutor executor = mMusicDatabase.getExecutor();
+        executor.executeAndWait(TAG, db -> {
+            db.delete(RecentStoreColumns.NAME, null, null);
+
+            mHeadSlot = 0;
+            mLastSongId = -1;
+            executor.onRollback(this::forgetHead);
+        });
     }
 
     /**
@@ -138,10 +208,16 @@ public class RecentStore {
         /* Table name */
         String NAME = "recenthistory";
 
+        /* Ring slot column */
+        String SLOT = "slot";
+
         /* Album IDs column */
         String ID = "songid";
 
         /* Time played column */
         String TIME_PLAYED = "timeplayed";
+
+        /* Index on the time played column */
+        String TIME_PLAYED_INDEX_NAME = "recenthistory_timeplayed_index";
     }
 }
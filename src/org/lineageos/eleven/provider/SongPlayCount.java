@@ -16,20 +16,36 @@
  */
 package org.lineageos.eleven.provider;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.view.animation.AccelerateInterpolator;
 import android.view.animation.Interpolator;
 
-import java.util.HashSet;
+import org.lineageos.eleven.utils.IdResolver;
+import org.lineageos.eleven.utils.collections.LongArrayList;
+import org.lineageos.eleven.utils.collections.LongHashSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.PriorityQueue;
 
 /**
  * This database tracks the number of play counts for an individual song.  This is used to drive
  * the top played tracks as well as the playlist images
+ * <p>
+ * Each row stores a packed histogram of the weekly play counts anchored at the week it was last
+ * written, together with the score as of that week.  Since the score of a song can only go down
+ * as time passes, the stored score is an upper bound of the current score: decay is applied at
+ * read time and the score index lets us stop reading as soon as no remaining row can make it
+ * into the top results.
  */
 public class SongPlayCount {
+    private static final String TAG = SongPlayCount.class.getSimpleName();
+
     private static SongPlayCount sInstance = null;
 
     private final MusicDB mMusicDatabase;
@@ -48,49 +64,72 @@ public class SongPlayCount {
 
     private static final int ONE_WEEK_IN_MS = 1000 * 60 * 60 * 24 * 7;
 
+    // each week is packed as an unsigned 16 bit value
+    private static final int BYTES_PER_WEEK = 2;
+    private static final int MAX_WEEK_PLAY_COUNT = 0xFFFF;
+
+    // scores below this are considered non-existent
+    private static final float MIN_SCORE = .01f;
+
     private static final String WHERE_ID_EQUALS = SongPlayCountColumns.ID + "=?";
 
-    // number of weeks since epoch time
-    private final int mNumberOfWeeksSinceEpoch;
+    private static final String INSERT_OR_REPLACE_SQL = "INSERT OR REPLACE INTO "
+            + SongPlayCountColumns.NAME + "("
+            + SongPlayCountColumns.ID + ","
+            + SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX + ","
+            + SongPlayCountColumns.WEEK_PLAY_COUNTS + ","
+            + SongPlayCountColumns.PLAY_COUNT_SCORE + ") VALUES (?,?,?,?)";
+
+    // the score multiplier for each week, precomputed from the interpolation curve
+    private static final float[] sWeekMultipliers = new float[NUM_WEEKS];
+
+    static {
+        for (int i = 0; i < NUM_WEEKS; i++) {
+            sWeekMultipliers[i] = sInterpolator.getInterpolation(1 - (i / (float) NUM_WEEKS))
+                    * INTERPOLATOR_HEIGHT + INTERPOLATOR_BASE;
+        }
+    }
 
-    // used to track if we've walked through the db and updated all the rows
-    private boolean mDatabaseUpdated;
+    // the week index of the last time we dropped the rows that aged out of the tracked weeks
+    private int mLastRolloverWeek = Integer.MIN_VALUE;
 
     /**
-     * Constructor of <code>RecentStore</code>
+     * Constructor of <code>SongPlayCount</code>
      *
      * @param context The {@link android.content.Context} to use
      */
     public SongPlayCount(final Context context) {
         mMusicDatabase = MusicDB.getInstance(context);
-
-        long msSinceEpoch = System.currentTimeMillis();
-        mNumberOfWeeksSinceEpoch = (int) (msSinceEpoch / ONE_WEEK_IN_MS);
     }
 
     public void onCreate(final SQLiteDatabase db) {
         // create the play count table
-        // WARNING: If you change the order of these columns
-        // please update getColumnIndexForWeek
-        StringBuilder builder = new StringBuilder();
-        builder.append("CREATE TABLE IF NOT EXISTS ");
-        builder.append(SongPlayCountColumns.NAME);
-        builder.append("(");
-        builder.append(SongPlayCountColumns.ID);
-        builder.append(" INT UNIQUE,");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + SongPlayCountColumns.NAME + "("
+                + SongPlayCountColumns.ID + " INTEGER PRIMARY KEY,"
+                + SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX + " INT NOT NULL,"
+                + SongPlayCountColumns.WEEK_PLAY_COUNTS + " BLOB,"
+                + SongPlayCountColumns.PLAY_COUNT_SCORE + " REAL DEFAULT 0);");
+
+        // the score index drives the top played results, the week index the rollover
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + SongPlayCountColumns.SCORE_INDEX_NAME
+                + " ON " + SongPlayCountColumns.NAME
+                + "(" + SongPlayCountColumns.PLAY_COUNT_SCORE + " DESC);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + SongPlayCountColumns.WEEK_INDEX_NAME
+                + " ON " + SongPlayCountColumns.NAME
+                + "(" + SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX + ");");
+    }
 
-        for (int i = 0; i < NUM_WEEKS; i++) {
-            builder.append(getColumnNameForWeek(i));
-            builder.append(" INT DEFAULT 0,");
+    public void onUpgrade(final SQLiteDatabase db, final int oldVersion) {
+        // in version 5 the per week columns were replaced by a packed histogram, so move the
+        // existing rows over to the new table if oldVersion <= 4
+        if (oldVersion <= 4) {
+            final String legacyTable = SongPlayCountColumns.NAME + "_legacy";
+            db.execSQL("DROP TABLE IF EXISTS " + legacyTable);
+            db.execSQL("ALTER TABLE " + SongPlayCountColumns.NAME + " RENAME TO " + legacyTable);
+            onCreate(db);
+            migrateLegacyRows(db, legacyTable);
+            db.execSQL("DROP TABLE IF EXISTS " + legacyTable);
         }
-
-        builder.append(SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX);
-        builder.append(" INT NOT NULL,");
-
-        builder.append(SongPlayCountColumns.PLAY_COUNT_SCORE);
-        builder.append(" REAL DEFAULT 0);");
-
-        db.execSQL(builder.toString());
     }
 
     public void onDowngrade(SQLiteDatabase db) {
@@ -99,6 +138,60 @@ public class SongPlayCount {
         onCreate(db);
     }
 
+    /**
+     * Copies the rows of the pre version 5 table, which had one column per week, into the
+     * current table
+     *
+     * @param db          a writeable database
+     * @param legacyTable the name of the old table
+     */
+    private static void migrateLegacyRows(final SQLiteDatabase db, final String legacyTable) {
+        final SQLiteStatement insert = db.compileStatement(INSERT_OR_REPLACE_SQL);
+
+        try (Cursor cursor = db.query(legacyTable, null, null, null, null, null, null)) {
+            if (cursor == null) {
+                return;
+            }
+
+            final int idColumn = cursor.getColumnIndex(SongPlayCountColumns.ID);
+            final int weekIndexColumn = cursor.getColumnIndex(
+                    SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX);
+            final int[] weekColumns = new int[NUM_WEEKS];
+            for (int i = 0; i < NUM_WEEKS; i++) {
+                weekColumns[i] = cursor.getColumnIndex("week" + i);
+            }
+
+            final int[] playCounts = new int[NUM_WEEKS];
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < NUM_WEEKS; i++) {
+                    playCounts[i] = weekColumns[i] >= 0 ? cursor.getInt(weekColumns[i]) : 0;
+                }
+
+                bindEntry(insert, cursor.getLong(idColumn), cursor.getInt(weekIndexColumn),
+                        playCounts);
+                insert.executeInsert();
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    /**
+     * Binds a row to the {@link #INSERT_OR_REPLACE_SQL} statement
+     *
+     * @param insert     the statement
+     * @param songId     the id of the track
+     * @param weekIndex  the week the play counts are relative to
+     * @param playCounts the play counts for each week
+     */
+    private static void bindEntry(final SQLiteStatement insert, final long songId,
+                                  final int weekIndex, final int[] playCounts) {
+        insert.bindLong(1, songId);
+        insert.bindLong(2, weekIndex);
+        insert.bindBlob(3, packPlayCounts(playCounts));
+        insert.bindDouble(4, calculateScore(playCounts));
+    }
+
     /**
      * @param context The {@link android.content.Context} to use
      * @return A new instance of this class.
@@ -120,141 +213,36 @@ public class SongPlayCount {
             return;
         }
 
-        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
-        updateExistingRow(database, songId, true);
-    }
-
-    /**
-     * This creates a new entry that indicates a song has been played once as well as its score
-     *
-     * @param database a writeable database
-     * @param songId   the id of the track
-     */
-    private void createNewPlayedEntry(final SQLiteDatabase database, final long songId) {
-        // no row exists, create a new one
-        float newScore = getScoreMultiplierForWeek(0);
-        int newPlayCount = 1;
-
-        final ContentValues values = new ContentValues(3);
-        values.put(SongPlayCountColumns.ID, songId);
-        values.put(SongPlayCountColumns.PLAY_COUNT_SCORE, newScore);
-        values.put(SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX, mNumberOfWeeksSinceEpoch);
-        values.put(getColumnNameForWeek(0), newPlayCount);
-
-        database.insert(SongPlayCountColumns.NAME, null, values);
-    }
-
-    /**
-     * This function will take a song entry and update it to the latest week and increase the count
-     * for the current week by 1 if necessary
-     *
-     * @param database  a writeable database
-     * @param id        the id of the track to bump
-     * @param bumpCount whether to bump the current's week play count by 1 and adjust the score
-     */
-    private void updateExistingRow(final SQLiteDatabase database,
-                                   final long id, boolean bumpCount) {
-        String stringId = String.valueOf(id);
-
-        // begin the transaction
-        database.beginTransaction();
-
-        // get the cursor of this content inside the transaction
-        final Cursor cursor = database.query(SongPlayCountColumns.NAME, null, WHERE_ID_EQUALS,
-                new String[]{stringId}, null, null, null);
-
-        // if we have a result
-        if (cursor != null && cursor.moveToFirst()) {
-            // figure how many weeks since we last updated
-            int lastUpdatedIndex = cursor.getColumnIndex(
-                    SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX);
-            int lastUpdatedWeek = cursor.getInt(lastUpdatedIndex);
-            int weekDiff = mNumberOfWeeksSinceEpoch - lastUpdatedWeek;
-
-            // if it's more than the number of weeks we track, delete it and create a new entry
-            if (Math.abs(weekDiff) >= NUM_WEEKS) {
-                // this entry needs to be dropped since it is too outdated
-                deleteEntry(database, stringId);
-                if (bumpCount) {
-                    createNewPlayedEntry(database, id);
-                }
-            } else if (weekDiff != 0) {
-                // else, shift the weeks
-                int[] playCounts = new int[NUM_WEEKS];
-
-                if (weekDiff > 0) {
-                    // time is shifted forwards
-                    for (int i = 0; i < NUM_WEEKS - weekDiff; i++) {
-                        playCounts[i + weekDiff] = cursor.getInt(getColumnIndexForWeek(i));
-                    }
-                } else {
-                    // time is shifted backwards (by user) - nor typical behavior but we
-                    // will still handle it
-
-                    // since weekDiff is -ve, NUM_WEEKS + weekDiff is the real # of weeks we have to
-                    // transfer.  Then we transfer the old week i - weekDiff to week i
-                    // for example if the user shifted back 2 weeks, ie -2, then for 0 to
-                    // NUM_WEEKS + (-2) we set the new week i = old week i - (-2) or i+2
-                    for (int i = 0; i < NUM_WEEKS + weekDiff; i++) {
-                        playCounts[i] = cursor.getInt(getColumnIndexForWeek(i - weekDiff));
-                    }
+        final MusicDBExecutor executor = mMusicDatabase.getExecutor();
+        executor.execute(TAG, db -> {
+            final int currentWeek = getCurrentWeekIndex();
+            final int[] playCounts = new int[NUM_WEEKS];
+
+            // shift the existing counts, if any, to the current week
+            try (Cursor cursor = db.query(SongPlayCountColumns.NAME,
+                    new String[]{
+                            SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX,
+                            SongPlayCountColumns.WEEK_PLAY_COUNTS,
+                    }, WHERE_ID_EQUALS, new String[]{String.valueOf(songId)}, null, null,
+                    null)) {
+                if (cursor != null && cursor.moveToFirst()) {
+                    unpackPlayCounts(cursor.getBlob(1), currentWeek - cursor.getInt(0),
+                            playCounts);
                 }
-
-                // bump the count
-                if (bumpCount) {
-                    playCounts[0]++;
-                }
-
-                float score = calculateScore(playCounts);
-
-                // if the score is non-existant, then delete it
-                if (score < .01f) {
-                    deleteEntry(database, stringId);
-                } else {
-                    // create the content values
-                    ContentValues values = new ContentValues(NUM_WEEKS + 2);
-                    values.put(SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX,
-                            mNumberOfWeeksSinceEpoch);
-                    values.put(SongPlayCountColumns.PLAY_COUNT_SCORE, score);
-
-                    for (int i = 0; i < NUM_WEEKS; i++) {
-                        values.put(getColumnNameForWeek(i), playCounts[i]);
-                    }
-
-                    // update the entry
-                    database.update(SongPlayCountColumns.NAME, values, WHERE_ID_EQUALS,
-                            new String[]{stringId});
-                }
-            } else if (bumpCount) {
-                // else no shifting, just update the scores
-                ContentValues values = new ContentValues(2);
-
-                // increase the score by a single score amount
-                int scoreIndex = cursor.getColumnIndex(SongPlayCountColumns.PLAY_COUNT_SCORE);
-                float score = cursor.getFloat(scoreIndex) + getScoreMultiplierForWeek(0);
-                values.put(SongPlayCountColumns.PLAY_COUNT_SCORE, score);
-
-                // increase the play count by 1
-                values.put(getColumnNameForWeek(0), cursor.getInt(getColumnIndexForWeek(0)) + 1);
-
-                // update the entry
-                database.update(SongPlayCountColumns.NAME, values, WHERE_ID_EQUALS,
-                        new String[]{stringId});
             }
 
-            cursor.close();
-        } else if (bumpCount) {
-            // if we have no existing results, create a new one
-            createNewPlayedEntry(database, id);
-        }
+            // bump the count
+            playCounts[0] = Math.min(playCounts[0] + 1, MAX_WEEK_PLAY_COUNT);
 
-        database.setTransactionSuccessful();
-        database.endTransaction();
+            final SQLiteStatement insert = executor.getStatement(INSERT_OR_REPLACE_SQL);
+            bindEntry(insert, songId, currentWeek, playCounts);
+            insert.executeInsert();
+        });
     }
 
     public void deleteAll() {
-        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
-        database.delete(SongPlayCountColumns.NAME, null, null);
+        mMusicDatabase.getExecutor().executeAndWait(TAG,
+                db -> db.delete(SongPlayCountColumns.NAME, null, null));
     }
 
     /**
@@ -265,13 +253,82 @@ public class SongPlayCount {
      * @return the top tracks
      */
     public Cursor getTopPlayedResults(int numResults) {
-        updateResults();
+        final int currentWeek = getCurrentWeekIndex();
+        rollOverWeek(currentWeek);
 
         final SQLiteDatabase database = mMusicDatabase.getReadableDatabase();
-        return database.query(SongPlayCountColumns.NAME, new String[]{SongPlayCountColumns.ID},
-                null, null, null, null,
-                SongPlayCountColumns.PLAY_COUNT_SCORE + " DESC",
-                (numResults <= 0 ? null : String.valueOf(numResults)));
+        final PriorityQueue<ScoredSong> topSongs = new PriorityQueue<>();
+
+        // rows written in the future (the clock was moved backwards) can gain score when shifted
+        // back, so their stored score is not a bound - there are normally none of these
+        collectTopPlayed(database, currentWeek, numResults, topSongs, false);
+        collectTopPlayed(database, currentWeek, numResults, topSongs, true);
+
+        final ArrayList<ScoredSong> results = new ArrayList<>(topSongs);
+        Collections.sort(results, Collections.reverseOrder());
+
+        final MatrixCursor cursor = new MatrixCursor(new String[]{SongPlayCountColumns.ID},
+                results.size());
+        for (ScoredSong song : results) {
+            cursor.addRow(new Object[]{song.id});
+        }
+
+        return cursor;
+    }
+
+    /**
+     * Walks the play count table in order of the stored score and keeps the best numResults
+     * rows by current score in topSongs
+     *
+     * @param database    database to use
+     * @param currentWeek the current week index
+     * @param numResults  number of results to keep.  If <= 0 all rows are kept
+     * @param topSongs    min-heap of the best results found so far
+     * @param pastRows    true to walk the rows last updated up to the current week, false to walk
+     *                    the rows last updated after it
+     */
+    private static void collectTopPlayed(final SQLiteDatabase database, final int currentWeek,
+                                         final int numResults,
+                                         final PriorityQueue<ScoredSong> topSongs,
+                                         final boolean pastRows) {
+        final String selection = SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX
+                + (pastRows ? " <= ?" : " > ?");
+
+        try (Cursor cursor = database.query(SongPlayCountColumns.NAME,
+                new String[]{
+                        SongPlayCountColumns.ID,
+                        SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX,
+                        SongPlayCountColumns.WEEK_PLAY_COUNTS,
+                        SongPlayCountColumns.PLAY_COUNT_SCORE,
+                }, selection, new String[]{String.valueOf(currentWeek)}, null, null,
+                SongPlayCountColumns.PLAY_COUNT_SCORE + " DESC")) {
+            if (cursor == null) {
+                return;
+            }
+
+            final boolean limited = numResults > 0;
+            while (cursor.moveToNext()) {
+                // the stored score only decays, so once it can't beat the worst result we are
+                // keeping neither can any of the remaining rows
+                if (pastRows && limited && topSongs.size() >= numResults
+                        && cursor.getFloat(3) <= topSongs.peek().score) {
+                    break;
+                }
+
+                final float score = calculateScore(cursor.getBlob(2),
+                        currentWeek - cursor.getInt(1));
+                if (score < MIN_SCORE) {
+                    continue;
+                }
+
+                if (!limited || topSongs.size() < numResults) {
+                    topSongs.add(new ScoredSong(cursor.getLong(0), score));
+                } else if (score > topSongs.peek().score) {
+                    topSongs.poll();
+                    topSongs.add(new ScoredSong(cursor.getLong(0), score));
+                }
+            }
+        }
     }
 
     /**
@@ -287,25 +344,16 @@ public class SongPlayCount {
             return null;
         }
 
-        HashSet<Long> uniqueIds = new HashSet<>(ids.length);
-
-        // create the list of ids to select against
-        StringBuilder selection = new StringBuilder();
-        selection.append(SongPlayCountColumns.ID);
-        selection.append(" IN (");
+        // the unique ids in the order they were passed in
+        final LongHashSet uniqueIdSet = new LongHashSet(Math.min(ids.length,
+                MAX_NUMBER_SONGS_TO_ANALYZE));
+        final LongArrayList uniqueIds = new LongArrayList(Math.min(ids.length,
+                MAX_NUMBER_SONGS_TO_ANALYZE));
 
-        // add the first element to handle the separator case for the first element
-        uniqueIds.add(ids[0]);
-        selection.append(ids[0]);
-
-        for (int i = 1; i < ids.length; i++) {
+        for (long id : ids) {
             // if the new id doesn't exist
-            if (uniqueIds.add(ids[i])) {
-                // append a separator
-                selection.append(",");
-
-                // append the id
-                selection.append(ids[i]);
+            if (uniqueIdSet.add(id)) {
+                uniqueIds.add(id);
 
                 // for performance reasons, only look at a certain number of songs
                 // in case their playlist is ridiculously large
@@ -315,96 +363,90 @@ public class SongPlayCount {
             }
         }
 
-        // close out the selection
-        selection.append(")");
-
         long[] sortedList = new long[uniqueIds.size()];
+        int idx = 0;
 
-        // now query for the songs
+        // now query for the songs and score them as of this week
+        final int currentWeek = getCurrentWeekIndex();
+        final ArrayList<ScoredSong> topSongs = new ArrayList<>(uniqueIds.size());
         final SQLiteDatabase database = mMusicDatabase.getReadableDatabase();
-        Cursor topSongsCursor = null;
-        int idx = 0;
+        final String[] projection = new String[]{
+                SongPlayCountColumns.ID,
+                SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX,
+                SongPlayCountColumns.WEEK_PLAY_COUNTS,
+        };
+
+        final IdResolver.Result result = IdResolver.resolve(SongPlayCountColumns.ID, projection,
+                uniqueIds.toArray(), (selection, selectionArgs) -> database.query(
+                        SongPlayCountColumns.NAME, projection, selection, selectionArgs,
+                        null, null, null));
+        if (result != null) {
+            for (int i = 0; i < result.size(); i++) {
+                final Object[] row = result.getRow(i);
+                if (row == null) {
+                    continue;
+                }
 
-        try {
-            topSongsCursor = database.query(SongPlayCountColumns.NAME,
-                    new String[]{SongPlayCountColumns.ID}, selection.toString(), null, null,
-                    null, SongPlayCountColumns.PLAY_COUNT_SCORE + " DESC");
-
-            if (topSongsCursor != null && topSongsCursor.moveToFirst()) {
-                do {
-                    // for each id found, add it to the list and remove it from the unique ids
-                    long id = topSongsCursor.getLong(0);
-                    sortedList[idx++] = id;
-                    uniqueIds.remove(id);
-                } while (topSongsCursor.moveToNext());
-            }
-        } finally {
-            if (topSongsCursor != null) {
-                topSongsCursor.close();
+                final float score = calculateScore((byte[]) row[2],
+                        currentWeek - ((Number) row[1]).intValue());
+                if (score >= MIN_SCORE) {
+                    topSongs.add(new ScoredSong(((Number) row[0]).longValue(), score));
+                }
             }
         }
 
+        Collections.sort(topSongs, Collections.reverseOrder());
+
+        // for each id found, add it to the list and remove it from the unique ids
+        for (ScoredSong song : topSongs) {
+            sortedList[idx++] = song.id;
+            uniqueIdSet.remove(song.id);
+        }
+
         // append the remaining items - these are songs that haven't been played recently
-        for (final Long uniqueId : uniqueIds) {
-            sortedList[idx++] = uniqueId;
+        for (int i = 0; i < uniqueIds.size(); i++) {
+            final long uniqueId = uniqueIds.get(i);
+            if (uniqueIdSet.contains(uniqueId)) {
+                sortedList[idx++] = uniqueId;
+            }
         }
 
         return sortedList;
     }
 
     /**
-     * This updates all the results for the getTopPlayedResults so that we can get an
-     * accurate list of the top played results
+     * Drops all the rows that have aged out of the tracked weeks.  This is a single statement
+     * and is only run once per week since the decay itself is applied at read time, which also
+     * means the results don't need to wait for it
+     *
+     * @param currentWeek the current week index
      */
-    private synchronized void updateResults() {
-        if (mDatabaseUpdated) {
-            return;
-        }
-
-        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
-
-        database.beginTransaction();
-
-        int oldestWeekWeCareAbout = mNumberOfWeeksSinceEpoch - NUM_WEEKS + 1;
-        // delete rows we don't care about anymore
-        database.delete(SongPlayCountColumns.NAME, SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX
-                + " < " + oldestWeekWeCareAbout, null);
-
-        // get the remaining rows
-        Cursor cursor = database.query(SongPlayCountColumns.NAME,
-                new String[]{SongPlayCountColumns.ID},
-                null, null, null, null, null);
-
-        if (cursor != null && cursor.moveToFirst()) {
-            // for each row, update it
-            do {
-                updateExistingRow(database, cursor.getLong(0), false);
-            } while (cursor.moveToNext());
-
-            cursor.close();
+    private void rollOverWeek(final int currentWeek) {
+        synchronized (this) {
+            if (mLastRolloverWeek == currentWeek) {
+                return;
+            }
+            mLastRolloverWeek = currentWeek;
         }
 
-        mDatabaseUpdated = true;
-        database.setTransactionSuccessful();
-        database.endTransaction();
+        mMusicDatabase.getExecutor().execute(TAG, db -> db.delete(SongPlayCountColumns.NAME,
+                SongPlayCountColumns.LAST_UPDATED_WEEK_INDEX + " <= ?",
+                new String[]{String.valueOf(currentWeek - NUM_WEEKS)}));
     }
 
     /**
      * @param songId The song Id to remove.
      */
     public void removeItem(final long songId) {
-        final SQLiteDatabase database = mMusicDatabase.getWritableDatabase();
-        deleteEntry(database, String.valueOf(songId));
+        mMusicDatabase.getExecutor().execute(TAG, db -> db.delete(SongPlayCountColumns.NAME,
+                WHERE_ID_EQUALS, new String[]{String.valueOf(songId)}));
     }
 
     /**
-     * Deletes the entry
-     *
-     * @param database database to use
-     * @param stringId id to delete
+     * @return the number of weeks since epoch time
      */
-    private void deleteEntry(final SQLiteDatabase database, final String stringId) {
-        database.delete(SongPlayCountColumns.NAME, WHERE_ID_EQUALS, new String[]{stringId});
+    private static int getCurrentWeekIndex() {
+        return (int) (System.currentTimeMillis() / ONE_WEEK_IN_MS);
     }
 
     /**
@@ -421,43 +463,100 @@ public class SongPlayCount {
 
         float score = 0;
         for (int i = 0; i < Math.min(playCounts.length, NUM_WEEKS); i++) {
-            score += playCounts[i] * getScoreMultiplierForWeek(i);
+            score += playCounts[i] * sWeekMultipliers[i];
         }
 
         return score;
     }
 
     /**
-     * Gets the column name for each week #
+     * Calculates the score of the song given the packed play counts
      *
-     * @param week number
-     * @return the column name
+     * @param packed   the packed play counts, see {@link #packPlayCounts(int[])}
+     * @param weekDiff the number of weeks between the week the counts were packed and now
+     * @return the score
      */
-    private static String getColumnNameForWeek(final int week) {
-        return SongPlayCountColumns.WEEK_PLAY_COUNT + week;
+    private static float calculateScore(final byte[] packed, final int weekDiff) {
+        if (packed == null) {
+            return 0;
+        }
+
+        float score = 0;
+        for (int i = 0; i < packed.length / BYTES_PER_WEEK; i++) {
+            final int week = i + weekDiff;
+            if (week >= 0 && week < NUM_WEEKS) {
+                score += getPackedPlayCount(packed, i) * sWeekMultipliers[week];
+            }
+        }
+
+        return score;
     }
 
     /**
-     * Gets the score multiplier for each week
+     * Packs the play counts into a blob of unsigned 16 bit values, dropping the trailing weeks
+     * without any plays
      *
-     * @param week number
-     * @return the multiplier to apply
+     * @param playCounts an array of the # of times a song has been played for each week
+     * @return the packed play counts
      */
-    private static float getScoreMultiplierForWeek(final int week) {
-        return sInterpolator.getInterpolation(1 - (week / (float) NUM_WEEKS)) * INTERPOLATOR_HEIGHT
-                + INTERPOLATOR_BASE;
+    private static byte[] packPlayCounts(final int[] playCounts) {
+        int weeks = Math.min(playCounts.length, NUM_WEEKS);
+        while (weeks > 0 && playCounts[weeks - 1] <= 0) {
+            weeks--;
+        }
+
+        final byte[] packed = new byte[weeks * BYTES_PER_WEEK];
+        for (int i = 0; i < weeks; i++) {
+            final int count = Math.max(0, Math.min(playCounts[i], MAX_WEEK_PLAY_COUNT));
+            packed[i * BYTES_PER_WEEK] = (byte) (count >>> 8);
+            packed[i * BYTES_PER_WEEK + 1] = (byte) count;
+        }
+
+        return packed;
     }
 
     /**
-     * For some performance gain, return a static value for the column index for a week
-     * WARNIGN: This function assumes you have selected all columns for it to work
+     * Unpacks the play counts and shifts them by the number of weeks passed since they were
+     * packed.  Weeks that fall outside the tracked range are dropped
      *
-     * @param week number
-     * @return column index of that week
+     * @param packed     the packed play counts
+     * @param weekDiff   the number of weeks between the week the counts were packed and now.
+     *                   This is negative if the time was shifted backwards (by user)
+     * @param playCounts the output array of NUM_WEEKS play counts
      */
-    private static int getColumnIndexForWeek(final int week) {
-        // ID, followed by the weeks columns
-        return 1 + week;
+    private static void unpackPlayCounts(final byte[] packed, final int weekDiff,
+                                         final int[] playCounts) {
+        Arrays.fill(playCounts, 0);
+        if (packed == null) {
+            return;
+        }
+
+        for (int i = 0; i < packed.length / BYTES_PER_WEEK; i++) {
+            final int week = i + weekDiff;
+            if (week >= 0 && week < NUM_WEEKS) {
+                playCounts[week] = getPackedPlayCount(packed, i);
+            }
+        }
+    }
+
+    private static int getPackedPlayCount(final byte[] packed, final int index) {
+        return ((packed[index * BYTES_PER_WEEK] & 0xFF) << 8)
+                | (packed[index * BYTES_PER_WEEK + 1] & 0xFF);
+    }
+
+    private static final class ScoredSong implements Comparable<ScoredSong> {
+        final long id;
+        final float score;
+
+        ScoredSong(final long id, final float score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(ScoredSong other) {
+            return Float.compare(score, other.score);
+        }
     }
 
     public interface SongPlayCountColumns {
@@ -468,13 +567,19 @@ public class SongPlayCount {
         /* Song IDs column */
         String ID = "songid";
 
-        /* Week Play Count */
-        String WEEK_PLAY_COUNT = "week";
+        /* Packed weekly play counts, relative to the last updated week */
+        String WEEK_PLAY_COUNTS = "weekplaycounts";
 
         /* Weeks since Epoch */
         String LAST_UPDATED_WEEK_INDEX = "weekindex";
 
-        /* Play count */
+        /* Play count score as of the last updated week */
         String PLAY_COUNT_SCORE = "playcountscore";
+
+        /* Index on the score used to find the top played songs */
+        String SCORE_INDEX_NAME = "songplaycount_score_index";
+
+        /* Index on the last updated week used for the rollover */
+        String WEEK_INDEX_NAME = "songplaycount_week_index";
     }
 }
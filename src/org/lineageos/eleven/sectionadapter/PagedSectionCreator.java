@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.sectionadapter;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import org.lineageos.eleven.loaders.PagedList;
+import org.lineageos.eleven.loaders.SortedCursor;
+import org.lineageos.eleven.loaders.WrappedAsyncTaskLoader;
+import org.lineageos.eleven.utils.SectionCreatorUtils;
+import org.lineageos.eleven.utils.collections.LongArrayList;
+
+/**
+ * Like {@link SectionCreator} but for whole library lists: only the ids and the values the
+ * sections depend on are read up front and the items are handed out as a {@link PagedList}
+ *
+ * @param <T> type of item to load
+ */
+public class PagedSectionCreator<T> extends WrappedAsyncTaskLoader<SectionListContainer<T>> {
+
+    /**
+     * Source of the ids and items of a paged list
+     *
+     * @param <T> type of item to load
+     */
+    public interface PagedSource<T> extends PagedList.PageLoader<T> {
+        /**
+         * @return a cursor with the ids in the first column, in list order, along with the
+         * columns needed by {@link #createKeyItem}
+         */
+        Cursor queryKeys();
+
+        /**
+         * Creates an item only holding the values the sections are created from, this isn't
+         * called when the sections come from the localized buckets of the keys cursor
+         *
+         * @param cursor the keys cursor, moved to the item
+         * @return the item
+         */
+        T createKeyItem(Cursor cursor);
+    }
+
+    private final PagedSource<T> mSource;
+    private final SectionCreatorUtils.IItemCompare<T> mComparator;
+
+    /**
+     * @param context    The {@link Context} to use.
+     * @param source     the source of the items
+     * @param comparator the comparison object to run to create the sections, this only gets
+     *                   the pairs of items and not the whole list
+     */
+    public PagedSectionCreator(Context context, PagedSource<T> source,
+                               SectionCreatorUtils.IItemCompare<T> comparator) {
+        super(context);
+        mSource = source;
+        mComparator = comparator;
+    }
+
+    @Override
+    public SectionListContainer<T> loadInBackground() {
+        final LongArrayList ids = new LongArrayList();
+        SectionIndex sections = null;
+
+        try (Cursor cursor = mSource.queryKeys()) {
+            if (cursor != null) {
+                final SectionIndex.Builder builder = new SectionIndex.Builder();
+                if (mComparator instanceof SectionCreatorUtils.LocalizedCompare
+                        && cursor instanceof SortedCursor
+                        && ((SortedCursor) cursor).hasBuckets()) {
+                    addBucketSections(builder, (SortedCursor) cursor, ids);
+                } else {
+                    addSections(builder, cursor, ids);
+                }
+
+                if (mComparator != null) {
+                    sections = builder.build();
+                }
+            }
+        }
+
+        final PagedList<T> list = new PagedList<>(ids.toArray(), mSource);
+        list.loadFirstPage();
+        return new SectionListContainer<>(sections, list);
+    }
+
+    /**
+     * Creates a section for each run of rows in the same localized bucket, the labels coming
+     * with the sort order so there is no need to compare the items
+     */
+    @SuppressWarnings("unchecked")
+    private void addBucketSections(final SectionIndex.Builder builder, final SortedCursor cursor,
+                                   final LongArrayList ids) {
+        final SectionCreatorUtils.LocalizedCompare<T> comparator =
+                (SectionCreatorUtils.LocalizedCompare<T>) mComparator;
+
+        boolean sectioning = true;
+        int previousBucket = 0;
+        while (cursor.moveToNext()) {
+            final int bucket = cursor.getBucket();
+            if (sectioning && (ids.isEmpty() || bucket != previousBucket)) {
+                final String label = (String) cursor.getExtraData();
+                if (label != null) {
+                    builder.add(ids.size(), SectionCreatorUtils.SectionType.Header,
+                            comparator.createHeaderLabel(label));
+                } else {
+                    // same as the comparator, stop once there is no good label
+                    sectioning = false;
+                }
+            }
+
+            previousBucket = bucket;
+            ids.add(cursor.getLong(0));
+        }
+    }
+
+    /**
+     * Creates the sections by comparing each pair of items, only keeping the previous item
+     * around
+     */
+    private void addSections(final SectionIndex.Builder builder, final Cursor cursor,
+                             final LongArrayList ids) {
+        T previous = null;
+        boolean sectioning = mComparator != null;
+        while (cursor.moveToNext()) {
+            if (sectioning) {
+                final T item = mSource.createKeyItem(cursor);
+                sectioning = addSections(builder, ids.size(), previous, item);
+                previous = item;
+            }
+            ids.add(cursor.getLong(0));
+        }
+
+        if (sectioning && previous != null) {
+            addSections(builder, ids.size(), previous, null);
+        }
+    }
+
+    /**
+     * Adds the footer and header between two items, in the same way as
+     * {@link SectionCreatorUtils#createSections}
+     *
+     * @return false if the section creation should stop
+     */
+    private boolean addSections(final SectionIndex.Builder builder, final int index,
+                                final T first, final T second) {
+        if (first != null) {
+            final String footer = mComparator.createSectionFooter(first, second);
+            if (footer != null) {
+                builder.add(index, SectionCreatorUtils.SectionType.Footer, footer);
+            }
+        }
+
+        if (second != null) {
+            final String header = mComparator.createSectionHeader(first, second);
+            if (header != null) {
+                builder.add(index, SectionCreatorUtils.SectionType.Header, header);
+                return !mComparator.shouldStopSectionCreation();
+            }
+        }
+
+        return true;
+    }
+}
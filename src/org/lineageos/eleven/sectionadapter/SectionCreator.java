@@ -25,7 +25,6 @@ import org.lineageos.eleven.utils.SectionCreatorUtils;
 
 import java.lang.ref.WeakReference;
 import java.util.List;
-import java.util.TreeMap;
 
 /**
  * This class wraps a SimpleListLoader and creates header sections for the sections
@@ -74,7 +73,7 @@ public class SectionCreator<T> extends WrappedAsyncTaskLoader<SectionListContain
     @Override
     public SectionListContainer<T> loadInBackground() {
         List<T> results = mLoader.loadInBackground();
-        TreeMap<Integer, SectionCreatorUtils.Section> sections = null;
+        SectionIndex sections = null;
 
         if (mComparator != null) {
             sections = SectionCreatorUtils.createSections(results, mComparator);
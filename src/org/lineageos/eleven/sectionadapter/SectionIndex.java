@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.sectionadapter;
+
+import org.lineageos.eleven.utils.SectionCreatorUtils.SectionType;
+import org.lineageos.eleven.utils.collections.IntArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The sections of a list, stored as the sorted positions the sections start at along with a
+ * table of their labels.  Looking up the section of a position is a binary search, so this
+ * can be used while drawing and scrolling.
+ */
+public class SectionIndex {
+    private final int[] mPositions;
+    private final String[] mLabels;
+    private final SectionType[] mTypes;
+
+    private SectionIndex(final Builder builder) {
+        mPositions = builder.mPositions.toArray();
+        mLabels = builder.mLabels.toArray(new String[0]);
+        mTypes = builder.mTypes.toArray(new SectionType[0]);
+    }
+
+    /**
+     * @return the number of sections
+     */
+    public int size() {
+        return mPositions.length;
+    }
+
+    /**
+     * @param section the index of the section
+     * @return the position of the list the section starts at
+     */
+    public int getPositionForSection(final int section) {
+        return mPositions[section];
+    }
+
+    /**
+     * @param section the index of the section
+     * @return the label of the section
+     */
+    public String getLabel(final int section) {
+        return mLabels[section];
+    }
+
+    /**
+     * @param section the index of the section
+     * @return whether the section is a header or a footer
+     */
+    public SectionType getType(final int section) {
+        return mTypes[section];
+    }
+
+    /**
+     * @param position a position of the list
+     * @return the index of the section the position is in, or -1 if it is before the first
+     * section
+     */
+    public int getSectionForPosition(final int position) {
+        final int index = Arrays.binarySearch(mPositions, position);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * @param position a position of the list
+     * @return the index of the section starting at the position, or -1 if none does
+     */
+    public int getSectionStartingAt(final int position) {
+        final int index = Arrays.binarySearch(mPositions, position);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * Collects the sections of a list in order
+     */
+    public static class Builder {
+        private final IntArrayList mPositions = new IntArrayList();
+        private final ArrayList<String> mLabels = new ArrayList<>();
+        private final ArrayList<SectionType> mTypes = new ArrayList<>();
+
+        /**
+         * Adds a section, replacing the last one if it starts at the same position
+         *
+         * @param position the position of the list the section starts at, this can't be before
+         *                 the last section
+         * @param type     whether the section is a header or a footer
+         * @param label    the label of the section
+         */
+        public void add(final int position, final SectionType type, final String label) {
+            final int last = mPositions.size() - 1;
+            if (last >= 0 && mPositions.get(last) == position) {
+                mLabels.set(last, label);
+                mTypes.set(last, type);
+                return;
+            }
+
+            if (last >= 0 && mPositions.get(last) > position) {
+                throw new IllegalArgumentException("Sections must be added in order");
+            }
+
+            mPositions.add(position);
+            mLabels.add(label);
+            mTypes.add(type);
+        }
+
+        public SectionIndex build() {
+            return new SectionIndex(this);
+        }
+    }
+}
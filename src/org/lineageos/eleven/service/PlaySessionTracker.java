@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.service;
+
+import android.os.SystemClock;
+
+import org.lineageos.eleven.provider.ListeningHistoryStore;
+
+/**
+ * Keeps track of how long the current track has actually been listened to and hands the
+ * finished session to the {@link ListeningHistoryStore} once the track changes
+ */
+public class PlaySessionTracker {
+    /* Sessions shorter than this (or half the track) are considered skipped */
+    private static final long SKIP_THRESHOLD_MS = 30 * 1000;
+
+    /* Sessions covering this much of the track are considered completed */
+    private static final float COMPLETED_RATIO = 0.9f;
+
+    private final ListeningHistoryStore mStore;
+
+    private MusicPlaybackTrack mTrack;
+    private long mTrackDuration;
+    private long mTimePlayed;
+    private long mListened;
+    private long mResumedAt = -1;
+
+    public PlaySessionTracker(final ListeningHistoryStore store) {
+        mStore = store;
+    }
+
+    /**
+     * Ends the current session, if any, and starts a new one for the given track
+     *
+     * @param track    the track that started, may be null
+     * @param duration the duration of the track in ms
+     * @param playing  whether the track is currently playing
+     */
+    public synchronized void onTrackStarted(final MusicPlaybackTrack track, final long duration,
+                                            final boolean playing) {
+        finishSession();
+
+        mTrack = track;
+        mTrackDuration = duration;
+        mTimePlayed = System.currentTimeMillis();
+        mListened = 0;
+        mResumedAt = playing ? SystemClock.elapsedRealtime() : -1;
+    }
+
+    /**
+     * @param playing whether the current track is now playing
+     */
+    public synchronized void onPlayStateChanged(final boolean playing) {
+        if (playing && mResumedAt < 0) {
+            mResumedAt = SystemClock.elapsedRealtime();
+        } else if (!playing && mResumedAt >= 0) {
+            mListened += SystemClock.elapsedRealtime() - mResumedAt;
+            mResumedAt = -1;
+        }
+    }
+
+    /**
+     * Ends the current session and writes out all the pending sessions
+     */
+    public synchronized void close() {
+        finishSession();
+        mStore.flush();
+    }
+
+    private void finishSession() {
+        if (mTrack == null) {
+            return;
+        }
+
+        onPlayStateChanged(false);
+
+        final ListeningHistoryStore.Outcome outcome;
+        if (mTrackDuration > 0 && mListened >= mTrackDuration * COMPLETED_RATIO) {
+            outcome = ListeningHistoryStore.Outcome.Completed;
+        } else if (mListened < Math.min(SKIP_THRESHOLD_MS, mTrackDuration / 2)) {
+            outcome = ListeningHistoryStore.Outcome.Skipped;
+        } else {
+            outcome = ListeningHistoryStore.Outcome.Partial;
+        }
+
+        mStore.addPlaySession(mTrack.mId, mTrack.mSourceId, mTrack.mSourceType, mTimePlayed,
+                mListened, outcome);
+        mTrack = null;
+    }
+}
@@ -29,7 +29,6 @@ import android.graphics.Color;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.Looper;
 import android.provider.MediaStore;
 import android.text.TextUtils;
 import android.util.Log;
@@ -58,13 +57,12 @@ import org.lineageos.eleven.ui.fragments.phone.MusicBrowserPhoneFragment;
 import org.lineageos.eleven.ui.fragments.profile.LastAddedFragment;
 import org.lineageos.eleven.ui.fragments.profile.TopTracksFragment;
 import org.lineageos.eleven.utils.AnimatorEndListener;
+import org.lineageos.eleven.utils.AppExecutors;
 import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.utils.colors.BitmapWithColors;
 
 import java.util.ArrayList;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 public class HomeActivity extends SlidingPanelActivity implements
         FragmentManager.OnBackStackChangedListener {
@@ -223,15 +221,12 @@ public class HomeActivity extends SlidingPanelActivity implements
         if (mBrowsePanelActive || MusicUtils.getCurrentAlbumId() < 0) {
             updateStatusBarColor(Color.TRANSPARENT);
         } else {
-            Executor executor = Executors.newSingleThreadExecutor();
-            Handler handler = new Handler(Looper.getMainLooper());
-
-            executor.execute(() -> {
+            AppExecutors.get(AppExecutors.Pool.COMPUTE).execute(() -> {
                 ImageFetcher imageFetcher = ImageFetcher.getInstance(HomeActivity.this);
                 BitmapWithColors bmc = imageFetcher.getArtwork(
                         MusicUtils.getAlbumName(), MusicUtils.getCurrentAlbumId(), true);
 
-                handler.post(() -> {
+                AppExecutors.getMainHandler().post(() -> {
                     updateVisualizerColor(bmc != null
                             ? bmc.getContrastingColor() : Color.TRANSPARENT);
                 });
@@ -350,13 +345,13 @@ public class HomeActivity extends SlidingPanelActivity implements
                 MusicUtils.removeFromCache(this, mKey);
                 final Uri selectedImage = data.getData();
 
-                new Thread(() -> {
+                AppExecutors.get(AppExecutors.Pool.IO).execute(() -> {
                     Bitmap bitmap = ImageFetcher.decodeSampledBitmapFromUri(getContentResolver(),
                             selectedImage);
                     ImageFetcher imageFetcher = ElevenUtils.getImageFetcher(HomeActivity.this);
                     imageFetcher.addBitmapToCache(mKey, bitmap);
                     MusicUtils.refresh();
-                }).start();
+                });
             }
         }
     }
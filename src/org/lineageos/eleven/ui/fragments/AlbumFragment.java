@@ -37,9 +37,10 @@ import org.lineageos.eleven.MusicStateListener;
 import org.lineageos.eleven.R;
 import org.lineageos.eleven.adapters.AlbumAdapter;
 import org.lineageos.eleven.adapters.PagerAdapter;
+import org.lineageos.eleven.cache.ArtworkPrefetcher;
 import org.lineageos.eleven.loaders.AlbumLoader;
 import org.lineageos.eleven.model.Album;
-import org.lineageos.eleven.sectionadapter.SectionCreator;
+import org.lineageos.eleven.sectionadapter.PagedSectionCreator;
 import org.lineageos.eleven.sectionadapter.SectionListContainer;
 import org.lineageos.eleven.ui.activities.BaseActivity;
 import org.lineageos.eleven.ui.fragments.phone.MusicBrowserFragment;
@@ -150,7 +151,8 @@ public class AlbumFragment extends MusicBrowserFragment implements
         mLoadingEmptyContainer.showLoading();
         // if we ever decide to add section headers for grid items, we can pass a comparator
         // instead of null
-        return new SectionCreator<>(getActivity(), new AlbumLoader(getActivity()), null);
+        return new PagedSectionCreator<>(getActivity(),
+                new AlbumLoader.PagedAlbumSource(requireActivity()), null);
     }
 
     @Override
@@ -216,6 +218,9 @@ public class AlbumFragment extends MusicBrowserFragment implements
         gridView.setItemAnimator(new DefaultItemAnimator());
         // Set the data behind the grid
         gridView.setAdapter(mAdapter);
+        // Warm the cache with the artwork about to be scrolled to
+        gridView.addOnScrollListener(new ArtworkPrefetcher(
+                ElevenUtils.getImageFetcher(activity), mAdapter));
 
         // Show progress bar
         mLoadingEmptyContainer = mRootView.findViewById(R.id.loading_empty_container);
@@ -39,13 +39,16 @@ import org.lineageos.eleven.MusicStateListener;
 import org.lineageos.eleven.R;
 import org.lineageos.eleven.adapters.ArtistAdapter;
 import org.lineageos.eleven.adapters.PagerAdapter;
+import org.lineageos.eleven.cache.ArtworkPrefetcher;
 import org.lineageos.eleven.loaders.ArtistLoader;
 import org.lineageos.eleven.model.Artist;
-import org.lineageos.eleven.sectionadapter.SectionCreator;
+import org.lineageos.eleven.sectionadapter.PagedSectionCreator;
+import org.lineageos.eleven.sectionadapter.SectionIndex;
 import org.lineageos.eleven.sectionadapter.SectionListContainer;
 import org.lineageos.eleven.ui.activities.BaseActivity;
 import org.lineageos.eleven.ui.fragments.phone.MusicBrowserFragment;
 import org.lineageos.eleven.utils.ArtistPopupMenuHelper;
+import org.lineageos.eleven.utils.ElevenUtils;
 import org.lineageos.eleven.utils.NavUtils;
 import org.lineageos.eleven.utils.PopupMenuHelper;
 import org.lineageos.eleven.utils.SectionCreatorUtils;
@@ -53,7 +56,6 @@ import org.lineageos.eleven.utils.SectionCreatorUtils.IItemCompare;
 import org.lineageos.eleven.widgets.LoadingEmptyContainer;
 import org.lineageos.eleven.widgets.SectionSeparatorItemDecoration;
 
-import java.util.TreeMap;
 
 /**
  * This class is used to display all of the artists on a user's device.
@@ -159,6 +161,10 @@ public class ArtistFragment extends MusicBrowserFragment implements
 
     public void onItemClick(final int position) {
         Artist artist = mAdapter.getItem(position);
+        if (artist == null) {
+            // still loading
+            return;
+        }
         NavUtils.openArtistProfile(getActivity(), artist.mArtistName);
     }
 
@@ -168,7 +174,8 @@ public class ArtistFragment extends MusicBrowserFragment implements
         mLoadingEmptyContainer.showLoading();
         final Context context = getActivity();
         IItemCompare<Artist> comparator = SectionCreatorUtils.createArtistComparison(context);
-        return new SectionCreator<>(getActivity(), new ArtistLoader(context), comparator);
+        return new PagedSectionCreator<>(getActivity(),
+                new ArtistLoader.PagedArtistSource(context), comparator);
     }
 
     @Override
@@ -218,7 +225,7 @@ public class ArtistFragment extends MusicBrowserFragment implements
         // Nothing to do
     }
 
-    private void setHeaders(TreeMap<Integer, SectionCreatorUtils.Section> sections) {
+    private void setHeaders(SectionIndex sections) {
         for (int i = 0; i < mListView.getItemDecorationCount(); i++) {
             mListView.removeItemDecorationAt(i);
         }
@@ -235,6 +242,9 @@ public class ArtistFragment extends MusicBrowserFragment implements
         mListView.setAdapter(mAdapter);
         mListView.setLayoutManager(new LinearLayoutManager(requireActivity()));
         mListView.setItemAnimator(new DefaultItemAnimator());
+        // Warm the cache with the images about to be scrolled to
+        mListView.addOnScrollListener(new ArtworkPrefetcher(
+                ElevenUtils.getImageFetcher(requireActivity()), mAdapter));
 
         // set the loading and empty view container
         mLoadingEmptyContainer = mRootView.findViewById(R.id.loading_empty_container);
@@ -37,6 +37,8 @@ import org.lineageos.eleven.MusicStateListener;
 import org.lineageos.eleven.R;
 import org.lineageos.eleven.adapters.PagerAdapter;
 import org.lineageos.eleven.adapters.PlaylistAdapter;
+import org.lineageos.eleven.cache.ArtworkPrefetcher;
+import org.lineageos.eleven.cache.ImageFetcher;
 import org.lineageos.eleven.loaders.PlaylistLoader;
 import org.lineageos.eleven.model.Playlist;
 import org.lineageos.eleven.ui.activities.BaseActivity;
@@ -46,6 +48,7 @@ import org.lineageos.eleven.utils.PlaylistPopupMenuHelper;
 import org.lineageos.eleven.utils.PopupMenuHelper;
 import org.lineageos.eleven.widgets.LoadingEmptyContainer;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -113,6 +116,9 @@ public class PlaylistFragment extends MusicBrowserFragment implements
         listView.setLayoutManager(new LinearLayoutManager(requireActivity()));
         listView.setItemAnimator(new DefaultItemAnimator());
         listView.setAdapter(mAdapter);
+        // Warm the cache with the images about to be scrolled to
+        listView.addOnScrollListener(new ArtworkPrefetcher(
+                ImageFetcher.getInstance(requireActivity()), mAdapter));
 
         // Setup the loading and empty state
         mLoadingEmptyContainer = rootView.findViewById(R.id.loading_empty_container);
@@ -175,26 +181,23 @@ public class PlaylistFragment extends MusicBrowserFragment implements
 
         mLoadingEmptyContainer.setVisibility(View.GONE);
 
-        // Start fresh, fill adapter with new data and create cache
-        mAdapter.unload();
-
         // iterate through playlist list and add "smart playlists" first
+        final List<Playlist> playlists = new ArrayList<>(data.size());
         final Iterator<Playlist> playlistIterator = data.listIterator();
         while (playlistIterator.hasNext()) {
             final Playlist playlist = playlistIterator.next();
             if (playlist.mSongCount < 0) {
-                mAdapter.add(playlist);
+                playlists.add(playlist);
                 playlistIterator.remove();
             }
         }
 
         // after the "smart playlists" are added, sort and add remaining playlists
         data.sort(new Playlist.IgnoreCaseComparator());
-        for (final Playlist playlist : data) {
-            mAdapter.add(playlist);
-        }
+        playlists.addAll(data);
 
-        mAdapter.buildCache();
+        // the adapter only rebinds the playlists that changed
+        mAdapter.setData(playlists);
     }
 
     @Override
@@ -29,7 +29,7 @@ import org.lineageos.eleven.Config;
 import org.lineageos.eleven.adapters.PagerAdapter;
 import org.lineageos.eleven.loaders.SongLoader;
 import org.lineageos.eleven.model.Song;
-import org.lineageos.eleven.sectionadapter.SectionCreator;
+import org.lineageos.eleven.sectionadapter.PagedSectionCreator;
 import org.lineageos.eleven.sectionadapter.SectionListContainer;
 import org.lineageos.eleven.ui.fragments.profile.BasicSongFragment;
 import org.lineageos.eleven.utils.MusicUtils;
@@ -58,15 +58,13 @@ public class SongFragment extends BasicSongFragment {
         // get the context
         Context context = getActivity();
 
-        // create the underlying song loader
-        SongLoader songLoader = new SongLoader(context);
-
         // get the song comparison method to create the headers with
         SectionCreatorUtils.IItemCompare<Song> songComparison =
                 SectionCreatorUtils.createSongComparison(context);
 
-        // return the wrapped section creator
-        return new SectionCreator<>(context, songLoader, songComparison);
+        // page through the whole library rather than loading every song up front
+        return new PagedSectionCreator<>(context, new SongLoader.PagedSongSource(context),
+                songComparison);
     }
 
 
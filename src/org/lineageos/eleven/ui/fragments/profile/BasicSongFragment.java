@@ -43,18 +43,17 @@ import org.lineageos.eleven.MusicStateListener;
 import org.lineageos.eleven.R;
 import org.lineageos.eleven.adapters.SongListAdapter;
 import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.sectionadapter.SectionIndex;
 import org.lineageos.eleven.sectionadapter.SectionListContainer;
 import org.lineageos.eleven.service.MusicPlaybackTrack;
 import org.lineageos.eleven.ui.activities.BaseActivity;
 import org.lineageos.eleven.utils.MusicUtils;
 import org.lineageos.eleven.utils.PopupMenuHelper;
-import org.lineageos.eleven.utils.SectionCreatorUtils;
 import org.lineageos.eleven.utils.SongPopupMenuHelper;
 import org.lineageos.eleven.widgets.LoadingEmptyContainer;
 import org.lineageos.eleven.widgets.NoResultsContainer;
 import org.lineageos.eleven.widgets.SectionSeparatorItemDecoration;
 
-import java.util.TreeMap;
 import java.util.TreeSet;
 
 /**
@@ -303,7 +302,7 @@ public abstract class BasicSongFragment extends Fragment implements
 
     protected abstract boolean hasHeaders();
 
-    private void setHeaders(TreeMap<Integer, SectionCreatorUtils.Section> sections) {
+    private void setHeaders(SectionIndex sections) {
         if (!hasHeaders() || sections == null) {
             return;
         }
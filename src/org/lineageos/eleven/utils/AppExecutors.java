@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.EnumMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The thread pools shared by the whole app.  Background work goes to the pool matching what it
+ * spends its time on instead of to a thread or executor of its own, so the number of threads
+ * stays bounded no matter how much work is started, e.g. while paging quickly.
+ * <p>
+ * The pools are created on first use, their threads exit when idle and they're never shut
+ * down.  Work that must not run anymore is cancelled through its future instead.  The writes
+ * to the app database don't go through here but through the
+ * {@link org.lineageos.eleven.provider.MusicDBExecutor}.
+ */
+public final class AppExecutors {
+    /* how long the idle threads of a pool are kept */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The pools
+     */
+    public enum Pool {
+        /* reads from the content providers and the file system */
+        IO("IO", 4, false),
+        /* reads from the app database */
+        DB("DB", 2, false),
+        /* cpu bound work, e.g. palettes and sort keys, leaving a core for the UI */
+        COMPUTE("Compute", Math.max(1, Math.min(4, CPU_COUNT - 1)), false),
+        /* image decodes, only executed by the DecodeScheduler which decides their order */
+        DECODE("ImageDecode", Math.max(2, Math.min(4, CPU_COUNT - 1)), true);
+
+        private final String mName;
+        private final int mThreads;
+        private final boolean mPrioritized;
+
+        Pool(final String name, final int threads, final boolean prioritized) {
+            mName = name;
+            mThreads = threads;
+            mPrioritized = prioritized;
+        }
+    }
+
+    private static final EnumMap<Pool, MeteredExecutor> sExecutors = new EnumMap<>(Pool.class);
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private AppExecutors() {
+    }
+
+    /**
+     * @param pool The pool
+     * @return The executor of the pool
+     */
+    public static synchronized ThreadPoolExecutor get(final Pool pool) {
+        MeteredExecutor executor = sExecutors.get(pool);
+        if (executor == null) {
+            executor = new MeteredExecutor(pool);
+            sExecutors.put(pool, executor);
+        }
+        return executor;
+    }
+
+    /**
+     * @return A handler to post the results of the background work to the main thread with
+     */
+    public static Handler getMainHandler() {
+        return sMainHandler;
+    }
+
+    /**
+     * Prints the counters of the pools that were used
+     *
+     * @param writer the writer to print to
+     */
+    public static synchronized void dump(final PrintWriter writer) {
+        writer.println("Executors:");
+        for (MeteredExecutor executor : sExecutors.values()) {
+            executor.dump(writer);
+        }
+    }
+
+    /**
+     * A pool that keeps track of how long the work waits in its queue and how long it runs
+     */
+    private static final class MeteredExecutor extends ThreadPoolExecutor {
+        private final Pool mPool;
+
+        // when the queued work was queued, work that doesn't override equals() is keyed by
+        // identity, which is what FutureTask and the lambdas do
+        private final ConcurrentHashMap<Runnable, Long> mQueuedAt = new ConcurrentHashMap<>();
+
+        private final ThreadLocal<Long> mStartedAt = new ThreadLocal<>();
+
+        private final AtomicLong mExecuted = new AtomicLong();
+        private final AtomicLong mWaitTimeMs = new AtomicLong();
+        private final AtomicLong mMaxWaitTimeMs = new AtomicLong();
+        private final AtomicLong mRunTimeMs = new AtomicLong();
+        private final AtomicLong mMaxRunTimeMs = new AtomicLong();
+        private final AtomicInteger mMaxQueueDepth = new AtomicInteger();
+
+        MeteredExecutor(final Pool pool) {
+            super(pool.mThreads, pool.mThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    createQueue(pool), createThreadFactory(pool));
+            mPool = pool;
+            allowCoreThreadTimeOut(true);
+        }
+
+        private static BlockingQueue<Runnable> createQueue(final Pool pool) {
+            return pool.mPrioritized ? new PriorityBlockingQueue<>() : new LinkedBlockingQueue<>();
+        }
+
+        private static ThreadFactory createThreadFactory(final Pool pool) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            return runnable -> {
+                final Thread thread = new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, pool.mName + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            if (mPool.mPrioritized && !(command instanceof Comparable)) {
+                throw new IllegalArgumentException(mPool + " only runs Comparable work");
+            }
+            mQueuedAt.put(command, SystemClock.elapsedRealtime());
+            super.execute(command);
+            mMaxQueueDepth.accumulateAndGet(getQueue().size(), Math::max);
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(final Runnable runnable, final T value) {
+            checkSubmittable();
+            return super.newTaskFor(runnable, value);
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(final Callable<T> callable) {
+            checkSubmittable();
+            return super.newTaskFor(callable);
+        }
+
+        /**
+         * The futures of submit() and invokeAll() aren't Comparable, a prioritized queue would
+         * only fail on them once they're queued
+         */
+        private void checkSubmittable() {
+            if (mPool.mPrioritized) {
+                throw new UnsupportedOperationException(mPool
+                        + " only runs the work passed to execute(), e.g. DecodeScheduler requests");
+            }
+        }
+
+        @Override
+        public boolean remove(final Runnable task) {
+            mQueuedAt.remove(task);
+            return super.remove(task);
+        }
+
+        @Override
+        protected void beforeExecute(final Thread thread, final Runnable runnable) {
+            final long now = SystemClock.elapsedRealtime();
+            final Long queuedAt = mQueuedAt.remove(runnable);
+            if (queuedAt != null) {
+                final long waited = now - queuedAt;
+                mWaitTimeMs.addAndGet(waited);
+                mMaxWaitTimeMs.accumulateAndGet(waited, Math::max);
+            }
+            mStartedAt.set(now);
+        }
+
+        @Override
+        protected void afterExecute(final Runnable runnable, final Throwable throwable) {
+            final Long startedAt = mStartedAt.get();
+            if (startedAt != null) {
+                final long ran = SystemClock.elapsedRealtime() - startedAt;
+                mRunTimeMs.addAndGet(ran);
+                mMaxRunTimeMs.accumulateAndGet(ran, Math::max);
+                mStartedAt.remove();
+            }
+            mExecuted.incrementAndGet();
+        }
+
+        void dump(final PrintWriter writer) {
+            final long executed = mExecuted.get();
+            writer.println("  " + mPool + ": threads=" + getPoolSize() + "/" + mPool.mThreads
+                    + " active=" + getActiveCount() + " queued=" + getQueue().size()
+                    + " maxQueued=" + mMaxQueueDepth.get());
+            writer.println("    executed: " + executed
+                    + " avgWait=" + (executed > 0 ? mWaitTimeMs.get() / executed : 0) + "ms"
+                    + " maxWait=" + mMaxWaitTimeMs.get() + "ms"
+                    + " avgRun=" + (executed > 0 ? mRunTimeMs.get() / executed : 0) + "ms"
+                    + " maxRun=" + mMaxRunTimeMs.get() + "ms");
+        }
+    }
+}
@@ -21,7 +21,6 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.res.Configuration;
 import android.graphics.Rect;
-import android.os.AsyncTask;
 import android.util.TypedValue;
 import android.view.Gravity;
 import android.view.View;
@@ -50,19 +49,6 @@ public final class ElevenUtils {
         return orientation == Configuration.ORIENTATION_LANDSCAPE;
     }
 
-    /**
-     * Execute an {@link AsyncTask} on a thread pool
-     *
-     * @param <T>         Task argument type
-     * @param task        Task to execute
-     * @param args        Optional arguments to pass to
-     *                    {@link AsyncTask#execute(Object[])}
-     */
-    @SafeVarargs
-    public static <T> void execute(final AsyncTask<T, ?, ?> task, final T... args) {
-        task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, args);
-    }
-
     /**
      * Display a {@link Toast} letting the user know what an item does when long
      * pressed.
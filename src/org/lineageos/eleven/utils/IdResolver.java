@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.utils;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.lineageos.eleven.utils.collections.LongArrayList;
+import org.lineageos.eleven.utils.collections.LongHashSet;
+import org.lineageos.eleven.utils.collections.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the rows of a list of ids.  The ids are queried a bounded chunk at a time with bound
+ * arguments, the chunks running in parallel, and the rows are handed back in the order of the
+ * ids with the ids that weren't found listed separately.
+ */
+public final class IdResolver {
+    private static final String TAG = IdResolver.class.getSimpleName();
+
+    /* # of ids queried at once, well below the limit of bound arguments of SQLite */
+    public static final int CHUNK_SIZE = 500;
+
+    /* # of chunks queried at the same time */
+    private static final int IO_THREADS = 3;
+
+    private static final ExecutorService sIoExecutor = Executors.newFixedThreadPool(IO_THREADS);
+
+    /**
+     * Runs the query of a chunk of ids
+     */
+    public interface ChunkQuery {
+        /**
+         * @param selection     the selection matching the ids of the chunk
+         * @param selectionArgs the ids of the chunk
+         * @return the rows found, or null if the query failed
+         */
+        Cursor query(String selection, String[] selectionArgs);
+    }
+
+    /**
+     * Does something with a chunk of ids
+     */
+    public interface ChunkAction {
+        /**
+         * @param selection     the selection matching the ids of the chunk
+         * @param selectionArgs the ids of the chunk
+         */
+        void run(String selection, String[] selectionArgs);
+    }
+
+    private IdResolver() {
+    }
+
+    /**
+     * Reads the rows of the ids from a content provider
+     *
+     * @param resolver   the content resolver
+     * @param uri        the uri to query
+     * @param projection the columns to read, this must include {@link BaseColumns#_ID}
+     * @param selection  an additional selection the rows must match, or null
+     * @param ids        the ids, in the order the rows should be returned
+     * @return the rows, or null if the provider couldn't be queried
+     */
+    public static Result resolve(final ContentResolver resolver, final Uri uri,
+                                 final String[] projection, final String selection,
+                                 final long[] ids) {
+        return resolve(BaseColumns._ID, projection, ids,
+                (idSelection, selectionArgs) -> resolver.query(uri, projection,
+                        combine(selection, idSelection), selectionArgs, null));
+    }
+
+    /**
+     * Reads the rows of the ids with any query
+     *
+     * @param idColumn   the id column
+     * @param projection the columns the query reads, this must include the id column
+     * @param ids        the ids, in the order the rows should be returned
+     * @param query      runs the query of a chunk
+     * @return the rows, or null if a chunk couldn't be queried
+     */
+    public static Result resolve(final String idColumn, final String[] projection,
+                                 final long[] ids, final ChunkQuery query) {
+        final int idIndex = Arrays.asList(projection).indexOf(idColumn);
+        if (idIndex < 0) {
+            throw new IllegalArgumentException("The projection must include " + idColumn);
+        }
+
+        final long[] uniqueIds = unique(ids);
+        final List<long[]> chunks = split(uniqueIds);
+
+        // the rows of each chunk, the first chunk is read on the calling thread
+        final List<Future<List<Object[]>>> futures = new ArrayList<>(chunks.size());
+        for (int i = 1; i < chunks.size(); i++) {
+            final long[] chunk = chunks.get(i);
+            futures.add(sIoExecutor.submit(() -> readChunk(idColumn, chunk, query)));
+        }
+
+        final List<Object[]> rows = new ArrayList<>(uniqueIds.length);
+        boolean failed = false;
+        if (!chunks.isEmpty()) {
+            final List<Object[]> firstRows = readChunk(idColumn, chunks.get(0), query);
+            if (firstRows != null) {
+                rows.addAll(firstRows);
+            } else {
+                failed = true;
+            }
+        }
+
+        for (Future<List<Object[]>> future : futures) {
+            try {
+                final List<Object[]> chunkRows = future.get();
+                if (chunkRows != null) {
+                    rows.addAll(chunkRows);
+                } else {
+                    failed = true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed = true;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                Log.e(TAG, "Failed to read a chunk", e);
+                failed = true;
+            }
+        }
+
+        if (failed) {
+            for (Future<List<Object[]>> future : futures) {
+                future.cancel(true);
+            }
+            return null;
+        }
+
+        return new Result(projection, idIndex, ids, uniqueIds, rows);
+    }
+
+    /**
+     * Runs something on the ids a chunk at a time on the calling thread, meant for updates and
+     * deletes matching a list of ids
+     *
+     * @param column the id column
+     * @param ids    the ids
+     * @param action the action to run on each chunk
+     */
+    public static void forEachChunk(final String column, final long[] ids,
+                                    final ChunkAction action) {
+        for (long[] chunk : split(ids)) {
+            action.run(createSelection(column, chunk.length), toArgs(chunk));
+        }
+    }
+
+    /**
+     * @param column the id column
+     * @param count  the number of ids
+     * @return a selection matching that many bound ids
+     */
+    public static String createSelection(final String column, final int count) {
+        final StringBuilder selection = new StringBuilder(column.length() + 6 + count * 2);
+        selection.append(column).append(" IN (");
+        for (int i = 0; i < count; i++) {
+            selection.append(i > 0 ? ",?" : "?");
+        }
+        return selection.append(')').toString();
+    }
+
+    private static String[] toArgs(final long[] ids) {
+        final String[] args = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            args[i] = String.valueOf(ids[i]);
+        }
+        return args;
+    }
+
+    private static String combine(final String selection, final String idSelection) {
+        return TextUtils.isEmpty(selection) ? idSelection
+                : "(" + selection + ") AND " + idSelection;
+    }
+
+    private static long[] unique(final long[] ids) {
+        final LongHashSet seen = new LongHashSet(ids.length);
+        final LongArrayList unique = new LongArrayList(ids.length);
+        for (long id : ids) {
+            if (seen.add(id)) {
+                unique.add(id);
+            }
+        }
+        return unique.size() == ids.length ? ids : unique.toArray();
+    }
+
+    private static List<long[]> split(final long[] ids) {
+        final List<long[]> chunks = new ArrayList<>((ids.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        for (int start = 0; start < ids.length; start += CHUNK_SIZE) {
+            chunks.add(Arrays.copyOfRange(ids, start, Math.min(start + CHUNK_SIZE, ids.length)));
+        }
+        return chunks;
+    }
+
+    private static List<Object[]> readChunk(final String idColumn, final long[] ids,
+                                            final ChunkQuery query) {
+        try (Cursor cursor = query.query(createSelection(idColumn, ids.length), toArgs(ids))) {
+            if (cursor == null) {
+                return null;
+            }
+
+            final List<Object[]> rows = new ArrayList<>(cursor.getCount());
+            final int columnCount = cursor.getColumnCount();
+            while (cursor.moveToNext()) {
+                final Object[] row = new Object[columnCount];
+                for (int column = 0; column < columnCount; column++) {
+                    switch (cursor.getType(column)) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            row[column] = cursor.getLong(column);
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            row[column] = cursor.getDouble(column);
+                            break;
+                        case Cursor.FIELD_TYPE_STRING:
+                            row[column] = cursor.getString(column);
+                            break;
+                        case Cursor.FIELD_TYPE_BLOB:
+                            row[column] = cursor.getBlob(column);
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                rows.add(row);
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * The rows read for a list of ids
+     */
+    public static final class Result {
+        private final String[] mColumns;
+        private final Object[][] mRows;
+        private final long[] mMissingIds;
+
+        private Result(final String[] columns, final int idIndex, final long[] ids,
+                       final long[] uniqueIds, final List<Object[]> rows) {
+            mColumns = columns;
+
+            final LongIntHashMap rowsById = new LongIntHashMap(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                final Object id = rows.get(i)[idIndex];
+                if (id instanceof Number) {
+                    rowsById.put(((Number) id).longValue(), i);
+                }
+            }
+
+            mRows = new Object[ids.length][];
+            for (int i = 0; i < ids.length; i++) {
+                final int index = rowsById.get(ids[i], -1);
+                if (index >= 0) {
+                    mRows[i] = rows.get(index);
+                }
+            }
+
+            final LongArrayList missingIds = new LongArrayList();
+            for (long id : uniqueIds) {
+                if (!rowsById.containsKey(id)) {
+                    missingIds.add(id);
+                }
+            }
+            mMissingIds = missingIds.toArray();
+        }
+
+        /**
+         * @return the number of ids that were resolved, including the missing ones
+         */
+        public int size() {
+            return mRows.length;
+        }
+
+        /**
+         * @param position the position of the id
+         * @return the values of the row in projection order, or null if the id wasn't found.
+         * This must not be modified
+         */
+        public Object[] getRow(final int position) {
+            return mRows[position];
+        }
+
+        /**
+         * @return the ids that weren't found, each listed once in the order they were passed in
+         */
+        public long[] getMissingIds() {
+            return mMissingIds;
+        }
+
+        /**
+         * @return a cursor with the rows that were found, in the order of the ids
+         */
+        public Cursor toCursor() {
+            final MatrixCursor cursor = new MatrixCursor(mColumns, mRows.length);
+            for (Object[] row : mRows) {
+                if (row != null) {
+                    cursor.addRow(row);
+                }
+            }
+            return cursor;
+        }
+    }
+}
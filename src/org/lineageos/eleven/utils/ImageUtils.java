@@ -23,6 +23,8 @@ import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.widget.ImageView;
 
+import org.lineageos.eleven.cache.BitmapPool;
+
 public class ImageUtils {
 
     /**
@@ -31,6 +33,16 @@ public class ImageUtils {
      * the image-view bounds.
      */
     public static Bitmap scaleBitmapForImageView(Bitmap src, ImageView imageView) {
+        return scaleBitmapForImageView(src, imageView, null);
+    }
+
+    /**
+     * Scale the bitmap to an image view. The bitmap will fill the image view bounds.
+     * The bitmap will be scaled while maintaining the aspect ratio and cropped if it exceeds
+     * the image-view bounds.  The intermediate scaled bitmap is given to the pool, if any
+     */
+    public static Bitmap scaleBitmapForImageView(Bitmap src, ImageView imageView,
+                                                 BitmapPool pool) {
         if (src == null || imageView == null) {
             return src;
         }
@@ -58,7 +70,11 @@ public class ImageUtils {
         int dstWidth = (int) Math.ceil(srcWidth * scale);
         Bitmap scaledBitmap = Bitmap.createScaledBitmap(src, dstWidth, dstHeight, false);
 
-        return Bitmap.createBitmap(scaledBitmap, 0, 0, viewWidth, viewHeight);
+        Bitmap croppedBitmap = Bitmap.createBitmap(scaledBitmap, 0, 0, viewWidth, viewHeight);
+        if (pool != null && croppedBitmap != scaledBitmap && scaledBitmap != src) {
+            pool.put(scaledBitmap);
+        }
+        return croppedBitmap;
     }
 
     public static Bitmap drawableToBitmap(Drawable drawable) {
@@ -53,7 +53,6 @@ import org.lineageos.eleven.IElevenService;
 import org.lineageos.eleven.MusicPlaybackService;
 import org.lineageos.eleven.R;
 import org.lineageos.eleven.cache.ImageFetcher;
-import org.lineageos.eleven.loaders.AlbumSongLoader;
 import org.lineageos.eleven.loaders.LastAddedLoader;
 import org.lineageos.eleven.loaders.PlaylistLoader;
 import org.lineageos.eleven.loaders.PlaylistSongLoader;
@@ -61,6 +60,8 @@ import org.lineageos.eleven.loaders.SongLoader;
 import org.lineageos.eleven.loaders.TopTracksLoader;
 import org.lineageos.eleven.locale.LocaleUtils;
 import org.lineageos.eleven.model.AlbumArtistDetails;
+import org.lineageos.eleven.provider.LibraryCatalog;
+import org.lineageos.eleven.provider.ListeningHistoryStore;
 import org.lineageos.eleven.provider.RecentStore;
 import org.lineageos.eleven.provider.SongPlayCount;
 import org.lineageos.eleven.service.MusicPlaybackTrack;
@@ -69,11 +70,9 @@ import java.io.File;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -597,6 +596,22 @@ public final class MusicUtils {
         return sEmptyList;
     }
 
+    /**
+     * @return the version of the queue, which changes every time the queue does, or -1 if
+     * the service isn't bound
+     */
+    public static int getQueueVersion() {
+        try {
+            IElevenService service = getService();
+            if (service != null) {
+                return service.getQueueVersion();
+            }
+        } catch (final RemoteException exc) {
+            Log.e(TAG, "getQueueVersion()", exc);
+        }
+        return -1;
+    }
+
     /**
      * @return the id of the track in the queue at the given position
      */
@@ -688,6 +703,23 @@ public final class MusicUtils {
         return 0;
     }
 
+    /**
+     * @param ids The IDs of the tracks to remove.
+     * @return removes the tracks from the queue in a single call, returning how many were
+     * removed
+     */
+    public static int removeTracks(final long[] ids) {
+        IElevenService service = getService();
+        try {
+            if (service != null) {
+                return service.removeTrackIds(ids);
+            }
+        } catch (final RemoteException exc) {
+            Log.e(TAG, "removeTracks(" + ids.length + " ids)", exc);
+        }
+        return 0;
+    }
+
     /**
      * Remove song at a specified position in the list
      *
@@ -757,7 +789,19 @@ public final class MusicUtils {
      * @return The song list for an album.
      */
     public static long[] getSongListForAlbum(final Context context, final long id) {
-        try (Cursor cursor = AlbumSongLoader.makeAlbumSongCursor(context, id)) {
+        // this is called from the main thread, so never wait for the catalog to be built
+        final LibraryCatalog.Snapshot snapshot = LibraryCatalog.getInstance(context)
+                .peekSnapshot();
+        if (snapshot != null) {
+            return snapshot.getAlbumSongIds(id);
+        }
+
+        final String selection = AudioColumns.IS_MUSIC + "=1 AND " + AudioColumns.TITLE
+                + " != '' AND " + AudioColumns.ALBUM_ID + "=" + id;
+        try (Cursor cursor = context.getContentResolver().query(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                new String[]{BaseColumns._ID}, selection, null,
+                AudioColumns.TRACK + ", " + AudioColumns.TITLE)) {
             if (cursor != null) {
                 return getSongListForCursor(cursor);
             }
@@ -1283,12 +1327,28 @@ public final class MusicUtils {
      */
     public static long[] getSongListForSmartPlaylist(final Context context,
                                                      final SmartPlaylistType type) {
+        if (type == SmartPlaylistType.LastAdded) {
+            // this is called from the main thread, so never wait for the catalog to be built
+            final LibraryCatalog.Snapshot snapshot = LibraryCatalog.getInstance(context)
+                    .peekSnapshot();
+            if (snapshot != null) {
+                return snapshot.getSongIdsAddedAfter(LastAddedLoader.getCutoff(context));
+            }
+
+            final String selection = AudioColumns.IS_MUSIC + "=1 AND " + AudioColumns.TITLE
+                    + " != '' AND " + AudioColumns.DATE_ADDED + ">"
+                    + LastAddedLoader.getCutoff(context);
+            try (Cursor cursor = context.getContentResolver().query(
+                    MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                    new String[]{BaseColumns._ID}, selection, null,
+                    AudioColumns.DATE_ADDED + " DESC")) {
+                return getSongListForCursor(cursor);
+            }
+        }
+
         Cursor cursor = null;
         try {
             switch (type) {
-                case LastAdded:
-                    cursor = LastAddedLoader.makeLastAddedCursor(context);
-                    break;
                 case RecentlyPlayed:
                     cursor = TopTracksLoader.makeRecentTracksCursor(context);
                     break;
@@ -1464,52 +1524,48 @@ public final class MusicUtils {
         final String[] projection = new String[]{
                 BaseColumns._ID, MediaColumns.DATA, AudioColumns.ALBUM_ID
         };
-        final StringBuilder selection = new StringBuilder();
-        selection.append(BaseColumns._ID + " IN (");
-        for (int i = 0; i < list.length; i++) {
-            selection.append(list[i]);
-            if (i < list.length - 1) {
-                selection.append(",");
-            }
-        }
-        selection.append(")");
-        try (Cursor c = context.getContentResolver().query(
-                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, projection, selection.toString(),
-                null, null)) {
-            if (c != null) {
-                // Step 1: Remove selected tracks from the current playlist, as well
-                // as from the album art cache
-                c.moveToFirst();
-                while (!c.isAfterLast()) {
-                    // Remove from current playlist
-                    final long id = c.getLong(0);
-                    removeTrack(id);
-                    // Remove the track from the play count
-                    SongPlayCount.getInstance(context).removeItem(id);
-                    // Remove any items in the recents database
-                    RecentStore.getInstance(context).removeItem(id);
-                    c.moveToNext();
+        final IdResolver.Result result = IdResolver.resolve(context.getContentResolver(),
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, projection, null, list);
+        if (result != null) {
+            // Step 1: Remove selected tracks from the current playlist, as well
+            // as from the album art cache
+            for (int i = 0; i < result.size(); i++) {
+                final Object[] row = result.getRow(i);
+                if (row == null) {
+                    continue;
                 }
-
-                // Step 2: Remove selected tracks from the database
-                context.getContentResolver().delete(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                        selection.toString(), null);
-
-                // Step 3: Remove files from card
-                c.moveToFirst();
-                while (!c.isAfterLast()) {
-                    final String name = c.getString(1);
-                    final File f = new File(name);
-                    try { // File.delete can throw a security exception
-                        if (!f.delete()) {
-                            // I'm not sure if we'd ever get here (deletion would
-                            // have to fail, but no exception thrown)
-                            Log.e("MusicUtils", "Failed to delete file " + name);
-                        }
-                        c.moveToNext();
-                    } catch (final SecurityException ex) {
-                        c.moveToNext();
+                // Remove from current playlist
+                final long id = ((Number) row[0]).longValue();
+                removeTrack(id);
+                // Remove the track from the play count
+                SongPlayCount.getInstance(context).removeItem(id);
+                // Remove any items in the recents database
+                RecentStore.getInstance(context).removeItem(id);
+                // Remove the track from the listening history
+                ListeningHistoryStore.getInstance(context).removeItem(id);
+            }
+
+            // Step 2: Remove selected tracks from the database
+            IdResolver.forEachChunk(BaseColumns._ID, list, (selection, selectionArgs) ->
+                    context.getContentResolver().delete(
+                            MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, selection,
+                            selectionArgs));
+
+            // Step 3: Remove files from card
+            for (int i = 0; i < result.size(); i++) {
+                final Object[] row = result.getRow(i);
+                if (row == null) {
+                    continue;
+                }
+                final String name = (String) row[1];
+                final File f = new File(name);
+                try { // File.delete can throw a security exception
+                    if (!f.delete()) {
+                        // I'm not sure if we'd ever get here (deletion would
+                        // have to fail, but no exception thrown)
+                        Log.e("MusicUtils", "Failed to delete file " + name);
                     }
+                } catch (final SecurityException ignored) {
                 }
             }
         }
@@ -1639,26 +1695,6 @@ public final class MusicUtils {
         return sortOrder.endsWith(" DESC");
     }
 
-    /**
-     * Takes a collection of items and builds a comma-separated list of them
-     *
-     * @param items collection of items
-     * @return comma-separted list of items
-     */
-    public static <E> String buildCollectionAsString(Collection<E> items) {
-        Iterator<E> iterator = items.iterator();
-        StringBuilder str = new StringBuilder();
-        if (iterator.hasNext()) {
-            str.append(iterator.next());
-            while (iterator.hasNext()) {
-                str.append(",");
-                str.append(iterator.next());
-            }
-        }
-
-        return str.toString();
-    }
-
     public static class IgnoreCaseComparator implements Comparator<String> {
         @Override
         public int compare(String s1, String s2) {
@@ -52,9 +52,6 @@ public final class PreferenceUtils {
     // Sort order for the album list
     public static final String ALBUM_SORT_ORDER = "album_sort_order";
 
-    // Sort order for the album song list
-    public static final String ALBUM_SONG_SORT_ORDER = "album_song_sort_order";
-
     // Sort order for the song list
     public static final String SONG_SORT_ORDER = "song_sort_order";
 
@@ -179,15 +176,6 @@ public final class PreferenceUtils {
         return mPreferences.getString(ALBUM_SORT_ORDER, SortOrder.AlbumSortOrder.ALBUM_A_Z);
     }
 
-    /**
-     * @return The sort order used for the album song in
-     * AlbumSongFragment
-     */
-    public String getAlbumSongSortOrder() {
-        return mPreferences.getString(ALBUM_SONG_SORT_ORDER,
-                SortOrder.AlbumSongSortOrder.SONG_TRACK_LIST);
-    }
-
     /**
      * Sets the sort order for the song list.
      *
@@ -22,9 +22,9 @@ import android.text.TextUtils;
 import org.lineageos.eleven.R;
 import org.lineageos.eleven.model.Artist;
 import org.lineageos.eleven.model.Song;
+import org.lineageos.eleven.sectionadapter.SectionIndex;
 
 import java.util.List;
-import java.util.TreeMap;
 
 /**
  * This Utils class contains code that compares two different items and determines whether
@@ -36,16 +36,6 @@ public class SectionCreatorUtils {
         Footer
     }
 
-    public static class Section {
-        public final SectionType mType;
-        public final String mIdentifier;
-
-        public Section(final SectionType type, final String identifier) {
-            mType = type;
-            mIdentifier = identifier;
-        }
-    }
-
     /**
      * Interface to compare two items and create labels
      *
@@ -155,7 +145,11 @@ public class SectionCreatorUtils {
             return createHeaderLabel(label);
         }
 
-        protected String createHeaderLabel(final String label) {
+        /**
+         * @param label the bucket label of an item, which may be empty
+         * @return the section label for the bucket
+         */
+        public String createHeaderLabel(final String label) {
             if (TextUtils.isEmpty(label)) {
                 return mContext.getString(R.string.header_other);
             }
@@ -350,12 +344,12 @@ public class SectionCreatorUtils {
      * @param list       The list of items to analyze
      * @param comparator The comparison function to use
      * @param <T>        the type of item to compare
-     * @return Creates a TreeMap of indices (if the headers were part of the list) to section labels
+     * @return the sections, indexed by the position of the item they come before
      */
-    public static <T> TreeMap<Integer, Section> createSections(final List<T> list,
-                                                               final IItemCompare<T> comparator) {
+    public static <T> SectionIndex createSections(final List<T> list,
+                                                  final IItemCompare<T> comparator) {
         if (list != null && list.size() > 0) {
-            TreeMap<Integer, Section> sections = new TreeMap<>();
+            SectionIndex.Builder sections = new SectionIndex.Builder();
             for (int i = 0; i < list.size() + 1; i++) {
                 T first = (i == 0 ? null : list.get(i - 1));
                 T second = (i == list.size() ? null : list.get(i));
@@ -366,7 +360,7 @@ public class SectionCreatorUtils {
                     String footer = comparator.createSectionFooter(first, second, list, i - 1);
                     if (footer != null) {
                         // add sectionHeaders.size() to store the indices of the combined list
-                        sections.put(i, new Section(SectionType.Footer, footer));
+                        sections.add(i, SectionType.Footer, footer);
                     }
                 }
 
@@ -374,7 +368,7 @@ public class SectionCreatorUtils {
                     String header = comparator.createSectionHeader(first, second, list, i - 1);
                     if (header != null) {
                         // add sectionHeaders.size() to store the indices of the combined list
-                        sections.put(i, new Section(SectionType.Header, header));
+                        sections.add(i, SectionType.Header, header);
                         // stop section creation
                         if (comparator.shouldStopSectionCreation()) {
                             break;
@@ -383,7 +377,7 @@ public class SectionCreatorUtils {
                 }
             }
 
-            return sections;
+            return sections.build();
         }
 
         return null;
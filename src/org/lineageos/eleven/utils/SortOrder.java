@@ -88,13 +88,4 @@ public final class SortOrder {
         /* Song sort order filename */
         String SONG_FILENAME = MediaStore.Audio.Media.DATA;
     }
-
-    /**
-     * Album song sort order entries.
-     */
-    public interface AlbumSongSortOrder {
-        /* Album song sort order track list */
-        String SONG_TRACK_LIST = String.format("CAST(%s as int), %s",
-                MediaStore.Audio.Media.TRACK, MediaStore.Audio.Media.DEFAULT_SORT_ORDER);
-    }
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.utils.collections;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of primitive ints, used instead of {@code ArrayList<Integer>} to avoid boxing
+ * every element
+ */
+public class IntArrayList {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] mValues;
+    private int mSize;
+
+    public IntArrayList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the initial capacity
+     */
+    public IntArrayList(final int capacity) {
+        mValues = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * @param value the value to append
+     */
+    public void add(final int value) {
+        if (mSize == mValues.length) {
+            mValues = Arrays.copyOf(mValues, mSize * 2);
+        }
+        mValues[mSize++] = value;
+    }
+
+    /**
+     * @param index the index of the value
+     * @return the value
+     */
+    public int get(final int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+        return mValues[index];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * @return a copy of the values
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(mValues, mSize);
+    }
+}
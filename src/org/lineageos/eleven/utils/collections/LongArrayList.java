@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.utils.collections;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of primitive longs, used instead of {@code ArrayList<Long>} to avoid boxing
+ * every element
+ */
+public class LongArrayList {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] mValues;
+    private int mSize;
+
+    public LongArrayList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the initial capacity
+     */
+    public LongArrayList(final int capacity) {
+        mValues = new long[Math.max(capacity, 1)];
+    }
+
+    /**
+     * @param value the value to append
+     */
+    public void add(final long value) {
+        if (mSize == mValues.length) {
+            mValues = Arrays.copyOf(mValues, mSize * 2);
+        }
+        mValues[mSize++] = value;
+    }
+
+    /**
+     * @param index the index of the value
+     * @return the value
+     */
+    public long get(final int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+        return mValues[index];
+    }
+
+    /**
+     * @param value the value to look for
+     * @return the index of the first occurrence of the value, or -1 if not found
+     */
+    public int indexOf(final long value) {
+        for (int i = 0; i < mSize; i++) {
+            if (mValues[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * @return a copy of the values
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(mValues, mSize);
+    }
+}
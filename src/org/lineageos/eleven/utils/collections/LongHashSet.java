@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.utils.collections;
+
+/**
+ * An open addressing (linear probing) set of primitive longs, used instead of
+ * {@code HashSet<Long>} to avoid boxing and an entry object per element
+ */
+public class LongHashSet {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] mKeys;
+    private boolean[] mUsed;
+    private int mSize;
+    private int mThreshold;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize the number of elements expected, to avoid rehashing
+     */
+    public LongHashSet(final int expectedSize) {
+        allocate(LongIntHashMap.tableSizeFor(expectedSize, LOAD_FACTOR));
+    }
+
+    /**
+     * @param key the element to add
+     * @return true if the element wasn't in the set yet
+     */
+    public boolean add(final long key) {
+        if (mSize >= mThreshold) {
+            rehash(mKeys.length * 2);
+        }
+
+        final int mask = mKeys.length - 1;
+        int i = LongIntHashMap.hash(key) & mask;
+        while (mUsed[i]) {
+            if (mKeys[i] == key) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+
+        mUsed[i] = true;
+        mKeys[i] = key;
+        mSize++;
+        return true;
+    }
+
+    public boolean contains(final long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @param key the element to remove
+     * @return true if the element was in the set
+     */
+    public boolean remove(final long key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return false;
+        }
+
+        // shift back the entries of the same probe sequence so lookups don't need tombstones
+        final int mask = mKeys.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (!mUsed[j]) {
+                break;
+            }
+
+            final int k = LongIntHashMap.hash(mKeys[j]) & mask;
+            if (j > i ? (k <= i || k > j) : (k <= i && k > j)) {
+                mKeys[i] = mKeys[j];
+                i = j;
+            }
+        }
+
+        mUsed[i] = false;
+        mSize--;
+        return true;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    private int indexOf(final long key) {
+        final int mask = mKeys.length - 1;
+        int i = LongIntHashMap.hash(key) & mask;
+        while (mUsed[i]) {
+            if (mKeys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void allocate(final int capacity) {
+        mKeys = new long[capacity];
+        mUsed = new boolean[capacity];
+        mThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(final int capacity) {
+        final long[] keys = mKeys;
+        final boolean[] used = mUsed;
+
+        allocate(capacity);
+        mSize = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                add(keys[i]);
+            }
+        }
+    }
+}
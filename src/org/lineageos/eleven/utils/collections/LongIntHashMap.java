@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2026 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lineageos.eleven.utils.collections;
+
+/**
+ * An open addressing (linear probing) map of primitive long keys to primitive int values, used
+ * instead of {@code HashMap<Long, Integer>} to avoid boxing and an entry object per mapping
+ */
+public class LongIntHashMap {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] mKeys;
+    private int[] mValues;
+    private boolean[] mUsed;
+    private int mSize;
+    private int mThreshold;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize the number of mappings expected, to avoid rehashing
+     */
+    public LongIntHashMap(final int expectedSize) {
+        allocate(tableSizeFor(expectedSize, LOAD_FACTOR));
+    }
+
+    /**
+     * Maps the key to the value, replacing any existing mapping
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public void put(final long key, final int value) {
+        if (mSize >= mThreshold) {
+            rehash(mKeys.length * 2);
+        }
+
+        final int mask = mKeys.length - 1;
+        int i = hash(key) & mask;
+        while (mUsed[i]) {
+            if (mKeys[i] == key) {
+                mValues[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        mUsed[i] = true;
+        mKeys[i] = key;
+        mValues[i] = value;
+        mSize++;
+    }
+
+    /**
+     * @param key          the key
+     * @param defaultValue returned if there is no mapping for the key
+     * @return the value mapped to the key
+     */
+    public int get(final long key, final int defaultValue) {
+        final int i = indexOf(key);
+        return i >= 0 ? mValues[i] : defaultValue;
+    }
+
+    public boolean containsKey(final long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @param key the key to remove
+     * @return true if there was a mapping for the key
+     */
+    public boolean remove(final long key) {
+        final int i = indexOf(key);
+        if (i < 0) {
+            return false;
+        }
+
+        removeAt(i);
+        return true;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * @return the keys, in no particular order
+     */
+    public long[] keys() {
+        final long[] keys = new long[mSize];
+        int index = 0;
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mUsed[i]) {
+                keys[index++] = mKeys[i];
+            }
+        }
+        return keys;
+    }
+
+    private int indexOf(final long key) {
+        final int mask = mKeys.length - 1;
+        int i = hash(key) & mask;
+        while (mUsed[i]) {
+            if (mKeys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the entry at the index and shifts back the entries of the same probe sequence so
+     * lookups don't need tombstones
+     */
+    private void removeAt(int i) {
+        final int mask = mKeys.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (!mUsed[j]) {
+                break;
+            }
+
+            // move the entry back unless its ideal slot lies cyclically within (i, j]
+            final int k = hash(mKeys[j]) & mask;
+            if (j > i ? (k <= i || k > j) : (k <= i && k > j)) {
+                mKeys[i] = mKeys[j];
+                mValues[i] = mValues[j];
+                i = j;
+            }
+        }
+
+        mUsed[i] = false;
+        mSize--;
+    }
+
+    private void allocate(final int capacity) {
+        mKeys = new long[capacity];
+        mValues = new int[capacity];
+        mUsed = new boolean[capacity];
+        mThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(final int capacity) {
+        final long[] keys = mKeys;
+        final int[] values = mValues;
+        final boolean[] used = mUsed;
+
+        allocate(capacity);
+        mSize = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                put(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the power of two table size holding expectedSize entries under the load factor
+     */
+    static int tableSizeFor(final int expectedSize, final float loadFactor) {
+        int capacity = 2;
+        while (capacity * loadFactor <= expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    static int hash(final long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
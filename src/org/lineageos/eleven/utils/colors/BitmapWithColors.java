@@ -16,6 +16,7 @@
  */
 package org.lineageos.eleven.utils.colors;
 
+import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.os.Looper;
@@ -24,6 +25,8 @@ import android.util.LruCache;
 import androidx.annotation.NonNull;
 import androidx.palette.graphics.Palette;
 
+import org.lineageos.eleven.provider.AlbumColorStore;
+
 public class BitmapWithColors {
     private static final class BitmapColors {
         public final int mVibrantColor;
@@ -45,6 +48,18 @@ public class BitmapWithColors {
             mDominantColor = vibrantColor;
         }
 
+        public BitmapColors(int[] colors) {
+            mVibrantColor = colors[0];
+            mVibrantDarkColor = colors[1];
+            mVibrantLightColor = colors[2];
+            mDominantColor = colors[3];
+        }
+
+        public int[] toArray() {
+            return new int[]{mVibrantColor, mVibrantDarkColor, mVibrantLightColor,
+                    mDominantColor};
+        }
+
         private int determineColor(Palette.Swatch swatch) {
             return swatch != null ? swatch.getRgb() : Color.TRANSPARENT;
         }
@@ -74,13 +89,35 @@ public class BitmapWithColors {
     private static final LruCache<Integer, BitmapColors> sCachedColors =
             new LruCache<>(CACHE_SIZE_MAX);
 
+    /* the palette is computed from a copy of the bitmap scaled down to about this many pixels */
+    private static final int PALETTE_BITMAP_AREA = 64 * 64;
+
     private final Bitmap mBitmap;
     private final int mBitmapKey;
+    private final AlbumColorStore mColorStore;
+    private final long mAlbumId;
     private BitmapColors mColors;
 
     public BitmapWithColors(Bitmap bitmap, int bitmapKey) {
+        this(bitmap, bitmapKey, null, -1);
+    }
+
+    /**
+     * @param context The {@link Context} to use
+     * @param bitmap  The artwork of an album
+     * @param albumId The id of the album, its colors are persisted by this id
+     */
+    public BitmapWithColors(Context context, Bitmap bitmap, long albumId) {
+        this(bitmap, String.valueOf(albumId).hashCode(), AlbumColorStore.getInstance(context),
+                albumId);
+    }
+
+    private BitmapWithColors(Bitmap bitmap, int bitmapKey, AlbumColorStore colorStore,
+                             long albumId) {
         mBitmap = bitmap;
         mBitmapKey = bitmapKey;
+        mColorStore = colorStore;
+        mAlbumId = albumId;
 
         if (Thread.currentThread() != Looper.getMainLooper().getThread()) {
             // we're already running in background, so do the
@@ -92,9 +129,24 @@ public class BitmapWithColors {
     public BitmapWithColors(Bitmap bitmap, int bitmapKey, int vibrantColor, int vibrantDarkColor) {
         mBitmap = bitmap;
         mBitmapKey = bitmapKey;
+        mColorStore = null;
+        mAlbumId = -1;
         mColors = new BitmapColors(vibrantColor, vibrantDarkColor);
     }
 
+    /**
+     * Forgets the colors of an album, so they're extracted again from its new artwork
+     *
+     * @param context The {@link Context} to use
+     * @param albumId The id of the album
+     */
+    public static void removeColors(Context context, long albumId) {
+        synchronized (sCachedColors) {
+            sCachedColors.remove(String.valueOf(albumId).hashCode());
+        }
+        AlbumColorStore.getInstance(context).removeColors(albumId);
+    }
+
     public Bitmap getBitmap() {
         return mBitmap;
     }
@@ -182,9 +234,19 @@ public class BitmapWithColors {
             return;
         }
 
-        final Palette p = Palette.from(mBitmap).generate();
+        final int[] storedColors = mColorStore != null ? mColorStore.getColors(mAlbumId) : null;
+        if (storedColors != null) {
+            mColors = new BitmapColors(storedColors);
+        } else {
+            final Palette p = Palette.from(mBitmap)
+                    .resizeBitmapArea(PALETTE_BITMAP_AREA)
+                    .generate();
+            mColors = new BitmapColors(p);
+            if (mColorStore != null) {
+                mColorStore.setColors(mAlbumId, mColors.toArray());
+            }
+        }
 
-        mColors = new BitmapColors(p);
         synchronized (sCachedColors) {
             sCachedColors.put(mBitmapKey, mColors);
         }
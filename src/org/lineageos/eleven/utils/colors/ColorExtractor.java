@@ -16,14 +16,10 @@
  */
 package org.lineageos.eleven.utils.colors;
 
-import android.os.Handler;
-
 import org.lineageos.eleven.cache.ImageFetcher;
+import org.lineageos.eleven.utils.AppExecutors;
 import org.lineageos.eleven.utils.MusicUtils;
 
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-
 public class ColorExtractor {
     public interface Callback {
         void onColorExtracted(final BitmapWithColors bitmapWithColors);
@@ -38,9 +34,6 @@ public class ColorExtractor {
         private final ImageFetcher imageFetcher;
         private final ColorExtractor.Callback callback;
 
-        private final Executor mExecutor = Executors.newSingleThreadExecutor();
-        private final Handler mHandler = new Handler();
-
         ColorExtractionTask(final ImageFetcher imageFetcher,
                             final ColorExtractor.Callback callback) {
             this.imageFetcher = imageFetcher;
@@ -48,10 +41,10 @@ public class ColorExtractor {
         }
 
         public void execute() {
-            mExecutor.execute(() -> {
+            AppExecutors.get(AppExecutors.Pool.COMPUTE).execute(() -> {
                 final BitmapWithColors bitmapWithColors = getArtwork();
 
-                mHandler.post(() -> {
+                AppExecutors.getMainHandler().post(() -> {
                     if (callback != null) {
                         callback.onColorExtracted(bitmapWithColors);
                     }
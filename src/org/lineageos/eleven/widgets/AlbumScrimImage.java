@@ -17,17 +17,13 @@
  */
 package org.lineageos.eleven.widgets;
 
-import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Color;
-import android.graphics.RenderEffect;
-import android.graphics.Shader;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.GradientDrawable;
 import android.graphics.drawable.TransitionDrawable;
-import android.os.Build;
 import android.util.AttributeSet;
 import android.util.TypedValue;
 import android.view.View;
@@ -43,8 +39,6 @@ import androidx.core.content.ContextCompat;
 public class AlbumScrimImage extends FrameLayout {
     private static final int COLOR_GREY_30 = 0x4c000000;
 
-    private static final float BLUR_RADIUS = 50f;
-
     private ImageView mImageView;
     private View mScrimView;
 
@@ -81,8 +75,6 @@ public class AlbumScrimImage extends FrameLayout {
      * Transitions the image to the default state (default blur artwork)
      */
     public void transitionToDefaultState() {
-        clearBlurEffect();
-
         // if we are already showing the default artwork and we are transitioning to the
         // default artwork then don't do the transition at all
         if (mUsingDefaultArtwork) {
@@ -125,18 +117,6 @@ public class AlbumScrimImage extends FrameLayout {
         mUsingDefaultArtwork = false;
     }
 
-    @TargetApi(Build.VERSION_CODES.S)
-    public void applyBlurEffect() {
-        final RenderEffect blurEffect = RenderEffect.createBlurEffect(
-                BLUR_RADIUS, BLUR_RADIUS, Shader.TileMode.CLAMP);
-        mImageView.setRenderEffect(blurEffect);
-    }
-
-    @TargetApi(Build.VERSION_CODES.S)
-    public void clearBlurEffect() {
-        mImageView.setRenderEffect(null);
-    }
-
     private Drawable createDefaultArtworkDrawable() {
         return new ColorDrawable(mDefaultArtworkColor);
     }
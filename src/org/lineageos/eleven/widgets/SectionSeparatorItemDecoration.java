@@ -22,10 +22,8 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
-import android.os.Build;
 import android.text.StaticLayout;
 import android.text.TextPaint;
-import android.util.SparseArray;
 import android.view.View;
 
 import androidx.annotation.NonNull;
@@ -34,13 +32,13 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.color.MaterialColors;
 
 import org.lineageos.eleven.R;
-import org.lineageos.eleven.utils.SectionCreatorUtils;
-
-import java.util.TreeMap;
+import org.lineageos.eleven.sectionadapter.SectionIndex;
 
 public class SectionSeparatorItemDecoration extends RecyclerView.ItemDecoration {
 
-    private final SparseArray<StaticLayout> mLabels;
+    private final SectionIndex mSections;
+    // the laid out labels by section, created when first drawn
+    private final StaticLayout[] mLabels;
     private final TextPaint mPaint;
     private final int mTextWidth;
     private final int mDecorHeight;
@@ -48,8 +46,7 @@ public class SectionSeparatorItemDecoration extends RecyclerView.ItemDecoration
     private final int mVerticalPadding;
     private final float mVerticalBias;
 
-    public SectionSeparatorItemDecoration(Context context,
-                                          TreeMap<Integer, SectionCreatorUtils.Section> items) {
+    public SectionSeparatorItemDecoration(Context context, SectionIndex sections) {
         mPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG | Paint.SUBPIXEL_TEXT_FLAG);
 
         TypedArray attrs = context.obtainStyledAttributes(
@@ -81,18 +78,20 @@ public class SectionSeparatorItemDecoration extends RecyclerView.ItemDecoration
         mVerticalBias = bias;
 
         attrs.recycle();
-        mLabels = buildLabels(items);
+        mSections = sections;
+        mLabels = new StaticLayout[sections.size()];
     }
 
-    private SparseArray<StaticLayout> buildLabels(TreeMap<Integer,
-            SectionCreatorUtils.Section> items) {
-        SparseArray<StaticLayout> sparseArray = new SparseArray<>();
-        items.forEach((index, section) -> {
-            String text = section.mIdentifier;
-            StaticLayout label = newStaticLayout(text);
-            sparseArray.put(index, label);
-        });
-        return sparseArray;
+    private StaticLayout getLabel(int position) {
+        int section = mSections.getSectionStartingAt(position);
+        if (section < 0) {
+            return null;
+        }
+
+        if (mLabels[section] == null) {
+            mLabels[section] = newStaticLayout(mSections.getLabel(section));
+        }
+        return mLabels[section];
     }
 
     @Override
@@ -114,7 +113,7 @@ public class SectionSeparatorItemDecoration extends RecyclerView.ItemDecoration
             View child = parent.getChildAt(i);
             if (child != null && child.getTop() < parent.getHeight() && child.getBottom() > 0) {
                 // Child is visible
-                StaticLayout layout = mLabels.get(parent.getChildAdapterPosition(child), null);
+                StaticLayout layout = getLabel(parent.getChildAdapterPosition(child));
                 if (layout != null) {
                     float dy = mVerticalPadding +
                             layoutManager.getDecoratedTop(child) +
@@ -137,10 +136,6 @@ public class SectionSeparatorItemDecoration extends RecyclerView.ItemDecoration
     }
 
     private boolean hasLabel(int position) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
-            return mLabels.contains(position);
-        } else {
-            return mLabels.indexOfKey(position) > -1;
-        }
+        return mSections.getSectionStartingAt(position) >= 0;
     }
 }